@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the bookkeeping the resource modules and stateless tests do around cloud calls, by calling the same
+ * {@link Bookkeeping} methods they call:
+ * <ul>
+ *     <li>the label collision loop of the <code>provision*</code> methods, which appends random digits to a label until
+ *     it is unused, measured for a batch of resources provisioned under the same label</li>
+ *     <li>the reconciliation of a resource list against its status list in the <code>compare*ListAndStatus</code>
+ *     tests, measured for lists that match in a different order</li>
+ * </ul>
+ * Build and run with:
+ * <pre>
+ *     mvn -Pbenchmarks package
+ *     java -cp "target/classes:target/lib/*" org.openjdk.jmh.Main ProvisioningBenchmark
+ * </pre>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProvisioningBenchmark {
+    /**
+     * The number of resources provisioned under one label or listed by the cloud.
+     */
+    @Param({ "10", "100", "1000" })
+    public int count;
+
+    private List<String> ids;
+    private Random       random;
+    private List<String> status;
+
+    @Setup
+    public void setUp() {
+        ids = new ArrayList<String>();
+        random = new Random(42L);
+        for( int i=0; i<count; i++ ) {
+            ids.add("i-" + Integer.toHexString(0x10000000 + i));
+        }
+        status = new ArrayList<String>(ids);
+        Collections.shuffle(status, random);
+    }
+
+    @Benchmark
+    public Map<String,String> labelCollisions() {
+        Map<String,String> resources = new HashMap<String, String>();
+
+        for( String id : ids ) {
+            synchronized( resources ) {
+                resources.put(Bookkeeping.getUniqueLabel(resources, DaseinTestManager.STATEFUL, random), id);
+            }
+        }
+        return resources;
+    }
+
+    @Benchmark
+    public List<String> compareListAndStatus() {
+        return Bookkeeping.findMismatches(status, ids);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.compute.StatelessVMTests;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link DaseinTestManager} code that runs for every test and every log line. The test manager is
+ * connected to the in-memory stand-in provider, and logging is switched off so that only the string work is measured.
+ * Build and run with:
+ * <pre>
+ *     mvn -Pbenchmarks package
+ *     java -cp "target/classes:target/lib/*" org.openjdk.jmh.Main TestManagerBenchmark
+ * </pre>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TestManagerBenchmark {
+    /**
+     * The shape of the inclusion and exclusion lists: none, a single suite, or many individual tests.
+     */
+    @Param({ "none", "suite", "tests" })
+    public String filters;
+
+    private DaseinTestManager manager;
+    private Logger            logger;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() {
+        Logger.getRootLogger().setLevel(Level.OFF);
+        logger = Logger.getLogger(TestManagerBenchmark.class);
+        System.setProperty("providerClass", "org.dasein.cloud.test.standin.StandInCloud");
+        System.setProperty("accountNumber", "0000");
+        System.setProperty("regionId", "standin-1");
+        System.clearProperty("dasein.inclusions");
+        System.clearProperty("dasein.exclusions");
+        if( filters.equals("suite") ) {
+            System.setProperty("dasein.inclusions", "StatelessVMTests");
+        }
+        else if( filters.equals("tests") ) {
+            StringBuilder str = new StringBuilder();
+
+            for( int i=0; i<50; i++ ) {
+                str.append("StatelessVMTests.test").append(i).append(",");
+            }
+            str.append("StatelessVMTests.listVirtualMachines");
+            System.setProperty("dasein.inclusions", str.toString());
+            System.setProperty("dasein.exclusions", "StatelessVMTests.test7,StatelessDCTests");
+        }
+        DaseinTestManager.loadFilters();
+        manager = new DaseinTestManager(StatelessVMTests.class);
+        manager.begin("listVirtualMachines");
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() {
+        manager.close();
+        ProviderPool.close();
+    }
+
+    @Benchmark
+    public boolean isTestSkipped() {
+        return manager.isTestSkipped();
+    }
+
+    @Benchmark
+    public void changePrefix() {
+        manager.changePrefix();
+    }
+
+    @Benchmark
+    public void staticOut() {
+        DaseinTestManager.out(logger, "Dasein/Stand-In.StatelessVM.listVirtualMachines> ", "Virtual Machines", "42");
+    }
+
+    @Benchmark
+    public void instanceOut() {
+        manager.out("Virtual Machines", 42);
+    }
+}
@@ -0,0 +1,349 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-safe registry of API call counts, error counts and cumulative latency per API per test suite. Counters
+ * are created on first use with {@link ConcurrentMap#putIfAbsent(Object, Object)} and updated with atomic adds, so
+ * recording never takes a lock and never loses an update when test classes run concurrently. Counters that receive
+ * individual timings through {@link Counter#recordLatency(long, boolean)} also keep a {@link LatencyHistogram} and
+ * the total time spent in the API; plain call counts carry neither.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class APIAudit {
+    /**
+     * The counters for a single API within a single suite.
+     */
+    static public class Counter {
+        private final AtomicLong calls  = new AtomicLong(0L);
+        private final AtomicLong errors = new AtomicLong(0L);
+        private final AtomicLong nanos  = new AtomicLong(0L);
+
+        private final AtomicReference<LatencyHistogram> latency = new AtomicReference<LatencyHistogram>();
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * @return the cumulative time spent in calls to this API in nanoseconds, 0 if no timings were recorded
+         */
+        public long getNanos() {
+            return nanos.get();
+        }
+
+        /**
+         * @return the distribution of individually timed calls or null if no call was timed
+         */
+        public @Nullable LatencyHistogram getLatency() {
+            return latency.get();
+        }
+
+        private @Nonnull LatencyHistogram getOrCreateLatency() {
+            LatencyHistogram h = latency.get();
+
+            if( h == null ) {
+                latency.compareAndSet(null, new LatencyHistogram());
+                h = latency.get();
+            }
+            return h;
+        }
+
+        /**
+         * Records a single timed call.
+         * @param nanos the time the call took in nanoseconds
+         * @param failed true if the call ended with an exception
+         */
+        public void recordLatency(long nanos, boolean failed) {
+            record(1L, failed ? 1L : 0L);
+            this.nanos.addAndGet(nanos);
+            getOrCreateLatency().record(nanos);
+        }
+
+        private void add(@Nonnull Counter other) {
+            record(other.getCalls(), other.getErrors());
+            nanos.addAndGet(other.getNanos());
+            LatencyHistogram h = other.getLatency();
+
+            if( h != null ) {
+                getOrCreateLatency().add(h);
+            }
+        }
+
+        public void record(long calls, long errors) {
+            if( calls != 0L ) {
+                this.calls.addAndGet(calls);
+            }
+            if( errors != 0L ) {
+                this.errors.addAndGet(errors);
+            }
+        }
+    }
+
+    private final ConcurrentMap<String,ConcurrentMap<String,Counter>> suites = new ConcurrentHashMap<String, ConcurrentMap<String, Counter>>();
+
+    private final String failures;
+    private final String unit;
+
+    public APIAudit() {
+        this("calls", "errors");
+    }
+
+    /**
+     * Constructs a registry whose latency report describes samples and failures with the specified words.
+     * @param unit what each sample is, such as calls
+     * @param failures what a failed sample is, such as errors
+     */
+    public APIAudit(@Nonnull String unit, @Nonnull String failures) {
+        this.unit = unit;
+        this.failures = failures;
+    }
+
+    /**
+     * Provides the counter for the specified API in the specified suite, creating it if necessary.
+     * @param suite the suite making the calls
+     * @param api the name of the API being called
+     * @return the live counter for the API within the suite
+     */
+    public @Nonnull Counter getCounter(@Nonnull String suite, @Nonnull String api) {
+        ConcurrentMap<String,Counter> apis = suites.get(suite);
+
+        if( apis == null ) {
+            ConcurrentMap<String,Counter> tmp = new ConcurrentHashMap<String, Counter>();
+
+            apis = suites.putIfAbsent(suite, tmp);
+            if( apis == null ) {
+                apis = tmp;
+            }
+        }
+        Counter counter = apis.get(api);
+
+        if( counter == null ) {
+            Counter tmp = new Counter();
+
+            counter = apis.putIfAbsent(api, tmp);
+            if( counter == null ) {
+                counter = tmp;
+            }
+        }
+        return counter;
+    }
+
+    public void recordCalls(@Nonnull String suite, @Nonnull String api, long calls) {
+        getCounter(suite, api).record(calls, 0L);
+    }
+
+    /**
+     * @return the names of all suites for which calls have been recorded, sorted by name
+     */
+    public @Nonnull Iterable<String> listSuites() {
+        return new TreeSet<String>(suites.keySet());
+    }
+
+    /**
+     * @param suite the suite of interest
+     * @return the names of all APIs called by the specified suite, sorted by name
+     */
+    public @Nonnull Iterable<String> listApis(@Nonnull String suite) {
+        ConcurrentMap<String,Counter> apis = suites.get(suite);
+
+        if( apis == null ) {
+            return new TreeSet<String>();
+        }
+        return new TreeSet<String>(apis.keySet());
+    }
+
+    /**
+     * @return the names of all APIs called across all suites, sorted by name
+     */
+    public @Nonnull Iterable<String> listApis() {
+        TreeSet<String> names = new TreeSet<String>();
+
+        for( ConcurrentMap<String,Counter> apis : suites.values() ) {
+            names.addAll(apis.keySet());
+        }
+        return names;
+    }
+
+    /**
+     * @param suite the suite of interest
+     * @param api the API of interest
+     * @return the counter for the API in the suite or null if the suite never called it
+     */
+    public @Nullable Counter getCounterIfPresent(@Nonnull String suite, @Nonnull String api) {
+        ConcurrentMap<String,Counter> apis = suites.get(suite);
+
+        return (apis == null ? null : apis.get(api));
+    }
+
+    /**
+     * @param api the API of interest
+     * @return a snapshot of the counters for the API summed across all suites
+     */
+    public @Nonnull Counter getTotal(@Nonnull String api) {
+        Counter total = new Counter();
+
+        for( ConcurrentMap<String,Counter> apis : suites.values() ) {
+            Counter c = apis.get(api);
+
+            if( c != null ) {
+                total.add(c);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param suite the suite of interest
+     * @return a snapshot of the counters for all APIs called by the suite
+     */
+    public @Nonnull Counter getSuiteTotal(@Nonnull String suite) {
+        Counter total = new Counter();
+        ConcurrentMap<String,Counter> apis = suites.get(suite);
+
+        if( apis != null ) {
+            for( Counter c : apis.values() ) {
+                total.add(c);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes the per-API call counts followed by the per-suite call counts to the specified logger.
+     * @param logger the logger to write to
+     * @return the total number of calls across all APIs and suites
+     */
+    public long report(@Nonnull Logger logger) {
+        long total = 0L;
+
+        for( String api : listApis() ) {
+            Counter c = getTotal(api);
+
+            DaseinTestManager.out(logger, null, "---> " + api, String.valueOf(c.getCalls()));
+            total += c.getCalls();
+        }
+        DaseinTestManager.out(logger, null, "---> Total Calls", String.valueOf(total));
+        logger.info("");
+        logger.info("----------- API Log by Suite ----------");
+        for( String suite : listSuites() ) {
+            DaseinTestManager.out(logger, null, "---> " + suite, String.valueOf(getSuiteTotal(suite).getCalls()));
+        }
+        return total;
+    }
+
+    /**
+     * Writes the latency percentiles of every timed API across the whole run, followed by the same breakdown for
+     * each suite, to the specified logger.
+     * @param logger the logger to write to
+     */
+    public void reportLatency(@Nonnull Logger logger) {
+        for( String api : listApis() ) {
+            line(logger, null, "---> " + api, getTotal(api));
+        }
+        for( String suite : listSuites() ) {
+            logger.info("");
+            logger.info("---- " + suite);
+            reportLatency(logger, null, suite);
+        }
+    }
+
+    /**
+     * Writes the latency percentiles of every timed API called by the specified suite to the specified logger.
+     * @param logger the logger to write to
+     * @param prefix a prefix for each line, if any
+     * @param suite the suite of interest
+     */
+    public void reportLatency(@Nonnull Logger logger, @Nullable String prefix, @Nonnull String suite) {
+        for( String api : listApis(suite) ) {
+            Counter c = getCounterIfPresent(suite, api);
+
+            if( c != null ) {
+                line(logger, prefix, "---> " + api, c);
+            }
+        }
+    }
+
+    /**
+     * Writes the rate and latency percentiles of every timed API called by the specified suite to the specified
+     * logger.
+     * @param logger the logger to write to
+     * @param prefix a prefix for each line, if any
+     * @param suite the suite of interest
+     * @param millis the length of the period over which the suite made its calls
+     */
+    public void reportThroughput(@Nonnull Logger logger, @Nullable String prefix, @Nonnull String suite, long millis) {
+        for( String api : listApis(suite) ) {
+            Counter c = getCounterIfPresent(suite, api);
+
+            if( c != null ) {
+                line(logger, prefix, "---> " + api, c, millis);
+            }
+        }
+    }
+
+    private void line(@Nonnull Logger logger, @Nullable String prefix, @Nonnull String key, @Nonnull Counter c) {
+        line(logger, prefix, key, c, 0L);
+    }
+
+    private void line(@Nonnull Logger logger, @Nullable String prefix, @Nonnull String key, @Nonnull Counter c, long millis) {
+        LatencyHistogram h = c.getLatency();
+
+        if( h == null ) {
+            return;
+        }
+        StringBuilder str = new StringBuilder();
+
+        if( prefix != null ) {
+            str.append(prefix);
+        }
+        // API names here are Service.method and are usually too long for the standard 36 character key column
+        str.append(key).append(": ");
+        while( str.length() < (prefix == null ? 0 : prefix.length()) + 64 ) {
+            str.append(" ");
+        }
+        str.append(h.getCount()).append(" ").append(unit);
+        if( millis > 0L ) {
+            str.append(String.format(" (%.1f/s)", (h.getCount() * 1000.0) / millis));
+        }
+        if( c.getErrors() > 0L ) {
+            str.append(" (").append(failures).append(" ").append(c.getErrors()).append(")");
+        }
+        str.append(" ").append(h.summarize());
+        str.append(String.format(" total=%.1fs", c.getNanos() / 1000000000.0));
+        logger.info(str.toString());
+    }
+
+}
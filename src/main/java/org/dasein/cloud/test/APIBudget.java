@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caps the cloud API calls and wall-clock time a test may use, so that a provider change that turns one list call
+ * into a call per resource fails the test instead of showing up on the cloud bill:
+ * <pre>
+ *     &#64;Test
+ *     &#64;APIBudget(calls = 3, millis = 30000)
+ *     public void listVirtualMachines() ...
+ * </pre>
+ * Budgets are checked by {@link DaseinTestManager#end()} and may be overridden from a file, see {@link TestBudgets}.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface APIBudget {
+    /**
+     * @return the most API calls the test may make, including calls made by its @Before method, or -1 for no limit
+     */
+    int calls() default -1;
+
+    /**
+     * @return the most milliseconds the test may take, or -1 for no limit
+     */
+    long millis() default -1L;
+}
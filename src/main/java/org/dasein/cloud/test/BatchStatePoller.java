@@ -0,0 +1,407 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeSupport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits on the states of many resources of one type at once. Instead of each waiter fetching its own resource on
+ * every tick, a single background thread per provider and resource type lists the status of all resources of that
+ * type once per tick and releases every waiter whose resource has reached one of its target states. Resources that
+ * are missing from the listing are probed individually, which also covers clouds that do not support status
+ * listing. Ticks follow the {@link StateWaiter} curve for the resource type, restarting with a fast probe whenever
+ * a new waiter arrives, and the poller thread exits as soon as nobody is waiting.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class BatchStatePoller {
+    static private final Logger logger = Logger.getLogger(BatchStatePoller.class);
+
+    /**
+     * How long a resource may be missing before a waiter that tolerates missing resources gives up on it.
+     */
+    static public final long GONE_GRACE = 120000L;
+
+    /**
+     * The suite to which the calls made by poller threads are attributed.
+     */
+    static public final String SUITE = "Poller";
+
+    /**
+     * Lists and fetches the states of one type of resource.
+     */
+    static public abstract class Source {
+        /**
+         * @return the status of every resource of this type, with states as {@link ResourceStatus#getResourceStatus()}
+         * @throws CloudException an error occurred in the cloud provider
+         * @throws InternalException an error occurred within Dasein Cloud
+         */
+        public abstract @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException;
+
+        /**
+         * @param id the resource of interest
+         * @return the current state of the resource or null if it does not exist
+         * @throws CloudException an error occurred in the cloud provider
+         * @throws InternalException an error occurred within Dasein Cloud
+         */
+        public abstract @Nullable Object getStatus(@Nonnull String id) throws CloudException, InternalException;
+    }
+
+    /**
+     * The progress of a single resource being waited on.
+     */
+    static public class Watch {
+        private final boolean        goneIsFinal;
+        private final String         id;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final Collection<?>  targets;
+
+        private volatile boolean done;
+        private volatile boolean gone;
+        private volatile long    missingSince;
+        private volatile Object  state;
+
+        private Watch(@Nonnull String id, @Nonnull Collection<?> targets, boolean goneIsFinal) {
+            this.id = id;
+            this.targets = targets;
+            this.goneIsFinal = goneIsFinal;
+        }
+
+        public @Nonnull String getId() {
+            return id;
+        }
+
+        /**
+         * @return the last state seen for the resource, null if it was never seen
+         */
+        public @Nullable Object getState() {
+            return state;
+        }
+
+        /**
+         * @return true if the resource reached one of the target states
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return true if the wait ended because the resource no longer exists
+         */
+        public boolean isGone() {
+            return gone;
+        }
+
+        private boolean update(@Nullable Object current) {
+            if( current == null ) {
+                long now = System.currentTimeMillis();
+
+                if( missingSince == 0L ) {
+                    missingSince = now;
+                }
+                if( goneIsFinal || now - missingSince >= GONE_GRACE ) {
+                    gone = true;
+                    latch.countDown();
+                    return true;
+                }
+                return false;
+            }
+            missingSince = 0L;
+            state = current;
+            if( targets.contains(current) ) {
+                done = true;
+                latch.countDown();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // each poller's source holds on to its provider, so a weak map would never let go of a provider either
+    static private final Map<CloudProvider,Map<String,BatchStatePoller>> pollers = new IdentityHashMap<CloudProvider, Map<String, BatchStatePoller>>();
+
+    static private @Nonnull BatchStatePoller getPoller(@Nonnull CloudProvider provider, @Nonnull String type, @Nonnull Source source) {
+        synchronized( pollers ) {
+            Map<String,BatchStatePoller> byType = pollers.get(provider);
+
+            if( byType == null ) {
+                byType = new HashMap<String, BatchStatePoller>();
+                pollers.put(provider, byType);
+            }
+            BatchStatePoller poller = byType.get(type);
+
+            if( poller == null ) {
+                poller = new BatchStatePoller(type, source);
+                byType.put(type, poller);
+            }
+            return poller;
+        }
+    }
+
+    /**
+     * Forgets every shared poller along with the provider it polls. Waits in progress finish on their own pollers,
+     * and later waits start new ones.
+     */
+    static public void clear() {
+        synchronized( pollers ) {
+            pollers.clear();
+        }
+    }
+
+    /**
+     * Provides the shared poller for virtual machines in the specified provider, which lists states with
+     * {@link VirtualMachineSupport#listVirtualMachineStatus()}.
+     * @param provider the provider in which the virtual machines live
+     * @return the shared poller
+     */
+    static public @Nonnull BatchStatePoller getVirtualMachinePoller(final @Nonnull CloudProvider provider) {
+        return getPoller(provider, StateWaiter.VM, new Source() {
+            private @Nonnull VirtualMachineSupport getSupport() throws CloudException {
+                ComputeServices services = provider.getComputeServices();
+                VirtualMachineSupport support = (services == null ? null : services.getVirtualMachineSupport());
+
+                if( support == null ) {
+                    throw new CloudException("No virtual machine support in " + provider.getCloudName());
+                }
+                return support;
+            }
+
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException {
+                return getSupport().listVirtualMachineStatus();
+            }
+
+            @Override
+            public @Nullable Object getStatus(@Nonnull String id) throws CloudException, InternalException {
+                VirtualMachine vm = getSupport().getVirtualMachine(id);
+
+                return (vm == null ? null : vm.getCurrentState());
+            }
+        });
+    }
+
+    /**
+     * Provides the shared poller for volumes in the specified provider, which lists states with
+     * {@link VolumeSupport#listVolumeStatus()}.
+     * @param provider the provider in which the volumes live
+     * @return the shared poller
+     */
+    static public @Nonnull BatchStatePoller getVolumePoller(final @Nonnull CloudProvider provider) {
+        return getPoller(provider, StateWaiter.VOLUME, new Source() {
+            private @Nonnull VolumeSupport getSupport() throws CloudException {
+                ComputeServices services = provider.getComputeServices();
+                VolumeSupport support = (services == null ? null : services.getVolumeSupport());
+
+                if( support == null ) {
+                    throw new CloudException("No volume support in " + provider.getCloudName());
+                }
+                return support;
+            }
+
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException {
+                return getSupport().listVolumeStatus();
+            }
+
+            @Override
+            public @Nullable Object getStatus(@Nonnull String id) throws CloudException, InternalException {
+                Volume volume = getSupport().getVolume(id);
+
+                return (volume == null ? null : volume.getCurrentState());
+            }
+        });
+    }
+
+    private final StateWaiter.Curve curve;
+    private final Object            lock = new Object();
+    private final Source            source;
+    private final String            type;
+    private final List<Watch>       watches = new ArrayList<Watch>();
+
+    private long    interval;
+    private boolean listing = true;
+    private long    nextTick;
+    private boolean running;
+    private long    ticks;
+
+    public BatchStatePoller(@Nonnull String type, @Nonnull Source source) {
+        this.type = type;
+        this.source = source;
+        this.curve = StateWaiter.getCurve(type);
+    }
+
+    /**
+     * Blocks until the specified resource reaches one of the target states, disappears, or the timeout elapses. The
+     * timeout is shortened if the {@link RunBudget} requires it.
+     * @param id the resource to wait on
+     * @param targets the states that end the wait
+     * @param timeoutMillis the maximum time to wait in milliseconds
+     * @param goneIsFinal true if the wait should end the first time the resource cannot be found, false to allow
+     *                    for eventual consistency by waiting up to {@link #GONE_GRACE} before giving up on it
+     * @return the outcome of the wait
+     */
+    public @Nonnull Watch await(@Nonnull String id, @Nonnull Collection<?> targets, @Nonnegative long timeoutMillis, boolean goneIsFinal) {
+        long start = System.currentTimeMillis();
+        Watch watch = new Watch(id, targets, goneIsFinal);
+
+        synchronized( lock ) {
+            watches.add(watch);
+            interval = curve.initial;
+            nextTick = Math.min(nextTick == 0L ? Long.MAX_VALUE : nextTick, start + curve.probe);
+            if( !running ) {
+                running = true;
+                Thread t = new Thread("Batch " + type + " poller") {
+                    public void run() {
+                        // the poller serves every test, so it must not inherit the suite or deadline of the one that started it
+                        DaseinTestManager.setCurrentSuite(SUITE);
+                        RunBudget.endTest();
+                        poll();
+                    }
+                };
+
+                t.setDaemon(true);
+                t.start();
+            }
+            lock.notifyAll();
+        }
+        try {
+            watch.latch.await(RunBudget.clamp(timeoutMillis), TimeUnit.MILLISECONDS);
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            synchronized( lock ) {
+                watches.remove(watch);
+            }
+        }
+        DaseinTestManager.getWaitAudit().getCounter(DaseinTestManager.getCurrentSuite(), type).recordLatency((System.currentTimeMillis() - start) * 1000000L, !watch.isDone() && !watch.isGone());
+        return watch;
+    }
+
+    /**
+     * @return the number of ticks this poller has made, each costing at most one listing call
+     */
+    public long getTicks() {
+        synchronized( lock ) {
+            return ticks;
+        }
+    }
+
+    private void poll() {
+        while( true ) {
+            List<Watch> pending;
+
+            synchronized( lock ) {
+                long now = System.currentTimeMillis();
+
+                while( !watches.isEmpty() && now < nextTick ) {
+                    try {
+                        lock.wait(nextTick - now);
+                    }
+                    catch( InterruptedException e ) {
+                        running = false;
+                        nextTick = 0L;
+                        return;
+                    }
+                    now = System.currentTimeMillis();
+                }
+                if( watches.isEmpty() ) {
+                    running = false;
+                    nextTick = 0L;
+                    return;
+                }
+                pending = new ArrayList<Watch>(watches);
+                ticks++;
+                // +/- 20% jitter
+                nextTick = now + (long)(interval * (0.8 + (0.4 * Math.random())));
+                interval = Math.min(curve.max, (long)(interval * curve.factor));
+            }
+            try {
+                tick(pending);
+            }
+            catch( Throwable t ) {
+                logger.warn("Failed to poll " + type + " states: " + t.getMessage());
+            }
+        }
+    }
+
+    private void tick(@Nonnull List<Watch> pending) {
+        Map<String,Object> states = null;
+
+        if( listing ) {
+            try {
+                states = new HashMap<String, Object>();
+                for( ResourceStatus status : source.listStatus() ) {
+                    states.put(status.getProviderResourceId(), status.getResourceStatus());
+                }
+            }
+            catch( OperationNotSupportedException e ) {
+                logger.debug("Status listing for " + type + " not supported, polling resources one at a time");
+                listing = false;
+                states = null;
+            }
+            catch( Throwable t ) {
+                logger.warn("Failed to list " + type + " states, polling resources one at a time for this tick: " + t.getMessage());
+                states = null;
+            }
+        }
+        for( Watch watch : pending ) {
+            Object current = (states == null ? null : states.get(watch.getId()));
+
+            if( current == null ) {
+                try {
+                    current = source.getStatus(watch.getId());
+                }
+                catch( Throwable t ) {
+                    // an inconclusive probe, try again next tick
+                    continue;
+                }
+            }
+            if( watch.update(current) ) {
+                synchronized( lock ) {
+                    watches.remove(watch);
+                }
+            }
+        }
+    }
+}
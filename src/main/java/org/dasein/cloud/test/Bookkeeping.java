@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The bookkeeping the resource modules and stateless tests do around cloud calls, kept in one place so that
+ * <code>ProvisioningBenchmark</code> measures the code they actually run.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class Bookkeeping {
+    /**
+     * Finds a label under which a newly provisioned resource can be stored by appending random digits to the
+     * requested label until it is unused. The caller must hold the lock on the map until the resource is stored.
+     * @param resources the resources already stored, by label
+     * @param label the requested label
+     * @param random the source of the appended digits
+     * @return the requested label or, if it is taken, the first free label tried
+     */
+    static public @Nonnull String getUniqueLabel(@Nonnull Map<String,?> resources, @Nonnull String label, @Nonnull Random random) {
+        while( resources.containsKey(label) ) {
+            label = label + random.nextInt(9);
+        }
+        return label;
+    }
+
+    /**
+     * Reconciles a resource list with the matching status list, as the <code>compare*ListAndStatus</code> tests do.
+     * A null ID is compared like any other, so a null in only one of the lists is reported as a mismatch.
+     * @param statusIds the IDs in the status list
+     * @param resourceIds the IDs in the resource list
+     * @return every ID that is in only one of the lists, empty if both lists hold the same IDs
+     */
+    static public @Nonnull List<String> findMismatches(@Nonnull Iterable<String> statusIds, @Nonnull Iterable<String> resourceIds) {
+        Set<String> status = new HashSet<String>();
+        Set<String> resources = new HashSet<String>();
+        List<String> mismatches = new ArrayList<String>();
+
+        for( String id : statusIds ) {
+            status.add(id);
+        }
+        for( String id : resourceIds ) {
+            if( resources.add(id) && !status.contains(id) ) {
+                mismatches.add(id);
+            }
+        }
+        for( String id : status ) {
+            if( !resources.contains(id) ) {
+                mismatches.add(id);
+            }
+        }
+        return mismatches;
+    }
+}
@@ -0,0 +1,505 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.junit.internal.AssumptionViolatedException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the answers the cloud gives to provider calls into a cassette file and plays them back on later runs, so
+ * that stateless suites can be re-run in well under a second while iterating on assertions, and so that the CPU cost
+ * of the harness can be profiled without cloud latency in the way. The mode and file are set with:
+ * <pre>
+ *     -Ddasein.cassette.mode=record -Ddasein.cassette=stateless.cassette
+ *     -Ddasein.cassette.mode=replay -Ddasein.cassette=stateless.cassette
+ * </pre>
+ * Calls are matched on their API and a description of their arguments. A call made several times with the same
+ * arguments is answered with the recorded results in order, and the last one is repeated once they run out. In
+ * replay mode a call that was never recorded fails without touching the cloud, with a {@link CloudException} if the
+ * method declares one and otherwise by skipping the test, so that a replayed run never mixes recorded and live
+ * answers. Unrecorded calls go to the provider only when -Ddasein.cassette.passThrough=true is set, which is safe
+ * when replaying against the stand-in provider. Results and exceptions are stored with Java serialization in a
+ * compressed binary file, and answers that cannot be serialized are not recorded. Services, support and capabilities
+ * objects are never recorded themselves, only the answers they give. Iterable results are copied into lists before
+ * they are recorded.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class Cassette implements ProviderInterceptor {
+    static private final Logger logger = Logger.getLogger(Cassette.class);
+
+    static public final String RECORD = "record";
+    static public final String REPLAY = "replay";
+
+    static private final int MAGIC   = 0x44434153;
+    static private final int VERSION = 1;
+
+    static private Cassette installed;
+
+    /**
+     * A single recorded answer.
+     */
+    static private class Take {
+        public boolean failed;
+        public long    nanos;
+        public byte[]  value;
+    }
+
+    /**
+     * Adds a cassette to the provider interceptor chain if dasein.cassette.mode is set. In replay mode the cassette
+     * file is loaded first. Nothing happens if a cassette is already installed.
+     */
+    static public synchronized void install() {
+        String mode = System.getProperty("dasein.cassette.mode");
+
+        if( installed != null || mode == null || mode.equals("") ) {
+            return;
+        }
+        if( !InterceptingCloudProvider.isEnabled() ) {
+            logger.warn("Ignoring dasein.cassette.mode because instrumentation is off");
+            return;
+        }
+        mode = mode.trim().toLowerCase();
+        if( !mode.equals(RECORD) && !mode.equals(REPLAY) ) {
+            throw new RuntimeException("Invalid value for dasein.cassette.mode: " + mode);
+        }
+        File file = getFile();
+        Cassette cassette = new Cassette(mode.equals(REPLAY), "true".equalsIgnoreCase(System.getProperty("dasein.cassette.passThrough")));
+
+        if( cassette.replaying ) {
+            try {
+                cassette.load(file);
+            }
+            catch( IOException e ) {
+                throw new RuntimeException("Failed to read cassette " + file + ": " + e.getMessage());
+            }
+            logger.info("Replaying " + cassette.takes.size() + " recorded calls from " + file);
+        }
+        else {
+            logger.info("Recording provider calls to " + file);
+        }
+        installed = cassette;
+        InterceptingCloudProvider.addInterceptor(cassette);
+    }
+
+    /**
+     * Writes the calls recorded so far to the cassette file or, when replaying, reports how many calls were
+     * answered from it. The cassette stays installed, so suites that run later in the same JVM add to it.
+     */
+    static public synchronized void flush() {
+        if( installed == null ) {
+            return;
+        }
+        Cassette cassette = installed;
+
+        if( cassette.replaying ) {
+            logger.info("Replayed " + cassette.hits.get() + " calls recorded as taking " + (cassette.saved.get() / 1000000L) + " ms, " + cassette.misses.get() + " calls were not recorded" + (cassette.passThrough ? " and went to the provider" : ""));
+        }
+        else {
+            File file = getFile();
+
+            try {
+                cassette.save(file);
+                logger.info("Recorded " + cassette.recorded.get() + " calls to " + file + " (" + cassette.unrecordable.get() + " could not be recorded)");
+            }
+            catch( IOException e ) {
+                logger.error("Failed to write cassette " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks that a cassette being replayed without pass-through can answer the capabilities calls most tests make
+     * during setup, so that a cassette missing them is reported once at initialization instead of failing every test.
+     * The check only runs if the cassette holds virtual machine calls.
+     * @param provider the instrumented provider the tests will use
+     */
+    static public void check(@Nonnull CloudProvider provider) {
+        Cassette cassette;
+
+        synchronized( Cassette.class ) {
+            cassette = installed;
+        }
+        if( cassette == null || !cassette.replaying || cassette.passThrough || !cassette.hasCallsTo("VirtualMachineSupport") ) {
+            return;
+        }
+        try {
+            ComputeServices services = provider.getComputeServices();
+            VirtualMachineSupport support = (services == null ? null : services.getVirtualMachineSupport());
+
+            if( support != null ) {
+                support.getCapabilities().getProviderTermForVirtualMachine(Locale.getDefault());
+            }
+        }
+        catch( Throwable t ) {
+            logger.warn("Cassette " + getFile() + " cannot answer capabilities calls, re-record it: " + t.getMessage());
+        }
+    }
+
+    static public @Nonnull File getFile() {
+        String name = System.getProperty("dasein.cassette");
+
+        return new File(name == null || name.equals("") ? "dasein.cassette" : name);
+    }
+
+    /**
+     * Describes a call in a way that does not depend on object identity, so the same call made in a later run
+     * produces the same key. Objects without a natural string form are described by their fields.
+     * @param call the call to describe
+     * @return the key under which the call's answers are recorded
+     */
+    static @Nonnull String getKey(@Nonnull ProviderCall call) {
+        StringBuilder str = new StringBuilder();
+
+        str.append(call.getApi()).append("(");
+        for( Object arg : call.getArguments() ) {
+            describe(str, arg, 0);
+            str.append(";");
+        }
+        return str.append(")").toString();
+    }
+
+    static private void describe(@Nonnull StringBuilder str, @Nullable Object value, int depth) {
+        if( value == null ) {
+            str.append("null");
+        }
+        else if( value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum ) {
+            str.append(value);
+        }
+        else if( depth > 4 ) {
+            str.append(value.getClass().getSimpleName());
+        }
+        else if( value.getClass().isArray() ) {
+            str.append("[");
+            for( int i=0; i<Array.getLength(value); i++ ) {
+                describe(str, Array.get(value, i), depth + 1);
+                str.append(",");
+            }
+            str.append("]");
+        }
+        else if( value instanceof Collection ) {
+            str.append("[");
+            for( Object item : (Collection<?>)value ) {
+                describe(str, item, depth + 1);
+                str.append(",");
+            }
+            str.append("]");
+        }
+        else if( value instanceof Map ) {
+            TreeMap<String,String> entries = new TreeMap<String, String>();
+
+            for( Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet() ) {
+                StringBuilder k = new StringBuilder();
+                StringBuilder v = new StringBuilder();
+
+                describe(k, entry.getKey(), depth + 1);
+                describe(v, entry.getValue(), depth + 1);
+                entries.put(k.toString(), v.toString());
+            }
+            str.append(entries);
+        }
+        else {
+            TreeMap<String,Field> fields = new TreeMap<String, Field>();
+
+            for( Class<?> c = value.getClass(); c != null && !c.equals(Object.class); c = c.getSuperclass() ) {
+                for( Field f : c.getDeclaredFields() ) {
+                    if( !Modifier.isStatic(f.getModifiers()) && !Modifier.isTransient(f.getModifiers()) && !fields.containsKey(f.getName()) ) {
+                        fields.put(f.getName(), f);
+                    }
+                }
+            }
+            str.append(value.getClass().getSimpleName()).append("{");
+            for( Field f : fields.values() ) {
+                str.append(f.getName()).append("=");
+                try {
+                    f.setAccessible(true);
+                    describe(str, f.get(value), depth + 1);
+                }
+                catch( Throwable ignore ) {
+                    str.append("?");
+                }
+                str.append(",");
+            }
+            str.append("}");
+        }
+    }
+
+    static private @Nonnull byte[] serialize(@Nullable Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static private @Nullable Object deserialize(@Nonnull byte[] value) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(value));
+
+        try {
+            return in.readObject();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private final ConcurrentMap<String,List<Take>>    takes    = new ConcurrentHashMap<String, List<Take>>();
+    private final ConcurrentMap<String,AtomicInteger> playhead = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final AtomicInteger hits         = new AtomicInteger(0);
+    private final AtomicInteger misses       = new AtomicInteger(0);
+    private final AtomicInteger recorded     = new AtomicInteger(0);
+    private final AtomicInteger unrecordable = new AtomicInteger(0);
+    private final AtomicLong    saved        = new AtomicLong(0L);
+    private final boolean       passThrough;
+    private final boolean       replaying;
+
+    /**
+     * Constructs an empty cassette.
+     * @param replaying true to answer calls from the cassette, false to record them
+     * @param passThrough true to send calls that were never recorded to the provider when replaying
+     */
+    public Cassette(boolean replaying, boolean passThrough) {
+        this.replaying = replaying;
+        this.passThrough = passThrough;
+    }
+
+    @Override
+    public @Nullable Object intercept(@Nonnull ProviderCall call) throws Throwable {
+        String key = getKey(call);
+
+        if( replaying ) {
+            Take take = next(key);
+
+            if( take == null ) {
+                misses.incrementAndGet();
+                if( passThrough ) {
+                    return call.proceed();
+                }
+                String message = "No recorded answer for " + call.getApi() + " in the cassette";
+
+                if( call.declaresCloudException() ) {
+                    throw new CloudException(CloudErrorType.GENERAL, 0, "NotRecorded", message);
+                }
+                throw new AssumptionViolatedException(message);
+            }
+            hits.incrementAndGet();
+            saved.addAndGet(take.nanos);
+            Object value = deserialize(take.value);
+
+            if( take.failed ) {
+                throw (Throwable)value;
+            }
+            return value;
+        }
+        long start = System.nanoTime();
+        Object result;
+
+        try {
+            result = call.proceed();
+        }
+        catch( Throwable t ) {
+            record(key, true, System.nanoTime() - start, t);
+            throw t;
+        }
+        if( result instanceof Iterable && !(result instanceof List) && call.getMethod().getReturnType().isAssignableFrom(ArrayList.class) ) {
+            // lazily populated iterables cannot be serialized, so the caller gets the same copy that is recorded
+            ArrayList<Object> copy = new ArrayList<Object>();
+
+            for( Object item : (Iterable<?>)result ) {
+                copy.add(item);
+            }
+            result = copy;
+        }
+        record(key, false, System.nanoTime() - start, result);
+        return result;
+    }
+
+    private boolean hasCallsTo(@Nonnull String service) {
+        for( String key : takes.keySet() ) {
+            if( key.startsWith(service + ".") ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private @Nullable Take next(@Nonnull String key) {
+        List<Take> list = takes.get(key);
+
+        if( list == null || list.isEmpty() ) {
+            return null;
+        }
+        AtomicInteger position = playhead.get(key);
+
+        if( position == null ) {
+            AtomicInteger tmp = new AtomicInteger(0);
+
+            position = playhead.putIfAbsent(key, tmp);
+            if( position == null ) {
+                position = tmp;
+            }
+        }
+        int i = position.getAndIncrement();
+
+        return list.get(Math.min(i, list.size() - 1));
+    }
+
+    private void record(@Nonnull String key, boolean failed, long nanos, @Nullable Object value) {
+        Take take = new Take();
+
+        try {
+            take.value = serialize(value);
+        }
+        catch( NotSerializableException e ) {
+            logger.debug("Unable to record " + key + ": " + e.getMessage());
+            unrecordable.incrementAndGet();
+            return;
+        }
+        catch( IOException e ) {
+            logger.debug("Unable to record " + key + ": " + e.getMessage());
+            unrecordable.incrementAndGet();
+            return;
+        }
+        take.failed = failed;
+        take.nanos = nanos;
+        List<Take> list = takes.get(key);
+
+        if( list == null ) {
+            List<Take> tmp = new ArrayList<Take>();
+
+            list = takes.putIfAbsent(key, tmp);
+            if( list == null ) {
+                list = tmp;
+            }
+        }
+        synchronized( list ) {
+            list.add(take);
+        }
+        recorded.incrementAndGet();
+    }
+
+    private void load(@Nonnull File file) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+
+        try {
+            if( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+                throw new IOException("Not a cassette or unsupported version");
+            }
+            while( true ) {
+                String key;
+
+                try {
+                    byte[] tmp = new byte[in.readInt()];
+
+                    in.readFully(tmp);
+                    key = new String(tmp, "utf-8");
+                }
+                catch( EOFException e ) {
+                    break;
+                }
+                int count = in.readInt();
+                List<Take> list = new ArrayList<Take>(count);
+
+                for( int i=0; i<count; i++ ) {
+                    Take take = new Take();
+
+                    take.failed = in.readBoolean();
+                    take.nanos = in.readLong();
+                    take.value = new byte[in.readInt()];
+                    in.readFully(take.value);
+                    list.add(take);
+                }
+                takes.put(key, list);
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private void save(@Nonnull File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file))));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for( Map.Entry<String,List<Take>> entry : new TreeMap<String, List<Take>>(takes).entrySet() ) {
+                List<Take> list = entry.getValue();
+
+                synchronized( list ) {
+                    byte[] key = entry.getKey().getBytes("utf-8");
+
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeInt(list.size());
+                    for( Take take : list ) {
+                        out.writeBoolean(take.failed);
+                        out.writeLong(take.nanos);
+                        out.writeInt(take.value.length);
+                        out.write(take.value);
+                    }
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ProviderInterceptor} that stops the tests from hammering a cloud service that is down. Each service, such
+ * as VirtualMachineSupport, has a breaker that opens after a number of consecutive failed or timed out calls. While a
+ * breaker is open, calls to the service fail immediately and {@link DaseinTestManager#isTestSkipped()} skips the
+ * tests of every suite that has used the service, naming the broken service as the reason. Calls that cannot throw a
+ * {@link CloudException} still go through, but their outcome is ignored. After a cool-down a single call that can
+ * throw one is let through to probe the service, and only its success closes the breaker again. The breakers are
+ * configured with:
+ * <pre>
+ *     -Ddasein.breaker.failures=5 -Ddasein.breaker.timeout=120 -Ddasein.breaker.reset=300
+ * </pre>
+ * A call counts as a failure if it fails to communicate with the cloud or the cloud reports a server error, and as a
+ * timeout if it takes longer than the timeout in seconds. Errors the tests provoke on purpose, such as asking for
+ * resources that do not exist, do not count. The reset is the cool-down in seconds. Breakers are turned off with
+ * -Ddasein.breaker.failures=0.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class CircuitBreaker implements ProviderInterceptor {
+    static private final Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+    static private CircuitBreaker installed;
+
+    /**
+     * The state of the breaker for one service.
+     */
+    static private class State {
+        public int     failures;
+        public long    openedAt;
+        public boolean open;
+        public boolean probing;
+        public String  reason;
+        public int     skipped;
+        public int     trips;
+    }
+
+    /**
+     * Adds the breakers to the provider interceptor chain unless they are turned off. Nothing happens if they are
+     * already installed.
+     */
+    static public synchronized void install() {
+        if( installed != null || !InterceptingCloudProvider.isEnabled() ) {
+            return;
+        }
+        CircuitBreaker breaker = new CircuitBreaker();
+
+        if( breaker.threshold > 0 ) {
+            installed = breaker;
+            InterceptingCloudProvider.addInterceptor(breaker);
+        }
+    }
+
+    /**
+     * Removes the installed breakers, if any, from the provider interceptor chain.
+     */
+    static public synchronized void uninstall() {
+        if( installed != null ) {
+            InterceptingCloudProvider.removeInterceptor(installed);
+            installed = null;
+        }
+    }
+
+    /**
+     * Checks whether the specified suite depends on a service whose breaker is open.
+     * @param suite the suite about to run a test
+     * @return why the test should be skipped or null if it should run
+     */
+    static public @Nullable String getSkipReason(@Nonnull String suite) {
+        CircuitBreaker breaker;
+
+        synchronized( CircuitBreaker.class ) {
+            breaker = installed;
+        }
+        return (breaker == null ? null : breaker.check(suite));
+    }
+
+    /**
+     * @return true if any breaker opened during the run
+     */
+    static public boolean hasTripped() {
+        CircuitBreaker breaker;
+
+        synchronized( CircuitBreaker.class ) {
+            breaker = installed;
+        }
+        if( breaker != null ) {
+            for( State state : breaker.services.values() ) {
+                synchronized( state ) {
+                    if( state.trips > 0 ) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the services whose breakers opened during the run to the specified logger.
+     * @param logger the logger to write to
+     * @return the number of services whose breaker opened
+     */
+    static public int report(@Nonnull Logger logger) {
+        CircuitBreaker breaker;
+
+        synchronized( CircuitBreaker.class ) {
+            breaker = installed;
+        }
+        return (breaker == null ? 0 : breaker.describe(logger));
+    }
+
+    private final ConcurrentMap<String,State>       services = new ConcurrentHashMap<String, State>();
+    private final ConcurrentMap<String,Set<String>> suites   = new ConcurrentHashMap<String, Set<String>>();
+
+    private final long reset;
+    private final int  threshold;
+    private final long timeout;
+
+    public CircuitBreaker() {
+        threshold = (int)DaseinTestManager.getLongProperty("dasein.breaker.failures", 5L);
+        timeout = DaseinTestManager.getLongProperty("dasein.breaker.timeout", 120L) * CalendarWrapper.SECOND;
+        reset = DaseinTestManager.getLongProperty("dasein.breaker.reset", 300L) * CalendarWrapper.SECOND;
+    }
+
+    private @Nonnull State getState(@Nonnull String service) {
+        State state = services.get(service);
+
+        if( state == null ) {
+            State tmp = new State();
+
+            state = services.putIfAbsent(service, tmp);
+            if( state == null ) {
+                state = tmp;
+            }
+        }
+        return state;
+    }
+
+    private void recordUse(@Nonnull String suite, @Nonnull String service) {
+        Set<String> used = suites.get(suite);
+
+        if( used == null ) {
+            Set<String> tmp = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+            used = suites.putIfAbsent(suite, tmp);
+            if( used == null ) {
+                used = tmp;
+            }
+        }
+        used.add(service);
+    }
+
+    private @Nullable String check(@Nonnull String suite) {
+        Set<String> used = suites.get(suite);
+
+        if( used == null ) {
+            return null;
+        }
+        for( String service : used ) {
+            State state = services.get(service);
+
+            if( state != null ) {
+                synchronized( state ) {
+                    if( state.open && System.currentTimeMillis() - state.openedAt < reset ) {
+                        state.skipped++;
+                        return service + " is unavailable (" + state.reason + ")";
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private int describe(@Nonnull Logger logger) {
+        int count = 0;
+
+        for( Map.Entry<String,State> entry : new TreeMap<String, State>(services).entrySet() ) {
+            State state = entry.getValue();
+
+            synchronized( state ) {
+                if( state.trips > 0 ) {
+                    DaseinTestManager.out(logger, null, entry.getKey(), (state.open ? "open" : "closed") + ", opened " + state.trips + " time(s), skipped " + state.skipped + " test(s), last cause: " + state.reason);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean isFailure(@Nonnull Throwable t) {
+        if( t instanceof CloudException ) {
+            CloudException e = (CloudException)t;
+
+            if( CloudErrorType.COMMUNICATION.equals(e.getErrorType()) || e.getHttpCode() >= 500 ) {
+                return true;
+            }
+        }
+        while( t != null ) {
+            if( t instanceof IOException ) {
+                return true;
+            }
+            t = t.getCause();
+        }
+        return false;
+    }
+
+    @Override
+    public @Nullable Object intercept(@Nonnull ProviderCall call) throws Throwable {
+        String service = call.getService();
+        State state = getState(service);
+
+        boolean probe = false;
+
+        recordUse(call.getSuite(), service);
+        synchronized( state ) {
+            if( state.open ) {
+                boolean cooled = (System.currentTimeMillis() - state.openedAt >= reset);
+
+                if( call.declaresCloudException() ) {
+                    if( !cooled || state.probing ) {
+                        throw new CloudException(CloudErrorType.COMMUNICATION, 503, "CircuitOpen", service + " is unavailable (" + state.reason + ")");
+                    }
+                    state.probing = true;
+                    probe = true;
+                }
+            }
+        }
+        long start = System.currentTimeMillis();
+        Throwable failure = null;
+
+        try {
+            return call.proceed();
+        }
+        catch( Throwable t ) {
+            failure = t;
+            throw t;
+        }
+        finally {
+            long elapsed = System.currentTimeMillis() - start;
+            String reason = null;
+
+            if( failure != null && isFailure(failure) ) {
+                reason = call.getApi() + " failed: " + failure.getMessage();
+            }
+            else if( elapsed > timeout ) {
+                reason = call.getApi() + " took " + (elapsed / 1000L) + " s";
+            }
+            record(service, state, reason, probe);
+        }
+    }
+
+    /**
+     * Records the outcome of a call. While the circuit is open only the probe counts: calls that cannot throw a
+     * {@link CloudException} are let through without deciding anything, and so are calls started before it opened.
+     */
+    private void record(@Nonnull String service, @Nonnull State state, @Nullable String reason, boolean probe) {
+        synchronized( state ) {
+            if( state.open && !probe ) {
+                return;
+            }
+            state.probing = false;
+            if( reason == null ) {
+                if( state.open ) {
+                    logger.info("Circuit for " + service + " closed again");
+                }
+                state.failures = 0;
+                state.open = false;
+                return;
+            }
+            state.failures++;
+            state.reason = reason;
+            if( state.open ) {
+                // the probe failed, stay open for another cool-down
+                state.openedAt = System.currentTimeMillis();
+            }
+            else if( state.failures >= threshold ) {
+                state.open = true;
+                state.openedAt = System.currentTimeMillis();
+                state.trips++;
+                logger.warn("Circuit for " + service + " opened after " + state.failures + " consecutive failures: " + reason);
+            }
+        }
+    }
+}
@@ -42,6 +42,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Consolidates and manages cloud resources shared across many different tests.
@@ -56,8 +58,16 @@ public class DaseinTestManager {
     static public final String STATELESS = "stateless";
     static public final String REMOVED   = "removed";
 
-    static private HashMap<String,Integer> apiAudit = new HashMap<String, Integer>();
+    static private final APIAudit apiAudit     = new APIAudit();
+    static private final APIAudit latencyAudit = new APIAudit();
+    static private final APIAudit waitAudit    = new APIAudit("waits", "timeouts");
 
+    static private final DataCenterCache dataCenterCache = new DataCenterCache();
+
+    static private final ThreadLocal<String> currentSuite = new InheritableThreadLocal<String>();
+
+    // the pooled provider the resource modules share from init() until cleanUp()
+    static private CloudProvider     moduleProvider;
     static private CIResources       ciResources;
     static private ComputeResources  computeResources;
     static private TreeSet<String>   exclusions;
@@ -68,8 +78,11 @@ public class DaseinTestManager {
 
     static private TreeSet<String>   inclusions;
 
-    static private int  skipCount;
-    static private int  testCount;
+    static private final AtomicInteger concurrentRuns = new AtomicInteger(0);
+    static private final AtomicInteger loadRuns       = new AtomicInteger(0);
+    static private final AtomicInteger skipCount      = new AtomicInteger(0);
+    static private final AtomicInteger testCount      = new AtomicInteger(0);
+
     static private long testStart;
 
     static public @Nonnull CloudProvider constructProvider() {
@@ -318,13 +331,37 @@ public class DaseinTestManager {
     }
 
     static public void init() {
+        init(null);
+    }
+
+    /**
+     * Initializes the test run and, when a suite is given, provisions the stateful fixtures its test classes will
+     * need up front through the {@link FixturePlanner}. Default compute resources such as the test image, product
+     * and stateless VM are discovered the first time a test asks for them unless -Ddasein.discovery=eager is set.
+     * @param suite the suite or test class about to run, if known
+     */
+    static public void init(@Nullable Class<?> suite) {
         Logger logger = Logger.getLogger(DaseinTestManager.class);
 
         logger.info("BEGIN Test Initialization ------------------------------------------------------------------------------");
         try {
             testStart = System.currentTimeMillis();
+            RunBudget.start();
+            currentSuite.set("Init");
+            Cassette.install();
+            // breakers see calls after throttling retries, and both see injected faults like real ones
+            CircuitBreaker.install();
+            ProvisioningScheduler.install();
+            FaultInjector.install();
+            ProviderPool.open();
+
+            if( moduleProvider != null ) {
+                ProviderPool.release(moduleProvider);
+            }
+            CloudProvider cloudProvider = ProviderPool.acquire(null, null, null);
 
-            CloudProvider cloudProvider = constructProvider();
+            moduleProvider = cloudProvider;
+            Cassette.check(cloudProvider);
             storageResources = new StorageResources(cloudProvider);
             platformResources = new PlatformResources(cloudProvider);
             networkResources = new NetworkResources(cloudProvider);
@@ -332,36 +369,22 @@ public class DaseinTestManager {
             ciResources = new CIResources(cloudProvider);
             computeResources = new ComputeResources(cloudProvider);
 
-            computeResources.init();
-
-            String prop = System.getProperty("dasein.inclusions");
+            List<ResourceLedger.Entry> orphans = ResourceLedger.open();
 
-            if( prop != null && !prop.equals("") ) {
-                inclusions = new TreeSet<String>();
-                if( prop.contains(",") ) {
-                    for( String which : prop.split(",") ) {
-                        inclusions.add(which.toLowerCase());
-                    }
-                }
-                else {
-                    inclusions.add(prop.toLowerCase());
-                }
+            if( !orphans.isEmpty() ) {
+                recover(logger, cloudProvider, orphans);
             }
-            prop = System.getProperty("dasein.exclusions");
-
-            if( prop != null && !prop.equals("") ) {
-                exclusions = new TreeSet<String>();
-                if( prop.contains(",") ) {
-                    for( String which : prop.split(",") ) {
-                        exclusions.add(which.toLowerCase());
-                    }
-                }
-                else {
-                    exclusions.add(prop.toLowerCase());
-                }
+            // default compute resources are otherwise looked up on first use, so a run only pays for the discovery its
+            // suites need
+            if( "eager".equalsIgnoreCase(System.getProperty("dasein.discovery")) ) {
+                computeResources.init();
             }
+            loadFilters();
             out(logger, null, "Included", (inclusions == null ? null : inclusions.toString()));
             out(logger, null, "Excluded", (exclusions == null ? null : exclusions.toString()));
+            if( suite != null ) {
+                FixturePlanner.prepare(logger, cloudProvider, suite);
+            }
 
             APITrace.report("Init");
             APITrace.reset();
@@ -372,6 +395,115 @@ public class DaseinTestManager {
         }
     }
 
+    /**
+     * Reads the dasein.inclusions and dasein.exclusions {@link System} properties used by {@link #isTestSkipped()}.
+     */
+    static void loadFilters() {
+        String prop = System.getProperty("dasein.inclusions");
+
+        if( prop != null && !prop.equals("") ) {
+            inclusions = new TreeSet<String>();
+            if( prop.contains(",") ) {
+                for( String which : prop.split(",") ) {
+                    inclusions.add(which.toLowerCase());
+                }
+            }
+            else {
+                inclusions.add(prop.toLowerCase());
+            }
+        }
+        prop = System.getProperty("dasein.exclusions");
+
+        if( prop != null && !prop.equals("") ) {
+            exclusions = new TreeSet<String>();
+            if( prop.contains(",") ) {
+                for( String which : prop.split(",") ) {
+                    exclusions.add(which.toLowerCase());
+                }
+            }
+            else {
+                exclusions.add(prop.toLowerCase());
+            }
+        }
+    }
+
+    static private void recover(@Nonnull Logger logger, @Nonnull CloudProvider cloudProvider, @Nonnull List<ResourceLedger.Entry> orphans) {
+        String mode = ResourceLedger.getRecoveryMode();
+        // throw-away modules so the resources being cleaned never mix with the resources of this run
+        ComputeResources compute = new ComputeResources(cloudProvider);
+        NetworkResources network = new NetworkResources(cloudProvider);
+        final IdentityResources identity = new IdentityResources(cloudProvider);
+        final PlatformResources platform = new PlatformResources(cloudProvider);
+        final StorageResources storage = new StorageResources(cloudProvider);
+        int cleaning = 0;
+        int warm = 0;
+
+        out(logger, null, "Orphaned Resources", orphans.size() + " (" + mode + ")");
+        for( ResourceLedger.Entry orphan : orphans ) {
+            if( WarmFixtures.isReusable(orphan) ) {
+                if( computeResources.isUsable(orphan) || networkResources.isUsable(orphan) || identityResources.isUsable(orphan) ) {
+                    if( adopt(logger, computeResources, networkResources, identityResources, platformResources, storageResources, orphan, orphan.getLabel()) ) {
+                        warm++;
+                    }
+                    continue;
+                }
+                logger.info("Warm fixture " + orphan + " is no longer usable and will be rebuilt");
+            }
+            else if( WarmFixtures.isWarm(orphan.getType(), orphan.getLabel()) ) {
+                // stale warm fixtures are always replaced
+                logger.debug("Replacing stale warm fixture " + orphan);
+            }
+            else if( mode.equals(ResourceLedger.IGNORE) ) {
+                continue;
+            }
+            else if( mode.equals(ResourceLedger.ADOPT) ) {
+                adopt(logger, computeResources, networkResources, identityResources, platformResources, storageResources, orphan, orphan.getLabel());
+                continue;
+            }
+            if( adopt(logger, compute, network, identity, platform, storage, orphan, "recovered") ) {
+                cleaning++;
+            }
+        }
+        if( warm > 0 ) {
+            out(logger, null, "Warm Fixtures", String.valueOf(warm));
+        }
+        if( cleaning > 0 ) {
+            TaskGraph recovery = new TaskGraph("Recovery");
+
+            compute.addTeardown(recovery);
+            network.addTeardown(recovery);
+            recovery.add(IdentityResources.TEARDOWN, IdentityResources.TEARDOWN, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return identity.close();
+                }
+            });
+            recovery.add(PlatformResources.TEARDOWN, PlatformResources.TEARDOWN, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return platform.close();
+                }
+            });
+            // CDN distributions are served out of test buckets; the provider stays open for the run
+            recovery.add(StorageResources.TEARDOWN, StorageResources.TEARDOWN, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return storage.removeAll();
+                }
+            }, PlatformResources.TEARDOWN);
+            recovery.run();
+            out(logger, null, "Recovered Resources", String.valueOf(recovery.getTotal(ComputeResources.TEARDOWN) + recovery.getTotal(NetworkResources.TEARDOWN) + recovery.getTotal(IdentityResources.TEARDOWN) + recovery.getTotal(PlatformResources.TEARDOWN) + recovery.getTotal(StorageResources.TEARDOWN)));
+        }
+    }
+
+    static private boolean adopt(@Nonnull Logger logger, @Nonnull ComputeResources compute, @Nonnull NetworkResources network, @Nonnull IdentityResources identity, @Nonnull PlatformResources platform, @Nonnull StorageResources storage, @Nonnull ResourceLedger.Entry orphan, @Nonnull String label) {
+        if( compute.adopt(orphan, label) || network.adopt(orphan, label) || identity.adopt(orphan, label) || platform.adopt(orphan, label) || storage.adopt(orphan, label) ) {
+            return true;
+        }
+        logger.warn("Unable to recover " + orphan + ", it must be removed by hand");
+        return false;
+    }
+
     static public void cleanUp() {
         Logger logger = Logger.getLogger(DaseinTestManager.class);
         int provisioned = 0;
@@ -380,45 +512,96 @@ public class DaseinTestManager {
         logger.info("");
         logger.info("BEGIN Test Clean Up ------------------------------------------------------------------------------");
         try {
+            currentSuite.set("Clean Up");
             APITrace.report("Clean Up");
+            TaskGraph teardown = new TaskGraph("Clean Up");
+
+            if( ciResources != null ) {
+                teardown.add(CIResources.TEARDOWN, CIResources.TEARDOWN, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return ciResources.close();
+                    }
+                });
+            }
+            if( computeResources != null ) {
+                computeResources.addTeardown(teardown);
+            }
+            if( networkResources != null ) {
+                networkResources.addTeardown(teardown);
+            }
+            if( identityResources != null ) {
+                teardown.add(IdentityResources.TEARDOWN, IdentityResources.TEARDOWN, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return identityResources.close();
+                    }
+                });
+            }
+            if( platformResources != null ) {
+                teardown.add(PlatformResources.TEARDOWN, PlatformResources.TEARDOWN, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return platformResources.close();
+                    }
+                });
+            }
+            if( storageResources != null ) {
+                // CDN distributions are served out of test buckets
+                teardown.add(StorageResources.TEARDOWN, StorageResources.TEARDOWN, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return storageResources.close();
+                    }
+                }, PlatformResources.TEARDOWN);
+            }
+            teardown.run();
             if( ciResources != null ) {
-                int count = ciResources.close();
+                int count = teardown.getTotal(CIResources.TEARDOWN);
 
                 out(logger, null, "CI Resources", String.valueOf(count));
                 cleaned += count;
             }
             if( computeResources != null ) {
-                int count = computeResources.close();
+                int count = teardown.getTotal(ComputeResources.TEARDOWN);
 
                 out(logger, null, "Compute Resources", String.valueOf(count));
                 cleaned += count;
             }
             if( networkResources != null ) {
-                int count = networkResources.close();
+                int count = teardown.getTotal(NetworkResources.TEARDOWN);
 
                 out(logger, null, "Network Resources", String.valueOf(count));
                 cleaned += count;
             }
             if( identityResources != null ) {
-                int count = identityResources.close();
+                int count = teardown.getTotal(IdentityResources.TEARDOWN);
 
                 out(logger, null, "Identity Resources", String.valueOf(count));
                 cleaned += count;
             }
             if( platformResources != null ) {
-                int count = platformResources.close();
+                int count = teardown.getTotal(PlatformResources.TEARDOWN);
 
                 out(logger, null, "Platform Resources", String.valueOf(count));
                 cleaned += count;
             }
             if( storageResources != null ) {
-                int count = storageResources.close();
+                int count = teardown.getTotal(StorageResources.TEARDOWN);
 
                 out(logger, null, "Storage Resources", String.valueOf(count));
                 cleaned += count;
             }
         }
         finally {
+            ResourceLedger.close();
+            Cassette.flush();
+            if( moduleProvider != null ) {
+                ProviderPool.release(moduleProvider);
+                moduleProvider = null;
+            }
+            BatchStatePoller.clear();
+            ProviderPool.close();
             logger.info("END Test Clean Up ------------------------------------------------------------------------------");
             logger.info("");
         }
@@ -428,14 +611,38 @@ public class DaseinTestManager {
         logger.info("");
         logger.info("All Tests Complete ------------------------------------------------------------------------------");
         logger.info("--------------- API Log ---------------");
-        int total = 0;
-
-        for( Map.Entry<String,Integer> entry : apiAudit.entrySet() ) {
-            out(logger, null, "---> " + entry.getKey(), String.valueOf(entry.getValue()));
-            total += entry.getValue();
-        }
-        out(logger, null, "---> Total Calls", String.valueOf(total));
+        apiAudit.report(logger);
+        logger.info("");
+        logger.info("------------- API Latency -------------");
+        latencyAudit.reportLatency(logger);
+        logger.info("");
+        logger.info("------------- State Waits -------------");
+        waitAudit.reportLatency(logger);
+        logger.info("");
+        logger.info("----------- Data Center Cache ---------");
+        dataCenterCache.report(logger);
         logger.info("");
+        if( FaultInjector.isInstalled() ) {
+            logger.info("----------- Injected Faults -----------");
+            FaultInjector.getAudit().reportLatency(logger);
+            logger.info("");
+        }
+        if( CircuitBreaker.hasTripped() ) {
+            logger.info("---------- Circuit Breakers -----------");
+            CircuitBreaker.report(logger);
+            logger.info("");
+        }
+        if( ProvisioningScheduler.getAudit().listApis().iterator().hasNext() ) {
+            logger.info("--------- Provisioning Queue ----------");
+            ProvisioningScheduler.getAudit().reportLatency(logger);
+            logger.info("");
+        }
+        // a load run would skew the baselines of normal runs
+        if( RunHistory.isEnabled() && !isUnderLoad() ) {
+            logger.info("------------- Regressions -------------");
+            RunHistory.report(logger, apiAudit, latencyAudit);
+            logger.info("");
+        }
 
         logger.info("----------- Provisioning Log ----------");
         if( computeResources != null ) {
@@ -458,15 +665,38 @@ public class DaseinTestManager {
         }
         logger.info("");
         logger.info("--------------- Results ---------------");
-        out(logger, null, "Tests", String.valueOf(testCount));
-        out(logger, null, "Skipped", String.valueOf(skipCount));
-        out(logger, null, "Run", String.valueOf(testCount - skipCount));
+        out(logger, null, "Tests", String.valueOf(testCount.get()));
+        out(logger, null, "Skipped", String.valueOf(skipCount.get()));
+        out(logger, null, "Run", String.valueOf(testCount.get() - skipCount.get()));
         out(logger, null, "Resources Provisioned", String.valueOf(provisioned));
         out(logger, null, "Resources De-provisioned", String.valueOf(cleaned));
+        out(logger, null, "Provider Connects", String.valueOf(ProviderPool.getConnectCount()));
+        out(logger, null, "Provider Connects Saved", String.valueOf(ProviderPool.getReuseCount()));
         out(logger, null, "Duration", minutes + " minutes " + seconds + " seconds");
+        RunBudget.report(logger);
         logger.info("-------------------------------------------------------------------------------------------------");
     }
 
+    /**
+     * Reads a whole number from a {@link System} property, logging a warning if it is not one.
+     * @param name the name of the property
+     * @param defaultValue the value to use if the property is not set or not a number
+     * @return the value of the property, never less than 0, or the default value
+     */
+    static public long getLongProperty(@Nonnull String name, long defaultValue) {
+        String prop = System.getProperty(name);
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return Math.max(0L, Long.parseLong(prop.trim()));
+            }
+            catch( NumberFormatException e ) {
+                Logger.getLogger(DaseinTestManager.class).warn("Invalid value for " + name + ": " + prop);
+            }
+        }
+        return defaultValue;
+    }
+
     static public void out(@Nonnull Logger logger, @Nullable String prefix, @Nonnull String key, @Nullable String value) {
         StringBuilder str = new StringBuilder();
 
@@ -487,19 +717,127 @@ public class DaseinTestManager {
         }
     }
 
+    /**
+     * Marks the start of a run in which multiple test classes execute at the same time. Because {@link APITrace}
+     * keeps a single set of counters for the whole JVM, per-test API logging is suspended until the matching
+     * {@link #endConcurrentRun(String, CloudProvider)} call, at which point the calls made during the run are added
+     * to the API audit in one go unless instrumented providers already audited them.
+     */
+    static public void beginConcurrentRun() {
+        if( concurrentRuns.getAndIncrement() == 0 ) {
+            APITrace.report("Setup");
+            APITrace.reset();
+        }
+    }
+
+    /**
+     * Marks the end of a concurrent run started with {@link #beginConcurrentRun()}.
+     * @param suite the name under which the calls made during the run are audited
+     * @param provider a provider for the cloud the tests ran against, used to look up the traced API calls
+     */
+    static public void endConcurrentRun(@Nonnull String suite, @Nonnull CloudProvider provider) {
+        if( concurrentRuns.decrementAndGet() == 0 ) {
+            // instrumented providers audit their calls as they make them
+            if( !InterceptingCloudProvider.isEnabled() ) {
+                for( String call : APITrace.listApis(provider.getProviderName(), provider.getCloudName()) ) {
+                    apiAudit.recordCalls(suite, call, APITrace.getAPICountAcrossAccounts(provider.getProviderName(), provider.getCloudName(), call));
+                }
+            }
+            APITrace.report("Concurrent Run");
+            APITrace.reset();
+        }
+    }
+
+    /**
+     * @return the name of the suite on whose behalf the current thread is calling the cloud provider
+     */
+    static public @Nonnull String getCurrentSuite() {
+        String name = currentSuite.get();
+
+        return (name == null ? "Other" : name);
+    }
+
+    /**
+     * Attributes the calls made by the current thread, and by threads it starts from now on, to the specified suite.
+     * @param suite the name under which calls are to be audited
+     */
+    static void setCurrentSuite(@Nonnull String suite) {
+        currentSuite.set(suite);
+    }
+
+    /**
+     * @return the registry of individually timed calls made through instrumented providers in this run
+     */
+    static public @Nonnull APIAudit getLatencyAudit() {
+        return latencyAudit;
+    }
+
+    /**
+     * @return the region and data center metadata shared by all suites
+     */
+    static public @Nonnull DataCenterCache getDataCenterCache() {
+        return dataCenterCache;
+    }
+
+    /**
+     * @return the registry of how long each wait for a resource state took, by resource type
+     */
+    static public @Nonnull APIAudit getWaitAudit() {
+        return waitAudit;
+    }
+
+    /**
+     * @return true while suites or load workers run tests on several threads at once
+     */
+    static boolean isConcurrent() {
+        return (concurrentRuns.get() > 0);
+    }
+
+    /**
+     * Marks the start of a run in which many threads repeat the same tests through a single manager per test class.
+     * Until the matching {@link #endLoadRun()} call, test names and durations on a manager belong to no single
+     * iteration, so tests are not checked against their budgets and the run is not added to the run history.
+     */
+    static void beginLoadRun() {
+        loadRuns.incrementAndGet();
+    }
+
+    /**
+     * Marks the end of a load run started with {@link #beginLoadRun()}.
+     */
+    static void endLoadRun() {
+        loadRuns.decrementAndGet();
+    }
+
+    static private boolean isUnderLoad() {
+        return (loadRuns.get() > 0);
+    }
+
+    /**
+     * @return the registry of API calls made by all tests in this run, by Service.method as in
+     * {@link #getLatencyAudit()} when providers are instrumented and by APITrace name otherwise
+     */
+    static public @Nonnull APIAudit getAPIAudit() {
+        return apiAudit;
+    }
+
 
     private Logger                  logger;
-    private String                  name;
-    private String                  prefix;
+    private volatile String         name;
+    private volatile String         prefix;
     private CloudProvider           provider;
     private long                    startTimestamp;
+    private boolean                 skipped;
     private String                  suite;
+    private Class<?>                testClass;
     private String                  userName = "";
 
     public DaseinTestManager(@Nonnull Class<?> testClass) {
         logger = Logger.getLogger(testClass);
         suite = testClass.getSimpleName();
-        provider = constructProvider();
+        this.testClass = testClass;
+        currentSuite.set(suite);
+        provider = ProviderPool.acquire(null, null, null);
         changePrefix();
         
         String prop = System.getProperty("userName");
@@ -510,16 +848,21 @@ public class DaseinTestManager {
 
     public void begin(@Nonnull String name) {
         this.name = name;
-        APITrace.report("Setup");
-        APITrace.reset();
+        skipped = false;
+        if( !isConcurrent() ) {
+            APITrace.report("Setup");
+            APITrace.reset();
+        }
         changePrefix();
         startTimestamp = System.currentTimeMillis();
-        testCount++;
+        InterceptingCloudProvider.startCounting();
+        RunBudget.beginTest(suite + "." + name);
+        testCount.incrementAndGet();
         out("");
         out(">>> BEGIN ---------------------------------------------------------------------------------------------->>>");
     }
 
-    private void changePrefix() {
+    void changePrefix() {
         StringBuilder str = new StringBuilder();
         String s;
 
@@ -549,12 +892,35 @@ public class DaseinTestManager {
     }
 
     public void close() {
-        getProvider().close();
+        if( latencyAudit.listApis(suite).iterator().hasNext() ) {
+            out("---------- API Latency ----------");
+            latencyAudit.reportLatency(logger, prefix, suite);
+        }
+        ProviderPool.release(getProvider());
     }
 
     public void end() {
-        String[] calls = APITrace.listApis(provider.getProviderName(), provider.getCloudName());
+        // a test's calls come from one source in every mode: what it called on the instrumented provider from its own
+        // thread or, with instrumentation off, the trace of a test running alone; while suites run concurrently the
+        // trace holds calls from other tests, so uninstrumented concurrent tests are only timed
+        boolean instrumented = InterceptingCloudProvider.isEnabled();
+        Map<String,Integer> threadCounts = InterceptingCloudProvider.stopCounting();
+        String[] calls = (isConcurrent() ? new String[0] : APITrace.listApis(provider.getProviderName(), provider.getCloudName()));
+        Map<String,Integer> counts = (instrumented ? threadCounts : (isConcurrent() ? null : new HashMap<String, Integer>()));
+        long duration = System.currentTimeMillis() - startTimestamp;
+
+        if( instrumented && counts != null && !counts.isEmpty() ) {
+            out("---------- API Calls ----------");
+            int total = 0;
+
+            for( Map.Entry<String,Integer> entry : counts.entrySet() ) {
+                int count = entry.getValue();
 
+                out("---> " + entry.getKey(), count);
+                total += count;
+            }
+            out("---> Total Calls", total);
+        }
         if( calls.length > 0 ) {
             out("---------- API Log ----------");
             int total = 0;
@@ -562,24 +928,49 @@ public class DaseinTestManager {
             for( String call : calls ) {
                 int count = (int)APITrace.getAPICountAcrossAccounts(provider.getProviderName(), provider.getCloudName(), call);
 
-                if( apiAudit.containsKey(call) ) {
-                    apiAudit.put(call, count + apiAudit.get(call));
-                }
-                else {
-                    apiAudit.put(call, count);
+                if( !instrumented ) {
+                    apiAudit.recordCalls(suite, call, count);
+                    counts.put(call, count);
                 }
                 out("---> " + call, count);
                 total += count;
             }
             out("---> Total Calls", total);
         }
-        out("Duration", (((float) (System.currentTimeMillis() - startTimestamp)) / 1000f) + " seconds");
+        out("Duration", (((float) duration) / 1000f) + " seconds");
+        // under load, iterations are measured by the load runner
+        boolean measured = (name != null && !isUnderLoad());
+        List<String> violations = (measured ? TestBudgets.check(testClass, name, counts, duration) : new ArrayList<String>());
+
+        if( measured && !skipped ) {
+            long total = -1L;
+
+            if( counts != null ) {
+                total = 0L;
+                for( int count : counts.values() ) {
+                    total += count;
+                }
+            }
+            RunHistory.recordTest(suite + "." + name, duration, total);
+        }
+
+        for( String violation : violations ) {
+            warn("Over budget: " + violation);
+        }
         out("<<< END   ----------------------------------------------------------------------------------------------<<<");
         out("");
-        APITrace.report(prefix);
-        APITrace.reset();
+        if( !isConcurrent() ) {
+            APITrace.report(prefix);
+            APITrace.reset();
+        }
+        String test = suite + "." + name;
+
+        RunBudget.endTest();
         name = null;
         changePrefix();
+        if( !violations.isEmpty() && TestBudgets.isEnforced() ) {
+            throw new AssertionError(test + " is over its API budget: " + violations);
+        }
     }
 
     public @Nonnull ProviderContext getContext() {
@@ -789,6 +1180,31 @@ public class DaseinTestManager {
         return provider;
     }
 
+    /**
+     * Checks whether every test in the specified test class is going to be skipped because dasein.inclusions names
+     * neither the class nor any of its tests, as {@link #isTestSkipped()} would find for each of them. Exclusions are
+     * not considered, since {@link #isTestSkipped()} only skips the excluded tests of a class one by one, and neither
+     * are the circuit breakers and the run budget, which change while the suite runs.
+     * @param suite the simple name of the test class
+     * @return true if none of the tests in the class will run
+     */
+    static public boolean isSuiteSkipped(@Nonnull String suite) {
+        if( inclusions == null ) {
+            return false;
+        }
+        String s = suite.toLowerCase();
+
+        if( inclusions.contains(s) ) {
+            return false;
+        }
+        for( String inclusion : inclusions ) {
+            if( inclusion.startsWith(s + ".") ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Checks to see if the test currently being executed is supposed to be skipped.
      * A test is assumed to be run unless there are a list of inclusions and the test is not
@@ -801,10 +1217,33 @@ public class DaseinTestManager {
      *     -Ddasein.inclusions=StatelessVMTests.listVirtualMachines,StatelessDCTests
      * </pre>
      * This will execute only the listVirtualMachines test from StatelessVMTests and all StatelessDCTests. All other
-     * tests will be skipped.
+     * tests will be skipped. Tests of suites that use a cloud service cut off by its {@link CircuitBreaker} and tests
+     * that no longer fit into the {@link RunBudget} are skipped as well. Those are only checked for tests the
+     * inclusions and exclusions let through, so their reports count only tests that would otherwise have run.
      * @return true if the current test is to be skipped
      */
     public boolean isTestSkipped() {
+        if( isFiltered() ) {
+            return true;
+        }
+        String broken = CircuitBreaker.getSkipReason(suite);
+
+        if( broken != null ) {
+            warn("Skipping because " + broken);
+            skip();
+            return true;
+        }
+        String late = RunBudget.getSkipReason(suite, name);
+
+        if( late != null ) {
+            warn("Skipping because " + late);
+            skip();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isFiltered() {
         if( inclusions == null && exclusions == null ) {
             return false;
         }
@@ -884,7 +1323,8 @@ public class DaseinTestManager {
     }
 
     public void skip() {
-        skipCount++;
+        skipCount.incrementAndGet();
+        skipped = true;
         out("SKIPPING");
     }
 
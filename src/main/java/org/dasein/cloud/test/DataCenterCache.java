@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.dc.DataCenter;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.dc.Region;
+import org.dasein.cloud.dc.ResourcePool;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the regions, data centers and resource pools of the cloud under test for all suites, so that the many
+ * fixtures and tests that only need to pick a data center do not each make a round trip for it. The cache is owned
+ * by {@link DaseinTestManager#getDataCenterCache()}, keeps entries for five minutes unless configured otherwise and
+ * counts its hits, misses and explicit invalidations for the final report. Anything that changes the data center
+ * configuration of the cloud should call {@link #invalidate()}:
+ * <pre>
+ *     -Ddasein.dc.ttl=300
+ * </pre>
+ * The TTL is in seconds and 0 turns caching off. Tests of the data center services themselves call the cloud
+ * directly.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class DataCenterCache {
+    static private final Logger logger = Logger.getLogger(DataCenterCache.class);
+
+    static private final String DATA_CENTERS   = "dc";
+    static private final String REGIONS        = "regions";
+    static private final String RESOURCE_POOLS = "pools";
+
+    static private class Entry {
+        public long    expiration;
+        public List<?> values;
+    }
+
+    private final ConcurrentMap<String,Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicLong hits          = new AtomicLong(0L);
+    private final AtomicLong invalidations = new AtomicLong(0L);
+    private final AtomicLong misses        = new AtomicLong(0L);
+    private final long       ttl;
+
+    public DataCenterCache() {
+        long ttl = 5L * CalendarWrapper.MINUTE;
+        String prop = System.getProperty("dasein.dc.ttl");
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                ttl = Math.max(0L, Long.parseLong(prop.trim()) * CalendarWrapper.SECOND);
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.dc.ttl: " + prop);
+            }
+        }
+        this.ttl = ttl;
+    }
+
+    static private @Nonnull String getKey(@Nonnull CloudProvider provider, @Nonnull String type, @Nullable String id) {
+        ProviderContext ctx = provider.getContext();
+        // data center names can differ between accounts of the same cloud
+        String account = (ctx == null ? null : ctx.getAccountNumber());
+
+        return provider.getProviderName() + "|" + provider.getCloudName() + "|" + account + "|" + type + "|" + id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable <T> List<T> get(@Nonnull String key) {
+        Entry entry = entries.get(key);
+
+        if( entry == null || entry.expiration < System.currentTimeMillis() ) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (List<T>)entry.values;
+    }
+
+    private @Nonnull <T> List<T> put(@Nonnull String key, @Nullable Iterable<T> values) {
+        List<T> list = new ArrayList<T>();
+
+        if( values != null ) {
+            for( T value : values ) {
+                list.add(value);
+            }
+        }
+        list = Collections.unmodifiableList(list);
+        if( ttl > 0L ) {
+            Entry entry = new Entry();
+
+            entry.expiration = System.currentTimeMillis() + ttl;
+            entry.values = list;
+            entries.put(key, entry);
+        }
+        return list;
+    }
+
+    /**
+     * Lists the data centers in the specified region, calling the cloud only if no unexpired list is cached.
+     * @param provider the provider for the cloud of interest
+     * @param regionId the region of interest
+     * @return the data centers in the region, possibly shared with other callers
+     * @throws CloudException an error occurred in the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nonnull List<DataCenter> listDataCenters(@Nonnull CloudProvider provider, @Nonnull String regionId) throws CloudException, InternalException {
+        String key = getKey(provider, DATA_CENTERS, regionId);
+        List<DataCenter> dataCenters = get(key);
+
+        if( dataCenters == null ) {
+            DataCenterServices services = provider.getDataCenterServices();
+
+            dataCenters = put(key, services == null ? null : services.listDataCenters(regionId));
+        }
+        return dataCenters;
+    }
+
+    /**
+     * Lists the regions of the cloud, calling the cloud only if no unexpired list is cached.
+     * @param provider the provider for the cloud of interest
+     * @return the regions of the cloud, possibly shared with other callers
+     * @throws CloudException an error occurred in the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nonnull List<Region> listRegions(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+        String key = getKey(provider, REGIONS, null);
+        List<Region> regions = get(key);
+
+        if( regions == null ) {
+            DataCenterServices services = provider.getDataCenterServices();
+
+            regions = put(key, services == null ? null : services.listRegions());
+        }
+        return regions;
+    }
+
+    /**
+     * Lists the resource pools in the specified data center, calling the cloud only if no unexpired list is cached.
+     * @param provider the provider for the cloud of interest
+     * @param dataCenterId the data center of interest
+     * @return the resource pools in the data center, possibly shared with other callers
+     * @throws CloudException an error occurred in the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nonnull List<ResourcePool> listResourcePools(@Nonnull CloudProvider provider, @Nonnull String dataCenterId) throws CloudException, InternalException {
+        String key = getKey(provider, RESOURCE_POOLS, dataCenterId);
+        List<ResourcePool> pools = get(key);
+
+        if( pools == null ) {
+            DataCenterServices services = provider.getDataCenterServices();
+
+            pools = put(key, services == null ? null : services.listResourcePools(dataCenterId));
+        }
+        return pools;
+    }
+
+    /**
+     * Drops everything cached, for example after a test changed the data center configuration of the cloud.
+     */
+    public void invalidate() {
+        entries.clear();
+        invalidations.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Writes the hit and miss counts to the specified logger.
+     * @param logger the logger to write to
+     */
+    public void report(@Nonnull Logger logger) {
+        long total = hits.get() + misses.get();
+
+        DaseinTestManager.out(logger, null, "Hits", String.valueOf(hits.get()));
+        DaseinTestManager.out(logger, null, "Misses", String.valueOf(misses.get()));
+        DaseinTestManager.out(logger, null, "Invalidations", String.valueOf(invalidations.get()));
+        if( total > 0L ) {
+            DaseinTestManager.out(logger, null, "Hit Rate", String.format("%.1f%%", (hits.get() * 100.0) / total));
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ProviderInterceptor} that makes the cloud behind an {@link InterceptingCloudProvider} slower and less
+ * reliable than it is, so that the cost of the harness's own provisioning, waiting and clean up can be measured under
+ * the conditions of a busy production region. Faults are described in a properties file named by the dasein.faults
+ * {@link System} property:
+ * <pre>
+ *     -Ddasein.faults=faults.properties -Ddasein.faults.seed=42
+ * </pre>
+ * Each key is an API pattern followed by a setting. Patterns are <code>Service.method</code>,
+ * <code>Service.*</code> or <code>*</code>, and the most specific pattern that defines a setting wins:
+ * <pre>
+ *     *.latency = 20-80
+ *     VirtualMachineSupport.launch.latency = exp:1500
+ *     VirtualMachineSupport.*.throttle = 0.05
+ *     *.error = 0.01
+ * </pre>
+ * Latencies are in milliseconds and are either fixed (<code>250</code>), uniform (<code>20-80</code>), exponential
+ * with a mean (<code>exp:300</code>) or normal with a mean and standard deviation (<code>normal:300:50</code>).
+ * Throttle and error settings are the probability that a call fails with a throttling or a transient communication
+ * {@link CloudException} before it reaches the cloud. Errors are only injected into methods that declare
+ * CloudException. Every injected fault is recorded in {@link #getAudit()}.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class FaultInjector implements ProviderInterceptor {
+    static private final Logger logger = Logger.getLogger(FaultInjector.class);
+
+    static private final String ERROR    = "error";
+    static private final String LATENCY  = "latency";
+    static private final String THROTTLE = "throttle";
+
+    static private final APIAudit audit = new APIAudit("faults", "errors");
+
+    static private FaultInjector installed;
+
+    /**
+     * A latency distribution in milliseconds.
+     */
+    static public class Delay {
+        private String kind;
+        private double a;
+        private double b;
+
+        /**
+         * Parses a latency distribution.
+         * @param spec the distribution as described in {@link FaultInjector}
+         * @return the parsed distribution
+         * @throws IllegalArgumentException the specification is not understood
+         */
+        static public @Nonnull Delay parse(@Nonnull String spec) {
+            Delay delay = new Delay();
+            String s = spec.trim();
+
+            try {
+                if( s.startsWith("exp:") ) {
+                    delay.kind = "exp";
+                    delay.a = Double.parseDouble(s.substring(4));
+                }
+                else if( s.startsWith("normal:") ) {
+                    String[] parts = s.substring(7).split(":");
+
+                    delay.kind = "normal";
+                    delay.a = Double.parseDouble(parts[0]);
+                    delay.b = (parts.length > 1 ? Double.parseDouble(parts[1]) : 0.0);
+                }
+                else if( s.indexOf('-') > 0 ) {
+                    int idx = s.indexOf('-');
+
+                    delay.kind = "uniform";
+                    delay.a = Double.parseDouble(s.substring(0, idx));
+                    delay.b = Double.parseDouble(s.substring(idx + 1));
+                }
+                else {
+                    delay.kind = "fixed";
+                    delay.a = Double.parseDouble(s);
+                }
+            }
+            catch( NumberFormatException e ) {
+                throw new IllegalArgumentException("Invalid latency: " + spec);
+            }
+            return delay;
+        }
+
+        /**
+         * @param random the source of randomness
+         * @return a delay drawn from this distribution in milliseconds
+         */
+        public long next(@Nonnull Random random) {
+            double ms;
+
+            if( kind.equals("exp") ) {
+                ms = -a * Math.log(1.0 - random.nextDouble());
+            }
+            else if( kind.equals("normal") ) {
+                ms = a + b * random.nextGaussian();
+            }
+            else if( kind.equals("uniform") ) {
+                ms = a + (b - a) * random.nextDouble();
+            }
+            else {
+                ms = a;
+            }
+            return Math.max(0L, Math.round(ms));
+        }
+    }
+
+    /**
+     * The faults resolved for a single API.
+     */
+    static private class Rule {
+        public Delay  latency;
+        public double throttle;
+        public double error;
+    }
+
+    /**
+     * Reads the file named by dasein.faults and adds an injector to the provider interceptor chain. Nothing happens
+     * if no file is configured or an injector has already been installed.
+     */
+    static public synchronized void install() {
+        String file = System.getProperty("dasein.faults");
+
+        if( installed != null || file == null || file.equals("") ) {
+            return;
+        }
+        if( !InterceptingCloudProvider.isEnabled() ) {
+            logger.warn("Ignoring dasein.faults because instrumentation is off");
+            return;
+        }
+        Properties properties = new Properties();
+
+        try {
+            InputStream input = new FileInputStream(new File(file));
+
+            try {
+                properties.load(input);
+            }
+            finally {
+                try {
+                    input.close();
+                }
+                catch( Throwable ignore ) {
+                    // ignore
+                }
+            }
+        }
+        catch( IOException e ) {
+            throw new RuntimeException("Failed to read fault configuration " + file + ": " + e.getMessage());
+        }
+        String seed = System.getProperty("dasein.faults.seed");
+        Random random = (seed == null || seed.equals("") ? new Random() : new Random(Long.parseLong(seed.trim())));
+
+        installed = new FaultInjector(properties, random);
+        InterceptingCloudProvider.addInterceptor(installed);
+        logger.info("Injecting faults from " + file);
+    }
+
+    /**
+     * Removes the installed injector, if any, from the provider interceptor chain.
+     */
+    static public synchronized void uninstall() {
+        if( installed != null ) {
+            InterceptingCloudProvider.removeInterceptor(installed);
+            installed = null;
+        }
+    }
+
+    static public synchronized boolean isInstalled() {
+        return (installed != null);
+    }
+
+    /**
+     * @return the delays and errors injected so far, per API and per suite
+     */
+    static public @Nonnull APIAudit getAudit() {
+        return audit;
+    }
+
+    private final ConcurrentMap<String,Rule> rules = new ConcurrentHashMap<String, Rule>();
+    private final Map<String,String>         settings = new HashMap<String, String>();
+    private final Random                     random;
+
+    /**
+     * Constructs an injector from already loaded settings.
+     * @param properties the fault settings as described in {@link FaultInjector}
+     * @param random the source of randomness for latencies and failures
+     */
+    public FaultInjector(@Nonnull Properties properties, @Nonnull Random random) {
+        this.random = random;
+        for( String key : properties.stringPropertyNames() ) {
+            String value = properties.getProperty(key).trim();
+
+            settings.put(key.trim(), value);
+            if( key.trim().endsWith("." + LATENCY) ) {
+                // fail fast on a bad distribution rather than on the first matching call
+                Delay.parse(value);
+            }
+        }
+    }
+
+    @Override
+    public @Nullable Object intercept(@Nonnull ProviderCall call) throws Throwable {
+        String api = call.getApi();
+        Rule rule = getRule(api, call.getService());
+        long delay = (rule.latency == null ? 0L : rule.latency.next(random));
+        CloudException fault = null;
+
+        if( call.declaresCloudException() ) {
+            double roll = random.nextDouble();
+
+            if( roll < rule.throttle ) {
+                fault = new CloudException(CloudErrorType.THROTTLING, 429, "Throttling", "Injected throttling error for " + api);
+            }
+            else if( roll < rule.throttle + rule.error ) {
+                fault = new CloudException(CloudErrorType.COMMUNICATION, 503, "ServiceUnavailable", "Injected transient error for " + api);
+            }
+        }
+        if( delay > 0L || fault != null ) {
+            audit.getCounter(call.getSuite(), api).recordLatency(delay * 1000000L, fault != null);
+        }
+        if( delay > 0L ) {
+            Thread.sleep(delay);
+        }
+        if( fault != null ) {
+            throw fault;
+        }
+        return call.proceed();
+    }
+
+    private @Nonnull Rule getRule(@Nonnull String api, @Nonnull String service) {
+        Rule rule = rules.get(api);
+
+        if( rule == null ) {
+            String[] patterns = new String[] { api, service + ".*", "*" };
+            String value;
+
+            rule = new Rule();
+            value = lookup(patterns, LATENCY);
+            if( value != null ) {
+                rule.latency = Delay.parse(value);
+            }
+            rule.throttle = getProbability(patterns, THROTTLE);
+            rule.error = getProbability(patterns, ERROR);
+            rules.putIfAbsent(api, rule);
+        }
+        return rule;
+    }
+
+    private double getProbability(@Nonnull String[] patterns, @Nonnull String setting) {
+        String value = lookup(patterns, setting);
+
+        if( value == null ) {
+            return 0.0;
+        }
+        try {
+            return Math.min(1.0, Math.max(0.0, Double.parseDouble(value)));
+        }
+        catch( NumberFormatException e ) {
+            logger.warn("Invalid " + setting + " probability: " + value);
+            return 0.0;
+        }
+    }
+
+    private @Nullable String lookup(@Nonnull String[] patterns, @Nonnull String setting) {
+        for( String pattern : patterns ) {
+            String value = settings.get(pattern + "." + setting);
+
+            if( value != null ) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
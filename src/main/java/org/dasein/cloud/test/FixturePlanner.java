@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.compute.StatefulSnapshotTests;
+import org.dasein.cloud.test.compute.StatefulVMTests;
+import org.dasein.cloud.test.compute.StatefulVolumeTests;
+import org.dasein.cloud.test.network.NetworkResources;
+import org.dasein.cloud.test.network.StatefulFirewallTests;
+import org.dasein.cloud.test.network.StatefulLoadBalancerTests;
+import org.dasein.cloud.test.network.StatefulNetworkFirewallTests;
+import org.dasein.cloud.test.network.StatefulStaticIPTests;
+import org.dasein.cloud.test.network.StatefulVLANTests;
+import org.junit.runners.Suite;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Provisions the shared stateful fixtures that the test classes of a suite are going to ask for before any of them
+ * runs. Fixtures are otherwise provisioned lazily by whichever test asks first, one after another, even though most of
+ * them could be launched at the same time. The planner walks the suite, drops the test classes that
+ * {@link DaseinTestManager#isSuiteSkipped(String)} rules out because dasein.inclusions names none of their tests,
+ * works out which fixtures the rest need and provisions them concurrently as a {@link TaskGraph} in which the subnet
+ * waits for the VLAN and the VM waits for the VLAN and subnet it would otherwise provision itself. Images and products
+ * such as the volume product are discovered on first use by the provision methods of {@link ComputeResources}, once
+ * per run however many fixtures ask for them. Each fixture is provisioned exactly as the tests ask for it, so the
+ * tests simply find it already in place. Turn planning off with:
+ * <pre>
+ *     -Ddasein.prepare=false
+ * </pre>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class FixturePlanner {
+    static private final Logger logger = Logger.getLogger(FixturePlanner.class);
+
+    static public enum Fixture {
+        FIREWALL, SNAPSHOT, SUBNET, VLAN, VM, VOLUME
+    }
+
+    static private final String GROUP = "fixture";
+
+    static private final Map<Class<?>,Set<Fixture>> needs = new HashMap<Class<?>, Set<Fixture>>();
+
+    static {
+        needs.put(StatefulFirewallTests.class, EnumSet.of(Fixture.FIREWALL, Fixture.VLAN, Fixture.SUBNET));
+        needs.put(StatefulLoadBalancerTests.class, EnumSet.of(Fixture.VM));
+        needs.put(StatefulNetworkFirewallTests.class, EnumSet.of(Fixture.VLAN, Fixture.SUBNET));
+        needs.put(StatefulSnapshotTests.class, EnumSet.of(Fixture.VM, Fixture.VOLUME, Fixture.SNAPSHOT));
+        needs.put(StatefulStaticIPTests.class, EnumSet.of(Fixture.VLAN, Fixture.SUBNET, Fixture.VM));
+        needs.put(StatefulVLANTests.class, EnumSet.of(Fixture.VLAN, Fixture.SUBNET));
+        needs.put(StatefulVMTests.class, EnumSet.of(Fixture.VM));
+        needs.put(StatefulVolumeTests.class, EnumSet.of(Fixture.VLAN, Fixture.VM, Fixture.VOLUME, Fixture.SNAPSHOT));
+    }
+
+    static public boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("dasein.prepare"));
+    }
+
+    /**
+     * Works out the fixtures needed by the test classes of the specified suite that are going to run.
+     * @param suite the suite about to run, or a single test class
+     * @return the fixtures to provision up front
+     */
+    static public @Nonnull Set<Fixture> plan(@Nonnull Class<?> suite) {
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        Set<Fixture> fixtures = EnumSet.noneOf(Fixture.class);
+
+        collect(suite, classes);
+        for( Class<?> c : classes ) {
+            Set<Fixture> f = needs.get(c);
+
+            if( f != null && !DaseinTestManager.isSuiteSkipped(c.getSimpleName()) ) {
+                fixtures.addAll(f);
+            }
+        }
+        return fixtures;
+    }
+
+    static private void collect(@Nonnull Class<?> suite, @Nonnull Set<Class<?>> classes) {
+        Suite.SuiteClasses children = suite.getAnnotation(Suite.SuiteClasses.class);
+
+        if( children == null ) {
+            classes.add(suite);
+            return;
+        }
+        for( Class<?> child : children.value() ) {
+            collect(child, classes);
+        }
+    }
+
+    /**
+     * Provisions the fixtures needed by the specified suite and waits for them to be ready. Fixtures that fail are
+     * left for the tests to provision, just as they would be without the planner.
+     * @param logger the logger to report to
+     * @param provider a connected provider, used only to pick the data center the tests will pick
+     * @param suite the suite about to run
+     */
+    static public void prepare(@Nonnull Logger logger, @Nonnull CloudProvider provider, @Nonnull Class<?> suite) {
+        if( !isEnabled() ) {
+            return;
+        }
+        Set<Fixture> fixtures = plan(suite);
+
+        if( fixtures.isEmpty() ) {
+            return;
+        }
+        final ComputeResources compute = DaseinTestManager.getComputeResources();
+        final NetworkResources network = DaseinTestManager.getNetworkResources();
+        final String dataCenterId = getDataCenterId(provider);
+        TaskGraph graph = new TaskGraph("Fixtures");
+
+        if( network != null ) {
+            if( fixtures.contains(Fixture.FIREWALL) ) {
+                graph.add(Fixture.FIREWALL.name(), GROUP, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return count(network.getTestFirewallId(DaseinTestManager.STATEFUL, true, null));
+                    }
+                });
+            }
+            if( fixtures.contains(Fixture.VLAN) ) {
+                graph.add(Fixture.VLAN.name(), GROUP, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return count(network.getTestVLANId(DaseinTestManager.STATEFUL, true, dataCenterId));
+                    }
+                });
+            }
+            if( fixtures.contains(Fixture.SUBNET) ) {
+                graph.add(Fixture.SUBNET.name(), GROUP, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        String vlanId = network.getTestVLANId(DaseinTestManager.STATEFUL, true, dataCenterId);
+
+                        return count(vlanId == null ? null : network.getTestSubnetId(DaseinTestManager.STATEFUL, true, vlanId, dataCenterId));
+                    }
+                }, Fixture.VLAN.name());
+            }
+        }
+        if( compute != null ) {
+            if( fixtures.contains(Fixture.VM) ) {
+                // launching pulls in the VLAN and subnet when the cloud needs them
+                graph.add(Fixture.VM.name(), GROUP, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return count(compute.getTestVmId(DaseinTestManager.STATEFUL, VmState.RUNNING, true, dataCenterId));
+                    }
+                }, Fixture.VLAN.name(), Fixture.SUBNET.name());
+            }
+            if( fixtures.contains(Fixture.VOLUME) ) {
+                graph.add(Fixture.VOLUME.name(), GROUP, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return count(compute.getTestVolumeId(DaseinTestManager.STATEFUL, true, null, dataCenterId));
+                    }
+                });
+            }
+            if( fixtures.contains(Fixture.SNAPSHOT) ) {
+                // the snapshot volume is attached to the stateful VM where the cloud requires it, so waiting for the
+                // VM and volume keeps the snapshot from launching a second stateful VM of its own
+                graph.add(Fixture.SNAPSHOT.name(), GROUP, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return count(compute.getTestSnapshotId(DaseinTestManager.STATEFUL, true));
+                    }
+                }, Fixture.VM.name(), Fixture.VOLUME.name());
+            }
+        }
+        long start = System.currentTimeMillis();
+
+        graph.run();
+        DaseinTestManager.out(logger, null, "Prepared Fixtures", graph.getTotal(GROUP) + " of " + fixtures + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    static private int count(@Nullable String id) {
+        return (id == null ? 0 : 1);
+    }
+
+    static private @Nullable String getDataCenterId(@Nonnull CloudProvider provider) {
+        // same choice the stateful tests make for themselves
+        String dataCenterId = System.getProperty("test.dataCenter");
+
+        if( dataCenterId == null ) {
+            try {
+                //noinspection ConstantConditions
+                dataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to pick a data center for the test fixtures: " + t.getMessage());
+            }
+        }
+        return dataCenterId;
+    }
+}
@@ -35,7 +35,7 @@ import org.junit.runners.Suite;
 public class GlobalTestSuite {
     @BeforeClass
     static public void setup() {
-        DaseinTestManager.init();
+        DaseinTestManager.init(GlobalTestSuite.class);
     }
 
     @AfterClass
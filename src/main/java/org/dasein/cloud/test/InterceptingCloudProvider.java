@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.AbstractCloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ContextRequirements;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.admin.AdminServices;
+import org.dasein.cloud.ci.CIServices;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.identity.IdentityServices;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.storage.StorageServices;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Wraps a connected cloud provider so that every call the tests make into its services can be timed and passed
+ * through the registered {@link ProviderInterceptor} chain. The services and support objects handed out by the
+ * wrapped provider are replaced by dynamic proxies for their Dasein interfaces; calls that merely navigate from a
+ * service to one of its support or capabilities objects are not counted. Only the last object handed out for each
+ * interface keeps its proxy, so a support object fetched twice in a row is the same proxy whenever the wrapped
+ * provider hands out the same object, while a provider that builds a new object on every call does not pile up
+ * wrappers for the life of a pooled provider. The
+ * latency of every other call is recorded per API and per suite in {@link DaseinTestManager#getLatencyAudit()} and
+ * its count, under the same name, in {@link DaseinTestManager#getAPIAudit()} and, between {@link #startCounting()} and
+ * {@link #stopCounting()}, for the test running on the calling thread. Instrumentation is on by default and
+ * may be turned off with:
+ * <pre>
+ *     -Ddasein.instrument=false
+ * </pre>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class InterceptingCloudProvider extends AbstractCloud {
+    static private final Logger logger = Logger.getLogger(InterceptingCloudProvider.class);
+
+    static private final List<ProviderInterceptor> interceptors = new CopyOnWriteArrayList<ProviderInterceptor>();
+
+    // the calls made by the test running on each thread, between startCounting() and stopCounting()
+    static private final ThreadLocal<Map<String,Integer>> testCalls = new ThreadLocal<Map<String, Integer>>();
+
+    /**
+     * Adds an interceptor to the end of the chain used by all instrumented providers.
+     * @param interceptor the interceptor to add
+     */
+    static public void addInterceptor(@Nonnull ProviderInterceptor interceptor) {
+        interceptors.add(interceptor);
+    }
+
+    static public void removeInterceptor(@Nonnull ProviderInterceptor interceptor) {
+        interceptors.remove(interceptor);
+    }
+
+    /**
+     * Wraps the specified provider unless instrumentation has been turned off.
+     * @param provider a connected cloud provider
+     * @return the instrumented provider or the provider itself if instrumentation is off
+     */
+    static public @Nonnull CloudProvider instrument(@Nonnull CloudProvider provider) {
+        if( !isEnabled() || provider instanceof InterceptingCloudProvider ) {
+            return provider;
+        }
+        return new InterceptingCloudProvider(provider);
+    }
+
+    /**
+     * Starts counting the calls made on the current thread, by API, for the test about to run on it.
+     */
+    static public void startCounting() {
+        testCalls.set(new HashMap<String, Integer>());
+    }
+
+    /**
+     * Stops counting the calls made on the current thread.
+     * @return the calls made since {@link #startCounting()}, by API, or null if calls were not being counted
+     */
+    static public @Nullable Map<String,Integer> stopCounting() {
+        Map<String,Integer> counts = testCalls.get();
+
+        testCalls.remove();
+        return counts;
+    }
+
+    static public boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("dasein.instrument"));
+    }
+
+    static private boolean isService(@Nonnull Class<?> type) {
+        if( !type.isInterface() || !type.getName().startsWith("org.dasein.cloud.") ) {
+            return false;
+        }
+        String name = type.getSimpleName();
+
+        // capabilities cannot be serialized, so only the answers they give are recorded
+        return (name.endsWith("Services") || name.endsWith("Support") || name.endsWith("Capabilities"));
+    }
+
+    private class ServiceHandler implements InvocationHandler {
+        private String service;
+        private Object target;
+
+        public ServiceHandler(@Nonnull String service, @Nonnull Object target) {
+            this.service = service;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if( method.getDeclaringClass().equals(Object.class) ) {
+                if( method.getName().equals("equals") ) {
+                    return (args[0] == proxy);
+                }
+                else if( method.getName().equals("hashCode") ) {
+                    return System.identityHashCode(proxy);
+                }
+                return target.toString();
+            }
+            Class<?> type = method.getReturnType();
+
+            if( isService(type) ) {
+                Object result;
+
+                try {
+                    result = method.invoke(target, args);
+                }
+                catch( InvocationTargetException e ) {
+                    throw e.getCause();
+                }
+                return proxy(type, result);
+            }
+            ProviderCall call = new ProviderCall(DaseinTestManager.getCurrentSuite(), service, target, method, args, interceptors);
+            boolean failed = true;
+            long start = System.nanoTime();
+
+            try {
+                Object result = call.proceed();
+
+                failed = false;
+                return result;
+            }
+            finally {
+                // both audits use the same API names, so the run history sees each call under one name
+                DaseinTestManager.getLatencyAudit().getCounter(call.getSuite(), call.getApi()).recordLatency(System.nanoTime() - start, failed);
+                DaseinTestManager.getAPIAudit().recordCalls(call.getSuite(), call.getApi(), 1L);
+                Map<String,Integer> counts = testCalls.get();
+
+                if( counts != null ) {
+                    Integer count = counts.get(call.getApi());
+
+                    counts.put(call.getApi(), count == null ? 1 : count + 1);
+                }
+            }
+        }
+    }
+
+    static private class Wrapper {
+        private final Object target;
+        private final Object proxy;
+
+        public Wrapper(@Nonnull Object target, @Nonnull Object proxy) {
+            this.target = target;
+            this.proxy = proxy;
+        }
+    }
+
+    // the last object wrapped for each interface; rewrapped whenever the provider hands out a different one
+    private final ConcurrentHashMap<Class<?>,Wrapper> proxies = new ConcurrentHashMap<Class<?>, Wrapper>();
+
+    private CloudProvider delegate;
+
+    public InterceptingCloudProvider(@Nonnull CloudProvider delegate) {
+        this.delegate = delegate;
+        ProviderContext ctx = delegate.getContext();
+
+        if( ctx != null ) {
+            connect(ctx);
+        }
+    }
+
+    /**
+     * @return the provider whose calls are being intercepted
+     */
+    public @Nonnull CloudProvider getDelegate() {
+        return delegate;
+    }
+
+    private @Nullable <T> T wrap(@Nonnull Class<T> type, @Nullable T service) {
+        return type.cast(proxy(type, service));
+    }
+
+    private @Nullable Object proxy(@Nonnull Class<?> type, @Nullable Object service) {
+        if( service == null ) {
+            return null;
+        }
+        Wrapper wrapper = proxies.get(type);
+
+        if( wrapper == null || wrapper.target != service ) {
+            wrapper = new Wrapper(service, Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new ServiceHandler(type.getSimpleName(), service)));
+            proxies.put(type, wrapper);
+        }
+        return wrapper.proxy;
+    }
+
+    @Override
+    public @Nonnull String getCloudName() {
+        return delegate.getCloudName();
+    }
+
+    @Override
+    public @Nonnull String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public @Nonnull ContextRequirements getContextRequirements() {
+        return delegate.getContextRequirements();
+    }
+
+    @Override
+    public @Nullable AdminServices getAdminServices() {
+        return wrap(AdminServices.class, delegate.getAdminServices());
+    }
+
+    @Override
+    public @Nullable CIServices getCIServices() {
+        return wrap(CIServices.class, delegate.getCIServices());
+    }
+
+    @Override
+    public @Nullable ComputeServices getComputeServices() {
+        return wrap(ComputeServices.class, delegate.getComputeServices());
+    }
+
+    @Override
+    public @Nullable CloudProvider getComputeCloud() {
+        CloudProvider cloud = delegate.getComputeCloud();
+
+        // a provider that is its own compute cloud stays its own compute cloud once wrapped
+        return (cloud == delegate ? this : cloud);
+    }
+
+    @Override
+    public @Nonnull DataCenterServices getDataCenterServices() {
+        return wrap(DataCenterServices.class, delegate.getDataCenterServices());
+    }
+
+    @Override
+    public @Nullable IdentityServices getIdentityServices() {
+        return wrap(IdentityServices.class, delegate.getIdentityServices());
+    }
+
+    @Override
+    public @Nullable NetworkServices getNetworkServices() {
+        return wrap(NetworkServices.class, delegate.getNetworkServices());
+    }
+
+    @Override
+    public @Nullable PlatformServices getPlatformServices() {
+        return wrap(PlatformServices.class, delegate.getPlatformServices());
+    }
+
+    @Override
+    public @Nullable StorageServices getStorageServices() {
+        return wrap(StorageServices.class, delegate.getStorageServices());
+    }
+
+    @Override
+    public @Nullable String testContext() {
+        return delegate.testContext();
+    }
+
+    @Override
+    public void close() {
+        proxies.clear();
+        try {
+            delegate.close();
+        }
+        finally {
+            try {
+                super.close();
+            }
+            catch( Throwable t ) {
+                logger.debug("Failed to close wrapper: " + t.getMessage());
+            }
+        }
+    }
+}
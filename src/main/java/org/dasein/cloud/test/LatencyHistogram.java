@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, thread-safe latency histogram in the style of HdrHistogram. Values are recorded in microseconds
+ * into buckets that are exact below 32&micro;s and then split each power of two into 32 linear sub-buckets, which
+ * keeps the error of any reported percentile under about 3% while covering up to roughly 19 hours in 1024 counters.
+ * Values beyond the covered range are counted in the last bucket, but the true maximum is always tracked.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class LatencyHistogram {
+    static private final int  SUB_BITS    = 5;
+    static private final int  SUB_BUCKETS = 1 << SUB_BITS;
+    static private final int  MAX_BIT     = 36;
+    static private final int  BUCKETS     = SUB_BUCKETS + (MAX_BIT - SUB_BITS) * SUB_BUCKETS;
+
+    static private int indexOf(long micros) {
+        if( micros < SUB_BUCKETS ) {
+            return (int)Math.max(0L, micros);
+        }
+        int highest = 63 - Long.numberOfLeadingZeros(micros);
+
+        if( highest >= MAX_BIT ) {
+            return BUCKETS - 1;
+        }
+        int shift = highest - SUB_BITS;
+
+        return SUB_BUCKETS + (shift * SUB_BUCKETS) + (int)((micros >> shift) - SUB_BUCKETS);
+    }
+
+    static private long highestValueOf(int index) {
+        if( index < SUB_BUCKETS ) {
+            return index;
+        }
+        int k = index - SUB_BUCKETS;
+        int shift = k / SUB_BUCKETS;
+        long sub = (k % SUB_BUCKETS) + SUB_BUCKETS;
+
+        return ((sub + 1) << shift) - 1;
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      max    = new AtomicLong(0L);
+    private final AtomicLong      total  = new AtomicLong(0L);
+
+    public LatencyHistogram() { }
+
+    /**
+     * Records a single latency measurement.
+     * @param nanos the measured latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = nanos / 1000L;
+
+        counts.incrementAndGet(indexOf(micros));
+        total.incrementAndGet();
+        long current = max.get();
+
+        while( micros > current && !max.compareAndSet(current, micros) ) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Adds all measurements in the specified histogram to this one.
+     * @param other the histogram to merge into this one
+     */
+    public void add(@Nonnull LatencyHistogram other) {
+        for( int i=0; i<BUCKETS; i++ ) {
+            long c = other.counts.get(i);
+
+            if( c > 0L ) {
+                counts.addAndGet(i, c);
+            }
+        }
+        total.addAndGet(other.total.get());
+        long m = other.max.get();
+        long current = max.get();
+
+        while( m > current && !max.compareAndSet(current, m) ) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return the number of measurements recorded
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @return the largest measurement recorded in milliseconds
+     */
+    public double getMaxMillis() {
+        return max.get() / 1000.0;
+    }
+
+    /**
+     * Provides the value at or below which the specified percentage of measurements fall.
+     * @param percentile the percentile of interest, from 0 to 100
+     * @return the value at the percentile in milliseconds, or 0 if nothing was recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = total.get();
+
+        if( count < 1L ) {
+            return 0.0;
+        }
+        long target = (long)Math.ceil((Math.min(100.0, Math.max(0.0, percentile)) / 100.0) * count);
+        long seen = 0L;
+
+        if( target < 1L ) {
+            target = 1L;
+        }
+        for( int i=0; i<BUCKETS; i++ ) {
+            seen += counts.get(i);
+            if( seen >= target ) {
+                return Math.min(highestValueOf(i), max.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @return a one-line summary of the 50th, 90th and 99th percentiles and the maximum
+     */
+    public @Nonnull String summarize() {
+        return String.format("p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", getPercentileMillis(50.0), getPercentileMillis(90.0), getPercentileMillis(99.0), getMaxMillis());
+    }
+}
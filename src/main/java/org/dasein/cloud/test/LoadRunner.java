@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs selected stateless tests over and over from several threads for a fixed time and reports the throughput
+ * and latency percentiles of every test and of every API the tests called, to find the rate a cloud and its
+ * Dasein implementation can sustain and how they behave under contention. The tests, workers and duration are
+ * set with {@link System} properties:
+ * <pre>
+ *     -Ddasein.load.tests=StatelessVMTests.listVirtualMachines,StatelessImageTests.listMachineImages
+ *     -Ddasein.load.workers=16 -Ddasein.load.duration=300
+ * </pre>
+ * Tests are named by the simple name of a stateless test class and a test method; a fully qualified class name
+ * may be used for test classes outside of {@link StatelessTestSuite}. Workers take the tests in turn until the
+ * duration in seconds (60 by default) is up. The @BeforeClass and @AfterClass methods of each test class run once
+ * around the whole run, while @Before, @After and rules run for every iteration. A test is reported as failed if any
+ * of its iterations failed, and as skipped if none of them ran. Iterations are timed only by this runner; they are
+ * not checked against test budgets and a load run is not added to the run history.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class LoadRunner extends Runner {
+    static private final Logger logger = Logger.getLogger(LoadRunner.class);
+
+    static public final String SUITE = "Load";
+
+    static private final APIAudit audit = new APIAudit("iterations", "failures");
+
+    static public int getWorkers() {
+        return (int)Math.max(1L, DaseinTestManager.getLongProperty("dasein.load.workers", 4L));
+    }
+
+    static public int getDuration() {
+        return (int)Math.max(1L, DaseinTestManager.getLongProperty("dasein.load.duration", 60L));
+    }
+
+    /**
+     * A single test under load.
+     */
+    static private class LoadTest extends TestClassHarness.Test {
+        public AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        public AtomicInteger              skipped = new AtomicInteger(0);
+
+        public LoadTest(@Nonnull TestClassHarness.Test test) {
+            super(test);
+        }
+    }
+
+    private final Description    description;
+    private final List<LoadTest> tests = new ArrayList<LoadTest>();
+
+    public LoadRunner(@Nonnull Class<?> suiteClass) throws InitializationError {
+        String prop = System.getProperty("dasein.load.tests");
+
+        description = Description.createSuiteDescription(suiteClass);
+        if( prop == null || prop.trim().equals("") ) {
+            return;
+        }
+        for( TestClassHarness.Test t : TestClassHarness.select(prop, StatelessTestSuite.class) ) {
+            LoadTest test = new LoadTest(t);
+
+            description.addChild(test.description);
+            tests.add(test);
+        }
+    }
+
+    /**
+     * @return the iterations of every load test, under the suite {@link #SUITE}
+     */
+    static public @Nonnull APIAudit getAudit() {
+        return audit;
+    }
+
+    @Override
+    public Description getDescription() {
+        return description;
+    }
+
+    @Override
+    public void run(@Nonnull RunNotifier notifier) {
+        if( tests.isEmpty() ) {
+            logger.warn("No load tests selected, set dasein.load.tests");
+            return;
+        }
+        DaseinTestManager.beginLoadRun();
+        DaseinTestManager.init();
+        try {
+            Set<TestClassHarness> harnesses = TestClassHarness.classesOf(tests);
+
+            for( TestClassHarness harness : harnesses ) {
+                try {
+                    harness.runClassMethods(BeforeClass.class);
+                }
+                catch( Throwable t ) {
+                    for( LoadTest test : tests ) {
+                        if( test.harness == harness ) {
+                            test.failure.compareAndSet(null, t);
+                        }
+                    }
+                }
+            }
+            try {
+                load();
+            }
+            finally {
+                for( TestClassHarness harness : harnesses ) {
+                    try {
+                        harness.runClassMethods(AfterClass.class);
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Failed to clean up after " + harness.getTestClass().getName() + ": " + t.getMessage());
+                    }
+                }
+            }
+            for( LoadTest test : tests ) {
+                APIAudit.Counter c = audit.getCounterIfPresent(SUITE, test.name);
+                Throwable t = test.failure.get();
+
+                notifier.fireTestStarted(test.description);
+                if( t != null ) {
+                    notifier.fireTestFailure(new Failure(test.description, t));
+                }
+                else if( c == null || c.getCalls() <= test.skipped.get() ) {
+                    notifier.fireTestAssumptionFailed(new Failure(test.description, new AssumptionViolatedException("No iteration of " + test.name + " ran")));
+                }
+                notifier.fireTestFinished(test.description);
+            }
+        }
+        finally {
+            DaseinTestManager.cleanUp();
+            DaseinTestManager.endLoadRun();
+        }
+    }
+
+    private void load() {
+        final List<LoadTest> runnable = new ArrayList<LoadTest>();
+
+        for( LoadTest test : tests ) {
+            if( test.failure.get() == null ) {
+                runnable.add(test);
+            }
+        }
+        if( runnable.isEmpty() ) {
+            return;
+        }
+        int workers = getWorkers();
+        final long duration = getDuration() * 1000L;
+        final AtomicInteger next = new AtomicInteger(0);
+        CloudProvider provider = ProviderPool.acquire(null, null, null);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        logger.info("Running " + runnable.size() + " tests with " + workers + " workers for " + (duration / 1000L) + " seconds");
+        DaseinTestManager.beginConcurrentRun();
+        // worker threads inherit the suite from this thread
+        DaseinTestManager.setCurrentSuite(SUITE);
+        final long start = System.currentTimeMillis();
+        try {
+            for( int i=0; i<workers; i++ ) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        while( System.currentTimeMillis() - start < duration ) {
+                            LoadTest test = runnable.get((next.getAndIncrement() & Integer.MAX_VALUE) % runnable.size());
+                            boolean failed = false;
+                            long begin = System.nanoTime();
+
+                            try {
+                                test.harness.statement(test.method).evaluate();
+                            }
+                            catch( AssumptionViolatedException e ) {
+                                test.skipped.incrementAndGet();
+                            }
+                            catch( Throwable t ) {
+                                failed = true;
+                                test.failure.compareAndSet(null, t);
+                            }
+                            audit.getCounter(SUITE, test.name).recordLatency(System.nanoTime() - begin, failed);
+                        }
+                    }
+                }, "Load-" + (i + 1));
+
+                t.setDaemon(true);
+                threads.add(t);
+                t.start();
+            }
+            for( Thread t : threads ) {
+                try {
+                    t.join();
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        finally {
+            long elapsed = System.currentTimeMillis() - start;
+
+            DaseinTestManager.endConcurrentRun(SUITE, provider);
+            ProviderPool.release(provider);
+            logger.info("");
+            logger.info("-------------- Load Tests -------------");
+            audit.reportThroughput(logger, null, SUITE, elapsed);
+            logger.info("");
+            logger.info("--------------- Load APIs -------------");
+            DaseinTestManager.getLatencyAudit().reportThroughput(logger, null, SUITE, elapsed);
+            logger.info("");
+        }
+    }
+}
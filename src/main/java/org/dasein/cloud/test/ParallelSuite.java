@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A suite runner that executes its test classes concurrently. The number of workers is set with the
+ * dasein.parallel {@link System} property and defaults to 1, in which case the suite behaves exactly like
+ * {@link Suite}. Only suites whose test classes do not change shared cloud state should be run this way:
+ * <pre>
+ *     -Ddasein.parallel=6
+ * </pre>
+ * Tests within a single test class still run one after another on the same worker.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class ParallelSuite extends Suite {
+    static private final Logger logger = Logger.getLogger(ParallelSuite.class);
+
+    static public int getWorkers() {
+        return (int)Math.max(1L, DaseinTestManager.getLongProperty("dasein.parallel", 1L));
+    }
+
+    static private class PooledScheduler implements RunnerScheduler {
+        private ExecutorService executor;
+
+        public PooledScheduler(final @Nonnull String name, int workers) {
+            final AtomicInteger count = new AtomicInteger(0);
+
+            executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                @Override
+                public Thread newThread(@Nonnull Runnable r) {
+                    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        @Override
+        public void schedule(@Nonnull Runnable childStatement) {
+            executor.submit(childStatement);
+        }
+
+        @Override
+        public void finished() {
+            executor.shutdown();
+            try {
+                while( !executor.awaitTermination(1L, TimeUnit.MINUTES) ) {
+                    logger.debug("Waiting for parallel test classes to finish");
+                }
+            }
+            catch( InterruptedException e ) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private int workers;
+
+    public ParallelSuite(@Nonnull Class<?> suiteClass, @Nonnull RunnerBuilder builder) throws InitializationError {
+        super(suiteClass, builder);
+        workers = getWorkers();
+        if( workers > 1 ) {
+            setScheduler(new PooledScheduler(suiteClass.getSimpleName(), workers));
+        }
+    }
+
+    @Override
+    public void run(@Nonnull RunNotifier notifier) {
+        if( workers < 2 ) {
+            super.run(notifier);
+            return;
+        }
+        CloudProvider provider = ProviderPool.acquire(null, null, null);
+
+        logger.info("Running " + getTestClass().getName() + " with " + workers + " workers");
+        DaseinTestManager.beginConcurrentRun();
+        try {
+            super.run(notifier);
+        }
+        finally {
+            DaseinTestManager.endConcurrentRun(getTestClass().getJavaClass().getSimpleName(), provider);
+            ProviderPool.release(provider);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.dasein.cloud.CloudException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A single call made by a test into one of the services of a cloud provider as it passes through the
+ * {@link ProviderInterceptor} chain. Calls are named after the service interface and method, for example
+ * <code>VirtualMachineSupport.listVirtualMachines</code>.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class ProviderCall {
+    private Object[]                  args;
+    private List<ProviderInterceptor> interceptors;
+    private Method                    method;
+    private int                       position;
+    private String                    service;
+    private String                    suite;
+    private Object                    target;
+
+    public ProviderCall(@Nonnull String suite, @Nonnull String service, @Nonnull Object target, @Nonnull Method method, @Nullable Object[] args, @Nonnull List<ProviderInterceptor> interceptors) {
+        this.suite = suite;
+        this.service = service;
+        this.target = target;
+        this.method = method;
+        this.args = (args == null ? new Object[0] : args);
+        this.interceptors = interceptors;
+        this.position = 0;
+    }
+
+    /**
+     * @return the name of the call in the form <code>Service.method</code>
+     */
+    public @Nonnull String getApi() {
+        return service + "." + method.getName();
+    }
+
+    /**
+     * @return true if the called method may throw a {@link CloudException}, so an interceptor may fail it with one
+     */
+    public boolean declaresCloudException() {
+        for( Class<?> type : method.getExceptionTypes() ) {
+            if( type.isAssignableFrom(CloudException.class) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public @Nonnull Object[] getArguments() {
+        return args;
+    }
+
+    public @Nonnull Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the simple name of the service interface being called
+     */
+    public @Nonnull String getService() {
+        return service;
+    }
+
+    /**
+     * @return the test suite that made the call
+     */
+    public @Nonnull String getSuite() {
+        return suite;
+    }
+
+    public @Nonnull Object getTarget() {
+        return target;
+    }
+
+    /**
+     * Passes the call on to the next interceptor in the chain or, at the end of the chain, to the cloud provider.
+     * An interceptor may proceed more than once, for example to retry a failed call.
+     * @return the result of the call
+     * @throws Throwable the exception thrown by the cloud provider or a later interceptor
+     */
+    public @Nullable Object proceed() throws Throwable {
+        int current = position;
+
+        try {
+            if( current < interceptors.size() ) {
+                position = current + 1;
+                return interceptors.get(current).intercept(this);
+            }
+            try {
+                return method.invoke(target, args);
+            }
+            catch( InvocationTargetException e ) {
+                throw e.getCause();
+            }
+        }
+        finally {
+            position = current;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Hook around calls made by the tests into the services of a cloud provider. Interceptors are registered with
+ * {@link InterceptingCloudProvider#addInterceptor(ProviderInterceptor)} and run in registration order. An interceptor
+ * normally returns the result of {@link ProviderCall#proceed()}, but it may also answer the call itself or throw.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public interface ProviderInterceptor {
+    /**
+     * Intercepts a call into the cloud provider.
+     * @param call the call being made
+     * @return the value to hand back to the caller
+     * @throws Throwable any exception the caller should see
+     */
+    public @Nullable Object intercept(@Nonnull ProviderCall call) throws Throwable;
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connected cloud providers to the test classes so that a full test run authenticates with the cloud once
+ * per distinct set of credentials instead of once per test class. Providers are keyed by provider class, account,
+ * region and any credential overrides. While the pool is open (between {@link DaseinTestManager#init()} and
+ * {@link DaseinTestManager#cleanUp()}), released providers stay connected for the next suite and are closed together
+ * when the pool closes. Outside of an open pool, a provider is closed as soon as its last user releases it, which
+ * matches the behavior of running a single test class on its own.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class ProviderPool {
+    static private final Logger logger = Logger.getLogger(ProviderPool.class);
+
+    static private class Entry {
+        public CloudProvider provider;
+        public int           users;
+    }
+
+    static private final Map<String,Entry> providers = new HashMap<String, Entry>();
+
+    static private int     connects;
+    static private boolean open;
+    static private int     reuses;
+
+    /**
+     * Provides a connected cloud provider for the specified credentials, connecting a new one only if no provider
+     * for the same configuration is already pooled. Each call must be matched by a call to {@link #release(CloudProvider)}.
+     * @param overrideAccount an account number to use in place of the accountNumber system property
+     * @param overrideShared a shared key to use in place of the configured shared key
+     * @param overrideSecret a secret key to use in place of the configured secret key
+     * @return a connected cloud provider
+     */
+    static public @Nonnull CloudProvider acquire(@Nullable String overrideAccount, @Nullable String overrideShared, @Nullable String overrideSecret) {
+        String key = getKey(overrideAccount, overrideShared, overrideSecret);
+
+        synchronized( providers ) {
+            Entry entry = providers.get(key);
+
+            if( entry != null ) {
+                entry.users++;
+                reuses++;
+                return entry.provider;
+            }
+        }
+        // connect outside the lock, the authentication handshake is the slow part
+        CloudProvider provider = InterceptingCloudProvider.instrument(DaseinTestManager.constructProvider(overrideAccount, overrideShared, overrideSecret));
+
+        synchronized( providers ) {
+            connects++;
+            Entry entry = providers.get(key);
+
+            if( entry != null ) {
+                // somebody else connected the same configuration while we were connecting
+                entry.users++;
+                closeQuietly(provider);
+                return entry.provider;
+            }
+            entry = new Entry();
+            entry.provider = provider;
+            entry.users = 1;
+            providers.put(key, entry);
+            return provider;
+        }
+    }
+
+    /**
+     * Releases a provider acquired from this pool. The provider is closed only if the pool is not open and nobody
+     * else is using it.
+     * @param provider the provider being released
+     */
+    static public void release(@Nonnull CloudProvider provider) {
+        synchronized( providers ) {
+            for( Map.Entry<String,Entry> e : providers.entrySet() ) {
+                Entry entry = e.getValue();
+
+                if( entry.provider == provider ) {
+                    entry.users--;
+                    if( entry.users <= 0 && !open ) {
+                        providers.remove(e.getKey());
+                        closeQuietly(provider);
+                    }
+                    return;
+                }
+            }
+        }
+        // not one of ours
+        closeQuietly(provider);
+    }
+
+    /**
+     * Keeps released providers connected until {@link #close()} is called.
+     */
+    static public void open() {
+        synchronized( providers ) {
+            open = true;
+        }
+    }
+
+    /**
+     * Closes all pooled providers and returns the pool to its default state of closing providers on release.
+     */
+    static public void close() {
+        List<CloudProvider> toClose = new ArrayList<CloudProvider>();
+
+        synchronized( providers ) {
+            open = false;
+            for( Entry entry : providers.values() ) {
+                if( entry.users > 0 ) {
+                    logger.warn("Closing a pooled provider still held by " + entry.users + " user(s)");
+                }
+                toClose.add(entry.provider);
+            }
+            providers.clear();
+        }
+        for( CloudProvider provider : toClose ) {
+            closeQuietly(provider);
+        }
+    }
+
+    /**
+     * @return the number of times a provider actually had to connect to the cloud
+     */
+    static public int getConnectCount() {
+        synchronized( providers ) {
+            return connects;
+        }
+    }
+
+    /**
+     * @return the number of connections avoided by handing out an already connected provider
+     */
+    static public int getReuseCount() {
+        synchronized( providers ) {
+            return reuses;
+        }
+    }
+
+    static private void closeQuietly(@Nonnull CloudProvider provider) {
+        try {
+            provider.close();
+        }
+        catch( Throwable t ) {
+            logger.warn("Failed to close provider: " + t.getMessage());
+        }
+    }
+
+    static private @Nonnull String getKey(@Nullable String overrideAccount, @Nullable String overrideShared, @Nullable String overrideSecret) {
+        String account = (overrideAccount == null ? System.getProperty("accountNumber") : overrideAccount);
+
+        return System.getProperty("providerClass") + "|" + account + "|" + System.getProperty("regionId") + "|" + overrideShared + "|" + overrideSecret;
+    }
+}
@@ -0,0 +1,474 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.network.NetworkResources;
+import org.dasein.cloud.test.platform.PlatformResources;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps concurrent provisioning within the quotas and rate limits of the account under test. It has two parts:
+ * <ul>
+ *     <li>The provision methods of the resource modules take a slot for their resource type with
+ *     {@link #acquire(String)} and give it back with {@link #release(String)}. Callers beyond the per-type limit
+ *     wait in line instead of failing.</li>
+ *     <li>Installed as a {@link ProviderInterceptor}, the scheduler paces every API with a token bucket. A throttled
+ *     call is retried after a pause and the bucket slows down, then speeds up again as calls succeed. A call that
+ *     exceeds a quota while a slot is held lowers the limit for that type and is retried after a resource of the
+ *     same type is torn down, whether by clean-up or by a test. A teardown is any successful terminate, remove,
+ *     delete or release call for a resource of that type. Unless other tests are running concurrently, it
+ *     fails at once if every provisioning of the type is waiting on the quota, since none of them will free
+ *     anything.</li>
+ * </ul>
+ * Limits are set with the following {@link System} properties, where 0 means no limit:
+ * <pre>
+ *     -Ddasein.provision.limit=4 -Ddasein.provision.limit.compute.vm=2
+ *     -Ddasein.rate=0 -Ddasein.rate.VirtualMachineSupport.launch=1
+ *     -Ddasein.rate.retries=5 -Ddasein.provision.quotaWait=10
+ * </pre>
+ * Rates are in calls per second. An API without a rate is not paced until it is first throttled. The quota wait is in
+ * minutes. Waits and throttles are recorded in {@link #getAudit()}.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class ProvisioningScheduler implements ProviderInterceptor {
+    static private final Logger logger = Logger.getLogger(ProvisioningScheduler.class);
+
+    static private final double THROTTLED_RATE = 5.0;
+    static private final double MIN_RATE       = 0.1;
+    static private final double MAX_ADAPTIVE   = 50.0;
+    static private final double RATE_STEP      = 0.05;
+    static private final int    RECOVERY       = 10;
+
+    static private final APIAudit audit = new APIAudit("waits", "throttles");
+
+    /**
+     * The resource type whose quota each teardown API frees.
+     */
+    static private final Map<String,String> TEARDOWNS = new HashMap<String, String>();
+
+    static {
+        TEARDOWNS.put("VirtualMachineSupport.terminate", ComputeResources.VM_TEARDOWN);
+        TEARDOWNS.put("VolumeSupport.remove", ComputeResources.VOLUME_TEARDOWN);
+        TEARDOWNS.put("SnapshotSupport.remove", ComputeResources.SNAPSHOT_TEARDOWN);
+        TEARDOWNS.put("MachineImageSupport.remove", ComputeResources.IMAGE_TEARDOWN);
+        TEARDOWNS.put("IpAddressSupport.releaseFromPool", NetworkResources.IP_TEARDOWN);
+        TEARDOWNS.put("FirewallSupport.delete", NetworkResources.FIREWALL_TEARDOWN);
+        TEARDOWNS.put("NetworkFirewallSupport.removeFirewall", NetworkResources.NETWORK_FIREWALL_TEARDOWN);
+        TEARDOWNS.put("LoadBalancerSupport.removeLoadBalancer", NetworkResources.LB_TEARDOWN);
+        TEARDOWNS.put("LoadBalancerSupport.removeSSLCertificate", NetworkResources.CERTIFICATE_TEARDOWN);
+        TEARDOWNS.put("VLANSupport.removeVlan", NetworkResources.VLAN_TEARDOWN);
+        TEARDOWNS.put("VLANSupport.removeSubnet", NetworkResources.SUBNET_TEARDOWN);
+        TEARDOWNS.put("VLANSupport.removeInternetGateway", NetworkResources.GATEWAY_TEARDOWN);
+        TEARDOWNS.put("VLANSupport.removeInternetGatewayById", NetworkResources.GATEWAY_TEARDOWN);
+        TEARDOWNS.put("VLANSupport.removeRoutingTable", NetworkResources.ROUTE_TABLE_TEARDOWN);
+        TEARDOWNS.put("DNSSupport.deleteDnsZone", NetworkResources.DNS_TEARDOWN);
+        TEARDOWNS.put("CDNSupport.delete", PlatformResources.CDN_RESOURCE);
+        TEARDOWNS.put("MQSupport.removeMessageQueue", PlatformResources.MQ_RESOURCE);
+        TEARDOWNS.put("RelationalDatabaseSupport.removeDatabase", PlatformResources.RDBMS_RESOURCE);
+        TEARDOWNS.put("PushNotificationSupport.removeTopic", PlatformResources.TOPIC_RESOURCE);
+    }
+
+    static private final Map<String,Slots> slots = new HashMap<String, Slots>();
+
+    static private final ThreadLocal<LinkedList<String>> held = new ThreadLocal<LinkedList<String>>() {
+        @Override
+        protected LinkedList<String> initialValue() {
+            return new LinkedList<String>();
+        }
+    };
+
+    static private ProvisioningScheduler installed;
+
+    /**
+     * The provisioning slots for one resource type.
+     */
+    static class Slots {
+        public int max;
+        public int limit;
+        public int ceiling;
+        public int inFlight;
+        public int releases;
+        public int freed;
+        public int quotaWaits;
+
+        public Slots(int max) {
+            this.max = max;
+            this.limit = max;
+        }
+
+        /**
+         * Lowers the limit below the number of provisions in flight after one of them exceeded the quota. For a type
+         * without a limit, the number in flight when the quota was first hit is kept as the point at which the type
+         * is unlimited again.
+         */
+        public void lower() {
+            if( limit == 0 ) {
+                ceiling = inFlight;
+            }
+            limit = Math.max(1, inFlight - 1);
+        }
+
+        /**
+         * Gives back a slot. Every few releases, a lowered limit goes up by one until it is back at
+         * the configured limit or, for a type without a limit, at the level where the quota was hit.
+         */
+        public void release() {
+            inFlight--;
+            releases++;
+            if( limit > 0 && limit != max && releases % RECOVERY == 0 ) {
+                limit++;
+                if( max == 0 && limit >= ceiling ) {
+                    limit = 0;
+                    ceiling = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * The token bucket pacing one API.
+     */
+    static private class Bucket {
+        private final double max;
+        private double       rate;
+        private double       tokens;
+        private long         last;
+
+        public Bucket(double max) {
+            this.max = max;
+            this.rate = max;
+            this.tokens = 1.0;
+            this.last = System.nanoTime();
+        }
+
+        /**
+         * Takes a token.
+         * @return how long the caller must wait before using the token, in milliseconds
+         */
+        public synchronized long reserve() {
+            if( rate <= 0.0 ) {
+                return 0L;
+            }
+            long now = System.nanoTime();
+
+            tokens = Math.min(Math.max(1.0, rate), tokens + ((now - last) / 1000000000.0) * rate);
+            last = now;
+            tokens -= 1.0;
+            return (tokens >= 0.0 ? 0L : (long)Math.ceil((-tokens / rate) * 1000.0));
+        }
+
+        public synchronized void succeeded() {
+            if( rate > 0.0 && rate != max ) {
+                rate += RATE_STEP;
+                if( max > 0.0 && rate > max ) {
+                    rate = max;
+                }
+                else if( max <= 0.0 && rate > MAX_ADAPTIVE ) {
+                    // fast enough that it no longer needs pacing
+                    rate = 0.0;
+                }
+            }
+        }
+
+        public synchronized double throttled() {
+            rate = (rate <= 0.0 ? THROTTLED_RATE : Math.max(MIN_RATE, rate / 2.0));
+            tokens = 0.0;
+            return rate;
+        }
+    }
+
+    /**
+     * Adds the scheduler to the provider interceptor chain. Nothing happens if it is already installed.
+     */
+    static public synchronized void install() {
+        if( installed != null || !InterceptingCloudProvider.isEnabled() ) {
+            return;
+        }
+        installed = new ProvisioningScheduler();
+        InterceptingCloudProvider.addInterceptor(installed);
+    }
+
+    /**
+     * Removes the installed scheduler, if any, from the provider interceptor chain.
+     */
+    static public synchronized void uninstall() {
+        if( installed != null ) {
+            InterceptingCloudProvider.removeInterceptor(installed);
+            installed = null;
+        }
+    }
+
+    /**
+     * @return the time spent waiting for slots and tokens and the throttles seen, per API and per suite
+     */
+    static public @Nonnull APIAudit getAudit() {
+        return audit;
+    }
+
+    static private double getRate(@Nonnull String api) {
+        String prop = System.getProperty("dasein.rate." + api);
+
+        if( prop == null || prop.equals("") ) {
+            prop = System.getProperty("dasein.rate");
+        }
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return Math.max(0.0, Double.parseDouble(prop.trim()));
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid rate for " + api + ": " + prop);
+            }
+        }
+        return 0.0;
+    }
+
+    static private @Nonnull Slots getSlots(@Nonnull String type) {
+        synchronized( slots ) {
+            Slots s = slots.get(type);
+
+            if( s == null ) {
+                s = new Slots((int)DaseinTestManager.getLongProperty("dasein.provision.limit." + type, DaseinTestManager.getLongProperty("dasein.provision.limit", 4L)));
+                slots.put(type, s);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Takes a provisioning slot for the specified resource type, waiting for one to free up if necessary. A thread
+     * that already holds a slot for the type, such as a provision method calling another, does not wait again.
+     * Every call must be matched by a call to {@link #release(String)}.
+     * @param type the type of resource about to be provisioned
+     * @throws CloudException the thread was interrupted while waiting
+     */
+    static public void acquire(@Nonnull String type) throws CloudException {
+        LinkedList<String> types = held.get();
+
+        if( !types.contains(type) ) {
+            Slots s = getSlots(type);
+            long start = System.nanoTime();
+            boolean waited = false;
+
+            synchronized( s ) {
+                while( s.limit > 0 && s.inFlight >= s.limit ) {
+                    waited = true;
+                    try {
+                        s.wait();
+                    }
+                    catch( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        throw new CloudException("Interrupted while waiting to provision " + type);
+                    }
+                }
+                s.inFlight++;
+            }
+            if( waited ) {
+                audit.getCounter(DaseinTestManager.getCurrentSuite(), "queue." + type).recordLatency(System.nanoTime() - start, false);
+            }
+        }
+        types.addFirst(type);
+    }
+
+    /**
+     * Gives back a slot taken with {@link #acquire(String)}.
+     * @param type the type of resource that was provisioned
+     */
+    static public void release(@Nonnull String type) {
+        LinkedList<String> types = held.get();
+
+        types.remove(type);
+        if( types.contains(type) ) {
+            return;
+        }
+        Slots s = getSlots(type);
+
+        synchronized( s ) {
+            s.release();
+            s.notifyAll();
+        }
+    }
+
+    /**
+     * Tells provisioning waiting on the quota for the specified resource type that a resource of that type is gone.
+     * @param type the type of resource that was torn down
+     */
+    static private void deprovisioned(@Nonnull String type) {
+        Slots s = getSlots(type);
+
+        synchronized( s ) {
+            s.freed++;
+            s.notifyAll();
+        }
+    }
+
+    static private boolean isThrottled(@Nonnull Throwable t) {
+        if( !(t instanceof CloudException) ) {
+            return false;
+        }
+        CloudException e = (CloudException)t;
+        String code = e.getProviderCode();
+
+        if( CloudErrorType.THROTTLING.equals(e.getErrorType()) || e.getHttpCode() == 429 ) {
+            return true;
+        }
+        return (code != null && (code.contains("Throttl") || code.contains("RateExceeded") || code.equals("RequestLimitExceeded")));
+    }
+
+    static private boolean isOverQuota(@Nonnull Throwable t) {
+        if( !(t instanceof CloudException) ) {
+            return false;
+        }
+        CloudException e = (CloudException)t;
+        String code = e.getProviderCode();
+
+        if( CloudErrorType.QUOTA.equals(e.getErrorType()) || CloudErrorType.CAPACITY.equals(e.getErrorType()) ) {
+            return true;
+        }
+        return (code != null && code.endsWith("LimitExceeded") && !code.equals("RequestLimitExceeded"));
+    }
+
+    private final ConcurrentMap<String,Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+    private final long quotaWait;
+    private final int  retries;
+
+    public ProvisioningScheduler() {
+        retries = (int)DaseinTestManager.getLongProperty("dasein.rate.retries", 5L);
+        quotaWait = DaseinTestManager.getLongProperty("dasein.provision.quotaWait", 10L) * CalendarWrapper.MINUTE;
+    }
+
+    private @Nonnull Bucket getBucket(@Nonnull String api) {
+        Bucket bucket = buckets.get(api);
+
+        if( bucket == null ) {
+            Bucket tmp = new Bucket(getRate(api));
+
+            bucket = buckets.putIfAbsent(api, tmp);
+            if( bucket == null ) {
+                bucket = tmp;
+            }
+        }
+        return bucket;
+    }
+
+    @Override
+    public @Nullable Object intercept(@Nonnull ProviderCall call) throws Throwable {
+        String api = call.getApi();
+        Bucket bucket = getBucket(api);
+        long quotaDeadline = 0L;
+        int throttles = 0;
+
+        while( true ) {
+            long wait = bucket.reserve();
+
+            if( wait > 0L ) {
+                audit.getCounter(call.getSuite(), api).recordLatency(wait * 1000000L, false);
+                Thread.sleep(wait);
+            }
+            try {
+                Object result = call.proceed();
+
+                bucket.succeeded();
+                String freed = TEARDOWNS.get(api);
+
+                if( freed != null ) {
+                    deprovisioned(freed);
+                }
+                return result;
+            }
+            catch( Throwable t ) {
+                if( isThrottled(t) && throttles < retries ) {
+                    throttles++;
+                    audit.getCounter(call.getSuite(), api).record(0L, 1L);
+                    logger.debug("Throttled on " + api + ", slowing down to " + bucket.throttled() + " calls/s");
+                    continue;
+                }
+                String type = held.get().peekFirst();
+
+                if( type != null && isOverQuota(t) ) {
+                    if( quotaDeadline == 0L ) {
+                        quotaDeadline = System.currentTimeMillis() + quotaWait;
+                    }
+                    if( awaitQuota(type, call.getSuite(), quotaDeadline) ) {
+                        continue;
+                    }
+                }
+                throw t;
+            }
+        }
+    }
+
+    /**
+     * Lowers the limit for a resource type whose quota was exceeded and waits for a resource of that type to be torn
+     * down. Finished provisioning uses up quota rather than freeing it, so only a successful teardown call seen by
+     * {@link #intercept(ProviderCall)} ends the wait.
+     * @return true if the call should be retried
+     */
+    private boolean awaitQuota(@Nonnull String type, @Nonnull String suite, long deadline) throws InterruptedException {
+        Slots s = getSlots(type);
+        long start = System.nanoTime();
+
+        synchronized( s ) {
+            // tests running alongside may still tear something down
+            boolean concurrent = DaseinTestManager.isConcurrent();
+
+            if( s.inFlight < 2 && !concurrent ) {
+                // nobody else is provisioning or testing, so nothing will free up
+                return false;
+            }
+            s.lower();
+            logger.info("Quota exceeded for " + type + ", provisioning at most " + s.limit + " at a time");
+            int freed = s.freed;
+
+            s.quotaWaits++;
+            try {
+                while( s.freed == freed ) {
+                    long remaining = deadline - System.currentTimeMillis();
+
+                    // once everybody provisioning this type is waiting here and no other test is running, nobody will tear anything down
+                    if( remaining <= 0L || (s.quotaWaits >= s.inFlight && !concurrent) ) {
+                        s.notifyAll();
+                        return false;
+                    }
+                    s.wait(remaining);
+                }
+            }
+            finally {
+                s.quotaWaits--;
+            }
+        }
+        audit.getCounter(suite, "queue." + type).recordLatency(System.nanoTime() - start, true);
+        return true;
+    }
+}
@@ -0,0 +1,438 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal of every stateful resource the tests provision and de-provision, so that resources left behind
+ * by a killed test run can be found by the next one. Each event is a single tab-separated line holding the event,
+ * timestamp, cloud, resource type, resource ID, label and the ID of the resource it depends on. Writes go through a
+ * buffer that a background thread flushes and forces to disk every dasein.ledger.sync milliseconds (250 by default),
+ * so recording never waits on the disk and a crash loses at most the last interval. A line torn by a crash is skipped
+ * when the journal is read back.
+ * <p>
+ * The journal lives in the file named by the dasein.ledger property (dasein-resources.ledger in the working directory
+ * by default) and is compacted to the resources still alive whenever it is opened. Set dasein.ledger to false to turn
+ * it off. What happens to resources left behind by an earlier run against the same cloud, account and region is up
+ * to the dasein.recover property:
+ * </p>
+ * <ul>
+ *     <li>clean (default) - tear them down before any test runs</li>
+ *     <li>adopt - hand them to the tests under their original labels so they are reused, then tear them down with everything else</li>
+ *     <li>ignore - leave them alone and keep them in the journal</li>
+ * </ul>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class ResourceLedger {
+    static private final Logger logger = Logger.getLogger(ResourceLedger.class);
+
+    static public final String ADOPT  = "adopt";
+    static public final String CLEAN  = "clean";
+    static public final String IGNORE = "ignore";
+
+    static private final String DEPROVISION = "-";
+    static private final String PROVISION   = "+";
+
+    /**
+     * A resource provisioned by a test run and not yet de-provisioned.
+     */
+    static public class Entry {
+        private String dependsOn;
+        private String id;
+        private String label;
+        private long   timestamp;
+        private String type;
+
+        private Entry(@Nonnull String type, @Nonnull String id, @Nonnull String label, @Nullable String dependsOn, long timestamp) {
+            this.type = type;
+            this.id = id;
+            this.label = label;
+            this.dependsOn = dependsOn;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @return the ID of the resource this one was provisioned into, such as the VLAN of a subnet, if any
+         */
+        public @Nullable String getDependsOn() {
+            return dependsOn;
+        }
+
+        public @Nonnull String getId() {
+            return id;
+        }
+
+        public @Nonnull String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return when the resource was provisioned, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public @Nonnull String getType() {
+            return type;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return type + ":" + id + " [" + label + "]";
+        }
+    }
+
+    static private final Object lock = new Object();
+
+    static private boolean          dirty;
+    static private FileOutputStream out;
+    static private String           scope;
+    static private Thread           syncer;
+    static private Writer           writer;
+
+    /**
+     * @return true unless the journal has been turned off with -Ddasein.ledger=false
+     */
+    static public boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("dasein.ledger"));
+    }
+
+    static public @Nonnull File getFile() {
+        String prop = System.getProperty("dasein.ledger");
+
+        if( prop == null || prop.equals("") ) {
+            prop = "dasein-resources.ledger";
+        }
+        return new File(prop);
+    }
+
+    /**
+     * @return what to do with resources left behind by an earlier run: {@link #CLEAN}, {@link #ADOPT} or {@link #IGNORE}
+     */
+    static public @Nonnull String getRecoveryMode() {
+        String prop = System.getProperty("dasein.recover");
+
+        if( prop == null || prop.equals("") ) {
+            return CLEAN;
+        }
+        prop = prop.trim().toLowerCase();
+        if( !prop.equals(CLEAN) && !prop.equals(ADOPT) && !prop.equals(IGNORE) ) {
+            logger.warn("Invalid value for dasein.recover: " + prop);
+            return CLEAN;
+        }
+        return prop;
+    }
+
+    static private long getSyncInterval() {
+        String prop = System.getProperty("dasein.ledger.sync");
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return Math.max(10L, Long.parseLong(prop.trim()));
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.ledger.sync: " + prop);
+            }
+        }
+        return 250L;
+    }
+
+    /**
+     * Opens the journal for recording, compacting it to the resources still alive in the process.
+     * @return the resources left behind by earlier runs against the same cloud, account and region, oldest first
+     */
+    static public @Nonnull List<Entry> open() {
+        List<Entry> orphans = new ArrayList<Entry>();
+
+        if( !isEnabled() ) {
+            return orphans;
+        }
+        synchronized( lock ) {
+            if( writer != null ) {
+                return orphans;
+            }
+            File file = getFile();
+            Map<String,String[]> live = read(file);
+
+            scope = System.getProperty("providerClass") + "|" + System.getProperty("accountNumber") + "|" + System.getProperty("regionId");
+            for( String[] fields : live.values() ) {
+                if( scope.equals(fields[2]) ) {
+                    long timestamp = 0L;
+
+                    try {
+                        timestamp = Long.parseLong(fields[1]);
+                    }
+                    catch( NumberFormatException ignore ) {
+                        // ignore
+                    }
+                    orphans.add(new Entry(fields[3], fields[4], fields[5], fields[6].equals("") ? null : fields[6], timestamp));
+                }
+            }
+            try {
+                compact(file, live);
+                out = new FileOutputStream(file, true);
+                writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            }
+            catch( IOException e ) {
+                logger.warn("Unable to open the resource ledger " + file.getAbsolutePath() + ", resources will not be tracked: " + e.getMessage());
+                closeQuietly();
+                return orphans;
+            }
+            final long interval = getSyncInterval();
+
+            syncer = new Thread("Resource Ledger") {
+                @Override
+                public void run() {
+                    while( !isInterrupted() ) {
+                        try {
+                            Thread.sleep(interval);
+                        }
+                        catch( InterruptedException e ) {
+                            return;
+                        }
+                        sync();
+                    }
+                }
+            };
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+        if( !orphans.isEmpty() ) {
+            logger.warn(orphans.size() + " resource(s) left behind by an earlier test run: " + orphans);
+        }
+        return orphans;
+    }
+
+    /**
+     * Records the provisioning of a stateful test resource. Does nothing if the journal is not open.
+     * @param type the type of resource, such as compute.vm
+     * @param id the provider ID of the resource
+     * @param label the label under which the tests know the resource
+     * @param dependsOn the ID of the resource this one was provisioned into, if any
+     */
+    static public void provisioned(@Nonnull String type, @Nonnull String id, @Nonnull String label, @Nullable String dependsOn) {
+        append(PROVISION, type, id, label, dependsOn);
+    }
+
+    /**
+     * Records that a stateful test resource is gone. Does nothing if the journal is not open.
+     * @param type the type of resource, such as compute.vm
+     * @param id the provider ID of the resource
+     */
+    static public void deprovisioned(@Nonnull String type, @Nonnull String id) {
+        append(DEPROVISION, type, id, null, null);
+    }
+
+    /**
+     * Forces everything recorded so far to disk and closes the journal.
+     */
+    static public void close() {
+        synchronized( lock ) {
+            if( syncer != null ) {
+                syncer.interrupt();
+                syncer = null;
+            }
+            sync();
+            closeQuietly();
+        }
+    }
+
+    static private void append(@Nonnull String event, @Nonnull String type, @Nonnull String id, @Nullable String label, @Nullable String dependsOn) {
+        synchronized( lock ) {
+            if( writer == null ) {
+                return;
+            }
+            try {
+                writer.write(event + "\t" + System.currentTimeMillis() + "\t" + escape(scope) + "\t" + escape(type) + "\t" + escape(id) + "\t" + escape(label) + "\t" + escape(dependsOn) + "\n");
+                dirty = true;
+            }
+            catch( IOException e ) {
+                logger.warn("Failed to record " + type + " " + id + " in the resource ledger: " + e.getMessage());
+            }
+        }
+    }
+
+    static private void sync() {
+        synchronized( lock ) {
+            if( !dirty || writer == null ) {
+                return;
+            }
+            try {
+                writer.flush();
+                out.getChannel().force(false);
+                dirty = false;
+            }
+            catch( IOException e ) {
+                logger.warn("Failed to sync the resource ledger: " + e.getMessage());
+            }
+        }
+    }
+
+    static private void closeQuietly() {
+        try {
+            if( writer != null ) {
+                writer.close();
+            }
+            else if( out != null ) {
+                out.close();
+            }
+        }
+        catch( Throwable ignore ) {
+            // ignore
+        }
+        writer = null;
+        out = null;
+        dirty = false;
+    }
+
+    static private @Nonnull Map<String,String[]> read(@Nonnull File file) {
+        Map<String,String[]> live = new LinkedHashMap<String, String[]>();
+
+        if( !file.exists() ) {
+            return live;
+        }
+        BufferedReader reader = null;
+
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+
+            while( (line = reader.readLine()) != null ) {
+                String[] fields = line.split("\t", -1);
+
+                if( fields.length != 7 || fields[4].equals("") ) {
+                    // most likely the last line of a run that died mid-write
+                    logger.debug("Skipping malformed resource ledger line: " + line);
+                    continue;
+                }
+                for( int i=0; i<fields.length; i++ ) {
+                    fields[i] = unescape(fields[i]);
+                }
+                String key = fields[2] + "\t" + fields[3] + "\t" + fields[4];
+
+                if( fields[0].equals(PROVISION) ) {
+                    live.put(key, fields);
+                }
+                else if( fields[0].equals(DEPROVISION) ) {
+                    live.remove(key);
+                }
+            }
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to read the resource ledger " + file.getAbsolutePath() + ": " + e.getMessage());
+        }
+        finally {
+            if( reader != null ) {
+                try {
+                    reader.close();
+                }
+                catch( Throwable ignore ) {
+                    // ignore
+                }
+            }
+        }
+        return live;
+    }
+
+    static private void compact(@Nonnull File file, @Nonnull Map<String,String[]> live) throws IOException {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+
+        try {
+            Writer w = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+
+            for( String[] fields : live.values() ) {
+                StringBuilder str = new StringBuilder();
+
+                for( int i=0; i<fields.length; i++ ) {
+                    if( i > 0 ) {
+                        str.append("\t");
+                    }
+                    str.append(escape(fields[i]));
+                }
+                w.write(str.append("\n").toString());
+            }
+            w.flush();
+            stream.getChannel().force(false);
+        }
+        finally {
+            stream.close();
+        }
+        if( !tmp.renameTo(file) ) {
+            // some platforms will not rename over an existing file
+            if( !file.delete() || !tmp.renameTo(file) ) {
+                throw new IOException("Unable to replace " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    static private @Nonnull String escape(@Nullable String value) {
+        if( value == null ) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static private @Nonnull String unescape(@Nonnull String value) {
+        if( value.indexOf('\\') < 0 ) {
+            return value;
+        }
+        StringBuilder str = new StringBuilder();
+
+        for( int i=0; i<value.length(); i++ ) {
+            char c = value.charAt(i);
+
+            if( c == '\\' && i+1 < value.length() ) {
+                char n = value.charAt(++i);
+
+                switch( n ) {
+                    case 't': str.append('\t'); break;
+                    case 'n': str.append('\n'); break;
+                    case 'r': str.append('\r'); break;
+                    default: str.append(n); break;
+                }
+            }
+            else {
+                str.append(c);
+            }
+        }
+        return str.toString();
+    }
+}
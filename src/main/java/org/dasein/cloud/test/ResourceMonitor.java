@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples the heap, live threads, open file descriptors and garbage collection time of the JVM the provider under
+ * test runs in and detects steady growth across a long run. A metric is flagged as growing when the run is split
+ * into windows and the lowest value of each window is higher than that of the window before. Using the floor of
+ * each window ignores the ups and downs of normal work, so only growth that survives garbage collection and the
+ * clean up between rounds is flagged. Garbage collection time is judged by its share of each window instead.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class ResourceMonitor {
+    static private final int WINDOWS = 4;
+
+    /**
+     * The state of the JVM at one point in time.
+     */
+    static public class Sample {
+        public long descriptors;
+        public long gcMillis;
+        public long heap;
+        public long threads;
+        public long timestamp;
+    }
+
+    static private long getOpenFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        try {
+            // only available on Unix JVMs, and not part of the public API
+            Class<?> unix = Class.forName("com.sun.management.UnixOperatingSystemMXBean");
+
+            if( unix.isInstance(os) ) {
+                Method m = unix.getMethod("getOpenFileDescriptorCount");
+
+                return ((Number)m.invoke(os)).longValue();
+            }
+        }
+        catch( Throwable ignore ) {
+            // ignore
+        }
+        return -1L;
+    }
+
+    static private long getCollectionMillis() {
+        long total = 0L;
+
+        for( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ) {
+            long t = gc.getCollectionTime();
+
+            if( t > 0L ) {
+                total += t;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Checks whether the floor of the specified values rises from each window of the run to the next.
+     * @param values the values in the order they were sampled
+     * @return true if the values grow steadily, false if not or if there are too few values to tell
+     */
+    static public boolean isGrowing(@Nonnull long[] values) {
+        if( values.length < WINDOWS * 2 ) {
+            return false;
+        }
+        long previous = Long.MIN_VALUE;
+
+        for( int w=0; w<WINDOWS; w++ ) {
+            int from = (values.length * w) / WINDOWS;
+            int to = (values.length * (w + 1)) / WINDOWS;
+            long floor = Long.MAX_VALUE;
+
+            for( int i=from; i<to; i++ ) {
+                floor = Math.min(floor, values[i]);
+            }
+            if( floor <= previous ) {
+                return false;
+            }
+            previous = floor;
+        }
+        return true;
+    }
+
+    private final List<Sample> samples = new ArrayList<Sample>();
+
+    /**
+     * Takes a sample.
+     * @param collect true to ask for a full garbage collection first, so the heap figure is close to live data
+     * @return the new sample
+     */
+    public synchronized @Nonnull Sample sample(boolean collect) {
+        if( collect ) {
+            System.gc();
+        }
+        Sample s = new Sample();
+
+        s.timestamp = System.currentTimeMillis();
+        s.heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        s.threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        s.descriptors = getOpenFileDescriptors();
+        s.gcMillis = getCollectionMillis();
+        samples.add(s);
+        return s;
+    }
+
+    public synchronized @Nonnull List<Sample> getSamples() {
+        return new ArrayList<Sample>(samples);
+    }
+
+    /**
+     * @return the names of the metrics that grew steadily over the samples taken so far
+     */
+    public synchronized @Nonnull List<String> getGrowth() {
+        List<String> growing = new ArrayList<String>();
+        int n = samples.size();
+        long[] heap = new long[n];
+        long[] threads = new long[n];
+        long[] descriptors = new long[n];
+        long[] gc = new long[Math.max(0, n - 1)];
+
+        for( int i=0; i<n; i++ ) {
+            Sample s = samples.get(i);
+
+            heap[i] = s.heap;
+            threads[i] = s.threads;
+            descriptors[i] = s.descriptors;
+            if( i > 0 ) {
+                Sample p = samples.get(i - 1);
+                long elapsed = Math.max(1L, s.timestamp - p.timestamp);
+
+                // parts per million of wall time spent collecting
+                gc[i - 1] = ((s.gcMillis - p.gcMillis) * 1000000L) / elapsed;
+            }
+        }
+        if( isGrowing(heap) ) {
+            growing.add("heap");
+        }
+        if( isGrowing(threads) ) {
+            growing.add("threads");
+        }
+        if( n > 0 && samples.get(0).descriptors >= 0L && isGrowing(descriptors) ) {
+            growing.add("file descriptors");
+        }
+        if( isGrowing(gc) ) {
+            growing.add("gc time");
+        }
+        return growing;
+    }
+
+    /**
+     * Writes the first and last samples and the trend of each metric to the specified logger.
+     * @param logger the logger to write to
+     */
+    public synchronized void report(@Nonnull Logger logger) {
+        if( samples.isEmpty() ) {
+            return;
+        }
+        Sample first = samples.get(0);
+        Sample last = samples.get(samples.size() - 1);
+        List<String> growing = getGrowth();
+
+        DaseinTestManager.out(logger, null, "Samples", String.valueOf(samples.size()));
+        DaseinTestManager.out(logger, null, "Heap (MB)", describe(first.heap / (1024L * 1024L), last.heap / (1024L * 1024L), growing.contains("heap")));
+        DaseinTestManager.out(logger, null, "Threads", describe(first.threads, last.threads, growing.contains("threads")));
+        if( first.descriptors >= 0L ) {
+            DaseinTestManager.out(logger, null, "File Descriptors", describe(first.descriptors, last.descriptors, growing.contains("file descriptors")));
+        }
+        long elapsed = Math.max(1L, last.timestamp - first.timestamp);
+
+        DaseinTestManager.out(logger, null, "GC Time (ms)", (last.gcMillis - first.gcMillis) + String.format(" (%.2f%%)", ((last.gcMillis - first.gcMillis) * 100.0) / elapsed) + (growing.contains("gc time") ? " GROWING" : ""));
+    }
+
+    private @Nonnull String describe(long first, long last, boolean growing) {
+        return first + " -> " + last + (growing ? " GROWING" : " stable");
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fits a test run into a fixed length of time so that a CI slot is never overrun, clean up included. The budget is
+ * set with the dasein.budget {@link System} property as a number of hours, minutes or seconds (minutes if no unit is
+ * given), and part of it is held back for clean up:
+ * <pre>
+ *     -Ddasein.budget=45m -Ddasein.budget.reserve=5m -Ddasein.budget.priority=StatefulVMTests,StatelessVMTests.listVirtualMachines
+ * </pre>
+ * The reserve defaults to 15% of the budget. With a budget in place:
+ * <ul>
+ *     <li>each test gets a deadline of three times its usual duration from the {@link RunHistory}, but at least two
+ *     minutes and never beyond the time set aside for tests;</li>
+ *     <li>{@link StateWaiter} and {@link BatchStatePoller} waits end at the deadline of the test that started them,
+ *     and waits during clean up end with the budget;</li>
+ *     <li>a test is skipped if its usual duration does not fit into the time left, and tests that are not listed as
+ *     priorities need twice their usual duration to be left, so that the tail of a late run is spent on the tests
+ *     that matter most;</li>
+ *     <li>once the time for tests is used up, all remaining tests are skipped.</li>
+ * </ul>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class RunBudget {
+    static private final Logger logger = Logger.getLogger(RunBudget.class);
+
+    static private final long MIN_TEST   = 2L * CalendarWrapper.MINUTE;
+    static private final int  TEST_SLACK = 3;
+
+    static private final ThreadLocal<Long> testDeadline = new InheritableThreadLocal<Long>();
+    static private final AtomicInteger     skipped      = new AtomicInteger(0);
+
+    static private long            budget;
+    static private TreeSet<String> priorities;
+    static private long            reserve;
+    static private long            start;
+
+    /**
+     * Parses a duration such as 45m, 2h, 90s or 30 (minutes).
+     * @param value the duration to parse
+     * @return the duration in milliseconds
+     * @throws NumberFormatException the value is not a duration
+     */
+    static public long parse(@Nonnull String value) {
+        String v = value.trim().toLowerCase();
+        long unit = CalendarWrapper.MINUTE;
+
+        if( v.endsWith("ms") ) {
+            unit = 1L;
+            v = v.substring(0, v.length() - 2);
+        }
+        else if( v.endsWith("h") ) {
+            unit = CalendarWrapper.HOUR;
+            v = v.substring(0, v.length() - 1);
+        }
+        else if( v.endsWith("m") ) {
+            v = v.substring(0, v.length() - 1);
+        }
+        else if( v.endsWith("s") ) {
+            unit = CalendarWrapper.SECOND;
+            v = v.substring(0, v.length() - 1);
+        }
+        return (long)(Double.parseDouble(v.trim()) * unit);
+    }
+
+    /**
+     * Starts the clock on the budget, if one is configured. Called once at the start of the run.
+     */
+    static public synchronized void start() {
+        String prop = System.getProperty("dasein.budget");
+
+        start = System.currentTimeMillis();
+        budget = 0L;
+        skipped.set(0);
+        if( prop == null || prop.equals("") ) {
+            return;
+        }
+        try {
+            budget = parse(prop);
+        }
+        catch( NumberFormatException e ) {
+            logger.warn("Invalid value for dasein.budget: " + prop);
+            return;
+        }
+        reserve = (budget * 15L) / 100L;
+        prop = System.getProperty("dasein.budget.reserve");
+        if( prop != null && !prop.equals("") ) {
+            try {
+                reserve = Math.min(budget, parse(prop));
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.budget.reserve: " + prop);
+            }
+        }
+        priorities = new TreeSet<String>();
+        prop = System.getProperty("dasein.budget.priority");
+        if( prop != null && !prop.equals("") ) {
+            for( String which : prop.split(",") ) {
+                priorities.add(which.trim().toLowerCase());
+            }
+        }
+    }
+
+    static public synchronized boolean isEnabled() {
+        return (budget > 0L);
+    }
+
+    /**
+     * @return the time left for running tests in milliseconds, Long.MAX_VALUE if there is no budget
+     */
+    static public synchronized long getRemaining() {
+        if( budget <= 0L ) {
+            return Long.MAX_VALUE;
+        }
+        return (start + budget - reserve) - System.currentTimeMillis();
+    }
+
+    /**
+     * @return the time by which whatever the current thread is waiting on must be done: the deadline of the current
+     * test or, outside of a test, the end of the budget; Long.MAX_VALUE if there is no budget
+     */
+    static public synchronized long getDeadline() {
+        if( budget <= 0L ) {
+            return Long.MAX_VALUE;
+        }
+        Long deadline = testDeadline.get();
+
+        return (deadline == null ? start + budget : deadline);
+    }
+
+    /**
+     * Shortens a timeout so that it ends no later than {@link #getDeadline()}.
+     * @param timeoutMillis the timeout the caller would like
+     * @return the timeout to use
+     */
+    static public long clamp(@Nonnegative long timeoutMillis) {
+        long deadline = getDeadline();
+
+        if( deadline == Long.MAX_VALUE ) {
+            return timeoutMillis;
+        }
+        return Math.max(0L, Math.min(timeoutMillis, deadline - System.currentTimeMillis()));
+    }
+
+    /**
+     * Sleeps for the specified time or until {@link #getDeadline()}, whichever comes first.
+     * @param millis the time the caller would like to sleep
+     * @throws InterruptedException the thread was interrupted
+     */
+    static public void sleep(@Nonnegative long millis) throws InterruptedException {
+        long delay = clamp(millis);
+
+        if( delay > 0L ) {
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Sets the deadline of the test starting on the current thread.
+     * @param test the suite and name of the test
+     */
+    static public synchronized void beginTest(@Nonnull String test) {
+        if( budget <= 0L ) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long end = start + budget - reserve;
+        long expected = RunHistory.getExpectedMillis(test);
+
+        testDeadline.set(expected < 0L ? end : Math.min(end, now + Math.max(MIN_TEST, expected * TEST_SLACK)));
+    }
+
+    /**
+     * Clears the deadline of the test that ran on the current thread.
+     */
+    static public void endTest() {
+        testDeadline.remove();
+    }
+
+    /**
+     * Checks whether the specified test still fits into the budget.
+     * @param suite the suite of the test
+     * @param name the name of the test
+     * @return why the test should be skipped or null if it should run
+     */
+    static public @Nullable String getSkipReason(@Nonnull String suite, @Nullable String name) {
+        if( !isEnabled() ) {
+            return null;
+        }
+        long remaining = getRemaining();
+
+        if( remaining <= 0L ) {
+            skipped.incrementAndGet();
+            return "the time budget for tests is used up";
+        }
+        if( name == null ) {
+            return null;
+        }
+        long expected = RunHistory.getExpectedMillis(suite + "." + name);
+
+        if( expected < 0L ) {
+            return null;
+        }
+        boolean priority;
+
+        synchronized( RunBudget.class ) {
+            priority = (priorities.contains(suite.toLowerCase()) || priorities.contains((suite + "." + name).toLowerCase()));
+        }
+        if( expected * (priority ? 1L : 2L) > remaining ) {
+            skipped.incrementAndGet();
+            return "it usually takes " + (expected / 1000L) + " s and " + (remaining / 1000L) + " s are left for tests";
+        }
+        return null;
+    }
+
+    /**
+     * Writes how the run used its budget to the specified logger.
+     * @param logger the logger to write to
+     */
+    static public void report(@Nonnull Logger logger) {
+        long used;
+        long total;
+
+        synchronized( RunBudget.class ) {
+            if( budget <= 0L ) {
+                return;
+            }
+            used = System.currentTimeMillis() - start;
+            total = budget;
+        }
+        DaseinTestManager.out(logger, null, "Time Budget", (total / 1000L) + " s, used " + (used / 1000L) + " s" + (used > total ? " (OVERRUN)" : ""));
+        DaseinTestManager.out(logger, null, "Skipped For Time", String.valueOf(skipped.get()));
+    }
+}
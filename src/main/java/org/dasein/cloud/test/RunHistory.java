@@ -0,0 +1,503 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps a history of test runs so that a provider release that makes tests slower or chattier is flagged at the end
+ * of the run instead of being spotted by comparing logs. At {@link DaseinTestManager#cleanUp()} the duration and API
+ * calls of every test and the calls, errors and latency percentiles of every API are written to a new file in the
+ * history directory, then compared with the median of the most recent earlier runs against the same provider, cloud
+ * and region that counted calls the same way, with or without -Ddasein.instrument=false. Tests are compared with every such run, but the whole-run API totals only with runs of the same suites,
+ * inclusions and exclusions, since a targeted run makes far fewer calls than a full one. History is kept in
+ * .dasein/history under the user's home directory, where it survives <code>mvn clean</code>, unless configured
+ * otherwise:
+ * <pre>
+ *     -Ddasein.history=/var/dasein/history -Ddasein.history.window=10 -Ddasein.history.threshold=0.5
+ * </pre>
+ * A value grows significantly when it exceeds the baseline by more than the threshold, 50% by default, and by more
+ * than a minimum absolute amount (one second for test durations, 50 ms for latency, one call for call counts).
+ * Comparisons need at least {@link #MIN_RUNS} earlier runs. History is turned off with -Ddasein.history=false. Each
+ * file is compressed and stores each column of values together.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class RunHistory {
+    static private final Logger logger = Logger.getLogger(RunHistory.class);
+
+    static public final int MIN_RUNS = 3;
+
+    static private final int    MAGIC     = 0x44525548;
+    static private final int    VERSION   = 1;
+    static private final String EXTENSION = ".history";
+
+    static private final long   MIN_MILLIS  = 1000L;
+    static private final double MIN_LATENCY = 50.0;
+
+    /**
+     * The measurements of a single run.
+     */
+    static private class Run {
+        public String               key;
+        public String               scope;
+        public long                 timestamp;
+        public Map<String,long[]>   tests = new TreeMap<String, long[]>();
+        public Map<String,double[]> apis  = new TreeMap<String, double[]>();
+    }
+
+    // test name -> { duration millis, API calls or -1 if unknown }
+    static private final Map<String,long[]> tests = new TreeMap<String, long[]>();
+
+    // test name -> median duration in earlier runs, loaded on first use
+    static private Map<String,Long> expected;
+
+    /**
+     * Provides how long a test usually takes, based on the earlier runs in the history.
+     * @param test the suite and name of the test
+     * @return the median duration of the test in milliseconds or -1 if it has fewer than {@link #MIN_RUNS} recorded runs
+     */
+    static public long getExpectedMillis(@Nonnull String test) {
+        synchronized( tests ) {
+            if( expected == null ) {
+                Map<String,List<Double>> durations = new HashMap<String, List<Double>>();
+
+                expected = new HashMap<String, Long>();
+                if( isEnabled() ) {
+                    for( Run run : load(getDirectory(), getKey(), getWindow()) ) {
+                        for( Map.Entry<String,long[]> entry : run.tests.entrySet() ) {
+                            List<Double> list = durations.get(entry.getKey());
+
+                            if( list == null ) {
+                                list = new ArrayList<Double>();
+                                durations.put(entry.getKey(), list);
+                            }
+                            list.add((double)entry.getValue()[0]);
+                        }
+                    }
+                }
+                for( Map.Entry<String,List<Double>> entry : durations.entrySet() ) {
+                    if( entry.getValue().size() >= MIN_RUNS ) {
+                        expected.put(entry.getKey(), (long)median(entry.getValue()));
+                    }
+                }
+            }
+            Long millis = expected.get(test);
+
+            return (millis == null ? -1L : millis);
+        }
+    }
+
+    static public boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("dasein.history"));
+    }
+
+    static public @Nonnull File getDirectory() {
+        String dir = System.getProperty("dasein.history");
+
+        if( dir == null || dir.equals("") || dir.equalsIgnoreCase("true") ) {
+            return new File(new File(System.getProperty("user.home"), ".dasein"), "history");
+        }
+        return new File(dir);
+    }
+
+    static private int getWindow() {
+        String prop = System.getProperty("dasein.history.window");
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return Math.max(MIN_RUNS, Integer.parseInt(prop.trim()));
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.history.window: " + prop);
+            }
+        }
+        return 10;
+    }
+
+    static private double getThreshold() {
+        String prop = System.getProperty("dasein.history.threshold");
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return Math.max(0.0, Double.parseDouble(prop.trim()));
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.history.threshold: " + prop);
+            }
+        }
+        return 0.5;
+    }
+
+    /**
+     * @return the cloud the run is against and how its calls were counted, since calls made into the instrumented
+     * provider and backend calls traced by {@link org.dasein.cloud.util.APITrace} are neither named nor counted alike
+     */
+    static private @Nonnull String getKey() {
+        String calls = (InterceptingCloudProvider.isEnabled() ? "instrumented" : "traced");
+
+        return System.getProperty("providerClass") + "|" + System.getProperty("endpoint") + "|" + System.getProperty("regionId") + "|" + calls;
+    }
+
+    /**
+     * @param tests the tests of a run, named by suite and test
+     * @return what the run covered: its suites and the inclusions and exclusions that narrowed them
+     */
+    static private @Nonnull String getScope(@Nonnull Map<String,long[]> tests) {
+        TreeSet<String> suites = new TreeSet<String>();
+
+        for( String test : tests.keySet() ) {
+            int idx = test.indexOf('.');
+
+            suites.add(idx < 0 ? test : test.substring(0, idx));
+        }
+        return suites + "|" + System.getProperty("dasein.inclusions") + "|" + System.getProperty("dasein.exclusions");
+    }
+
+    /**
+     * Records a finished test for the history of the current run.
+     * @param test the suite and name of the test
+     * @param millis how long the test took
+     * @param calls the API calls made by the test or -1 if they could not be counted
+     */
+    static public void recordTest(@Nonnull String test, long millis, long calls) {
+        synchronized( tests ) {
+            tests.put(test, new long[] { millis, calls });
+        }
+    }
+
+    /**
+     * Compares the current run with the earlier runs in the history, reports any significant growth and adds the
+     * current run to the history.
+     * @param logger the logger to report to
+     * @param calls the API call counts of the current run
+     * @param latency the API latencies of the current run
+     * @return the number of regressions found
+     */
+    static public int report(@Nonnull Logger logger, @Nonnull APIAudit calls, @Nonnull APIAudit latency) {
+        if( !isEnabled() ) {
+            return 0;
+        }
+        Run current = new Run();
+
+        current.key = getKey();
+        current.timestamp = System.currentTimeMillis();
+        synchronized( tests ) {
+            current.tests.putAll(tests);
+            tests.clear();
+        }
+        current.scope = getScope(current.tests);
+        for( String api : calls.listApis() ) {
+            APIAudit.Counter c = calls.getTotal(api);
+
+            current.apis.put(api, new double[] { c.getCalls(), -1.0, -1.0, -1.0, -1.0 });
+        }
+        // errors are only known for the calls that were timed
+        for( String api : latency.listApis() ) {
+            APIAudit.Counter c = latency.getTotal(api);
+            LatencyHistogram h = c.getLatency();
+            double[] values = current.apis.get(api);
+
+            if( h == null ) {
+                continue;
+            }
+            if( values == null ) {
+                values = new double[] { -1.0, -1.0, -1.0, -1.0, -1.0 };
+                current.apis.put(api, values);
+            }
+            values[1] = c.getErrors();
+            values[2] = h.getPercentileMillis(50.0);
+            values[3] = h.getPercentileMillis(90.0);
+            values[4] = h.getPercentileMillis(99.0);
+        }
+        File dir = getDirectory();
+        List<Run> baseline = load(dir, current.key, getWindow());
+        int regressions = 0;
+
+        if( baseline.size() < MIN_RUNS ) {
+            DaseinTestManager.out(logger, null, "Baseline Runs", baseline.size() + " (need " + MIN_RUNS + " to compare)");
+        }
+        else {
+            regressions = compare(logger, current, baseline, getThreshold());
+        }
+        try {
+            save(dir, current);
+        }
+        catch( IOException e ) {
+            logger.warn("Failed to save run history to " + dir + ": " + e.getMessage());
+        }
+        return regressions;
+    }
+
+    static private int compare(@Nonnull Logger logger, @Nonnull Run current, @Nonnull List<Run> baseline, double threshold) {
+        int regressions = 0;
+
+        DaseinTestManager.out(logger, null, "Baseline Runs", String.valueOf(baseline.size()));
+        for( Map.Entry<String,long[]> entry : current.tests.entrySet() ) {
+            String test = entry.getKey();
+            long[] values = entry.getValue();
+            List<Double> durations = new ArrayList<Double>();
+            List<Double> counts = new ArrayList<Double>();
+
+            for( Run run : baseline ) {
+                long[] previous = run.tests.get(test);
+
+                if( previous != null ) {
+                    durations.add((double)previous[0]);
+                    if( previous[1] >= 0L ) {
+                        counts.add((double)previous[1]);
+                    }
+                }
+            }
+            if( durations.size() >= MIN_RUNS ) {
+                double median = median(durations);
+
+                if( values[0] > median * (1.0 + threshold) && values[0] - median >= MIN_MILLIS ) {
+                    line(logger, "---> " + test, String.format("%.1f s vs %.1f s", values[0] / 1000.0, median / 1000.0), values[0], median);
+                    regressions++;
+                }
+            }
+            if( values[1] >= 0L && counts.size() >= MIN_RUNS ) {
+                double median = median(counts);
+
+                if( isChattier(values[1], median, threshold) ) {
+                    line(logger, "---> " + test, String.format("%d calls vs %.0f", values[1], median), values[1], median);
+                    regressions++;
+                }
+            }
+        }
+        for( Map.Entry<String,double[]> entry : current.apis.entrySet() ) {
+            String api = entry.getKey();
+            double[] values = entry.getValue();
+            List<Double> counts = new ArrayList<Double>();
+            List<Double> p90s = new ArrayList<Double>();
+
+            for( Run run : baseline ) {
+                double[] previous = run.apis.get(api);
+
+                if( previous != null ) {
+                    if( previous[0] >= 0.0 && current.scope.equals(run.scope) ) {
+                        counts.add(previous[0]);
+                    }
+                    if( previous[3] >= 0.0 ) {
+                        p90s.add(previous[3]);
+                    }
+                }
+            }
+            if( values[0] >= 0.0 && counts.size() >= MIN_RUNS ) {
+                double median = median(counts);
+
+                if( isChattier(values[0], median, threshold) ) {
+                    line(logger, "---> " + api, String.format("%.0f calls vs %.0f", values[0], median), values[0], median);
+                    regressions++;
+                }
+            }
+            if( values[3] >= 0.0 && p90s.size() >= MIN_RUNS ) {
+                double median = median(p90s);
+
+                if( values[3] > median * (1.0 + threshold) && values[3] - median >= MIN_LATENCY ) {
+                    line(logger, "---> " + api, String.format("p90=%.1fms vs %.1fms", values[3], median), values[3], median);
+                    regressions++;
+                }
+            }
+        }
+        DaseinTestManager.out(logger, null, "Regressions", String.valueOf(regressions));
+        return regressions;
+    }
+
+    static private boolean isChattier(double calls, double median, double threshold) {
+        return (calls > median && calls - median >= 1.0 && calls - median > median * threshold);
+    }
+
+    static private double median(@Nonnull List<Double> values) {
+        Collections.sort(values);
+        int n = values.size();
+
+        if( n % 2 == 1 ) {
+            return values.get(n / 2);
+        }
+        return (values.get(n / 2 - 1) + values.get(n / 2)) / 2.0;
+    }
+
+    static private void line(@Nonnull Logger logger, @Nonnull String key, @Nonnull String change, double value, double median) {
+        StringBuilder str = new StringBuilder();
+
+        // test and API names are usually too long for the standard 36 character key column
+        str.append(key).append(": ");
+        while( str.length() < 64 ) {
+            str.append(" ");
+        }
+        str.append(change);
+        if( median > 0.0 ) {
+            str.append(String.format(" (+%.0f%%)", ((value - median) * 100.0) / median));
+        }
+        logger.warn(str.toString());
+    }
+
+    static private @Nonnull List<Run> load(@Nonnull File dir, @Nonnull String key, int window) {
+        List<Run> runs = new ArrayList<Run>();
+        String[] names = dir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+
+        if( names == null ) {
+            return runs;
+        }
+        // file names start with the zero-padded run time, so the newest runs sort last
+        Arrays.sort(names);
+        for( int i=names.length-1; i>=0 && runs.size() < window; i-- ) {
+            File file = new File(dir, names[i]);
+
+            try {
+                Run run = read(file);
+
+                if( run != null && run.key.equals(key) ) {
+                    runs.add(run);
+                }
+            }
+            catch( IOException e ) {
+                logger.warn("Skipping unreadable run history " + file + ": " + e.getMessage());
+            }
+        }
+        return runs;
+    }
+
+    static private @Nullable Run read(@Nonnull File file) throws IOException {
+        DataInputStream input = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+
+        try {
+            int version = (input.readInt() == MAGIC ? input.readInt() : -1);
+
+            if( version != VERSION ) {
+                logger.warn("Skipping run history in an unknown format: " + file);
+                return null;
+            }
+            Run run = new Run();
+
+            run.timestamp = input.readLong();
+            run.key = input.readUTF();
+            run.scope = input.readUTF();
+            String[] names = readNames(input);
+            long[][] columns = new long[2][names.length];
+
+            for( long[] column : columns ) {
+                for( int i=0; i<names.length; i++ ) {
+                    column[i] = input.readLong();
+                }
+            }
+            for( int i=0; i<names.length; i++ ) {
+                run.tests.put(names[i], new long[] { columns[0][i], columns[1][i] });
+            }
+            names = readNames(input);
+            double[][] metrics = new double[5][names.length];
+
+            for( double[] column : metrics ) {
+                for( int i=0; i<names.length; i++ ) {
+                    column[i] = input.readDouble();
+                }
+            }
+            for( int i=0; i<names.length; i++ ) {
+                run.apis.put(names[i], new double[] { metrics[0][i], metrics[1][i], metrics[2][i], metrics[3][i], metrics[4][i] });
+            }
+            return run;
+        }
+        finally {
+            try {
+                input.close();
+            }
+            catch( Throwable ignore ) {
+                // ignore
+            }
+        }
+    }
+
+    static private @Nonnull String[] readNames(@Nonnull DataInputStream input) throws IOException {
+        String[] names = new String[input.readInt()];
+
+        for( int i=0; i<names.length; i++ ) {
+            names[i] = input.readUTF();
+        }
+        return names;
+    }
+
+    static private void save(@Nonnull File dir, @Nonnull Run run) throws IOException {
+        if( !dir.isDirectory() && !dir.mkdirs() ) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File file = new File(dir, String.format("%015d-%08x%s", run.timestamp, run.key.hashCode(), EXTENSION));
+        DataOutputStream output = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file))));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(run.timestamp);
+            output.writeUTF(run.key);
+            output.writeUTF(run.scope);
+            output.writeInt(run.tests.size());
+            for( String name : run.tests.keySet() ) {
+                output.writeUTF(name);
+            }
+            for( int c=0; c<2; c++ ) {
+                for( long[] values : run.tests.values() ) {
+                    output.writeLong(values[c]);
+                }
+            }
+            output.writeInt(run.apis.size());
+            for( String name : run.apis.keySet() ) {
+                output.writeUTF(name);
+            }
+            for( int c=0; c<5; c++ ) {
+                for( double[] values : run.apis.values() ) {
+                    output.writeDouble(values[c]);
+                }
+            }
+        }
+        finally {
+            output.close();
+        }
+        logger.info("Saved run history to " + file);
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.storage.StorageResources;
+import org.dasein.util.CalendarWrapper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Loops stateful lifecycle tests for hours while a {@link ResourceMonitor} watches the heap, threads, file
+ * descriptors and garbage collection of the JVM the provider runs in, to reproduce slow leaks in Dasein
+ * implementations. Each round runs the tests once in order, then tears down the compute and storage resources the
+ * round provisioned and takes a sample after a full garbage collection. Other fixtures, such as VLANs and keypairs,
+ * are kept for the whole run. The settings are:
+ * <pre>
+ *     -Ddasein.soak.tests=StatefulVMTests.launch,StatefulVMTests.stop,StatefulVMTests.start,StatefulVMTests.terminate
+ *     -Ddasein.soak.duration=480
+ * </pre>
+ * The duration is in minutes and defaults to 240; a round that has started is always finished. By default the VM
+ * lifecycle, volume attach and detach, and object upload and download tests are run. Besides one result per test,
+ * the suite reports a resourceGrowth test that fails if any metric grew steadily over the run. As with a load run,
+ * rounds are not checked against test budgets and the run is kept out of the run history.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class SoakRunner extends Runner {
+    static private final Logger logger = Logger.getLogger(SoakRunner.class);
+
+    static public final String SUITE = "Soak";
+
+    static private final String DEFAULT_TESTS = "StatefulVMTests.launch,StatefulVMTests.stop,StatefulVMTests.start,StatefulVMTests.terminate,"
+            + "StatefulVolumeTests.attach,StatefulVolumeTests.detach,StatefulObjectStoreTests.uploadRoot,StatefulObjectStoreTests.downloadRoot";
+
+    static private final APIAudit audit = new APIAudit("iterations", "failures");
+
+    static public long getDuration() {
+        String prop = System.getProperty("dasein.soak.duration");
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return Math.max(1L, Long.parseLong(prop.trim())) * CalendarWrapper.MINUTE;
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.soak.duration: " + prop);
+            }
+        }
+        return CalendarWrapper.HOUR * 4L;
+    }
+
+    /**
+     * @return the iterations of every soak test, under the suite {@link #SUITE}
+     */
+    static public @Nonnull APIAudit getAudit() {
+        return audit;
+    }
+
+    /**
+     * A single test being soaked.
+     */
+    static private class SoakTest extends TestClassHarness.Test {
+        public Throwable failure;
+        public int       failures;
+        public int       runs;
+        public int       skipped;
+
+        public SoakTest(@Nonnull TestClassHarness.Test test) {
+            super(test);
+        }
+    }
+
+    private final Description     description;
+    private final Description     growth;
+    private final ResourceMonitor monitor = new ResourceMonitor();
+    private final List<SoakTest>  tests = new ArrayList<SoakTest>();
+
+    public SoakRunner(@Nonnull Class<?> suiteClass) throws InitializationError {
+        String prop = System.getProperty("dasein.soak.tests");
+
+        description = Description.createSuiteDescription(suiteClass);
+        for( TestClassHarness.Test t : TestClassHarness.select(prop == null || prop.trim().equals("") ? DEFAULT_TESTS : prop, StatefulTestSuite.class) ) {
+            SoakTest test = new SoakTest(t);
+
+            description.addChild(test.description);
+            tests.add(test);
+        }
+        growth = Description.createTestDescription(suiteClass, "resourceGrowth");
+        description.addChild(growth);
+    }
+
+    @Override
+    public Description getDescription() {
+        return description;
+    }
+
+    @Override
+    public void run(@Nonnull RunNotifier notifier) {
+        DaseinTestManager.beginLoadRun();
+        DaseinTestManager.init();
+        try {
+            Set<TestClassHarness> harnesses = TestClassHarness.classesOf(tests);
+            long deadline = System.currentTimeMillis() + getDuration();
+            int rounds = 0;
+
+            for( TestClassHarness harness : harnesses ) {
+                try {
+                    harness.runClassMethods(BeforeClass.class);
+                }
+                catch( Throwable t ) {
+                    logger.error("Failed to set up " + harness.getTestClass().getName() + ": " + t.getMessage());
+                }
+            }
+            DaseinTestManager.setCurrentSuite(SUITE);
+            monitor.sample(true);
+            try {
+                while( System.currentTimeMillis() < deadline ) {
+                    rounds++;
+                    for( SoakTest test : tests ) {
+                        boolean failed = false;
+                        long start = System.nanoTime();
+
+                        test.runs++;
+                        try {
+                            test.harness.statement(test.method).evaluate();
+                        }
+                        catch( AssumptionViolatedException e ) {
+                            test.skipped++;
+                        }
+                        catch( Throwable t ) {
+                            failed = true;
+                            test.failures++;
+                            if( test.failure == null ) {
+                                test.failure = t;
+                            }
+                            logger.warn("Round " + rounds + ": " + test.name + " failed: " + t.getMessage());
+                        }
+                        audit.getCounter(SUITE, test.name).recordLatency(System.nanoTime() - start, failed);
+                    }
+                    int cleaned = tearDown(rounds);
+                    ResourceMonitor.Sample s = monitor.sample(true);
+
+                    logger.info("Round " + rounds + ": cleaned " + cleaned + ", heap " + (s.heap / (1024L * 1024L)) + " MB, threads " + s.threads + ", file descriptors " + s.descriptors + ", gc " + s.gcMillis + " ms");
+                }
+            }
+            finally {
+                for( TestClassHarness harness : harnesses ) {
+                    try {
+                        harness.runClassMethods(AfterClass.class);
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Failed to clean up after " + harness.getTestClass().getName() + ": " + t.getMessage());
+                    }
+                }
+            }
+            logger.info("");
+            logger.info("-------------- Soak Tests -------------");
+            DaseinTestManager.out(logger, null, "Rounds", String.valueOf(rounds));
+            audit.reportLatency(logger, null, SUITE);
+            logger.info("");
+            logger.info("------------ Soak Resources -----------");
+            monitor.report(logger);
+            logger.info("");
+            for( SoakTest test : tests ) {
+                notifier.fireTestStarted(test.description);
+                if( test.failure != null ) {
+                    notifier.fireTestFailure(new Failure(test.description, new AssertionError(test.name + " failed in " + test.failures + " of " + test.runs + " rounds, first with: " + test.failure)));
+                }
+                else if( test.runs == test.skipped ) {
+                    notifier.fireTestAssumptionFailed(new Failure(test.description, new AssumptionViolatedException("No round of " + test.name + " ran")));
+                }
+                notifier.fireTestFinished(test.description);
+            }
+            List<String> growing = monitor.getGrowth();
+
+            notifier.fireTestStarted(growth);
+            if( !growing.isEmpty() ) {
+                notifier.fireTestFailure(new Failure(growth, new AssertionError("Steady growth over " + rounds + " rounds in " + growing)));
+            }
+            notifier.fireTestFinished(growth);
+        }
+        finally {
+            DaseinTestManager.cleanUp();
+            DaseinTestManager.endLoadRun();
+        }
+    }
+
+    private int tearDown(int round) {
+        final ComputeResources compute = DaseinTestManager.getComputeResources();
+        final StorageResources storage = DaseinTestManager.getStorageResources();
+        TaskGraph teardown = new TaskGraph("Soak Round " + round);
+
+        if( compute != null ) {
+            compute.addTeardown(teardown);
+        }
+        if( storage != null ) {
+            teardown.add(StorageResources.TEARDOWN, StorageResources.TEARDOWN, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return storage.close();
+                }
+            });
+        }
+        teardown.run();
+        if( compute != null ) {
+            compute.forget();
+        }
+        if( storage != null ) {
+            storage.forget();
+        }
+        return teardown.getTotal(ComputeResources.TEARDOWN) + teardown.getTotal(StorageResources.TEARDOWN);
+    }
+}
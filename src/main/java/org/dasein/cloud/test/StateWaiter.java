@@ -0,0 +1,341 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Paces a polling loop that waits for a cloud resource to reach some state. The first probe happens almost
+ * immediately, after which the delay between probes grows exponentially up to a ceiling, with random jitter so that
+ * concurrent waiters do not poll in lock step. Each resource type has its own curve, which may be overridden with
+ * a system property of the form <code>dasein.wait.&lt;type&gt;=probe,initial,max,factor</code> (delays in
+ * milliseconds):
+ * <pre>
+ *     -Ddasein.wait.vm=1000,5000,20000,1.5
+ * </pre>
+ * Every wait is recorded in {@link DaseinTestManager#getWaitAudit()} under its resource type, together with whether
+ * the target state was reached. Typical use replaces a fixed sleep inside an existing loop:
+ * <pre>
+ *     StateWaiter waiter = new StateWaiter(StateWaiter.VM);
+ *
+ *     while( waiter.isWaiting() ) {
+ *         if( reached ) {
+ *             waiter.done();
+ *             break;
+ *         }
+ *         waiter.pause();
+ *         ...
+ *     }
+ * </pre>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StateWaiter {
+    static private final Logger logger = Logger.getLogger(StateWaiter.class);
+
+    static public final String CDN      = "cdn";
+    static public final String IMAGE    = "image";
+    static public final String NETWORK  = "network";
+    static public final String RDBMS    = "rdbms";
+    static public final String SNAPSHOT = "snapshot";
+    static public final String VM       = "vm";
+    static public final String VOLUME   = "volume";
+
+    static private final Random random = new Random();
+
+    /**
+     * The shape of the delays between probes for one resource type.
+     */
+    static public class Curve {
+        public double factor;
+        public long   initial;
+        public long   max;
+        public long   probe;
+
+        public Curve(long probe, long initial, long max, double factor) {
+            this.probe = probe;
+            this.initial = initial;
+            this.max = max;
+            this.factor = factor;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return probe + "," + initial + "," + max + "," + factor;
+        }
+    }
+
+    /**
+     * Provides the curve for the specified resource type, taking into account any override set with the
+     * <code>dasein.wait.&lt;type&gt;</code> system property.
+     * @param type the resource type being waited on
+     * @return the curve to use for the resource type
+     */
+    static public @Nonnull Curve getCurve(@Nonnull String type) {
+        Curve curve;
+
+        if( type.equals(VM) ) {
+            curve = new Curve(2000L, 5000L, 20000L, 1.5);
+        }
+        else if( type.equals(VOLUME) ) {
+            curve = new Curve(1000L, 3000L, 15000L, 1.5);
+        }
+        else if( type.equals(SNAPSHOT) ) {
+            curve = new Curve(2000L, 5000L, 20000L, 1.5);
+        }
+        else if( type.equals(IMAGE) ) {
+            curve = new Curve(5000L, 10000L, 30000L, 1.5);
+        }
+        else if( type.equals(RDBMS) || type.equals(CDN) ) {
+            curve = new Curve(5000L, 10000L, 60000L, 1.5);
+        }
+        else {
+            curve = new Curve(1000L, 2000L, 15000L, 1.5);
+        }
+        String prop = System.getProperty("dasein.wait." + type);
+
+        if( prop != null && !prop.equals("") ) {
+            String[] parts = prop.split(",");
+
+            try {
+                if( parts.length > 0 && !parts[0].trim().equals("") ) {
+                    curve.probe = Long.parseLong(parts[0].trim());
+                }
+                if( parts.length > 1 && !parts[1].trim().equals("") ) {
+                    curve.initial = Long.parseLong(parts[1].trim());
+                }
+                if( parts.length > 2 && !parts[2].trim().equals("") ) {
+                    curve.max = Long.parseLong(parts[2].trim());
+                }
+                if( parts.length > 3 && !parts[3].trim().equals("") ) {
+                    curve.factor = Double.parseDouble(parts[3].trim());
+                }
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.wait." + type + ": " + prop);
+            }
+        }
+        return curve;
+    }
+
+    /**
+     * A check made on every probe by {@link #await(String, long, Probe)}.
+     * @param <T> the type of the resource being waited on
+     */
+    static public interface Probe<T> {
+        /**
+         * @return the current state of the resource, or null if it no longer exists
+         * @throws Exception any error fetching the resource, which counts as an inconclusive probe
+         */
+        public @Nullable T poll() throws Exception;
+
+        /**
+         * @param current the result of the most recent poll
+         * @return true if the wait is over
+         */
+        public boolean isDone(@Nullable T current);
+    }
+
+    /**
+     * Polls the specified probe until it reports that it is done or the timeout elapses.
+     * @param type the resource type being waited on
+     * @param timeoutMillis the maximum time to wait in milliseconds
+     * @param probe the check to make on each probe
+     * @param <T> the type of the resource being waited on
+     * @return the result of the last successful poll
+     */
+    static public @Nullable <T> T await(@Nonnull String type, @Nonnegative long timeoutMillis, @Nonnull Probe<T> probe) {
+        StateWaiter waiter = new StateWaiter(type, timeoutMillis);
+        T current = null;
+
+        while( waiter.isWaiting() ) {
+            waiter.pause();
+            try {
+                current = probe.poll();
+            }
+            catch( Throwable ignore ) {
+                continue;
+            }
+            if( probe.isDone(current) ) {
+                waiter.done();
+                break;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Repeats an action that fails until the cloud catches up, such as removing a subnet whose instances are still
+     * shutting down, pacing the attempts with the curve for the specified resource type.
+     * @param type the resource type being acted on
+     * @param timeoutMillis the maximum time to keep trying in milliseconds
+     * @param action the action to attempt
+     * @param <T> the result type of the action
+     * @return the result of the first successful attempt
+     * @throws Exception the failure of the last attempt if no attempt succeeded in time
+     */
+    static public <T> T retry(@Nonnull String type, @Nonnegative long timeoutMillis, @Nonnull Callable<T> action) throws Exception {
+        StateWaiter waiter = new StateWaiter(type, timeoutMillis);
+
+        while( true ) {
+            try {
+                T result = action.call();
+
+                waiter.done();
+                return result;
+            }
+            catch( Exception e ) {
+                if( !waiter.isWaiting() ) {
+                    throw e;
+                }
+                logger.debug("Retrying " + type + " action after: " + e.getMessage());
+            }
+            waiter.pause();
+        }
+    }
+
+    private Curve   curve;
+    private long    deadline;
+    private long    nextDelay;
+    private int     probes;
+    private boolean recorded;
+    private long    start;
+    private String  type;
+
+    /**
+     * Starts a wait with the default timeout of 20 minutes.
+     * @param type the resource type being waited on
+     */
+    public StateWaiter(@Nonnull String type) {
+        this(type, CalendarWrapper.MINUTE * 20L);
+    }
+
+    /**
+     * Starts a wait. The wait ends early if the {@link RunBudget} requires it.
+     * @param type the resource type being waited on
+     * @param timeoutMillis the maximum time to wait in milliseconds
+     */
+    public StateWaiter(@Nonnull String type, @Nonnegative long timeoutMillis) {
+        this.type = type;
+        this.curve = getCurve(type);
+        this.start = System.currentTimeMillis();
+        // never wait past the deadline of the current test or the end of the run's time budget
+        this.deadline = Math.min(start + timeoutMillis, RunBudget.getDeadline());
+        this.nextDelay = curve.probe;
+        this.probes = 0;
+        this.recorded = false;
+    }
+
+    /**
+     * @return the time at which this wait gives up
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return the number of pauses taken so far
+     */
+    public int getProbes() {
+        return probes;
+    }
+
+    /**
+     * @return the resource type being waited on
+     */
+    public @Nonnull String getType() {
+        return type;
+    }
+
+    /**
+     * Indicates whether the loop should keep polling. Once the deadline passes, the wait is recorded as timed out.
+     * @return true until the wait is marked done or its deadline passes
+     */
+    public boolean isWaiting() {
+        if( recorded ) {
+            return false;
+        }
+        if( System.currentTimeMillis() >= deadline ) {
+            record(false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sleeps until the next probe is due. The delay never runs past the deadline. If the thread is interrupted,
+     * the wait ends and the interrupt status is preserved.
+     */
+    public void pause() {
+        long delay = nextDelay;
+
+        if( probes > 0 ) {
+            // +/- 20% jitter
+            delay = (long)(delay * (0.8 + (0.4 * random.nextDouble())));
+        }
+        delay = Math.min(delay, Math.max(0L, deadline - System.currentTimeMillis()));
+        probes++;
+        nextDelay = (probes == 1 ? curve.initial : Math.min(curve.max, (long)(nextDelay * curve.factor)));
+        if( delay > 0L ) {
+            try {
+                Thread.sleep(delay);
+            }
+            catch( InterruptedException e ) {
+                record(false);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Marks the wait as having reached its target state.
+     */
+    public void done() {
+        record(true);
+    }
+
+    /**
+     * Marks the wait as over without the target state having been reached, for example because the resource
+     * disappeared.
+     */
+    public void abandon() {
+        record(false);
+    }
+
+    private void record(boolean reached) {
+        if( recorded ) {
+            return;
+        }
+        recorded = true;
+        long millis = System.currentTimeMillis() - start;
+
+        DaseinTestManager.getWaitAudit().getCounter(DaseinTestManager.getCurrentSuite(), type).recordLatency(millis * 1000000L, !reached);
+        if( logger.isDebugEnabled() ) {
+            logger.debug("Wait for " + type + (reached ? " done" : " gave up") + " after " + millis + " ms and " + probes + " probes");
+        }
+    }
+}
@@ -53,7 +53,7 @@ import org.junit.runners.Suite;
  * @author George Reese
  * @version 2013.07 added MQ support (issue #6)
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({
         StatelessObjectStoreTests.class,
         StatelessOfflineStoreTests.class,
@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a set of tasks concurrently while honoring the dependencies between them. Every task has a unique name and
+ * belongs to a group, such as <code>compute.vm</code>, and may depend on other tasks by name or on whole groups. A
+ * task starts as soon as every task it depends on has finished, whether or not those tasks succeeded, so a failure
+ * in one branch never holds up the rest of the graph. Dependencies on names or groups with no tasks are ignored.
+ * Each task returns the number of resources it handled, which is summed by group with {@link #getTotal(String)}.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class TaskGraph {
+    static private final Logger logger = Logger.getLogger(TaskGraph.class);
+
+    /**
+     * @return the number of tasks to run at once, set with the dasein.teardown.workers system property (default 8)
+     */
+    static public int getDefaultWorkers() {
+        return (int)Math.max(1L, DaseinTestManager.getLongProperty("dasein.teardown.workers", 8L));
+    }
+
+    static private class Task {
+        public String            group;
+        public String[]          dependsOn;
+        public String            name;
+        public int               result;
+        public Callable<Integer> work;
+    }
+
+    private final Map<String,Task> tasks = new HashMap<String, Task>();
+    private final List<Task>       order = new ArrayList<Task>();
+    private final String           name;
+
+    public TaskGraph(@Nonnull String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds a task to the graph.
+     * @param name a name for the task, unique within the graph
+     * @param group the group to which the task belongs
+     * @param work the work to do, returning the number of resources handled
+     * @param dependsOn the names of tasks or groups that must finish before this task starts
+     */
+    public synchronized void add(@Nonnull String name, @Nonnull String group, @Nonnull Callable<Integer> work, @Nonnull String ... dependsOn) {
+        Task task = new Task();
+
+        task.name = name;
+        task.group = group;
+        task.work = work;
+        task.dependsOn = dependsOn;
+        if( tasks.containsKey(name) ) {
+            throw new IllegalArgumentException("Duplicate task " + name + " in " + this.name);
+        }
+        tasks.put(name, task);
+        order.add(task);
+    }
+
+    /**
+     * @param group a group or a group prefix, for example <code>compute</code> for <code>compute.vm</code>
+     * @return the sum of the results of all finished tasks in matching groups
+     */
+    public synchronized int getTotal(@Nonnull String group) {
+        int total = 0;
+
+        for( Task task : order ) {
+            if( task.group.equals(group) || task.group.startsWith(group + ".") ) {
+                total += task.result;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Runs all tasks with the default number of workers, returning once every task has finished.
+     */
+    public void run() {
+        run(getDefaultWorkers());
+    }
+
+    /**
+     * Runs all tasks, returning once every task has finished.
+     * @param workers the maximum number of tasks to run at once
+     */
+    public void run(int workers) {
+        List<Task> all;
+
+        synchronized( this ) {
+            all = new ArrayList<Task>(order);
+        }
+        if( all.isEmpty() ) {
+            return;
+        }
+        Map<Task,Set<Task>> waitingOn = new HashMap<Task, Set<Task>>();
+        Map<Task,List<Task>> dependents = new HashMap<Task, List<Task>>();
+
+        for( Task task : all ) {
+            Set<Task> deps = new HashSet<Task>();
+
+            for( String dep : task.dependsOn ) {
+                for( Task other : all ) {
+                    if( other != task && (other.name.equals(dep) || other.group.equals(dep)) ) {
+                        deps.add(other);
+                    }
+                }
+            }
+            waitingOn.put(task, deps);
+            for( Task other : deps ) {
+                List<Task> list = dependents.get(other);
+
+                if( list == null ) {
+                    list = new ArrayList<Task>();
+                    dependents.put(other, list);
+                }
+                list.add(task);
+            }
+        }
+        final AtomicInteger count = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers), new ThreadFactory() {
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        CompletionService<Task> completion = new ExecutorCompletionService<Task>(executor);
+        Set<Task> pending = new HashSet<Task>(all);
+        int running = 0;
+
+        try {
+            while( !pending.isEmpty() || running > 0 ) {
+                List<Task> ready = new ArrayList<Task>();
+
+                for( Task task : all ) {
+                    if( pending.contains(task) && waitingOn.get(task).isEmpty() ) {
+                        ready.add(task);
+                    }
+                }
+                if( ready.isEmpty() && running == 0 ) {
+                    // only possible with a dependency cycle, so run whatever is left
+                    logger.warn("Dependency cycle in " + name + ", running " + pending.size() + " remaining tasks regardless");
+                    for( Task task : all ) {
+                        if( pending.contains(task) ) {
+                            ready.add(task);
+                        }
+                    }
+                }
+                for( Task task : ready ) {
+                    pending.remove(task);
+                    completion.submit(wrap(task));
+                    running++;
+                }
+                Future<Task> done = completion.take();
+                Task task = done.get();
+
+                running--;
+                List<Task> list = dependents.get(task);
+
+                if( list != null ) {
+                    for( Task dependent : list ) {
+                        waitingOn.get(dependent).remove(task);
+                    }
+                }
+            }
+        }
+        catch( InterruptedException e ) {
+            logger.warn("Interrupted while running " + name + " with " + (pending.size() + running) + " tasks unfinished");
+            Thread.currentThread().interrupt();
+        }
+        catch( Exception e ) {
+            logger.error("Failed to run " + name + ": " + e.getMessage());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private @Nonnull Callable<Task> wrap(final @Nonnull Task task) {
+        return new Callable<Task>() {
+            @Override
+            public Task call() {
+                long start = System.currentTimeMillis();
+
+                try {
+                    Integer result = task.work.call();
+
+                    synchronized( TaskGraph.this ) {
+                        task.result = (result == null ? 0 : result);
+                    }
+                }
+                catch( Throwable t ) {
+                    logger.warn("Task " + task.name + " in " + name + " failed: " + t.getMessage());
+                }
+                if( logger.isDebugEnabled() ) {
+                    logger.debug("Task " + task.name + " in " + name + " finished in " + (System.currentTimeMillis() - start) + " ms");
+                }
+                return task;
+            }
+        };
+    }
+}
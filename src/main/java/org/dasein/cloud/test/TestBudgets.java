@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checks the API calls and time used by each test against its budget. Budgets come from the {@link APIBudget}
+ * annotation on the test method and from a properties file named by the dasein.budgets {@link System} property, which
+ * takes precedence. Keys name a test or all tests of a class, followed by the limit:
+ * <pre>
+ *     StatelessVMTests.listVirtualMachines.calls = 3
+ *     StatelessVMTests.listVirtualMachines.millis = 30000
+ *     StatelessVMTests.listVirtualMachines.calls.getVirtualMachine = 0
+ *     StatelessVMTests.*.calls = 50
+ * </pre>
+ * A <code>calls.</code><i>api</i> key limits the calls to every counted API whose name ends with <i>api</i>. A test
+ * over budget fails, unless budgets are reported but not enforced with:
+ * <pre>
+ *     -Ddasein.budgets.enforce=false
+ * </pre>
+ * Calls are counted the same way whether test classes run one at a time or concurrently: each call a test makes into
+ * the {@link InterceptingCloudProvider} from its own thread counts once, under its Dasein name such as
+ * <code>VirtualMachineSupport.getVirtualMachine</code>, however many requests the provider sends to the cloud to
+ * answer it. Calls the harness makes on the test's behalf from other threads, such as the ticks of a
+ * {@link BatchStatePoller}, are not counted against the test. With instrumentation off (-Ddasein.instrument=false),
+ * the calls of a test running alone are the requests traced by {@link org.dasein.cloud.util.APITrace}, under the
+ * names the provider traces them by; concurrently running tests then cannot be told apart and only time is checked.
+ * Budgets written for one setting do not carry over to the other.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class TestBudgets {
+    static private final Logger logger = Logger.getLogger(TestBudgets.class);
+
+    static private Properties budgets;
+
+    static public boolean isEnforced() {
+        return !"false".equalsIgnoreCase(System.getProperty("dasein.budgets.enforce"));
+    }
+
+    static private synchronized @Nonnull Properties getBudgets() {
+        if( budgets == null ) {
+            Properties p = new Properties();
+            String file = System.getProperty("dasein.budgets");
+
+            if( file != null && !file.equals("") ) {
+                try {
+                    InputStream input = new FileInputStream(new File(file));
+
+                    try {
+                        p.load(input);
+                    }
+                    finally {
+                        try {
+                            input.close();
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
+                    }
+                }
+                catch( IOException e ) {
+                    throw new RuntimeException("Failed to read test budgets " + file + ": " + e.getMessage());
+                }
+            }
+            budgets = p;
+        }
+        return budgets;
+    }
+
+    static private @Nullable String lookup(@Nonnull String suite, @Nonnull String test, @Nonnull String setting) {
+        Properties p = getBudgets();
+        String value = p.getProperty(suite + "." + test + "." + setting);
+
+        if( value == null ) {
+            value = p.getProperty(suite + ".*." + setting);
+        }
+        return (value == null ? null : value.trim());
+    }
+
+    static private long getLimit(@Nonnull String suite, @Nonnull String test, @Nonnull String setting, long annotated) {
+        String value = lookup(suite, test, setting);
+
+        if( value != null ) {
+            try {
+                return Long.parseLong(value);
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid budget for " + suite + "." + test + "." + setting + ": " + value);
+            }
+        }
+        return annotated;
+    }
+
+    /**
+     * Checks a finished test against its budget.
+     * @param testClass the test class
+     * @param test the name of the test method
+     * @param calls the number of calls to each API made by the test, or null if calls could not be counted
+     * @param millis the time the test took
+     * @return a description of every budget the test went over, empty if it stayed within budget
+     */
+    static public @Nonnull List<String> check(@Nonnull Class<?> testClass, @Nonnull String test, @Nullable Map<String,Integer> calls, long millis) {
+        String suite = testClass.getSimpleName();
+        List<String> violations = new ArrayList<String>();
+        APIBudget annotation = null;
+
+        try {
+            Method m = testClass.getMethod(test);
+
+            annotation = m.getAnnotation(APIBudget.class);
+        }
+        catch( NoSuchMethodException ignore ) {
+            // ignore
+        }
+        long maxMillis = getLimit(suite, test, "millis", annotation == null ? -1L : annotation.millis());
+
+        if( maxMillis >= 0L && millis > maxMillis ) {
+            violations.add("took " + millis + " ms, budget " + maxMillis + " ms");
+        }
+        if( calls == null ) {
+            return violations;
+        }
+        long maxCalls = getLimit(suite, test, "calls", annotation == null ? -1L : annotation.calls());
+        int total = 0;
+
+        for( int count : calls.values() ) {
+            total += count;
+        }
+        if( maxCalls >= 0L && total > maxCalls ) {
+            violations.add("made " + total + " API calls, budget " + maxCalls);
+        }
+        String exact = suite + "." + test + ".calls.";
+        String wildcard = suite + ".*.calls.";
+
+        for( String key : getBudgets().stringPropertyNames() ) {
+            String api;
+
+            if( key.startsWith(exact) ) {
+                api = key.substring(exact.length());
+            }
+            else if( key.startsWith(wildcard) && getBudgets().getProperty(exact + key.substring(wildcard.length())) == null ) {
+                api = key.substring(wildcard.length());
+            }
+            else {
+                continue;
+            }
+            long max;
+
+            try {
+                max = Long.parseLong(getBudgets().getProperty(key).trim());
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid budget for " + key + ": " + getBudgets().getProperty(key));
+                continue;
+            }
+            int count = 0;
+
+            for( Map.Entry<String,Integer> entry : calls.entrySet() ) {
+                if( entry.getKey().endsWith(api) ) {
+                    count += entry.getValue();
+                }
+            }
+            if( count > max ) {
+                violations.add("made " + count + " " + api + " calls, budget " + max);
+            }
+        }
+        return violations;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.junit.runner.Description;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gives the runners that repeat tests, {@link LoadRunner} and {@link SoakRunner}, access to the statement JUnit
+ * builds around a single test method, so that one test can be run many times against one set of class fixtures.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+class TestClassHarness extends BlockJUnit4ClassRunner {
+    /**
+     * A single selected test.
+     */
+    static class Test {
+        public Description      description;
+        public TestClassHarness harness;
+        public FrameworkMethod  method;
+        public String           name;
+
+        public Test() { }
+
+        /**
+         * Copies a selected test, so that runners can keep their own results alongside it.
+         * @param other the test to copy
+         */
+        public Test(@Nonnull Test other) {
+            description = other.description;
+            harness = other.harness;
+            method = other.method;
+            name = other.name;
+        }
+    }
+
+    /**
+     * Resolves a comma-separated list of tests named <code>Class.method</code>. Classes are named by their simple
+     * name if they are part of the specified suite, or else by their fully qualified name.
+     * @param names the tests to resolve
+     * @param suite the suite whose test classes may be named by their simple name
+     * @return the tests in the order they were named
+     * @throws InitializationError a test does not exist
+     */
+    static @Nonnull List<Test> select(@Nonnull String names, @Nonnull Class<?> suite) throws InitializationError {
+        Map<String,Class<?>> known = new HashMap<String, Class<?>>();
+        Map<Class<?>,TestClassHarness> harnesses = new HashMap<Class<?>, TestClassHarness>();
+        List<Test> tests = new ArrayList<Test>();
+
+        collect(suite, known);
+        for( String name : names.split(",") ) {
+            name = name.trim();
+            if( name.equals("") ) {
+                continue;
+            }
+            int idx = name.lastIndexOf('.');
+
+            if( idx < 1 ) {
+                throw new InitializationError("Tests must be named Class.method: " + name);
+            }
+            String className = name.substring(0, idx);
+            Class<?> testClass = known.get(className);
+
+            if( testClass == null ) {
+                try {
+                    testClass = Class.forName(className);
+                }
+                catch( ClassNotFoundException e ) {
+                    throw new InitializationError("No such test class: " + className);
+                }
+            }
+            TestClassHarness harness = harnesses.get(testClass);
+
+            if( harness == null ) {
+                harness = new TestClassHarness(testClass);
+                harnesses.put(testClass, harness);
+            }
+            Test test = new Test();
+
+            test.harness = harness;
+            test.method = harness.find(name.substring(idx + 1));
+            if( test.method == null ) {
+                throw new InitializationError("No such test: " + name);
+            }
+            test.name = testClass.getSimpleName() + "." + test.method.getName();
+            test.description = Description.createTestDescription(testClass, test.method.getName());
+            tests.add(test);
+        }
+        return tests;
+    }
+
+    /**
+     * @param tests a list of selected tests
+     * @return the distinct test classes of the tests in the order they first appear
+     */
+    static @Nonnull Set<TestClassHarness> classesOf(@Nonnull List<? extends Test> tests) {
+        Set<TestClassHarness> harnesses = new LinkedHashSet<TestClassHarness>();
+
+        for( Test test : tests ) {
+            harnesses.add(test.harness);
+        }
+        return harnesses;
+    }
+
+    static private void collect(@Nonnull Class<?> suite, @Nonnull Map<String,Class<?>> classes) {
+        Suite.SuiteClasses children = suite.getAnnotation(Suite.SuiteClasses.class);
+
+        if( children == null ) {
+            classes.put(suite.getSimpleName(), suite);
+            return;
+        }
+        for( Class<?> child : children.value() ) {
+            collect(child, classes);
+        }
+    }
+
+    public TestClassHarness(@Nonnull Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    public @Nullable FrameworkMethod find(@Nonnull String name) {
+        for( FrameworkMethod method : getChildren() ) {
+            if( method.getName().equals(name) ) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the static methods of the test class with the specified annotation, such as {@link org.junit.BeforeClass}.
+     * @param type the annotation of interest
+     * @throws Throwable the first method that failed
+     */
+    public void runClassMethods(@Nonnull Class<? extends Annotation> type) throws Throwable {
+        for( FrameworkMethod method : getTestClass().getAnnotatedMethods(type) ) {
+            method.invokeExplosively(null);
+        }
+    }
+
+    /**
+     * @param method the test method of interest
+     * @return a fresh statement that runs the test on a new instance with its @Before, @After and rules
+     */
+    public @Nonnull Statement statement(@Nonnull FrameworkMethod method) {
+        return methodBlock(method);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.identity.IdentityResources;
+import org.dasein.cloud.test.network.NetworkResources;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which fixtures survive the end of a test run so the next run can pick them up instead of provisioning them
+ * again. Only the shared fixtures that tests use without destroying them qualify: the VM, volume, keypair, firewall
+ * and VLAN provisioned under the {@link DaseinTestManager#STATEFUL} label, along with the subnet, internet gateway
+ * and route table that keep the VLAN usable. Warm fixtures are skipped at
+ * clean up, stay in the {@link ResourceLedger} and are health-checked when the next run initializes. A fixture that
+ * is gone, damaged or older than dasein.warm.ttl hours (24 by default) is torn down and rebuilt on demand, as is a VM
+ * that a test has resized to a product other than the test VM product.
+ * <pre>
+ *     -Ddasein.warm=true -Ddasein.warm.ttl=36
+ * </pre>
+ * Warm fixtures need the resource ledger, so the mode is off whenever the ledger is.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class WarmFixtures {
+    static private final Logger logger = Logger.getLogger(WarmFixtures.class);
+
+    static private final Set<String> types = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            ComputeResources.VM_TEARDOWN, ComputeResources.VOLUME_TEARDOWN,
+            IdentityResources.KEYPAIR_RESOURCE,
+            NetworkResources.FIREWALL_TEARDOWN, NetworkResources.GATEWAY_TEARDOWN, NetworkResources.ROUTE_TABLE_TEARDOWN,
+            NetworkResources.SUBNET_TEARDOWN, NetworkResources.VLAN_TEARDOWN
+    )));
+
+    /**
+     * @return true if warm fixtures were requested with -Ddasein.warm=true and the resource ledger is on
+     */
+    static public boolean isEnabled() {
+        return Boolean.getBoolean("dasein.warm") && ResourceLedger.isEnabled();
+    }
+
+    /**
+     * @return the age in milliseconds past which a warm fixture is rebuilt
+     */
+    static public long getMaxAge() {
+        String prop = System.getProperty("dasein.warm.ttl");
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return (long)(Double.parseDouble(prop.trim()) * CalendarWrapper.HOUR);
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.warm.ttl: " + prop);
+            }
+        }
+        return CalendarWrapper.HOUR * 24L;
+    }
+
+    /**
+     * Indicates whether the resource of the specified type under the specified label should be kept alive at the end
+     * of this run.
+     * @param type the resource type as recorded in the {@link ResourceLedger}
+     * @param label the label under which the tests know the resource
+     * @return true if the resource should not be torn down
+     */
+    static public boolean isWarm(@Nonnull String type, @Nonnull String label) {
+        return label.equals(DaseinTestManager.STATEFUL) && types.contains(type) && isEnabled();
+    }
+
+    /**
+     * Indicates whether a resource left behind by an earlier run is a warm fixture young enough to be reused. Whether
+     * it is still healthy is up to the resource module that adopts it.
+     * @param resource the resource from the resource ledger
+     * @return true if the resource may be reused
+     */
+    static public boolean isReusable(@Nonnull ResourceLedger.Entry resource) {
+        if( !isWarm(resource.getType(), resource.getLabel()) ) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - resource.getTimestamp();
+
+        if( age > getMaxAge() ) {
+            logger.info("Warm fixture " + resource + " is " + (age / CalendarWrapper.MINUTE) + " minutes old and will be rebuilt");
+            return false;
+        }
+        return true;
+    }
+}
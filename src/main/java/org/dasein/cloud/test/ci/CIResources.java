@@ -31,8 +31,8 @@ import org.dasein.cloud.test.DaseinTestManager;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * [Class Documentation]
@@ -43,10 +43,12 @@ import java.util.Map;
 public class CIResources {
     static private final Logger logger = Logger.getLogger(CIResources.class);
 
+    static public final String TEARDOWN = "ci";
+
     private CloudProvider   provider;
 
-    private final HashMap<String,String> testInfrastructures = new HashMap<String, String>();
-    private final HashMap<String,String> testTopologies      = new HashMap<String, String>();
+    private final Map<String,String> testInfrastructures = new ConcurrentHashMap<String, String>();
+    private final Map<String,String> testTopologies      = new ConcurrentHashMap<String, String>();
 
     public CIResources(@Nonnull CloudProvider provider) {
         this.provider = provider;
@@ -45,7 +45,7 @@ import org.junit.runners.Suite;
 public class CITestSuite {
     @BeforeClass
     static public void setup() {
-        DaseinTestManager.init();
+        DaseinTestManager.init(CITestSuite.class);
     }
 
     @AfterClass
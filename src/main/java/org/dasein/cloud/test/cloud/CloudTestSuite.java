@@ -37,7 +37,7 @@ import org.junit.runners.Suite;
 public class CloudTestSuite {
     @BeforeClass
     static public void setup() {
-        DaseinTestManager.init();
+        DaseinTestManager.init(CloudTestSuite.class);
     }
 
     @AfterClass
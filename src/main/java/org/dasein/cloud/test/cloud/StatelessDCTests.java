@@ -85,7 +85,7 @@ public class StatelessDCTests {
 
             if (name.getMethodName().contains("Pool") && services.getCapabilities().supportsResourcePools()) {
                 if (testDataCenterId != null) {
-                    for ( ResourcePool rp : services.listResourcePools(testDataCenterId)) {
+                    for ( ResourcePool rp : DaseinTestManager.getDataCenterCache().listResourcePools(tm.getProvider(), testDataCenterId)) {
                         if (testResourcePoolId == null) {
                             testResourcePoolId = rp.getProvideResourcePoolId();
                         }
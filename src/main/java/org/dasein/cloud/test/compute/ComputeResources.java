@@ -19,10 +19,16 @@
 
 package org.dasein.cloud.test.compute;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -39,7 +45,14 @@ import org.dasein.cloud.network.Subnet;
 import org.dasein.cloud.network.SubnetCreateOptions;
 import org.dasein.cloud.network.VLAN;
 import org.dasein.cloud.network.VLANSupport;
+import org.dasein.cloud.test.BatchStatePoller;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.ProvisioningScheduler;
+import org.dasein.cloud.test.ResourceLedger;
+import org.dasein.cloud.test.StateWaiter;
+import org.dasein.cloud.test.TaskGraph;
+import org.dasein.cloud.test.WarmFixtures;
 import org.dasein.cloud.test.identity.IdentityResources;
 import org.dasein.cloud.test.network.NetworkResources;
 import org.dasein.util.CalendarWrapper;
@@ -59,12 +72,27 @@ public class ComputeResources {
 
     static private final Random random = new Random();
 
+    static public final String TEARDOWN          = "compute";
+    static public final String IMAGE_TEARDOWN    = "compute.image";
+    static public final String SNAPSHOT_TEARDOWN = "compute.snapshot";
+    static public final String VM_TEARDOWN       = "compute.vm";
+    static public final String VOLUME_TEARDOWN   = "compute.volume";
+
+    /**
+     * The lookups of default test resources, each performed once on first use.
+     */
+    static private enum Discovery { IMAGES, VOLUME_PRODUCTS, VMS, VOLUMES }
+
     private CloudProvider provider;
 
-    private final Map<String, String> testMachineImages = new HashMap<String, String>();
-    private final Map<String, String> testSnapshots     = new HashMap<String, String>();
-    private final Map<String, String> testVMs           = new HashMap<String, String>();
-    private final Map<String, String> testVolumes       = new HashMap<String, String>();
+    private final EnumSet<Discovery> discovered = EnumSet.noneOf(Discovery.class);
+
+    private final Map<String, String> testMachineImages = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testSnapshots     = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testVMs           = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testVolumes       = new ConcurrentHashMap<String, String>();
+    // warm VMs whose product has not yet been checked against the test VM product
+    private final Set<String>         unverifiedVMs     = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     //defaults
     private String   testDataCenterId;
@@ -74,6 +102,106 @@ public class ComputeResources {
 
     public ComputeResources( @Nonnull CloudProvider provider ) {
         this.provider = provider;
+        testDataCenterId = System.getProperty("test.dataCenter");
+    }
+
+    /**
+     * Takes over a resource left behind by an earlier test run.
+     * @param resource the resource from the resource ledger
+     * @param label the label under which to track the resource
+     * @return true if the resource is a compute resource and was adopted
+     */
+    public boolean adopt(@Nonnull ResourceLedger.Entry resource, @Nonnull String label) {
+        Map<String, String> map;
+
+        if( resource.getType().equals(IMAGE_TEARDOWN) ) {
+            map = testMachineImages;
+        }
+        else if( resource.getType().equals(SNAPSHOT_TEARDOWN) ) {
+            map = testSnapshots;
+        }
+        else if( resource.getType().equals(VM_TEARDOWN) ) {
+            map = testVMs;
+        }
+        else if( resource.getType().equals(VOLUME_TEARDOWN) ) {
+            map = testVolumes;
+        }
+        else {
+            return false;
+        }
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized ( map ) {
+            if( map.containsValue(resource.getId()) ) {
+                return true;
+            }
+            label = Bookkeeping.getUniqueLabel(map, label, random);
+            map.put(label, resource.getId());
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a warm fixture left behind by an earlier test run is still fit for use.
+     * @param resource the resource from the resource ledger
+     * @return true if the resource is a compute resource that still exists in a usable state and, for a VM, is still
+     * the test VM product; if that product has not been discovered yet, the VM is checked when a test first asks for it
+     */
+    public boolean isUsable(@Nonnull ResourceLedger.Entry resource) {
+        ComputeServices services = provider.getComputeServices();
+
+        if( services == null ) {
+            return false;
+        }
+        try {
+            if( resource.getType().equals(VM_TEARDOWN) ) {
+                VirtualMachineSupport support = services.getVirtualMachineSupport();
+                VirtualMachine vm = ( support == null ? null : support.getVirtualMachine(resource.getId()) );
+
+                if( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) ) {
+                    return false;
+                }
+                // the stateful tests resize the VM, so a kept VM may no longer be the product a fresh one would be,
+                // but discovering that product here would scan the image catalog during init()
+                String productId = ( discovered.contains(Discovery.IMAGES) ? testVMProductId : null );
+
+                if( productId == null ) {
+                    unverifiedVMs.add(resource.getId());
+                }
+                else if( !productId.equals(vm.getProductId()) ) {
+                    logger.info("Warm fixture " + resource + " is a " + vm.getProductId() + " instead of a " + productId + " and will be rebuilt");
+                    return false;
+                }
+                return true;
+            }
+            else if( resource.getType().equals(VOLUME_TEARDOWN) ) {
+                VolumeSupport support = services.getVolumeSupport();
+                Volume volume = ( support == null ? null : support.getVolume(resource.getId()) );
+
+                return ( volume != null && !VolumeState.DELETED.equals(volume.getCurrentState()) );
+            }
+        } catch( Throwable t ) {
+            logger.warn("Unable to check warm fixture " + resource + ": " + t.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the stateful resources that {@link #addTeardown(TaskGraph)} removes, so that tests running after a
+     * teardown provision fresh ones instead of being handed IDs of resources that are gone.
+     */
+    public void forget() {
+        testMachineImages.keySet().retainAll(Collections.singleton(DaseinTestManager.STATELESS));
+        testSnapshots.keySet().retainAll(Collections.singleton(DaseinTestManager.STATELESS));
+        for( String label : new ArrayList<String>(testVMs.keySet()) ) {
+            if( !label.equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(VM_TEARDOWN, label) ) {
+                testVMs.remove(label);
+            }
+        }
+        for( String label : new ArrayList<String>(testVolumes.keySet()) ) {
+            if( !label.equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(VOLUME_TEARDOWN, label) ) {
+                testVolumes.remove(label);
+            }
+        }
     }
 
     public int report() {
@@ -116,116 +244,166 @@ public class ComputeResources {
         return count;
     }
 
+    /**
+     * Tears down all stateful compute resources provisioned during the tests.
+     * @return the number of resources de-provisioned
+     */
     public int close() {
-        ComputeServices computeServices = provider.getComputeServices();
-        int count = 0;
+        TaskGraph teardown = new TaskGraph("Compute Teardown");
 
-        if( computeServices != null ) {
-            VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+        addTeardown(teardown);
+        teardown.run();
+        return teardown.getTotal(TEARDOWN);
+    }
 
-            if( vmSupport != null ) {
-                for( Map.Entry<String, String> entry : testVMs.entrySet() ) {
-                    if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            VirtualMachine vm = vmSupport.getVirtualMachine(entry.getValue());
+    /**
+     * Adds a task for each stateful compute resource to the specified teardown graph. Virtual machines, images and
+     * snapshots are removed right away, while each volume waits until all virtual machines are terminated and all
+     * snapshots removed, and then only until it is actually detached.
+     * @param teardown the graph to which the tasks are added
+     */
+    public void addTeardown(@Nonnull TaskGraph teardown) {
+        ComputeServices computeServices = provider.getComputeServices();
 
-                            if( vm != null ) {
-                                vmSupport.terminate(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+        if( computeServices == null ) {
+            return;
+        }
+        final VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+
+        if( vmSupport != null ) {
+            for( final Map.Entry<String, String> entry : testVMs.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(VM_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(VM_TEARDOWN + ":" + entry.getValue(), VM_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
+                                VirtualMachine vm = vmSupport.getVirtualMachine(entry.getValue());
+
+                                if( vm != null ) {
+                                    vmSupport.terminate(entry.getValue());
+                                    // dependents only care that the VM is really gone
+                                    BatchStatePoller.getVirtualMachinePoller(provider).await(entry.getValue(), EnumSet.of(VmState.TERMINATED), CalendarWrapper.MINUTE * 10L, true);
+                                }
+                                ResourceLedger.deprovisioned(VM_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision test VM " + entry.getValue() + ": " + t.getMessage());
+                                return 0;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test VM " + entry.getValue() + ": " + t.getMessage());
                         }
-                    }
+                    });
                 }
             }
+        }
 
-            MachineImageSupport imageSupport = computeServices.getImageSupport();
+        final MachineImageSupport imageSupport = computeServices.getImageSupport();
 
-            if( imageSupport != null ) {
-                for( Map.Entry<String, String> entry : testMachineImages.entrySet() ) {
-                    if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            MachineImage img = imageSupport.getImage(entry.getValue());
+        if( imageSupport != null ) {
+            for( final Map.Entry<String, String> entry : testMachineImages.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                    teardown.add(IMAGE_TEARDOWN + ":" + entry.getValue(), IMAGE_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
+                                MachineImage img = imageSupport.getImage(entry.getValue());
 
-                            if( img != null ) {
-                                imageSupport.remove(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+                                if( img != null ) {
+                                    imageSupport.remove(entry.getValue());
+                                }
+                                ResourceLedger.deprovisioned(IMAGE_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision test image " + entry.getValue() + ": " + t.getMessage());
+                                return 0;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test image " + entry.getValue() + ": " + t.getMessage());
                         }
-                    }
+                    });
                 }
             }
+        }
 
-            SnapshotSupport snapshotSupport = computeServices.getSnapshotSupport();
+        final SnapshotSupport snapshotSupport = computeServices.getSnapshotSupport();
 
-            if( snapshotSupport != null ) {
-                for( Map.Entry<String, String> entry : testSnapshots.entrySet() ) {
-                    if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            Snapshot snapshot = snapshotSupport.getSnapshot(entry.getValue());
+        if( snapshotSupport != null ) {
+            for( final Map.Entry<String, String> entry : testSnapshots.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                    teardown.add(SNAPSHOT_TEARDOWN + ":" + entry.getValue(), SNAPSHOT_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
+                                Snapshot snapshot = snapshotSupport.getSnapshot(entry.getValue());
 
-                            if( snapshot != null ) {
-                                snapshotSupport.remove(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+                                if( snapshot != null ) {
+                                    snapshotSupport.remove(entry.getValue());
+                                }
+                                ResourceLedger.deprovisioned(SNAPSHOT_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision test snapshot " + entry.getValue() + " post-test: " + t.getMessage());
+                                return 0;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test snapshot " + entry.getValue() + " post-test: " + t.getMessage());
                         }
-                    }
+                    });
                 }
             }
-            VolumeSupport volumeSupport = computeServices.getVolumeSupport();
+        }
 
-            if( volumeSupport != null ) {
-                for( Map.Entry<String, String> entry : testVolumes.entrySet() ) {
-                    if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            Volume volume = volumeSupport.getVolume(entry.getValue());
+        final VolumeSupport volumeSupport = computeServices.getVolumeSupport();
 
-                            if( volume != null ) {
-                                volumeSupport.detach(entry.getValue(), true);
-                            }
-                        } catch( Throwable ignore ) {
-                            // IGNORE
-                        }
-                    }
-                }
-                try {
-                    Thread.sleep(60000L);
-                } catch( InterruptedException ignore ) {
-                }
-                for( Map.Entry<String, String> entry : testVolumes.entrySet() ) {
-                    if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            Volume volume = volumeSupport.getVolume(entry.getValue());
+        if( volumeSupport != null ) {
+            for( final Map.Entry<String, String> entry : testVolumes.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(VOLUME_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(VOLUME_TEARDOWN + ":" + entry.getValue(), VOLUME_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
+                                Volume volume = volumeSupport.getVolume(entry.getValue());
 
-                            if( volume != null ) {
-                                volumeSupport.remove(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+                                if( volume == null ) {
+                                    ResourceLedger.deprovisioned(VOLUME_TEARDOWN, entry.getValue());
+                                    return 1;
+                                }
+                                if( volume.getProviderVirtualMachineId() != null ) {
+                                    try {
+                                        volumeSupport.detach(entry.getValue(), true);
+                                    } catch( Throwable ignore ) {
+                                        // IGNORE
+                                    }
+                                    StateWaiter waiter = new StateWaiter(StateWaiter.VOLUME, CalendarWrapper.MINUTE * 5L);
+
+                                    while( waiter.isWaiting() ) {
+                                        if( volume == null || volume.getProviderVirtualMachineId() == null ) {
+                                            waiter.done();
+                                            break;
+                                        }
+                                        waiter.pause();
+                                        try {
+                                            volume = volumeSupport.getVolume(entry.getValue());
+                                        } catch( Throwable ignore ) {
+                                            // ignore
+                                        }
+                                    }
+                                }
+                                if( volume != null ) {
+                                    StateWaiter.retry(StateWaiter.VOLUME, CalendarWrapper.MINUTE, new Callable<Object>() {
+                                        @Override
+                                        public Object call() throws Exception {
+                                            volumeSupport.remove(entry.getValue());
+                                            return null;
+                                        }
+                                    });
+                                }
+                                ResourceLedger.deprovisioned(VOLUME_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision test volume " + entry.getValue() + ": " + t.getMessage());
+                                return 0;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test volume " + entry.getValue() + ": " + t.getMessage());
                         }
-                    }
+                    }, VM_TEARDOWN, SNAPSHOT_TEARDOWN);
                 }
             }
         }
-        return count;
     }
 
     private @Nullable String findStatelessSnapshot() {
@@ -272,7 +450,7 @@ public class ComputeResources {
                 DataCenter defaultDC = null;
 
                 //noinspection ConstantConditions
-                for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()) ) {
                     if( defaultDC == null ) {
                         defaultDC = dc;
                     }
@@ -312,6 +490,9 @@ public class ComputeResources {
     }
 
     public @Nullable String getTestImageId( @Nonnull String label, boolean provisionIfNull ) {
+        if( label.equals(DaseinTestManager.STATELESS) ) {
+            discover(Discovery.IMAGES);
+        }
         String id = testMachineImages.get(label);
 
         if( id == null ) {
@@ -388,6 +569,7 @@ public class ComputeResources {
 
     public @Nullable String getTestVmId( @Nonnull String label, @Nonnull String vmName, @Nullable VmState desiredState, boolean provisionIfNull, @Nullable String preferredDataCenterId ) {
         if( label.equals(DaseinTestManager.STATELESS) ) {
+            discover(Discovery.VMS);
             for( Map.Entry<String, String> entry : testVMs.entrySet() ) {
                 if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
                     String id = entry.getValue();
@@ -421,6 +603,10 @@ public class ComputeResources {
                 try {
                     VirtualMachine vm = ( id == null ? null : support.getVirtualMachine(id) );
 
+                    if( vm != null && !isTestVMProduct(label, vm) ) {
+                        vm = null;
+                        id = null;
+                    }
                     if( ( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) ) && provisionIfNull ) {
                         id = provisionVM(support, label, "testvm-" + label, vmName, preferredDataCenterId);
                         vm = support.getVirtualMachine(id);
@@ -445,6 +631,7 @@ public class ComputeResources {
 
     public @Nullable String getTestVLANVmId(@Nonnull String label, @Nullable VmState desiredState, @Nullable String vlanId, boolean provisionIfNull, @Nullable String preferredDataCenterId) {
         if( label.equals(DaseinTestManager.STATELESS) ) {
+            discover(Discovery.VMS);
             for( Map.Entry<String,String> entry : testVMs.entrySet() ) {
                 if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
                     String id = entry.getValue();
@@ -482,6 +669,10 @@ public class ComputeResources {
             if( support != null ) {
                 try {
                     VirtualMachine vm = (id == null ? null : support.getVirtualMachine(id));
+                    if( vm != null && !isTestVMProduct(label, vm) ) {
+                        vm = null;
+                        id = null;
+                    }
                     if( (vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) || vm.getProviderVlanId() == null || !vm.getProviderVlanId().equalsIgnoreCase(vlanId)) && provisionIfNull ) {
                         String testImageId = getTestImageId(DaseinTestManager.STATELESS, false);
                         if( testImageId == null ) {
@@ -538,7 +729,7 @@ public class ComputeResources {
                                             String dcId = subnet.getProviderDataCenterId();
 
                                             if( dcId == null ) {
-                                                for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                                for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()) ) {
                                                     if( (dc.isActive() && dc.isAvailable()) || dcId == null ) {
                                                         dcId = dc.getProviderDataCenterId();
                                                     }
@@ -581,12 +772,41 @@ public class ComputeResources {
         return null;
     }
 
+    /**
+     * Checks a warm VM adopted before the test VM product was known against that product the first time a test asks
+     * for it. A VM of another product is moved out of the way, to be torn down with the other removed resources, so
+     * that a fresh one is provisioned under the label.
+     * @param label the label under which the VM is tracked
+     * @param vm the VM
+     * @return false if the VM was moved out of the way
+     */
+    private boolean isTestVMProduct(@Nonnull String label, @Nonnull VirtualMachine vm) {
+        String id = vm.getProviderVirtualMachineId();
+
+        if( !unverifiedVMs.remove(id) ) {
+            return true;
+        }
+        String productId = getTestVMProductId();
+
+        if( productId == null || productId.equals(vm.getProductId()) ) {
+            return true;
+        }
+        logger.info("Warm fixture " + id + " is a " + vm.getProductId() + " instead of a " + productId + " and will be rebuilt");
+        synchronized( testVMs ) {
+            testVMs.remove(label);
+            testVMs.put(Bookkeeping.getUniqueLabel(testVMs, DaseinTestManager.REMOVED, random), id);
+        }
+        return false;
+    }
+
     public @Nullable String getTestVMProductId() {
+        discover(Discovery.IMAGES);
         return testVMProductId;
     }
 
     public @Nullable String getTestVolumeId( @Nonnull String label, boolean provisionIfNull, @Nullable VolumeFormat desiredFormat, @Nullable String preferredDataCenterId ) {
         if( label.equals(DaseinTestManager.STATELESS) ) {
+            discover(Discovery.VOLUMES);
             for( Map.Entry<String, String> entry : testVolumes.entrySet() ) {
                 if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
                     String id = entry.getValue();
@@ -622,191 +842,276 @@ public class ComputeResources {
     }
 
     public @Nullable String getTestVolumeProductId() {
+        discover(Discovery.VOLUME_PRODUCTS);
         return testVolumeProductId;
     }
 
+    /**
+     * Performs all discovery up front instead of on first use.
+     */
     public void init() {
+        for( Discovery discovery : Discovery.values() ) {
+            discover(discovery);
+        }
+    }
+
+    private void discover(@Nonnull Discovery discovery) {
+        synchronized( discovered ) {
+            if( discovered.contains(discovery) ) {
+                return;
+            }
+            ComputeServices computeServices = provider.getComputeServices();
+
+            if( computeServices != null ) {
+                switch( discovery ) {
+                    case IMAGES: discoverImages(computeServices); break;
+                    case VOLUME_PRODUCTS: discoverVolumeProducts(computeServices); break;
+                    case VMS: discoverVirtualMachines(computeServices); break;
+                    case VOLUMES: discoverVolumes(computeServices); break;
+                }
+            }
+            discovered.add(discovery);
+        }
+    }
+
+    private boolean useCachedImage(@Nonnull ComputeServices computeServices, @Nullable String dataCenterId) {
+        DiscoveryCache.Choice choice = DiscoveryCache.get(dataCenterId);
+
+        if( choice == null ) {
+            return false;
+        }
+        VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+        MachineImageSupport imageSupport = computeServices.getImageSupport();
+
         try {
-            testDataCenterId = System.getProperty("test.dataCenter");
-        } catch (Throwable ignore) {
-            // ignore
+            if( vmSupport != null && imageSupport != null && vmSupport.getProduct(choice.productId) != null ) {
+                MachineImage image = imageSupport.getImage(choice.imageId);
+
+                if( image != null && MachineImageState.ACTIVE.equals(image.getCurrentState()) ) {
+                    testVMProductId = choice.productId;
+                    testMachineImages.put(DaseinTestManager.STATELESS, choice.imageId);
+                    testImagePlatform = image.getPlatform();
+                    return true;
+                }
+            }
+        } catch( Throwable ignore ) {
+            // fall back to a full scan
         }
-        ComputeServices computeServices = provider.getComputeServices();
+        logger.info("Cached test image " + choice.imageId + " and product " + choice.productId + " are no longer usable");
+        DiscoveryCache.remove(dataCenterId);
+        return false;
+    }
+
+    private void discoverImages(@Nonnull ComputeServices computeServices) {
         String dataCenterId = System.getProperty("test.dataCenter");
 
-        if( computeServices != null ) {
-            Map<Architecture, VirtualMachineProduct> productMap = new HashMap<Architecture, VirtualMachineProduct>();
-            VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+        if( useCachedImage(computeServices, dataCenterId) ) {
+            return;
+        }
+        Map<Architecture, VirtualMachineProduct> productMap = new HashMap<Architecture, VirtualMachineProduct>();
+        VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
 
-            if( vmSupport != null ) {
-                try {
-                    for( Architecture architecture : Architecture.values() ) {
-                        VirtualMachineProduct defaultProduct = null;
+        if( vmSupport != null ) {
+            try {
+                for( Architecture architecture : Architecture.values() ) {
+                    VirtualMachineProduct defaultProduct = null;
 
-                        try {
-                            VirtualMachineProductFilterOptions options = VirtualMachineProductFilterOptions.getInstance().withDatacenterId(dataCenterId);
-                            for( VirtualMachineProduct product : vmSupport.listProducts(options, architecture) ) {
-                                if( defaultProduct == null ) {
+                    try {
+                        VirtualMachineProductFilterOptions options = VirtualMachineProductFilterOptions.getInstance().withDatacenterId(dataCenterId);
+                        for( VirtualMachineProduct product : vmSupport.listProducts(options, architecture) ) {
+                            if( defaultProduct == null ) {
+                                defaultProduct = product;
+                            }
+                            else if( defaultProduct.getRamSize().intValue() > product.getRamSize().intValue() ) {
+                                if( product.getRamSize().intValue() > 1000 ) {
                                     defaultProduct = product;
                                 }
-                                else if( defaultProduct.getRamSize().intValue() > product.getRamSize().intValue() ) {
-                                    if( product.getRamSize().intValue() > 1000 ) {
-                                        defaultProduct = product;
-                                    }
+                            }
+                            else {
+                                if( defaultProduct.getRamSize().intValue() < 1024 && product.getRamSize().intValue() < 2200 ) {
+                                    defaultProduct = product;
                                 }
-                                else {
-                                    if( defaultProduct.getRamSize().intValue() < 1024 && product.getRamSize().intValue() < 2200 ) {
+                                else if( defaultProduct.getCpuCount() > product.getCpuCount() ) {
+                                    if( ( defaultProduct.getRamSize().intValue() * 2 ) > product.getRamSize().intValue() ) {
                                         defaultProduct = product;
                                     }
-                                    else if( defaultProduct.getCpuCount() > product.getCpuCount() ) {
-                                        if( ( defaultProduct.getRamSize().intValue() * 2 ) > product.getRamSize().intValue() ) {
-                                            defaultProduct = product;
-                                        }
-                                    }
                                 }
                             }
-                        } catch( Throwable ignore ) {
-                            // ignore
                         }
-                        productMap.put(architecture, defaultProduct);
+                    } catch( Throwable ignore ) {
+                        // ignore
                     }
-                } catch( Throwable ignore ) {
-                    // ignore
+                    productMap.put(architecture, defaultProduct);
                 }
+            } catch( Throwable ignore ) {
+                // ignore
             }
+        }
 
-            MachineImageSupport imageSupport = computeServices.getImageSupport();
+        MachineImageSupport imageSupport = computeServices.getImageSupport();
 
-            if( imageSupport != null ) {
-                boolean volumeBased = false;
+        if( imageSupport != null ) {
+            boolean volumeBased = false;
 
-                try {
-                    for( MachineImageType type : imageSupport.getCapabilities().listSupportedImageTypes() ) {
-                        if( type.equals(MachineImageType.VOLUME) ) {
-                            volumeBased = true;
-                            break;
-                        }
+            try {
+                for( MachineImageType type : imageSupport.getCapabilities().listSupportedImageTypes() ) {
+                    if( type.equals(MachineImageType.VOLUME) ) {
+                        volumeBased = true;
+                        break;
                     }
-                } catch( Throwable ignore ) {
-                    // ignore
                 }
-                for( Architecture architecture : new Architecture[]{Architecture.I64, Architecture.POWER, Architecture.I32, Architecture.SPARC} ) {
-                    VirtualMachineProduct currentProduct = productMap.get(architecture);
+            } catch( Throwable ignore ) {
+                // ignore
+            }
+            for( Architecture architecture : new Architecture[]{Architecture.I64, Architecture.POWER, Architecture.I32, Architecture.SPARC} ) {
+                VirtualMachineProduct currentProduct = productMap.get(architecture);
 
-                    if( currentProduct != null ) {
-                        // Let WINDOWS come first for a greater chance of StatelessVMTests#getVMPassword to work
-                        for( Platform platform : new Platform[]{Platform.WINDOWS, Platform.UBUNTU, Platform.CENT_OS, Platform.RHEL} ) {
-                            ImageFilterOptions options = ImageFilterOptions.getInstance(ImageClass.MACHINE).withArchitecture(architecture).onPlatform(platform);
+                if( currentProduct != null ) {
+                    // Let WINDOWS come first for a greater chance of StatelessVMTests#getVMPassword to work
+                    for( Platform platform : new Platform[]{Platform.WINDOWS, Platform.UBUNTU, Platform.CENT_OS, Platform.RHEL} ) {
+                        ImageFilterOptions options = ImageFilterOptions.getInstance(ImageClass.MACHINE).withArchitecture(architecture).onPlatform(platform);
 
-                            try {
-                                for( MachineImage image : imageSupport.listImages(options) ) {
-                                    if( MachineImageState.ACTIVE.equals(image.getCurrentState()) && "".equals(image.getSoftware()) ) {
-                                        testVMProductId = currentProduct.getProviderProductId();
-                                        testMachineImages.put(DaseinTestManager.STATELESS, image.getProviderMachineImageId());
-                                        testImagePlatform = image.getPlatform();
-                                        if( !volumeBased || image.getType().equals(MachineImageType.VOLUME) ) {
-                                            break;
-                                        }
-                                    }
-                                }
-                            } catch( Throwable ignore ) {
-                                // ignore
-                            }
-                            if( testVMProductId != null ) {
-                                break;
-                            }
-                            options = ImageFilterOptions.getInstance(ImageClass.MACHINE).withArchitecture(architecture).onPlatform(platform);
-                            try {
-                                for( MachineImage image : imageSupport.searchPublicImages(options) ) {
-                                    if( MachineImageState.ACTIVE.equals(image.getCurrentState()) && "".equals(image.getSoftware()) ) {
-                                        testVMProductId = currentProduct.getProviderProductId();
-                                        testMachineImages.put(DaseinTestManager.STATELESS, image.getProviderMachineImageId());
-                                        testImagePlatform = image.getPlatform();
-                                        if( !volumeBased || image.getType().equals(MachineImageType.VOLUME) ) {
-                                            break;
-                                        }
+                        try {
+                            for( MachineImage image : imageSupport.listImages(options) ) {
+                                if( MachineImageState.ACTIVE.equals(image.getCurrentState()) && "".equals(image.getSoftware()) ) {
+                                    testVMProductId = currentProduct.getProviderProductId();
+                                    testMachineImages.put(DaseinTestManager.STATELESS, image.getProviderMachineImageId());
+                                    testImagePlatform = image.getPlatform();
+                                    if( !volumeBased || image.getType().equals(MachineImageType.VOLUME) ) {
+                                        break;
                                     }
                                 }
-                            } catch( Throwable ignore ) {
-                                // ignore
                             }
+                        } catch( Throwable ignore ) {
+                            // ignore
                         }
                         if( testVMProductId != null ) {
                             break;
                         }
+                        options = ImageFilterOptions.getInstance(ImageClass.MACHINE).withArchitecture(architecture).onPlatform(platform);
+                        try {
+                            for( MachineImage image : imageSupport.searchPublicImages(options) ) {
+                                if( MachineImageState.ACTIVE.equals(image.getCurrentState()) && "".equals(image.getSoftware()) ) {
+                                    testVMProductId = currentProduct.getProviderProductId();
+                                    testMachineImages.put(DaseinTestManager.STATELESS, image.getProviderMachineImageId());
+                                    testImagePlatform = image.getPlatform();
+                                    if( !volumeBased || image.getType().equals(MachineImageType.VOLUME) ) {
+                                        break;
+                                    }
+                                }
+                            }
+                        } catch( Throwable ignore ) {
+                            // ignore
+                        }
+                    }
+                    if( testVMProductId != null ) {
+                        break;
                     }
                 }
             }
+        }
+        String imageId = testMachineImages.get(DaseinTestManager.STATELESS);
 
-            VolumeSupport volumeSupport = computeServices.getVolumeSupport();
+        if( testVMProductId != null && imageId != null ) {
+            DiscoveryCache.Choice choice = new DiscoveryCache.Choice();
 
-            if( volumeSupport != null ) {
-                try {
-                    VolumeProduct defaultProduct = null;
+            choice.imageId = imageId;
+            choice.productId = testVMProductId;
+            DiscoveryCache.put(dataCenterId, choice);
+        }
+    }
+
+    private void discoverVolumeProducts(@Nonnull ComputeServices computeServices) {
+        VolumeSupport volumeSupport = computeServices.getVolumeSupport();
 
-                    for( VolumeProduct product : volumeSupport.listVolumeProducts() ) {
-                        if( defaultProduct == null ) {
-                            defaultProduct = product;
+        if( volumeSupport != null ) {
+            try {
+                VolumeProduct defaultProduct = null;
+
+                for( VolumeProduct product : volumeSupport.listVolumeProducts() ) {
+                    if( defaultProduct == null ) {
+                        defaultProduct = product;
+                    }
+                    else {
+                        if( volumeSupport.getCapabilities().isVolumeSizeDeterminedByProduct() ) {
+                            if( product.getVolumeSize().intValue() < defaultProduct.getVolumeSize().intValue() && product.getVolumeSize().intValue() >= 20 ) {
+                                defaultProduct = product;
+                            }
                         }
                         else {
-                            if( volumeSupport.getCapabilities().isVolumeSizeDeterminedByProduct() ) {
-                                if( product.getVolumeSize().intValue() < defaultProduct.getVolumeSize().intValue() && product.getVolumeSize().intValue() >= 20 ) {
+                            if( product.getMonthlyGigabyteCost() > 0.00 ) {
+                                if( product.getMonthlyGigabyteCost() < defaultProduct.getMonthlyGigabyteCost() ) {
                                     defaultProduct = product;
                                 }
                             }
-                            else {
-                                if( product.getMonthlyGigabyteCost() > 0.00 ) {
-                                    if( product.getMonthlyGigabyteCost() < defaultProduct.getMonthlyGigabyteCost() ) {
-                                        defaultProduct = product;
-                                    }
-                                }
-                            }
                         }
                     }
-                    if( defaultProduct != null ) {
-                        testVolumeProductId = defaultProduct.getProviderProductId();
-                    }
-                } catch( Throwable ignore ) {
-                    // ignore me
                 }
+                if( defaultProduct != null ) {
+                    testVolumeProductId = defaultProduct.getProviderProductId();
+                }
+            } catch( Throwable ignore ) {
+                // ignore me
             }
-            if( vmSupport != null ) {
-                try {
-                    for( VirtualMachine vm : vmSupport.listVirtualMachines() ) {
-                        if (( vm.getProviderDataCenterId().equals(dataCenterId)) && ( VmState.RUNNING.equals(vm.getCurrentState()) )) { // no guarantee of being in the same datacenter
-                            testVMs.put(DaseinTestManager.STATELESS, vm.getProviderVirtualMachineId());
-                            break;
-                        }
+        }
+    }
+
+    private void discoverVirtualMachines(@Nonnull ComputeServices computeServices) {
+        String dataCenterId = System.getProperty("test.dataCenter");
+        VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+
+        if( vmSupport != null ) {
+            try {
+                for( VirtualMachine vm : vmSupport.listVirtualMachines() ) {
+                    if (( vm.getProviderDataCenterId().equals(dataCenterId)) && ( VmState.RUNNING.equals(vm.getCurrentState()) )) { // no guarantee of being in the same datacenter
+                        testVMs.put(DaseinTestManager.STATELESS, vm.getProviderVirtualMachineId());
+                        break;
                     }
-                } catch( Throwable ignore ) {
-                    // ignore
                 }
+            } catch( Throwable ignore ) {
+                // ignore
             }
-            if( volumeSupport != null ) {
-                try {
-                    Volume defaultVolume = null;
+        }
+    }
 
-                    for( Volume volume : volumeSupport.listVolumes() ) {
-                        if (( volume.getProviderDataCenterId().equals(dataCenterId)) && ( VolumeState.AVAILABLE.equals(volume.getCurrentState()) || defaultVolume == null )) {
-                            if( defaultVolume == null || volume.isAttached() ) {
-                                defaultVolume = volume;
-                            }
-                            if( VolumeState.AVAILABLE.equals(defaultVolume.getCurrentState()) && defaultVolume.isAttached() ) {
-                                break;
-                            }
+    private void discoverVolumes(@Nonnull ComputeServices computeServices) {
+        String dataCenterId = System.getProperty("test.dataCenter");
+        VolumeSupport volumeSupport = computeServices.getVolumeSupport();
+
+        if( volumeSupport != null ) {
+            try {
+                Volume defaultVolume = null;
+
+                for( Volume volume : volumeSupport.listVolumes() ) {
+                    if (( volume.getProviderDataCenterId().equals(dataCenterId)) && ( VolumeState.AVAILABLE.equals(volume.getCurrentState()) || defaultVolume == null )) {
+                        if( defaultVolume == null || volume.isAttached() ) {
+                            defaultVolume = volume;
+                        }
+                        if( VolumeState.AVAILABLE.equals(defaultVolume.getCurrentState()) && defaultVolume.isAttached() ) {
+                            break;
                         }
                     }
-                    if( defaultVolume != null ) {
-                        testVolumes.put(DaseinTestManager.STATELESS, defaultVolume.getProviderVolumeId());
-                    }
-                } catch( Throwable ignore ) {
-                    // ignore
                 }
+                if( defaultVolume != null ) {
+                    testVolumes.put(DaseinTestManager.STATELESS, defaultVolume.getProviderVolumeId());
+                }
+            } catch( Throwable ignore ) {
+                // ignore
             }
         }
     }
 
     public @Nonnull String provisionImage( @Nonnull MachineImageSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String vmId ) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(IMAGE_TEARDOWN);
+        try {
+            return doProvisionImage(support, label, namePrefix, vmId);
+        }
+        finally {
+            ProvisioningScheduler.release(IMAGE_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionImage( @Nonnull MachineImageSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String vmId ) throws CloudException, InternalException {
         VirtualMachineSupport vmSupport = null;
 
         ComputeServices services = provider.getComputeServices();
@@ -835,10 +1140,9 @@ public class ComputeResources {
             String id = ImageCreateOptions.getInstance(vm, namePrefix + ( System.currentTimeMillis() % 10000 ), "Test machine image with label " + label).build(provider);
 
             synchronized ( testMachineImages ) {
-                while( testMachineImages.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
+                label = Bookkeeping.getUniqueLabel(testMachineImages, label, random);
                 testMachineImages.put(label, id);
+                ResourceLedger.provisioned(IMAGE_TEARDOWN, id, label, vmId);
             }
             return id;
         }
@@ -850,10 +1154,9 @@ public class ComputeResources {
                 String id = support.bundleVirtualMachine(vmId, format, "dsnimg" + ( System.currentTimeMillis() % 100000 ), "dsnimg");
 
                 synchronized ( testMachineImages ) {
-                    while( testMachineImages.containsKey(label) ) {
-                        label = label + random.nextInt(9);
-                    }
+                    label = Bookkeeping.getUniqueLabel(testMachineImages, label, random);
                     testMachineImages.put(label, id);
+                    ResourceLedger.provisioned(IMAGE_TEARDOWN, id, label, vmId);
                 }
                 return id;
             }
@@ -862,6 +1165,16 @@ public class ComputeResources {
     }
 
     public @Nonnull String provisionSnapshot( @SuppressWarnings("UnusedParameters") @Nonnull SnapshotSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String volumeId ) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(SNAPSHOT_TEARDOWN);
+        try {
+            return doProvisionSnapshot(support, label, namePrefix, volumeId);
+        }
+        finally {
+            ProvisioningScheduler.release(SNAPSHOT_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionSnapshot( @SuppressWarnings("UnusedParameters") @Nonnull SnapshotSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String volumeId ) throws CloudException, InternalException {
         SnapshotCreateOptions options;
 
         if( volumeId == null ) {
@@ -875,21 +1188,17 @@ public class ComputeResources {
         if( vs != null ) {
             Volume volume = vs.getVolume(volumeId);
 
-            if( volume != null ) {
-                long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
+            if( volume != null && !volume.getCurrentState().equals(VolumeState.AVAILABLE) && !volume.getCurrentState().equals(VolumeState.DELETED) ) {
+                BatchStatePoller.Watch watch = BatchStatePoller.getVolumePoller(provider).await(volumeId, EnumSet.of(VolumeState.AVAILABLE, VolumeState.DELETED), CalendarWrapper.MINUTE * 20L, true);
 
-                while( timeout > System.currentTimeMillis() ) {
-                    try {
-                        Thread.sleep(15000L);
-                    } catch( InterruptedException ignore ) {
-                    }
+                if( watch.isGone() ) {
+                    volume = null;
+                }
+                else {
                     try {
                         volume = vs.getVolume(volumeId);
                     } catch( Throwable ignore ) {
                     }
-                    if( volume == null || volume.getCurrentState().equals(VolumeState.AVAILABLE) || volume.getCurrentState().equals(VolumeState.DELETED) ) {
-                        break;
-                    }
                 }
             }
             if( volume != null && volume.getProviderVirtualMachineId() == null && support.getCapabilities().identifyAttachmentRequirement().equals(Requirement.REQUIRED) ) {
@@ -918,17 +1227,27 @@ public class ComputeResources {
             throw new CloudException("Unable to create a snapshot");
         }
         synchronized ( testSnapshots ) {
-            while( testSnapshots.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testSnapshots, label, random);
             testSnapshots.put(label, id);
+            ResourceLedger.provisioned(SNAPSHOT_TEARDOWN, id, label, volumeId);
         }
         return id;
-
     }
 
     public @Nonnull Iterable<String> provisionManyVMs( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter, int count ) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(VM_TEARDOWN);
+        try {
+            return doProvisionManyVMs(support, label, options, preferredDataCenter, count);
+        }
+        finally {
+            ProvisioningScheduler.release(VM_TEARDOWN);
+        }
+    }
 
+    private @Nonnull Iterable<String> doProvisionManyVMs( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter, int count ) throws CloudException, InternalException {
+        // the default platform and root volume product come from discovery
+        discover(Discovery.IMAGES);
+        discover(Discovery.VOLUME_PRODUCTS);
         if( preferredDataCenter != null ) {
             options.inDataCenter(preferredDataCenter);
         }
@@ -966,7 +1285,7 @@ public class ComputeResources {
                                 String dcId = subnet.getProviderDataCenterId();
 
                                 if( dcId == null ) {
-                                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                    for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()) ) {
                                         if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
                                             dcId = dc.getProviderDataCenterId();
                                         }
@@ -982,7 +1301,7 @@ public class ComputeResources {
                                 String dcId = vlan.getProviderDataCenterId();
 
                                 if( dcId == null ) {
-                                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                    for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()) ) {
                                         if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
                                             dcId = dc.getProviderDataCenterId();
                                             if (dcId.equals(preferredDataCenter)) // Go with preferred one, else go with last one.
@@ -1026,17 +1345,28 @@ public class ComputeResources {
 
         for( String id : ids ) {
             synchronized ( testVMs ) {
-                while( testVMs.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
+                label = Bookkeeping.getUniqueLabel(testVMs, label, random);
                 testVMs.put(label, id);
+                ResourceLedger.provisioned(VM_TEARDOWN, id, label, null);
             }
         }
         return ids;
     }
 
     public @Nonnull String provisionVM( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter ) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(VM_TEARDOWN);
+        try {
+            return doProvisionVM(support, label, options, preferredDataCenter);
+        }
+        finally {
+            ProvisioningScheduler.release(VM_TEARDOWN);
+        }
+    }
 
+    private @Nonnull String doProvisionVM( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter ) throws CloudException, InternalException {
+        // the default platform and root volume product come from discovery
+        discover(Discovery.IMAGES);
+        discover(Discovery.VOLUME_PRODUCTS);
         if( preferredDataCenter != null ) {
             options.inDataCenter(preferredDataCenter);
         }
@@ -1074,7 +1404,7 @@ public class ComputeResources {
                                 String dcId = subnet.getProviderDataCenterId();
 
                                 if( dcId == null ) {
-                                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                    for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()) ) {
                                         if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
                                             dcId = dc.getProviderDataCenterId();
                                         }
@@ -1094,7 +1424,7 @@ public class ComputeResources {
                                         dcId = preferredDataCenter;
                                     else
                                         // so lets just go through all the dataCenters and pick the last one we find. why?
-                                        for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                        for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()) ) {
                                             if( (dc.isActive() && dc.isAvailable()) || dcId == null ) {
                                                 dcId = dc.getProviderDataCenterId();
                                             }
@@ -1133,10 +1463,9 @@ public class ComputeResources {
         String id = options.build(provider);
 
         synchronized ( testVMs ) {
-            while( testVMs.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testVMs, label, random);
             testVMs.put(label, id);
+            ResourceLedger.provisioned(VM_TEARDOWN, id, label, null);
         }
         return id;
     }
@@ -1155,6 +1484,16 @@ public class ComputeResources {
      * @throws InternalException an error occurred within Dasein Cloud provisioning the VM
      */
     public @Nonnull String provisionVM( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nonnull String hostPrefix, @Nullable String preferredDataCenter ) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(VM_TEARDOWN);
+        try {
+            return doProvisionVM(support, label, namePrefix, hostPrefix, preferredDataCenter);
+        }
+        finally {
+            ProvisioningScheduler.release(VM_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionVM( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nonnull String hostPrefix, @Nullable String preferredDataCenter ) throws CloudException, InternalException {
         String testImageId = getTestImageId(DaseinTestManager.STATELESS, false);
         if( testImageId == null ) {
             throw new CloudException("No test image exists for provisioning a virtual machine");
@@ -1167,6 +1506,16 @@ public class ComputeResources {
     }
 
     public @Nonnull Iterable<String> provisionManyVMs( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nonnull String hostPrefix, @Nullable String preferredDataCenter, int count ) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(VM_TEARDOWN);
+        try {
+            return doProvisionManyVMs(support, label, namePrefix, hostPrefix, preferredDataCenter, count);
+        }
+        finally {
+            ProvisioningScheduler.release(VM_TEARDOWN);
+        }
+    }
+
+    private @Nonnull Iterable<String> doProvisionManyVMs( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nonnull String hostPrefix, @Nullable String preferredDataCenter, int count ) throws CloudException, InternalException {
         String testImageId = getTestImageId(DaseinTestManager.STATELESS, false);
         if( testImageId == null ) {
             throw new CloudException("No test image exists for provisioning a virtual machine");
@@ -1179,8 +1528,21 @@ public class ComputeResources {
     }
 
     public @Nonnull String provisionVolume( @Nonnull VolumeSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable VolumeFormat desiredFormat, @Nullable String preferredDataCenterId ) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(VOLUME_TEARDOWN);
+        try {
+            return doProvisionVolume(support, label, namePrefix, desiredFormat, preferredDataCenterId);
+        }
+        finally {
+            ProvisioningScheduler.release(VOLUME_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionVolume( @Nonnull VolumeSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable VolumeFormat desiredFormat, @Nullable String preferredDataCenterId ) throws CloudException, InternalException {
         VolumeCreateOptions options;
 
+        // the default volume product comes from discovery
+        discover(Discovery.VOLUME_PRODUCTS);
+
         if( desiredFormat == null ) {
             for( VolumeFormat fmt : support.getCapabilities().listSupportedFormats() ) {
                 if( fmt.equals(VolumeFormat.BLOCK) ) {
@@ -1269,47 +1631,36 @@ public class ComputeResources {
             testDataCenterId = volume.getProviderDataCenterId();
         }
         synchronized ( testVolumes ) {
-            while( testVolumes.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testVolumes, label, random);
             testVolumes.put(label, id);
+            ResourceLedger.provisioned(VOLUME_TEARDOWN, id, label, null);
         }
         return id;
-
     }
 
     private boolean setState( @Nonnull VirtualMachineSupport support, @Nonnull VirtualMachine vm, @Nonnull VmState state ) {
-        VmState currentState = vm.getCurrentState();
+        return setState(support, vm.getProviderVirtualMachineId(), vm.getCurrentState(), state);
+    }
 
+    private boolean setState( @Nonnull VirtualMachineSupport support, @Nonnull String id, @Nonnull VmState currentState, @Nonnull VmState state ) {
         if( state.equals(currentState) ) {
             return true;
         }
         if( state.equals(VmState.TERMINATED) ) {
             return false;
         }
-        String id = vm.getProviderVirtualMachineId();
+        // all VMs waiting on a state share one status listing per tick
+        BatchStatePoller poller = BatchStatePoller.getVirtualMachinePoller(provider);
 
-        long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
+        if( currentState.equals(VmState.PENDING) || currentState.equals(VmState.PAUSING) || currentState.equals(VmState.REBOOTING) || currentState.equals(VmState.STOPPING) || currentState.equals(VmState.SUSPENDING) ) {
+            EnumSet<VmState> settled = EnumSet.complementOf(EnumSet.of(VmState.PENDING, VmState.PAUSING, VmState.REBOOTING, VmState.STOPPING, VmState.SUSPENDING));
+            BatchStatePoller.Watch watch = poller.await(id, settled, CalendarWrapper.MINUTE * 20L, true);
 
-
-        while( timeout > System.currentTimeMillis() ) {
-            if( !currentState.equals(VmState.PENDING) && !currentState.equals(VmState.PAUSING) && !currentState.equals(VmState.REBOOTING) && !currentState.equals(VmState.STOPPING) && !currentState.equals(VmState.SUSPENDING) ) {
-                break;
-            }
-            try {
-                Thread.sleep(15000L);
-            } catch( InterruptedException ignore ) {
+            if( watch.isGone() ) {
+                return state.equals(VmState.TERMINATED);
             }
-            try {
-                VirtualMachine v = support.getVirtualMachine(id);
-
-                if( v == null ) {
-                    return state.equals(VmState.TERMINATED);
-                }
-                vm = v;
-                currentState = vm.getCurrentState();
-            } catch( Throwable ignore ) {
-                // ignore
+            if( watch.getState() instanceof VmState ) {
+                currentState = (VmState)watch.getState();
             }
         }
         try {
@@ -1325,7 +1676,7 @@ public class ComputeResources {
                 }
             }
             else if( state.equals(VmState.PAUSED) ) {
-                if( currentState.equals(VmState.RUNNING) || setState(support, vm, VmState.RUNNING) ) {
+                if( currentState.equals(VmState.RUNNING) || setState(support, id, currentState, VmState.RUNNING) ) {
                     support.pause(id);
                 }
                 else {
@@ -1333,7 +1684,7 @@ public class ComputeResources {
                 }
             }
             else if( state.equals(VmState.STOPPED) ) {
-                if( currentState.equals(VmState.RUNNING) || setState(support, vm, VmState.RUNNING) ) {
+                if( currentState.equals(VmState.RUNNING) || setState(support, id, currentState, VmState.RUNNING) ) {
                     support.stop(id, true);
                 }
                 else {
@@ -1341,7 +1692,7 @@ public class ComputeResources {
                 }
             }
             else if( state.equals(VmState.SUSPENDED) ) {
-                if( currentState.equals(VmState.RUNNING) || setState(support, vm, VmState.RUNNING) ) {
+                if( currentState.equals(VmState.RUNNING) || setState(support, id, currentState, VmState.RUNNING) ) {
                     support.suspend(id);
                 }
                 else {
@@ -1351,29 +1702,11 @@ public class ComputeResources {
         } catch( Throwable ignore ) {
             return false;
         }
-        timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-
-        while( timeout > System.currentTimeMillis() ) {
-            if( state.equals(currentState) ) {
-                return true;
-            }
-            try {
-                Thread.sleep(15000L);
-            } catch( InterruptedException ignore ) {
-            }
-            try {
-                VirtualMachine v = support.getVirtualMachine(id);
+        BatchStatePoller.Watch watch = poller.await(id, EnumSet.of(state), CalendarWrapper.MINUTE * 20L, true);
 
-                if( v == null ) {
-                    return state.equals(VmState.TERMINATED);
-                }
-                vm = v;
-                currentState = vm.getCurrentState();
-            } catch( Throwable ignore ) {
-                // ignore
-            }
+        if( watch.isGone() ) {
+            return state.equals(VmState.TERMINATED);
         }
-        return false;
+        return watch.isDone();
     }
 }
@@ -47,7 +47,7 @@ import org.junit.runners.Suite;
 public class ComputeTestSuite {
     @BeforeClass
     static public void setup() {
-        DaseinTestManager.init();
+        DaseinTestManager.init(ComputeTestSuite.class);
     }
 
     @AfterClass
@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Remembers the test image and VM product chosen by {@link ComputeResources} between runs, so that public image
+ * catalogs are scanned once a day instead of once per run. Choices are keyed by provider, endpoint, account, region
+ * and data center and kept in a properties file, by default .dasein/discovery.properties under the user's home
+ * directory where it survives <code>mvn clean</code>:
+ * <pre>
+ *     -Ddasein.discovery.cache=/var/tmp/dasein-discovery.properties -Ddasein.discovery.ttl=24
+ * </pre>
+ * The TTL is in hours. A cached choice is only used after the caller confirms the image and product still exist,
+ * and the image platform is read from that confirmation. The cache is turned off with -Ddasein.discovery.cache=false.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class DiscoveryCache {
+    static private final Logger logger = Logger.getLogger(DiscoveryCache.class);
+
+    static private final String IMAGE     = ".image";
+    static private final String PRODUCT   = ".product";
+    static private final String TIMESTAMP = ".timestamp";
+
+    /**
+     * A cached discovery result.
+     */
+    static public class Choice {
+        public String imageId;
+        public String productId;
+    }
+
+    static public boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("dasein.discovery.cache"));
+    }
+
+    static private @Nonnull File getFile() {
+        String file = System.getProperty("dasein.discovery.cache");
+
+        if( file == null || file.equals("") || file.equalsIgnoreCase("true") ) {
+            return new File(new File(System.getProperty("user.home"), ".dasein"), "discovery.properties");
+        }
+        return new File(file);
+    }
+
+    static private long getTimeToLive() {
+        String prop = System.getProperty("dasein.discovery.ttl");
+
+        if( prop != null && !prop.equals("") ) {
+            try {
+                return (long)(Double.parseDouble(prop.trim()) * CalendarWrapper.HOUR);
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Invalid value for dasein.discovery.ttl: " + prop);
+            }
+        }
+        return CalendarWrapper.DAY;
+    }
+
+    static private @Nonnull String getKey(@Nullable String dataCenterId) {
+        return System.getProperty("providerClass") + "|" + System.getProperty("endpoint") + "|" + System.getProperty("accountNumber") + "|" + System.getProperty("regionId") + "|" + dataCenterId;
+    }
+
+    /**
+     * Looks up an unexpired choice for the current cloud and data center.
+     * @param dataCenterId the data center the choice is for, if any
+     * @return the cached choice or null if there is none or it has expired
+     */
+    static public synchronized @Nullable Choice get(@Nullable String dataCenterId) {
+        if( !isEnabled() ) {
+            return null;
+        }
+        Properties cache = load();
+        String key = getKey(dataCenterId);
+        String timestamp = cache.getProperty(key + TIMESTAMP);
+
+        if( timestamp == null ) {
+            return null;
+        }
+        try {
+            if( System.currentTimeMillis() - Long.parseLong(timestamp) > getTimeToLive() ) {
+                return null;
+            }
+        }
+        catch( NumberFormatException e ) {
+            return null;
+        }
+        Choice choice = new Choice();
+
+        choice.imageId = cache.getProperty(key + IMAGE);
+        choice.productId = cache.getProperty(key + PRODUCT);
+        if( choice.imageId == null || choice.productId == null ) {
+            return null;
+        }
+        return choice;
+    }
+
+    /**
+     * Stores a newly discovered choice for the current cloud and data center.
+     * @param dataCenterId the data center the choice is for, if any
+     * @param choice the choice to remember
+     */
+    static public synchronized void put(@Nullable String dataCenterId, @Nonnull Choice choice) {
+        if( !isEnabled() ) {
+            return;
+        }
+        Properties cache = load();
+        String key = getKey(dataCenterId);
+
+        cache.setProperty(key + TIMESTAMP, String.valueOf(System.currentTimeMillis()));
+        cache.setProperty(key + IMAGE, choice.imageId);
+        cache.setProperty(key + PRODUCT, choice.productId);
+        save(cache);
+    }
+
+    /**
+     * Drops the choice for the current cloud and data center, for example because it no longer validates.
+     * @param dataCenterId the data center the choice is for, if any
+     */
+    static public synchronized void remove(@Nullable String dataCenterId) {
+        if( !isEnabled() ) {
+            return;
+        }
+        Properties cache = load();
+        String key = getKey(dataCenterId);
+
+        if( cache.remove(key + TIMESTAMP) != null ) {
+            cache.remove(key + IMAGE);
+            cache.remove(key + PRODUCT);
+            save(cache);
+        }
+    }
+
+    static private @Nonnull Properties load() {
+        Properties cache = new Properties();
+        File file = getFile();
+
+        if( file.exists() ) {
+            try {
+                InputStream input = new FileInputStream(file);
+
+                try {
+                    cache.load(input);
+                }
+                finally {
+                    try {
+                        input.close();
+                    }
+                    catch( Throwable ignore ) {
+                        // ignore
+                    }
+                }
+            }
+            catch( IOException e ) {
+                logger.warn("Ignoring unreadable discovery cache " + file + ": " + e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    static private void save(@Nonnull Properties cache) {
+        File file = getFile();
+        File dir = file.getAbsoluteFile().getParentFile();
+
+        try {
+            if( dir != null && !dir.isDirectory() && !dir.mkdirs() ) {
+                throw new IOException("Unable to create " + dir);
+            }
+            OutputStream output = new FileOutputStream(file);
+
+            try {
+                cache.store(output, "Dasein Cloud test discovery cache");
+            }
+            finally {
+                output.close();
+            }
+        }
+        catch( IOException e ) {
+            logger.warn("Failed to write discovery cache " + file + ": " + e.getMessage());
+        }
+    }
+}
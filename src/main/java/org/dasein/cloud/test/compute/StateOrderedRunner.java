@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.compute.VmState;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the tests of a class in the order that moves the shared stateful virtual machine through the fewest state
+ * changes. Tests declare the state they need and the state they leave behind with {@link VmTransition}; the runner
+ * then orders them so that, wherever possible, each test finds the virtual machine in the state the previous test
+ * left it in instead of having {@link ComputeResources} stop, start, pause or resume it first. Tests without the
+ * annotation do not care about the state and run first, in their usual order.
+ * <p>
+ * The cost of moving between two states follows the paths {@link ComputeResources} takes: one operation to or from
+ * {@link VmState#RUNNING} and two, via RUNNING, between any other pair. Up to {@link #EXHAUSTIVE} annotated tests are
+ * ordered by exhaustive search, larger classes by always picking the cheapest next test. Ties keep the usual order.
+ * Set dasein.order to false to run the tests in JUnit's order.
+ * </p>
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StateOrderedRunner extends BlockJUnit4ClassRunner {
+    static private final Logger logger = Logger.getLogger(StateOrderedRunner.class);
+
+    /**
+     * The largest number of annotated tests ordered by exhaustive search.
+     */
+    static public final int EXHAUSTIVE = 9;
+
+    /**
+     * The state virtual machines are in when they are first provisioned for testing.
+     */
+    static private final VmState INITIAL = VmState.RUNNING;
+
+    /**
+     * @param from the current state
+     * @param to the desired state
+     * @return the number of operations needed to move a virtual machine from one state to the other
+     */
+    static public int getTransitions(@Nonnull VmState from, @Nonnull VmState to) {
+        if( from.equals(to) ) {
+            return 0;
+        }
+        if( from.equals(VmState.RUNNING) || to.equals(VmState.RUNNING) ) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * @param steps the tests in the order they will run
+     * @return the number of operations needed to put the virtual machine in the state each test requires
+     */
+    static public int getTransitions(@Nonnull List<VmTransition> steps) {
+        VmState state = INITIAL;
+        int cost = 0;
+
+        for( VmTransition step : steps ) {
+            cost += getTransitions(state, step.requires());
+            state = step.leaves();
+        }
+        return cost;
+    }
+
+    /**
+     * Branch and bound search over all orders of the annotated tests. Tests are tried in their usual order and only
+     * a strictly cheaper order replaces the best one found so far, so ties keep the usual order.
+     */
+    static private class Search {
+        private final VmTransition[] steps;
+        private final boolean[]      used;
+        private final int[]          path;
+        private int[]                best;
+        private int                  bestCost = Integer.MAX_VALUE;
+
+        public Search(@Nonnull VmTransition[] steps) {
+            this.steps = steps;
+            used = new boolean[steps.length];
+            path = new int[steps.length];
+        }
+
+        public void visit(@Nonnull VmState state, int depth, int cost) {
+            if( cost >= bestCost ) {
+                return;
+            }
+            if( depth == steps.length ) {
+                best = path.clone();
+                bestCost = cost;
+                return;
+            }
+            for( int i=0; i<steps.length; i++ ) {
+                if( !used[i] ) {
+                    used[i] = true;
+                    path[depth] = i;
+                    visit(steps[i].leaves(), depth + 1, cost + getTransitions(state, steps[i].requires()));
+                    used[i] = false;
+                }
+            }
+        }
+    }
+
+    static private @Nonnull int[] search(@Nonnull VmTransition[] steps) {
+        Search search = new Search(steps);
+
+        search.visit(INITIAL, 0, 0);
+        return search.best;
+    }
+
+    static private @Nonnull int[] greedy(@Nonnull VmTransition[] steps) {
+        boolean[] used = new boolean[steps.length];
+        int[] path = new int[steps.length];
+        VmState state = INITIAL;
+
+        for( int depth=0; depth<steps.length; depth++ ) {
+            int next = -1;
+            int cost = Integer.MAX_VALUE;
+
+            for( int i=0; i<steps.length; i++ ) {
+                if( !used[i] && getTransitions(state, steps[i].requires()) < cost ) {
+                    next = i;
+                    cost = getTransitions(state, steps[i].requires());
+                }
+            }
+            used[next] = true;
+            path[depth] = next;
+            state = steps[next].leaves();
+        }
+        return path;
+    }
+
+    private List<FrameworkMethod> ordered;
+
+    public StateOrderedRunner(@Nonnull Class<?> testClass) throws InitializationError {
+        super(testClass);
+        ordered = order(super.computeTestMethods(), true);
+    }
+
+    @Override
+    protected List<FrameworkMethod> computeTestMethods() {
+        // JUnit validates the test methods from the superclass constructor, before the order is known
+        if( ordered == null ) {
+            return order(super.computeTestMethods(), false);
+        }
+        return ordered;
+    }
+
+    private @Nonnull List<FrameworkMethod> order(@Nonnull List<FrameworkMethod> methods, boolean report) {
+        if( "false".equalsIgnoreCase(System.getProperty("dasein.order")) ) {
+            return methods;
+        }
+        List<FrameworkMethod> result = new ArrayList<FrameworkMethod>();
+        List<FrameworkMethod> stateful = new ArrayList<FrameworkMethod>();
+        List<VmTransition> before = new ArrayList<VmTransition>();
+
+        for( FrameworkMethod method : methods ) {
+            VmTransition transition = method.getAnnotation(VmTransition.class);
+
+            if( transition == null ) {
+                result.add(method);
+            }
+            else {
+                stateful.add(method);
+                before.add(transition);
+            }
+        }
+        if( stateful.size() < 2 ) {
+            return methods;
+        }
+        VmTransition[] steps = before.toArray(new VmTransition[before.size()]);
+        int[] path = (steps.length <= EXHAUSTIVE ? search(steps) : greedy(steps));
+        List<VmTransition> after = new ArrayList<VmTransition>();
+        StringBuilder names = new StringBuilder();
+
+        for( int i : path ) {
+            result.add(stateful.get(i));
+            after.add(steps[i]);
+            if( names.length() > 0 ) {
+                names.append(", ");
+            }
+            names.append(stateful.get(i).getName());
+        }
+        if( report ) {
+            logger.info("Ordered " + getTestClass().getJavaClass().getSimpleName() + " as " + names + " (" + getTransitions(after) + " state transitions instead of " + getTransitions(before) + ")");
+        }
+        return result;
+    }
+}
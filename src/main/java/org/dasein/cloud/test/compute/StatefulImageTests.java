@@ -35,6 +35,8 @@ import org.dasein.cloud.compute.VirtualMachine;
 import org.dasein.cloud.compute.VirtualMachineSupport;
 import org.dasein.cloud.compute.VmState;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.RunBudget;
+import org.dasein.cloud.test.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -96,7 +98,7 @@ public class StatefulImageTests {
         }
         try {
 	        if (testDataCenterId == null)
-	        	testDataCenterId = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+	        	testDataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
 	    } catch (Throwable ignore) {
 			// ignore
 		}
@@ -239,9 +241,9 @@ public class StatefulImageTests {
 
                             shares = support.listShares(testImageId);
 
-                            long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*3L);
+                            StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*3L);
 
-                            while( timeout > System.currentTimeMillis() ) {
+                            while( waiter.isWaiting() ) {
                                 found = false;
                                 for( String share : shares ) {
                                     if( share.equals(testShareAccount) ) {
@@ -250,10 +252,10 @@ public class StatefulImageTests {
                                     }
                                 }
                                 if( found ) {
+                                    waiter.done();
                                     break;
                                 }
-                                try { Thread.sleep(15000L); }
-                                catch( InterruptedException ignore ) { }
+                                waiter.pause();
                                 try { shares = support.listShares(testImageId); }
                                 catch( Throwable ignore ) { }
                             }
@@ -322,9 +324,9 @@ public class StatefulImageTests {
 
                             shares = support.listShares(testImageId);
 
-                            long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*3L);
+                            StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*3L);
 
-                            while( timeout > System.currentTimeMillis() ) {
+                            while( waiter.isWaiting() ) {
                                 found = false;
                                 for( String share : shares ) {
                                     if( share.equals(testShareAccount) ) {
@@ -333,10 +335,10 @@ public class StatefulImageTests {
                                     }
                                 }
                                 if( !found ) {
+                                    waiter.done();
                                     break;
                                 }
-                                try { Thread.sleep(15000L); }
-                                catch( InterruptedException ignore ) { }
+                                waiter.pause();
                                 try { shares = support.listShares(testImageId); }
                                 catch( Throwable ignore ) { }
                             }
@@ -398,16 +400,16 @@ public class StatefulImageTests {
                         tm.out("Before", support.isImageSharedWithPublic(testImageId));
                         support.addPublicShare(testImageId);
 
-                        long timeout = (System.currentTimeMillis() + CalendarWrapper.MINUTE * 3L);
+                        StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE * 3L);
                         boolean shared = false;
 
-                        while( timeout > System.currentTimeMillis() ) {
+                        while( waiter.isWaiting() ) {
                             shared = support.isImageSharedWithPublic(testImageId);
                             if( shared ) {
+                                waiter.done();
                                 break;
                             }
-                            try { Thread.sleep(15000L); }
-                            catch( InterruptedException ignore ) { }
+                            waiter.pause();
                         }
                         tm.out("After", shared);
                         assertTrue("Image remains private", shared);
@@ -457,16 +459,16 @@ public class StatefulImageTests {
                         tm.out("Before", support.isImageSharedWithPublic(testImageId));
                         support.removePublicShare(testImageId);
 
-                        long timeout = (System.currentTimeMillis() + CalendarWrapper.MINUTE * 3L);
+                        StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE * 3L);
                         boolean shared = true;
 
-                        while( timeout > System.currentTimeMillis() ) {
+                        while( waiter.isWaiting() ) {
                             shared = support.isImageSharedWithPublic(testImageId);
                             if( !shared ) {
+                                waiter.done();
                                 break;
                             }
-                            try { Thread.sleep(15000L); }
-                            catch( InterruptedException ignore ) { }
+                            waiter.pause();
                         }
                         tm.out("After", shared);
                         assertFalse("Image remains public", shared);
@@ -520,19 +522,19 @@ public class StatefulImageTests {
                     catch( OperationNotSupportedException e ) {
                         fail("This operation should not throw an OperationNotSupportedException (just a NO-OP in clouds without sharing)");
                     }
-                    long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 3L);
+                    StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE * 3L);
                     boolean shared;
 
-                    while( timeout > System.currentTimeMillis() ) {
+                    while( waiter.isWaiting() ) {
                         shared = support.isImageSharedWithPublic(testImageId);
                         if( !shared ) {
                             shared = support.listShares(testImageId).iterator().hasNext();
                             if( !shared ) {
+                                waiter.done();
                                 break;
                             }
                         }
-                        try { Thread.sleep(15000L); }
-                        catch( InterruptedException ignore ) { }
+                        waiter.pause();
                     }
                     tm.out("After [Public]", support.isImageSharedWithPublic(testImageId));
                     tm.out("After [Private]", support.listShares(testImageId));
@@ -566,7 +568,7 @@ public class StatefulImageTests {
     @Test
     public void capture() throws CloudException, InternalException {
         if( capturedOnce ) {
-            try { Thread.sleep(CalendarWrapper.MINUTE * 2L); }
+            try { RunBudget.sleep(CalendarWrapper.MINUTE * 2L); }
             catch( InterruptedException ignore ) { }
         }
         else {
@@ -608,9 +610,9 @@ public class StatefulImageTests {
                         tm.out("New Image", provisionedImage);
                         assertNotNull("The image ID returned from provisioning the image was null", provisionedImage);
 
-                        long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
+                        StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*20L);
 
-                        while( timeout > System.currentTimeMillis() ) {
+                        while( waiter.isWaiting() ) {
                             try {
                                 MachineImage image = support.getImage(provisionedImage);
 
@@ -618,14 +620,14 @@ public class StatefulImageTests {
                                 assertFalse("The image is now in a deleted state, but before it became available", MachineImageState.DELETED.equals(image.getCurrentState()));
                                 tm.out("--> Current State", image.getCurrentState());
                                 if( MachineImageState.ACTIVE.equals(image.getCurrentState()) ) {
+                                    waiter.done();
                                     break;
                                 }
                             }
                             catch( Throwable t ) {
                                 tm.warn("Error fetching captured image " + provisionedImage);
                             }
-                            try { Thread.sleep(15000L); }
-                            catch( InterruptedException ignore ) { }
+                            waiter.pause();
                         }
                         MachineImage image = support.getImage(provisionedImage);
 
@@ -662,7 +664,7 @@ public class StatefulImageTests {
     @Test
     public void captureAsync() throws Throwable {
         if( capturedOnce ) {
-            try { Thread.sleep(CalendarWrapper.MINUTE * 2L); }
+            try { RunBudget.sleep(CalendarWrapper.MINUTE * 2L); }
             catch( InterruptedException ignore ) { }
         }
         else {
@@ -707,9 +709,9 @@ public class StatefulImageTests {
 
                         tm.out("Task", "");
 
-                        long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*30L);
+                        StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*30L);
 
-                        while( timeout > System.currentTimeMillis() ) {
+                        while( waiter.isWaiting() ) {
                             if( task.isComplete() ) {
                                 Throwable t = task.getTaskError();
 
@@ -718,13 +720,13 @@ public class StatefulImageTests {
                                     throw t;
                                 }
                                 tm.out("-->", "Complete");
+                                waiter.done();
                                 break;
                             }
                             else {
                                 tm.out("-->", task.getPercentComplete() + "%");
                             }
-                            try { Thread.sleep(15000L); }
-                            catch( InterruptedException ignore ) { }
+                            waiter.pause();
                         }
                         MachineImage image = task.getResult();
 
@@ -733,9 +735,9 @@ public class StatefulImageTests {
 
                         provisionedImage = image.getProviderMachineImageId();
 
-                        timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*30L);
+                        waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*30L);
 
-                        while( timeout > System.currentTimeMillis() ) {
+                        while( waiter.isWaiting() ) {
                             try {
                                 MachineImage img = support.getImage(provisionedImage);
 
@@ -743,14 +745,14 @@ public class StatefulImageTests {
                                 assertFalse("The image is now in a deleted state, but before it became available", MachineImageState.DELETED.equals(img.getCurrentState()));
                                 tm.out("--> Current State", img.getCurrentState());
                                 if( MachineImageState.ACTIVE.equals(img.getCurrentState()) ) {
+                                    waiter.done();
                                     break;
                                 }
                             }
                             catch( Throwable t ) {
                                 tm.warn("Error fetching captured image " + provisionedImage);
                             }
-                            try { Thread.sleep(15000L); }
-                            catch( InterruptedException ignore ) { }
+                            waiter.pause();
                         }
                         image = support.getImage(provisionedImage);
 
@@ -787,7 +789,7 @@ public class StatefulImageTests {
     @Test
     public void captureReboot() throws CloudException, InternalException {
       if( capturedOnce ) {
-        try { Thread.sleep(CalendarWrapper.MINUTE * 2L); }
+        try { RunBudget.sleep(CalendarWrapper.MINUTE * 2L); }
         catch( InterruptedException ignore ) { }
       }
       else {
@@ -829,9 +831,9 @@ public class StatefulImageTests {
               tm.out("New Image", provisionedImage);
               assertNotNull("The image ID returned from provisioning the image was null", provisionedImage);
 
-              long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
+              StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*20L);
 
-              while( timeout > System.currentTimeMillis() ) {
+              while( waiter.isWaiting() ) {
                 try {
                   MachineImage image = support.getImage(provisionedImage);
 
@@ -839,14 +841,14 @@ public class StatefulImageTests {
                   assertFalse("The image is now in a deleted state, but before it became available", MachineImageState.DELETED.equals(image.getCurrentState()));
                   tm.out("--> Current State", image.getCurrentState());
                   if( MachineImageState.ACTIVE.equals(image.getCurrentState()) ) {
+                    waiter.done();
                     break;
                   }
                 }
                 catch( Throwable t ) {
                   tm.warn("Error fetching captured image " + provisionedImage);
                 }
-                try { Thread.sleep(15000L); }
-                catch( InterruptedException ignore ) { }
+                waiter.pause();
               }
               MachineImage image = support.getImage(provisionedImage);
 
@@ -910,23 +912,23 @@ public class StatefulImageTests {
                                 options.withMetaData("dsntestcase", "true");
 
                                 provisionedImage = support.registerImageBundle(options).getProviderMachineImageId();
-                                long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
+                                StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*20L);
 
-                                while( timeout > System.currentTimeMillis() ) {
+                                while( waiter.isWaiting() ) {
                                     try {
                                         MachineImage image = support.getImage(provisionedImage);
 
                                         assertNotNull("The image disappeared after it was created, but before it became available", image);
                                         tm.out("--> Current State", image.getCurrentState());
                                         if( MachineImageState.ACTIVE.equals(image.getCurrentState()) ) {
+                                            waiter.done();
                                             break;
                                         }
                                     }
                                     catch( Throwable t ) {
                                         tm.warn("Error fetching captured image " + provisionedImage);
                                     }
-                                    try { Thread.sleep(15000L); }
-                                    catch( InterruptedException ignore ) { }
+                                    waiter.pause();
                                 }
                                 MachineImage image = support.getImage(provisionedImage);
 
@@ -1005,9 +1007,9 @@ public class StatefulImageTests {
                             support.bundleVirtualMachineAsync(testVMId, fmt, "dsnbucket" + random.nextInt(100000), "dsnimgbundle", task);
                             tm.out("Task", "");
 
-                            long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
+                            StateWaiter waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*20L);
 
-                            while( timeout > System.currentTimeMillis() ) {
+                            while( waiter.isWaiting() ) {
                                 if( task.isComplete() ) {
                                     Throwable t = task.getTaskError();
 
@@ -1016,13 +1018,13 @@ public class StatefulImageTests {
                                         throw t;
                                     }
                                     tm.out("-->", "Complete");
+                                    waiter.done();
                                     break;
                                 }
                                 else {
                                     tm.out("-->", task.getPercentComplete() + "%");
                                 }
-                                try { Thread.sleep(15000L); }
-                                catch( InterruptedException ignore ) { }
+                                waiter.pause();
                             }
                             bundleLocation = task.getResult();
 
@@ -1035,23 +1037,23 @@ public class StatefulImageTests {
 
                             provisionedImage = support.registerImageBundle(options).getProviderMachineImageId();
 
-                            timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
+                            waiter = new StateWaiter(StateWaiter.IMAGE, CalendarWrapper.MINUTE*20L);
 
-                            while( timeout > System.currentTimeMillis() ) {
+                            while( waiter.isWaiting() ) {
                                 try {
                                     MachineImage img = support.getImage(provisionedImage);
 
                                     assertNotNull("The image disappeared after it was created, but before it became available", img);
                                     tm.out("--> Current State", img.getCurrentState());
                                     if( MachineImageState.ACTIVE.equals(img.getCurrentState()) ) {
+                                        waiter.done();
                                         break;
                                     }
                                 }
                                 catch( Throwable t ) {
                                     tm.warn("Error fetching captured image " + provisionedImage);
                                 }
-                                try { Thread.sleep(15000L); }
-                                catch( InterruptedException ignore ) { }
+                                waiter.pause();
                             }
                             MachineImage image = support.getImage(provisionedImage);
 
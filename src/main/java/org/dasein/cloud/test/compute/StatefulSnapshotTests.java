@@ -26,6 +26,7 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.dc.Region;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
@@ -85,7 +86,7 @@ public class StatefulSnapshotTests {
         }
         try {
 	        if (testDataCenterId == null)
-	        	testDataCenterId = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+	        	testDataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
 	    } catch (Throwable ignore) {
 			// ignore
 		}
@@ -137,7 +138,7 @@ public class StatefulSnapshotTests {
                 Snapshot sourceSnapshot = null;
 
                 try {
-                    for( Region r : tm.getProvider().getDataCenterServices().listRegions() ) {
+                    for( Region r : DaseinTestManager.getDataCenterCache().listRegions(tm.getProvider()) ) {
                         //noinspection ConstantConditions
                         if( !r.getProviderRegionId().equals(tm.getContext().getRegionId()) ) {
                             for( Snapshot snapshot : support.listSnapshots() ) {
@@ -171,21 +172,21 @@ public class StatefulSnapshotTests {
         else if( name.getMethodName().equals("removeSnapshot") ) {
             testSnapshotId = tm.getTestSnapshotId(DaseinTestManager.REMOVED, true);
             if( testSnapshotId != null ) {
-                long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*5L);
+                StateWaiter waiter = new StateWaiter(StateWaiter.SNAPSHOT, CalendarWrapper.MINUTE*5L);
 
-                while( timeout > System.currentTimeMillis() ) {
+                while( waiter.isWaiting() ) {
                     try {
                         Snapshot s = support.getSnapshot(testSnapshotId);
 
                         if( s == null || !SnapshotState.PENDING.equals(s.getCurrentState()) ) {
+                            waiter.done();
                             break;
                         }
                     }
                     catch( Throwable ignore ) {
                         // ignore
                     }
-                    try { Thread.sleep(15000L); }
-                    catch( InterruptedException ignore ) { }
+                    waiter.pause();
                 }
             }
         }
@@ -27,7 +27,9 @@ import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.dc.DataCenterServices;
 import org.dasein.cloud.dc.ResourcePool;
 import org.dasein.cloud.dc.StoragePool;
+import org.dasein.cloud.test.BatchStatePoller;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -36,12 +38,14 @@ import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Map;
 
 import static org.junit.Assert.*;
@@ -53,6 +57,7 @@ import static org.junit.Assume.assumeTrue;
  *
  * @author George Reese
  */
+@RunWith(StateOrderedRunner.class)
 public class StatefulVMTests {
     static private DaseinTestManager tm;
     @Rule
@@ -79,38 +84,22 @@ public class StatefulVMTests {
     }
 
     private @Nullable VirtualMachine awaitState( @Nonnull VirtualMachine vm, @Nonnull VmState targetState, @Nonnegative long timeout ) {
-        VmState currentState = vm.getCurrentState();
-        VirtualMachine v = vm;
-        int gone = 0;
-
-        while( System.currentTimeMillis() < timeout ) {
-            if( targetState.equals(currentState) ) {
-                return v;
-            }
-            try {
-                Thread.sleep(15000L);
-            } catch( InterruptedException ignore ) {
-            }
-            try {
-                //noinspection ConstantConditions
-                v = tm.getProvider().getComputeServices().getVirtualMachineSupport().getVirtualMachine(vm.getProviderVirtualMachineId());
-                if( v == null && !targetState.equals(VmState.TERMINATED) ) {
-                    gone++;
-                    if( gone > 10 ) {
-                        return null;
-                    }
-                }
-                else if( v == null ) {
-                    return null;
-                }
-                else {
-                    currentState = v.getCurrentState();
-                }
-            } catch( Throwable ignore ) {
-                // ignore
-            }
+        if( targetState.equals(vm.getCurrentState()) ) {
+            return vm;
+        }
+        String id = vm.getProviderVirtualMachineId();
+        // a VM can briefly vanish from listings right after a change, so only a termination wait trusts its absence
+        BatchStatePoller.Watch watch = BatchStatePoller.getVirtualMachinePoller(tm.getProvider()).await(id, EnumSet.of(targetState), Math.max(0L, timeout - System.currentTimeMillis()), targetState.equals(VmState.TERMINATED));
+
+        if( watch.isGone() ) {
+            return null;
+        }
+        try {
+            //noinspection ConstantConditions
+            return tm.getProvider().getComputeServices().getVirtualMachineSupport().getVirtualMachine(id);
+        } catch( Throwable ignore ) {
+            return vm;
         }
-        return v;
     }
 
     @Before
@@ -123,7 +112,7 @@ public class StatefulVMTests {
         }
         try {
 	        if (testDataCenterId == null)
-	        	testDataCenterId = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+	        	testDataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
 	    } catch (Throwable ignore) {
 			// ignore
 		}
@@ -429,19 +418,18 @@ public class StatefulVMTests {
                                     VirtualMachine vm = support.getVirtualMachine(id);
                                     assertNotNull("Could not find the newly created virtual machine", vm);
 
-                                    long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
+                                    StateWaiter waiter = new StateWaiter(StateWaiter.VM, CalendarWrapper.MINUTE * 5L);
 
-                                    while( timeout > System.currentTimeMillis() ) {
+                                    while( waiter.isWaiting() ) {
                                         if( vm == null ) {
+                                            waiter.abandon();
                                             break;
                                         }
                                         if( vm.getAffinityGroupId() != null ) {
+                                            waiter.done();
                                             break;
                                         }
-                                        try {
-                                            Thread.sleep(15000L);
-                                        } catch( InterruptedException ignore ) {
-                                        }
+                                        waiter.pause();
                                         try {
                                             vm = support.getVirtualMachine(id);
                                         } catch( Throwable ignore ) {
@@ -527,20 +515,19 @@ public class StatefulVMTests {
                                         VirtualMachine vm = support.getVirtualMachine(id);
                                         assertNotNull("Could not find the newly created virtual machine", vm);
 
-                                        long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
+                                        StateWaiter waiter = new StateWaiter(StateWaiter.VM, CalendarWrapper.MINUTE * 5L);
 
-                                        while( timeout > System.currentTimeMillis() ) {
+                                        while( waiter.isWaiting() ) {
                                             if( vm == null ) {
+                                                waiter.abandon();
                                                 break;
                                             }
                                             Map<String, String> tags = vm.getTags();
                                             if (tags.containsKey("datastore0")) {
+                                                waiter.done();
                                                 break;
                                             }
-                                            try {
-                                                Thread.sleep(15000L);
-                                            } catch( InterruptedException ignore ) {
-                                            }
+                                            waiter.pause();
                                             try {
                                                 vm = support.getVirtualMachine(id);
                                             } catch( Throwable ignore ) {
@@ -643,6 +630,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @VmTransition(requires = VmState.RUNNING, leaves = VmState.STOPPED)
     public void stop() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -690,6 +678,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @VmTransition(requires = VmState.STOPPED, leaves = VmState.STOPPED)
     public void modifyInstance() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -742,6 +731,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @VmTransition(requires = VmState.STOPPED, leaves = VmState.RUNNING)
     public void start() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -789,6 +779,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @VmTransition(requires = VmState.RUNNING, leaves = VmState.PAUSED)
     public void pause() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -836,6 +827,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @VmTransition(requires = VmState.PAUSED, leaves = VmState.RUNNING)
     public void unpause() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -883,6 +875,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @VmTransition(requires = VmState.RUNNING, leaves = VmState.SUSPENDED)
     public void suspend() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -930,6 +923,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @VmTransition(requires = VmState.SUSPENDED, leaves = VmState.RUNNING)
     public void resume() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -96,7 +96,7 @@ public class StatefulVolumeTests {
 		}
         try {
 	        if (testDataCenterId == null)
-	    		testDataCenterId = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+	    		testDataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
 	    } catch (Throwable ignore) {
 			// ignore
 		}
@@ -30,6 +30,7 @@ import org.dasein.cloud.compute.MachineImageFormat;
 import org.dasein.cloud.compute.MachineImageSupport;
 import org.dasein.cloud.compute.MachineImageType;
 import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -43,7 +44,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
@@ -665,36 +666,22 @@ public class StatelessImageTests {
             MachineImageSupport support = services.getImageSupport();
 
             if( support != null ) {
-                HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+                List<String> statusIds = new ArrayList<String>();
+                List<String> ids = new ArrayList<String>();
                 Iterable<MachineImage> images = support.listImages(ImageFilterOptions.getInstance(ImageClass.MACHINE));
                 Iterable<ResourceStatus> status = support.listImageStatus(ImageClass.MACHINE);
 
                 assertNotNull("listImages() must return at least an empty collections and may not be null", images);
                 assertNotNull("listImageStatus() must return at least an empty collections and may not be null", status);
                 for( ResourceStatus s : status ) {
-                    Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(s.getProviderResourceId(), current);
-                    }
-                    current.put("status", true);
+                    statusIds.add(s.getProviderResourceId());
                 }
                 for( MachineImage image : images ) {
-                    Map<String,Boolean> current = map.get(image.getProviderMachineImageId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(image.getProviderMachineImageId(), current);
-                    }
-                    current.put("image", true);
+                    ids.add(image.getProviderMachineImageId());
                 }
-                for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-                    Boolean s = entry.getValue().get("status");
-                    Boolean i = entry.getValue().get("image");
+                List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-                    assertTrue("Status and image lists do not match for " + entry.getKey(), s != null && i != null && s && i);
-                }
+                assertTrue("Status and image lists do not match for " + mismatches, mismatches.isEmpty());
                 tm.out("Matches");
             }
             else {
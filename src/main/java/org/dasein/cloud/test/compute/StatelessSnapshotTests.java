@@ -25,6 +25,7 @@ import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.compute.ComputeServices;
 import org.dasein.cloud.compute.Snapshot;
 import org.dasein.cloud.compute.SnapshotSupport;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -35,8 +36,9 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -307,36 +309,22 @@ public class StatelessSnapshotTests {
             tm.ok("Snapshots are not supported in " + tm.getContext().getRegionId() + " of " + tm.getProvider().getCloudName());
             return;
         }
-        HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+        List<String> statusIds = new ArrayList<String>();
+        List<String> ids = new ArrayList<String>();
         Iterable<Snapshot> snapshots = support.listSnapshots();
         Iterable<ResourceStatus> status = support.listSnapshotStatus();
 
         assertNotNull("listSnapshots() must return at least an empty collections and may not be null", snapshots);
         assertNotNull("listSnapshotStatus() must return at least an empty collection and may not be null", status);
         for( ResourceStatus s : status ) {
-            Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(s.getProviderResourceId(), current);
-            }
-            current.put("status", true);
+            statusIds.add(s.getProviderResourceId());
         }
         for( Snapshot snapshot : snapshots ) {
-            Map<String,Boolean> current = map.get(snapshot.getProviderSnapshotId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(snapshot.getProviderSnapshotId(), current);
-            }
-            current.put("snapshot", true);
+            ids.add(snapshot.getProviderSnapshotId());
         }
-        for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-            Boolean s = entry.getValue().get("status");
-            Boolean v = entry.getValue().get("snapshot");
+        List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-            assertTrue("Status and snapshot lists do not match for " + entry.getKey(), s != null && v != null && s && v);
-        }
+        assertTrue("Status and snapshot lists do not match for " + mismatches, mismatches.isEmpty());
         tm.out("Matches");
     }
 }
@@ -24,6 +24,7 @@ import org.dasein.cloud.InternalException;
 import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.compute.*;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.*;
 import org.junit.rules.TestName;
@@ -655,36 +656,22 @@ public class StatelessVMTests {
             VirtualMachineSupport support = services.getVirtualMachineSupport();
 
             if( support != null ) {
-                Map<String, Map<String, Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+                List<String> statusIds = new ArrayList<String>();
+                List<String> ids = new ArrayList<String>();
                 Iterable<VirtualMachine> vms = support.listVirtualMachines();
                 Iterable<ResourceStatus> status = support.listVirtualMachineStatus();
 
                 assertNotNull("listVirtualMachines() must return at least an empty collections and may not be null", vms);
                 assertNotNull("listVirtualMachineStatus() must return at least an empty collections and may not be null", status);
                 for( ResourceStatus s : status ) {
-                    Map<String, Boolean> current = map.get(s.getProviderResourceId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(s.getProviderResourceId(), current);
-                    }
-                    current.put("status", true);
+                    statusIds.add(s.getProviderResourceId());
                 }
                 for( VirtualMachine vm : vms ) {
-                    Map<String, Boolean> current = map.get(vm.getProviderVirtualMachineId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(vm.getProviderVirtualMachineId(), current);
-                    }
-                    current.put("vm", true);
+                    ids.add(vm.getProviderVirtualMachineId());
                 }
-                for( Map.Entry<String, Map<String, Boolean>> entry : map.entrySet() ) {
-                    Boolean s = entry.getValue().get("status");
-                    Boolean v = entry.getValue().get("vm");
+                List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-                    assertTrue("Status and VM lists do not match for " + entry.getKey(), s != null && v != null && s && v);
-                }
+                assertTrue("Status and VM lists do not match for " + mismatches, mismatches.isEmpty());
                 tm.out("Matches");
             }
             else {
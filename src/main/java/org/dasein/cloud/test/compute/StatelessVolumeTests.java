@@ -29,6 +29,7 @@ import org.dasein.cloud.compute.Volume;
 import org.dasein.cloud.compute.VolumeFormat;
 import org.dasein.cloud.compute.VolumeProduct;
 import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
@@ -41,8 +42,9 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -503,36 +505,22 @@ public class StatelessVolumeTests {
             VolumeSupport support = services.getVolumeSupport();
 
             if( support != null ) {
-                HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+                List<String> statusIds = new ArrayList<String>();
+                List<String> ids = new ArrayList<String>();
                 Iterable<Volume> volumes = support.listVolumes();
                 Iterable<ResourceStatus> status = support.listVolumeStatus();
 
                 assertNotNull("listVolumes() must return at least an empty collections and may not be null", volumes);
                 assertNotNull("listVolumeStatus() must return at least an empty collection and may not be null", status);
                 for( ResourceStatus s : status ) {
-                    Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(s.getProviderResourceId(), current);
-                    }
-                    current.put("status", true);
+                    statusIds.add(s.getProviderResourceId());
                 }
                 for( Volume volume : volumes ) {
-                    Map<String,Boolean> current = map.get(volume.getProviderVolumeId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(volume.getProviderVolumeId(), current);
-                    }
-                    current.put("volume", true);
+                    ids.add(volume.getProviderVolumeId());
                 }
-                for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-                    Boolean s = entry.getValue().get("status");
-                    Boolean v = entry.getValue().get("volume");
+                List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-                    assertTrue("Status and volume lists do not match for " + entry.getKey(), s != null && v != null && s && v);
-                }
+                assertTrue("Status and volume lists do not match for " + mismatches, mismatches.isEmpty());
                 tm.out("Matches");
             }
             else {
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.compute;
+
+import org.dasein.cloud.compute.VmState;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the state a test expects the shared stateful virtual machine to be in when it starts and the state the
+ * test leaves it in, so that {@link StateOrderedRunner} can run the tests of a class in the order that needs the
+ * fewest state changes:
+ * <pre>
+ *     &#64;Test
+ *     &#64;VmTransition(requires = VmState.RUNNING, leaves = VmState.STOPPED)
+ *     public void stop() ...
+ * </pre>
+ * The annotation only affects ordering. The test's @Before method must still ask for the virtual machine in the
+ * required state, since an earlier test may have failed or been skipped.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface VmTransition {
+    /**
+     * @return the state the virtual machine must be in before the test
+     */
+    VmState requires();
+
+    /**
+     * @return the state the virtual machine is in after the test succeeds
+     */
+    VmState leaves();
+}
@@ -30,14 +30,17 @@ import org.dasein.cloud.identity.IdentityAndAccessSupport;
 import org.dasein.cloud.identity.IdentityServices;
 import org.dasein.cloud.identity.SSHKeypair;
 import org.dasein.cloud.identity.ShellKeySupport;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.ResourceLedger;
+import org.dasein.cloud.test.WarmFixtures;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages all identity resources for automated provisioning and de-provisioning during integration tests.
@@ -49,11 +52,14 @@ import java.util.Random;
 public class IdentityResources {
     static private final Logger logger = Logger.getLogger(IdentityResources.class);
 
+    static public final String TEARDOWN         = "identity";
+    static public final String KEYPAIR_RESOURCE = "identity.keypair";
+
     static private final Random random = new Random();
 
-    private final HashMap<String,String> testGroups = new HashMap<String, String>();
-    private final HashMap<String,String> testKeys   = new HashMap<String, String>();
-    private final HashMap<String,String> testUsers  = new HashMap<String, String>();
+    private final Map<String,String> testGroups = new ConcurrentHashMap<String, String>();
+    private final Map<String,String> testKeys   = new ConcurrentHashMap<String, String>();
+    private final Map<String,String> testUsers  = new ConcurrentHashMap<String, String>();
     private CloudProvider   provider;
 
     public IdentityResources(@Nonnull CloudProvider provider) {
@@ -71,9 +77,10 @@ public class IdentityResources {
 
                 if( keySupport != null ) {
                     for( Map.Entry<String,String> entry : testKeys.entrySet() ) {
-                        if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                        if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(KEYPAIR_RESOURCE, entry.getKey()) ) {
                             try {
                                 keySupport.deleteKeypair(entry.getValue());
+                                ResourceLedger.deprovisioned(KEYPAIR_RESOURCE, entry.getValue());
                                 count++;
                             }
                             catch( Throwable t ) {
@@ -116,6 +123,48 @@ public class IdentityResources {
         return count;
     }
 
+    /**
+     * Takes over a resource left behind by an earlier test run.
+     * @param resource the resource from the resource ledger
+     * @param label the label under which to track the resource
+     * @return true if the resource is an identity resource and was adopted
+     */
+    public boolean adopt(@Nonnull ResourceLedger.Entry resource, @Nonnull String label) {
+        if( !resource.getType().equals(KEYPAIR_RESOURCE) ) {
+            return false;
+        }
+        synchronized( testKeys ) {
+            if( testKeys.containsValue(resource.getId()) ) {
+                return true;
+            }
+            label = Bookkeeping.getUniqueLabel(testKeys, label, random);
+            testKeys.put(label, resource.getId());
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a warm fixture left behind by an earlier test run is still fit for use.
+     * @param resource the resource from the resource ledger
+     * @return true if the resource is an identity resource that still exists
+     */
+    public boolean isUsable(@Nonnull ResourceLedger.Entry resource) {
+        if( !resource.getType().equals(KEYPAIR_RESOURCE) ) {
+            return false;
+        }
+        IdentityServices services = provider.getIdentityServices();
+
+        try {
+            ShellKeySupport support = ( services == null ? null : services.getShellKeySupport() );
+
+            return ( support != null && support.getKeypair(resource.getId()) != null );
+        }
+        catch( Throwable t ) {
+            logger.warn("Unable to check warm fixture " + resource + ": " + t.getMessage());
+        }
+        return false;
+    }
+
     public int report() {
         boolean header = false;
         int count = 0;
@@ -363,9 +412,7 @@ public class IdentityResources {
             throw new CloudException("No group was created");
         }
         synchronized( testGroups ) {
-            while( testGroups.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testGroups, label, random);
             testGroups.put(label, id);
         }
         return id;
@@ -389,10 +436,9 @@ public class IdentityResources {
             throw new CloudException("No keypair was generated");
         }
         synchronized( testKeys ) {
-            while( testKeys.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testKeys, label, random);
             testKeys.put(label, id);
+            ResourceLedger.provisioned(KEYPAIR_RESOURCE, id, label, null);
         }
         return id;
     }
@@ -404,9 +450,7 @@ public class IdentityResources {
             throw new CloudException("No user was created");
         }
         synchronized( testUsers ) {
-            while( testUsers.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testUsers, label, random);
             testUsers.put(label, id);
         }
         return id;
@@ -41,7 +41,7 @@ import org.junit.runners.Suite;
 public class IdentityTestSuite {
     @BeforeClass
     static public void setup() {
-        DaseinTestManager.init();
+        DaseinTestManager.init(IdentityTestSuite.class);
     }
 
     @AfterClass
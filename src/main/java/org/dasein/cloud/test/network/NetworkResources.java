@@ -26,8 +26,16 @@ import org.dasein.cloud.compute.VirtualMachine;
 import org.dasein.cloud.compute.VmState;
 import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.network.*;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.ProvisioningScheduler;
+import org.dasein.cloud.test.ResourceLedger;
+import org.dasein.cloud.test.StateWaiter;
+import org.dasein.cloud.test.TaskGraph;
+import org.dasein.cloud.test.WarmFixtures;
 import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.platform.PlatformResources;
+import org.dasein.util.CalendarWrapper;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -35,6 +43,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Caching of and access to network resources used in the various test cases.
@@ -55,22 +65,37 @@ public class NetworkResources {
     static public final String TEST_HC_HOST = "localhost";
     static public final int TEST_HC_PORT = 8080;
 
+    static public final String TEARDOWN                  = "network";
+    static public final String CERTIFICATE_TEARDOWN      = "network.certificate";
+    static public final String DNS_TEARDOWN              = "network.dns";
+    static public final String FIREWALL_TEARDOWN         = "network.firewall";
+    static public final String GATEWAY_TEARDOWN          = "network.gateway";
+    static public final String IP_TEARDOWN               = "network.ip";
+    static public final String IPV4_RESOURCE             = "network.ip.v4";
+    static public final String IPV6_RESOURCE             = "network.ip.v6";
+    static public final String LB_TEARDOWN               = "network.lb";
+    static public final String NETWORK_FIREWALL_TEARDOWN = "network.nfw";
+    static public final String ROUTE_TABLE_TEARDOWN      = "network.routetable";
+    static public final String SUBNET_TEARDOWN           = "network.subnet";
+    static public final String VLAN_GATEWAY_TEARDOWN     = "network.vlangateway";
+    static public final String VLAN_TEARDOWN             = "network.vlan";
+
     private CloudProvider provider;
 
-    private final HashMap<String, String> testGeneralFirewalls = new HashMap<String, String>();
-    private final HashMap<String, String> testIps4Free = new HashMap<String, String>();
-    private final HashMap<String, String> testIps6Free = new HashMap<String, String>();
-    private final HashMap<String, String> testIps4VLAN = new HashMap<String, String>();
-    private final HashMap<String, String> testIps6VLAN = new HashMap<String, String>();
-    private final HashMap<String, String> testLBs = new HashMap<String, String>();
-    private final HashMap<String, String> testSSLCertificates = new HashMap<String, String>();
-    private final HashMap<String, String> testNetworkFirewalls = new HashMap<String, String>();
-    private final HashMap<String, String> testSubnets = new HashMap<String, String>();
-    private final HashMap<String, String> testInternetGateways = new HashMap<String, String>();
-    private final HashMap<String, String> testVLANs = new HashMap<String, String>();
-    private final HashMap<String, String> testRouteTables = new HashMap<String, String>();
-    private final HashMap<String, String> testVLANFirewalls = new HashMap<String, String>();
-    private final HashMap<String, String> testZones = new HashMap<String, String>();
+    private final Map<String, String> testGeneralFirewalls = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testIps4Free = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testIps6Free = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testIps4VLAN = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testIps6VLAN = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testLBs = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testSSLCertificates = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testNetworkFirewalls = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testSubnets = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testInternetGateways = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testVLANs = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testRouteTables = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testVLANFirewalls = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> testZones = new ConcurrentHashMap<String, String>();
     // make subnet creation more predicatable
     private final String[] cidrs = new String[]{"192.168.1.0/28", "192.168.1.20/28", "192.168.1.40/28", "192.168.1.60/28", "192.168.1.80/28",
             "192.168.1.100/28", "192.168.1.120/28", "192.168.1.140/28", "192.168.1.160/28", "192.168.1.180/28", "192.168.1.200/28",
@@ -81,6 +106,109 @@ public class NetworkResources {
         this.provider = provider;
     }
 
+    /**
+     * Takes over a resource left behind by an earlier test run.
+     * @param resource the resource from the resource ledger
+     * @param label the label under which to track the resource
+     * @return true if the resource is a network resource and was adopted
+     */
+    public boolean adopt(@Nonnull ResourceLedger.Entry resource, @Nonnull String label) {
+        String type = resource.getType();
+        boolean inVlan = (resource.getDependsOn() != null);
+        Map<String, String> map;
+
+        if( type.equals(CERTIFICATE_TEARDOWN) ) {
+            map = testSSLCertificates;
+        }
+        else if( type.equals(DNS_TEARDOWN) ) {
+            map = testZones;
+        }
+        else if( type.equals(FIREWALL_TEARDOWN) ) {
+            map = ( inVlan ? testVLANFirewalls : testGeneralFirewalls );
+        }
+        else if( type.equals(GATEWAY_TEARDOWN) ) {
+            map = testInternetGateways;
+        }
+        else if( type.equals(IPV4_RESOURCE) ) {
+            map = ( inVlan ? testIps4VLAN : testIps4Free );
+        }
+        else if( type.equals(IPV6_RESOURCE) ) {
+            map = ( inVlan ? testIps6VLAN : testIps6Free );
+        }
+        else if( type.equals(LB_TEARDOWN) ) {
+            map = testLBs;
+        }
+        else if( type.equals(NETWORK_FIREWALL_TEARDOWN) ) {
+            map = testNetworkFirewalls;
+        }
+        else if( type.equals(ROUTE_TABLE_TEARDOWN) ) {
+            map = testRouteTables;
+        }
+        else if( type.equals(SUBNET_TEARDOWN) ) {
+            map = testSubnets;
+        }
+        else if( type.equals(VLAN_TEARDOWN) ) {
+            map = testVLANs;
+        }
+        else {
+            return false;
+        }
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized ( map ) {
+            if( map.containsValue(resource.getId()) ) {
+                return true;
+            }
+            label = Bookkeeping.getUniqueLabel(map, label, random);
+            map.put(label, resource.getId());
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a warm fixture left behind by an earlier test run is still fit for use.
+     * @param resource the resource from the resource ledger
+     * @return true if the resource is a network resource that still exists
+     */
+    public boolean isUsable(@Nonnull ResourceLedger.Entry resource) {
+        NetworkServices services = provider.getNetworkServices();
+
+        if( services == null ) {
+            return false;
+        }
+        String type = resource.getType();
+        String id = resource.getId();
+
+        try {
+            if( type.equals(FIREWALL_TEARDOWN) ) {
+                FirewallSupport support = services.getFirewallSupport();
+
+                return ( support != null && support.getFirewall(id) != null );
+            }
+            VLANSupport support = services.getVlanSupport();
+
+            if( support == null ) {
+                return false;
+            }
+            if( type.equals(GATEWAY_TEARDOWN) ) {
+                return ( support.getInternetGatewayById(id) != null );
+            }
+            else if( type.equals(ROUTE_TABLE_TEARDOWN) ) {
+                return ( support.getRoutingTable(id) != null );
+            }
+            else if( type.equals(SUBNET_TEARDOWN) ) {
+                return ( support.getSubnet(id) != null );
+            }
+            else if( type.equals(VLAN_TEARDOWN) ) {
+                VLAN vlan = support.getVlan(id);
+
+                return ( vlan != null && VLANState.AVAILABLE.equals(vlan.getCurrentState()) );
+            }
+        } catch( Throwable t ) {
+            logger.warn("Unable to check warm fixture " + resource + ": " + t.getMessage());
+        }
+        return false;
+    }
+
     public int report() {
         boolean header = false;
         int count = 0;
@@ -194,491 +322,415 @@ public class NetworkResources {
         return count;
     }
 
+    /**
+     * Tears down all stateful network resources provisioned during the tests.
+     * @return the number of resources de-provisioned
+     */
     public int close() {
-        int count = 0;
+        TaskGraph teardown = new TaskGraph("Network Teardown");
 
-        try {
-            try {
-                Thread.sleep(10000L);
-            } catch( InterruptedException ignore ) {
-            }
-            NetworkServices networkServices = provider.getNetworkServices();
+        addTeardown(teardown);
+        teardown.run();
+        return teardown.getTotal(TEARDOWN);
+    }
 
-            if( networkServices != null ) {
-                DNSSupport dnsSupport = networkServices.getDnsSupport();
+    /**
+     * Adds a task for each stateful network resource to the specified teardown graph. DNS zones and load balancers
+     * go right away and certificates follow their load balancers. Addresses, firewalls and gateways wait for the test
+     * virtual machines to terminate, and each VLAN waits for everything that may still live inside it.
+     * @param teardown the graph to which the tasks are added
+     */
+    public void addTeardown(@Nonnull TaskGraph teardown) {
+        NetworkServices networkServices = provider.getNetworkServices();
 
-                if( dnsSupport != null ) {
-                    try {
-                        for( Map.Entry<String, String> entry : testZones.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+        if( networkServices == null ) {
+            return;
+        }
+        final DNSSupport dnsSupport = networkServices.getDnsSupport();
+
+        if( dnsSupport != null ) {
+            for( final Map.Entry<String, String> entry : testZones.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                    teardown.add(DNS_TEARDOWN + ":" + entry.getValue(), DNS_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
                                 DNSZone zone = dnsSupport.getDnsZone(entry.getValue());
 
-                                try {
-                                    if( zone != null ) {
-                                        try {
-                                            for( DNSRecord record : dnsSupport.listDnsRecords(zone.getProviderDnsZoneId(), DNSRecordType.A, null) ) {
-                                                try {
-                                                    dnsSupport.deleteDnsRecords(record);
-                                                } catch( Throwable ignore ) {
-                                                    // ignore
-                                                }
+                                if( zone != null ) {
+                                    try {
+                                        for( DNSRecord record : dnsSupport.listDnsRecords(zone.getProviderDnsZoneId(), DNSRecordType.A, null) ) {
+                                            try {
+                                                dnsSupport.deleteDnsRecords(record);
+                                            } catch( Throwable ignore ) {
+                                                // ignore
                                             }
-                                        } catch( Throwable ignore ) {
-                                            // ignore
                                         }
-                                        dnsSupport.deleteDnsZone(zone.getProviderDnsZoneId());
-                                        count++;
-                                    } else {
-                                        count++;
+                                    } catch( Throwable ignore ) {
+                                        // ignore
                                     }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision test DNS zone " + entry.getValue() + ":" + t.getMessage());
+                                    dnsSupport.deleteDnsZone(zone.getProviderDnsZoneId());
                                 }
+                                ResourceLedger.deprovisioned(DNS_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision test DNS zone " + entry.getValue() + ":" + t.getMessage());
+                                return 0;
                             }
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
+                    });
                 }
+            }
+        }
 
-                LoadBalancerSupport lbSupport = networkServices.getLoadBalancerSupport();
+        final LoadBalancerSupport lbSupport = networkServices.getLoadBalancerSupport();
 
-                if( lbSupport != null ) {
-                    try {
-                        for( Map.Entry<String, String> entry : testLBs.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+        if( lbSupport != null ) {
+            for( final Map.Entry<String, String> entry : testLBs.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                    teardown.add(LB_TEARDOWN + ":" + entry.getValue(), LB_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
                                 LoadBalancer lb = lbSupport.getLoadBalancer(entry.getValue());
 
-                                try {
-                                    if( lb != null ) {
-                                        lbSupport.removeLoadBalancer(lb.getProviderLoadBalancerId());
-                                        
-                                        try {
-                                        	lbSupport.removeLoadBalancerHealthCheck(lb.getProviderLoadBalancerId()); // named LBHC same as LB for convienence.
-                                        } catch (Throwable t ) { /* ignore if not supported */ }
-                                        
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision test load balancer " + entry.getValue() + ":" + t.getMessage());
-                                }
-                            }
-                        }
+                                if( lb != null ) {
+                                    lbSupport.removeLoadBalancer(lb.getProviderLoadBalancerId());
 
-                        for ( Map.Entry<String, String> entry : testSSLCertificates.entrySet() ) {
-                            if ( !DaseinTestManager.STATELESS.equals(entry.getKey()) ) {
-                                SSLCertificate sslCertificate = lbSupport.getSSLCertificate(entry.getValue());
-
-                                try {
-                                    if ( sslCertificate != null ) {
-                                        lbSupport.removeSSLCertificate( entry.getValue() );
-                                    }
-                                    count++;
-                                } catch ( Throwable t ) {
-                                    logger.warn("Failed to de-provision test SSL certificate " + entry.getValue() +
-                                            ":" + t.getMessage(), t);
-                                }
-                            }
-                        }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                }
-
-                IpAddressSupport ipSupport = networkServices.getIpAddressSupport();
-
-                if( ipSupport != null ) {
-                    try {
-                        for( Map.Entry<String, String> entry : testIps4Free.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                IpAddress addr = ipSupport.getIpAddress(entry.getValue());
-
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromServer(entry.getValue());
-                                    }
                                     try {
-                                        Thread.sleep(3000L);
-                                    } catch( InterruptedException ignore ) {
-                                    }
-                                } catch( Throwable ignore ) {
-                                    // ignore
-                                }
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromPool(entry.getValue());
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision static IP " + entry.getValue() + " post-test: " + t.getMessage());
+                                        lbSupport.removeLoadBalancerHealthCheck(lb.getProviderLoadBalancerId()); // named LBHC same as LB for convienence.
+                                    } catch (Throwable t ) { /* ignore if not supported */ }
                                 }
+                                ResourceLedger.deprovisioned(LB_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision test load balancer " + entry.getValue() + ":" + t.getMessage());
+                                return 0;
                             }
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                    try {
-                        for( Map.Entry<String, String> entry : testIps6Free.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                IpAddress addr = ipSupport.getIpAddress(entry.getValue());
+                    });
+                }
+            }
+            for( final Map.Entry<String, String> entry : testSSLCertificates.entrySet() ) {
+                if( !DaseinTestManager.STATELESS.equals(entry.getKey()) ) {
+                    teardown.add(CERTIFICATE_TEARDOWN + ":" + entry.getValue(), CERTIFICATE_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
+                                SSLCertificate sslCertificate = lbSupport.getSSLCertificate(entry.getValue());
 
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromServer(entry.getValue());
-                                    }
-                                    try {
-                                        Thread.sleep(3000L);
-                                    } catch( InterruptedException ignore ) {
-                                    }
-                                } catch( Throwable ignore ) {
-                                    // ignore
-                                }
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromPool(entry.getValue());
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision static IP " + entry.getValue() + " post-test: " + t.getMessage());
+                                if( sslCertificate != null ) {
+                                    lbSupport.removeSSLCertificate(entry.getValue());
                                 }
+                                ResourceLedger.deprovisioned(CERTIFICATE_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision test SSL certificate " + entry.getValue() + ":" + t.getMessage(), t);
+                                return 0;
                             }
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                    try {
-                        for( Map.Entry<String, String> entry : testIps4VLAN.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                IpAddress addr = ipSupport.getIpAddress(entry.getValue());
+                    }, LB_TEARDOWN);
+                }
+            }
+        }
 
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromServer(entry.getValue());
-                                    }
-                                    try {
-                                        Thread.sleep(3000L);
-                                    } catch( InterruptedException ignore ) {
-                                    }
-                                } catch( Throwable ignore ) {
-                                    // ignore
-                                }
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromPool(entry.getValue());
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision static IP " + entry.getValue() + " post-test: " + t.getMessage());
-                                }
-                            }
-                        }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                    try {
-                        for( Map.Entry<String, String> entry : testIps6VLAN.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                IpAddress addr = ipSupport.getIpAddress(entry.getValue());
+        final IpAddressSupport ipSupport = networkServices.getIpAddressSupport();
 
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromServer(entry.getValue());
-                                    }
-                                    try {
-                                        Thread.sleep(3000L);
-                                    } catch( InterruptedException ignore ) {
-                                    }
-                                } catch( Throwable ignore ) {
-                                    // ignore
-                                }
-                                try {
-                                    if( addr != null ) {
-                                        ipSupport.releaseFromPool(entry.getValue());
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision static IP " + entry.getValue() + " post-test: " + t.getMessage());
-                                }
-                            }
-                        }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                }
+        if( ipSupport != null ) {
+            addAddressTeardown(teardown, ipSupport, testIps4Free, IPV4_RESOURCE);
+            addAddressTeardown(teardown, ipSupport, testIps6Free, IPV6_RESOURCE);
+            addAddressTeardown(teardown, ipSupport, testIps4VLAN, IPV4_RESOURCE);
+            addAddressTeardown(teardown, ipSupport, testIps6VLAN, IPV6_RESOURCE);
+        }
 
-                VLANSupport vlanSupport = networkServices.getVlanSupport();
+        final VLANSupport vlanSupport = networkServices.getVlanSupport();
 
-                if( vlanSupport != null ) {
-                    try {
-                        for( Map.Entry<String, String> entry : testVLANs.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+        if( vlanSupport != null ) {
+            for( final Map.Entry<String, String> entry : testVLANs.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(VLAN_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(VLAN_GATEWAY_TEARDOWN + ":" + entry.getValue(), VLAN_GATEWAY_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
                                 VLAN v = vlanSupport.getVlan(entry.getValue());
 
-                                if( v != null ) {
-                                    try {
-                                        if( vlanSupport.isConnectedViaInternetGateway(v.getProviderVlanId()) ) {
-                                            vlanSupport.removeInternetGateway(v.getProviderVlanId());
-                                        }
-                                    } catch( Throwable t ) {
-                                        logger.warn("Failed to remove internet gateway for test VLAN " + v + ":" + t.getMessage());
-                                    }
+                                if( v != null && vlanSupport.isConnectedViaInternetGateway(v.getProviderVlanId()) ) {
+                                    vlanSupport.removeInternetGateway(v.getProviderVlanId());
                                 }
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to remove internet gateway for test VLAN " + entry.getValue() + ":" + t.getMessage());
                             }
+                            return 0;
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
+                    }, ComputeResources.VM_TEARDOWN, IP_TEARDOWN);
                 }
+            }
+        }
 
-                NetworkFirewallSupport nfSupport = networkServices.getNetworkFirewallSupport();
+        final NetworkFirewallSupport nfSupport = networkServices.getNetworkFirewallSupport();
 
-                if( nfSupport != null ) {
-                    try {
-                        for( Map.Entry<String, String> entry : testNetworkFirewalls.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                try {
-                                    Firewall f = nfSupport.getFirewall(entry.getValue());
+        if( nfSupport != null ) {
+            for( final Map.Entry<String, String> entry : testNetworkFirewalls.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                    teardown.add(NETWORK_FIREWALL_TEARDOWN + ":" + entry.getValue(), NETWORK_FIREWALL_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
+                                Firewall f = nfSupport.getFirewall(entry.getValue());
 
-                                    if( f != null ) {
-                                        nfSupport.removeFirewall(entry.getValue());
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision network firewall " + entry.getValue() + " post-test: " + t.getMessage());
+                                if( f != null ) {
+                                    nfSupport.removeFirewall(entry.getValue());
                                 }
+                                ResourceLedger.deprovisioned(NETWORK_FIREWALL_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision network firewall " + entry.getValue() + " post-test: " + t.getMessage());
+                                return 0;
                             }
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
+                    }, ComputeResources.VM_TEARDOWN);
                 }
+            }
+        }
 
-                FirewallSupport firewallSupport = networkServices.getFirewallSupport();
-
-                if( firewallSupport != null ) {
-                    try {
-                        for( Map.Entry<String, String> entry : testGeneralFirewalls.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                try {
-                                    Firewall f = firewallSupport.getFirewall(entry.getValue());
-
-                                    if( f != null ) {
-                                        firewallSupport.delete(entry.getValue());
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision standard firewall " + entry.getValue() + " post-test: " + t.getMessage());
-                                }
-                            }
-                        }
-
-                        for( Map.Entry<String, String> entry : testVLANFirewalls.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                try {
-                                    Firewall f = firewallSupport.getFirewall(entry.getValue());
+        final FirewallSupport firewallSupport = networkServices.getFirewallSupport();
 
-                                    if( f != null ) {
-                                        firewallSupport.delete(entry.getValue());
-                                        count++;
-                                    } else {
-                                        count++;
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision VLAN firewall " + entry.getValue() + " post-test: " + t.getMessage());
-                                }
-                            }
-                        }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
+        if( firewallSupport != null ) {
+            for( final Map.Entry<String, String> entry : testGeneralFirewalls.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(FIREWALL_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(FIREWALL_TEARDOWN + ":" + entry.getValue(), FIREWALL_TEARDOWN, removeFirewall(firewallSupport, entry.getValue(), "standard"), ComputeResources.VM_TEARDOWN, LB_TEARDOWN);
+                }
+            }
+            for( final Map.Entry<String, String> entry : testVLANFirewalls.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(FIREWALL_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(FIREWALL_TEARDOWN + ":" + entry.getValue(), FIREWALL_TEARDOWN, removeFirewall(firewallSupport, entry.getValue(), "VLAN"), ComputeResources.VM_TEARDOWN, LB_TEARDOWN);
                 }
+            }
+        }
 
-                if( vlanSupport != null ) {
-                    try {
-                        for( Map.Entry<String, String> entry : testInternetGateways.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+        if( vlanSupport != null ) {
+            for( final Map.Entry<String, String> entry : testInternetGateways.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(GATEWAY_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(GATEWAY_TEARDOWN + ":" + entry.getValue(), GATEWAY_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
                                 InternetGateway ig = vlanSupport.getInternetGatewayById(entry.getValue());
 
                                 if( ig != null ) {
-                                    try {
-                                        vlanSupport.removeInternetGatewayById(entry.getValue());
-                                        count++;
-                                    } catch( Throwable t ) {
-                                        logger.warn("Failed to de-provision internetgateway (1) " + entry.getValue() + " post-test: " + t.getMessage());
-                                        try {
-                                            Thread.sleep(30000L);
-                                        } catch( InterruptedException ignore ) {
-                                        }
-                                        try {
+                                    StateWaiter.retry(StateWaiter.NETWORK, CalendarWrapper.MINUTE * 3L, new Callable<Object>() {
+                                        @Override
+                                        public Object call() throws Exception {
                                             vlanSupport.removeInternetGatewayById(entry.getValue());
-                                            count++;
-                                        } catch( Throwable t2 ) {
-                                            logger.warn("Failed to de-provision internetgateway (final) " + entry.getValue() + " post-test: " + t2.getMessage());
+                                            return null;
                                         }
-                                    }
-                                } else {
-                                    count++;
+                                    });
                                 }
+                                ResourceLedger.deprovisioned(GATEWAY_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision internetgateway " + entry.getValue() + " post-test: " + t.getMessage());
+                                return 0;
                             }
-
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                    try {
-                        for( Map.Entry<String, String> entry : testSubnets.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                    }, ComputeResources.VM_TEARDOWN, IP_TEARDOWN, VLAN_GATEWAY_TEARDOWN);
+                }
+            }
+            for( final Map.Entry<String, String> entry : testSubnets.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(SUBNET_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(SUBNET_TEARDOWN + ":" + entry.getValue(), SUBNET_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
                                 Subnet s = vlanSupport.getSubnet(entry.getValue());
 
                                 if( s != null ) {
-                                    try {
-                                        vlanSupport.removeSubnet(entry.getValue());
-                                        count++;
-                                    } catch( Throwable t ) {
-                                        logger.warn("Failed to de-provision subnet (1) " + entry.getValue() + " post-test: " + t.getMessage());
-                                        try {
-                                            Thread.sleep(30000L);
-                                        } catch( InterruptedException ignore ) {
-                                        }
-                                        try {
+                                    StateWaiter.retry(StateWaiter.NETWORK, CalendarWrapper.MINUTE * 3L, new Callable<Object>() {
+                                        @Override
+                                        public Object call() throws Exception {
                                             vlanSupport.removeSubnet(entry.getValue());
-                                            count++;
-                                        } catch( Throwable t2 ) {
-                                            logger.warn("Failed to de-provision subnet (final) " + entry.getValue() + " post-test: " + t2.getMessage());
+                                            return null;
                                         }
-                                    }
-                                } else {
-                                    count++;
+                                    });
                                 }
+                                ResourceLedger.deprovisioned(SUBNET_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision subnet " + entry.getValue() + " post-test: " + t.getMessage());
+                                return 0;
                             }
-
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                    try {
-                        for( Map.Entry<String, String> entry : testRouteTables.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                    }, ComputeResources.VM_TEARDOWN, IP_TEARDOWN, NETWORK_FIREWALL_TEARDOWN, LB_TEARDOWN, PlatformResources.TEARDOWN);
+                }
+            }
+            for( final Map.Entry<String, String> entry : testRouteTables.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(ROUTE_TABLE_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(ROUTE_TABLE_TEARDOWN + ":" + entry.getValue(), ROUTE_TABLE_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            try {
                                 RoutingTable rtb = vlanSupport.getRoutingTable(entry.getValue());
 
                                 if( rtb != null ) {
-                                    try {
-                                        vlanSupport.removeRoutingTable(entry.getValue());
-                                        count++;
-                                    } catch( Throwable t ) {
-                                        logger.warn("Failed to de-provision routetable (1) " + entry.getValue() + " post-test: " + t.getMessage());
-                                        try {
-                                            Thread.sleep(30000L);
-                                        } catch( InterruptedException ignore ) {
-                                        }
-                                        try {
+                                    StateWaiter.retry(StateWaiter.NETWORK, CalendarWrapper.MINUTE * 3L, new Callable<Object>() {
+                                        @Override
+                                        public Object call() throws Exception {
                                             vlanSupport.removeRoutingTable(entry.getValue());
-                                            count++;
-                                        } catch( Throwable t2 ) {
-                                            logger.warn("Failed to de-provision routetable (final) " + entry.getValue() + " post-test: " + t2.getMessage());
+                                            return null;
                                         }
-                                    }
-                                } else {
-                                    count++;
+                                    });
                                 }
+                                ResourceLedger.deprovisioned(ROUTE_TABLE_TEARDOWN, entry.getValue());
+                                return 1;
+                            } catch( Throwable t ) {
+                                logger.warn("Failed to de-provision routetable " + entry.getValue() + " post-test: " + t.getMessage());
+                                return 0;
                             }
-
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
-                    }
-                    try {
-                        for( Map.Entry<String, String> entry : testVLANs.entrySet() ) {
-                            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                                VLAN v = vlanSupport.getVlan(entry.getValue());
+                    }, SUBNET_TEARDOWN, GATEWAY_TEARDOWN);
+                }
+            }
+            for( final Map.Entry<String, String> entry : testVLANs.entrySet() ) {
+                if( !entry.getKey().equals(DaseinTestManager.STATELESS) && !WarmFixtures.isWarm(VLAN_TEARDOWN, entry.getKey()) ) {
+                    teardown.add(VLAN_TEARDOWN + ":" + entry.getValue(), VLAN_TEARDOWN, new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            return removeVlan(vlanSupport, nfSupport, firewallSupport, entry.getValue());
+                        }
+                    }, ComputeResources.VM_TEARDOWN, IP_TEARDOWN, VLAN_GATEWAY_TEARDOWN, NETWORK_FIREWALL_TEARDOWN, FIREWALL_TEARDOWN, GATEWAY_TEARDOWN, SUBNET_TEARDOWN, ROUTE_TABLE_TEARDOWN, LB_TEARDOWN, PlatformResources.TEARDOWN);
+                }
+            }
+        }
+    }
 
-                                if( v != null ) {
-                                    try {
-                                        if( vlanSupport.isConnectedViaInternetGateway(v.getProviderVlanId()) ) {
-                                            vlanSupport.removeInternetGateway(v.getProviderVlanId());
-                                        }
-                                    } catch( Throwable t ) {
-                                        logger.warn("Failed to remove internet gateway for test VLAN " + v + ":" + t.getMessage());
-                                    }
-                                } else {
-                                    count++;
-                                    continue;
-                                }
-                                if( nfSupport != null ) {
-                                    for( Firewall fw : nfSupport.listFirewalls() ) {
-                                        if( fw.getProviderVlanId().equals(entry.getValue()) ) {
-                                            try {
-                                                nfSupport.removeFirewall(fw.getProviderFirewallId());
-                                            } catch( Throwable t ) {
-                                                logger.warn("Failed to remove network firewall for test VLAN " + v + ": " + t.getMessage());
-                                            }
-                                        }
-                                    }
-                                }
-                                if( firewallSupport != null ) {
-                                    for( Firewall fw : firewallSupport.list() ) {
-                                        if( entry.getValue().equals(fw.getProviderFirewallId()) ) {
-                                            try {
-                                                firewallSupport.delete(fw.getProviderFirewallId());
-                                            } catch( Throwable t ) {
-                                                logger.warn("Failed to remove test VLAN firewall for VLAN " + v + ": " + t.getMessage());
-                                            }
-                                        }
-                                    }
-                                }
+    private void addAddressTeardown(@Nonnull TaskGraph teardown, final @Nonnull IpAddressSupport ipSupport, @Nonnull Map<String, String> addresses, final @Nonnull String type) {
+        for( final Map.Entry<String, String> entry : addresses.entrySet() ) {
+            if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
+                teardown.add(IP_TEARDOWN + ":" + entry.getValue(), IP_TEARDOWN, new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        try {
+                            IpAddress addr = ipSupport.getIpAddress(entry.getValue());
+
+                            if( addr != null ) {
                                 try {
-                                    for( Subnet subnet : vlanSupport.listSubnets(entry.getValue()) ) {
-                                        try {
-                                            vlanSupport.removeSubnet(subnet.getProviderSubnetId());
-                                        } catch( Throwable t ) {
-                                            logger.warn("Failed to de-provision subnet " + subnet.getProviderSubnetId() + " for test VLAN " + entry.getValue() + " post-test: " + t.getMessage());
-                                        }
-                                    }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision subnets for test VLAN " + entry.getValue() + " post-test: " + t.getMessage());
+                                    ipSupport.releaseFromServer(entry.getValue());
+                                } catch( Throwable ignore ) {
+                                    // ignore
                                 }
-                                try {
-                                    for( RoutingTable routeTable : vlanSupport.listRoutingTablesForVlan(entry.getValue()) ) {
-                                        try {
-                                            vlanSupport.removeRoutingTable(routeTable.getProviderRoutingTableId());
-                                        } catch( Throwable t ) {
-                                            logger.warn("Failed to de-provision route table " + routeTable.getProviderRoutingTableId() + " for test VLAN " + entry.getValue() + " post-test: " + t.getMessage());
-                                        }
+                                // the release from the pool fails until the release from the server has gone through
+                                StateWaiter.retry(StateWaiter.NETWORK, CalendarWrapper.MINUTE, new Callable<Object>() {
+                                    @Override
+                                    public Object call() throws Exception {
+                                        ipSupport.releaseFromPool(entry.getValue());
+                                        return null;
                                     }
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision route tables for test VLAN " + entry.getValue() + " post-test: " + t.getMessage());
-                                }
-                                try {
-                                    vlanSupport.removeVlan(entry.getValue());
-                                    count++;
-                                } catch( Throwable t ) {
-                                    logger.warn("Failed to de-provision test VLAN " + entry.getValue() + " post-test: " + t.getMessage());
-                                }
+                                });
                             }
+                            ResourceLedger.deprovisioned(type, entry.getValue());
+                            return 1;
+                        } catch( Throwable t ) {
+                            logger.warn("Failed to de-provision static IP " + entry.getValue() + " post-test: " + t.getMessage());
+                            return 0;
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
                     }
+                }, ComputeResources.VM_TEARDOWN);
+            }
+        }
+    }
+
+    private @Nonnull Callable<Integer> removeFirewall(final @Nonnull FirewallSupport firewallSupport, final @Nonnull String firewallId, final @Nonnull String kind) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                try {
+                    Firewall f = firewallSupport.getFirewall(firewallId);
+
+                    if( f != null ) {
+                        firewallSupport.delete(firewallId);
+                    }
+                    ResourceLedger.deprovisioned(FIREWALL_TEARDOWN, firewallId);
+                    return 1;
+                } catch( Throwable t ) {
+                    logger.warn("Failed to de-provision " + kind + " firewall " + firewallId + " post-test: " + t.getMessage());
+                    return 0;
                 }
             }
-        } catch( Throwable ignore ) {
-            // ignore
+        };
+    }
+
+    private int removeVlan(final @Nonnull VLANSupport vlanSupport, @Nullable NetworkFirewallSupport nfSupport, @Nullable FirewallSupport firewallSupport, final @Nonnull String vlanId) {
+        try {
+            VLAN v = vlanSupport.getVlan(vlanId);
+
+            if( v == null ) {
+                ResourceLedger.deprovisioned(VLAN_TEARDOWN, vlanId);
+                return 1;
+            }
+            try {
+                if( vlanSupport.isConnectedViaInternetGateway(v.getProviderVlanId()) ) {
+                    vlanSupport.removeInternetGateway(v.getProviderVlanId());
+                }
+            } catch( Throwable t ) {
+                logger.warn("Failed to remove internet gateway for test VLAN " + v + ":" + t.getMessage());
+            }
+            if( nfSupport != null ) {
+                for( Firewall fw : nfSupport.listFirewalls() ) {
+                    if( fw.getProviderVlanId().equals(vlanId) ) {
+                        try {
+                            nfSupport.removeFirewall(fw.getProviderFirewallId());
+                        } catch( Throwable t ) {
+                            logger.warn("Failed to remove network firewall for test VLAN " + v + ": " + t.getMessage());
+                        }
+                    }
+                }
+            }
+            if( firewallSupport != null ) {
+                for( Firewall fw : firewallSupport.list() ) {
+                    if( vlanId.equals(fw.getProviderFirewallId()) ) {
+                        try {
+                            firewallSupport.delete(fw.getProviderFirewallId());
+                        } catch( Throwable t ) {
+                            logger.warn("Failed to remove test VLAN firewall for VLAN " + v + ": " + t.getMessage());
+                        }
+                    }
+                }
+            }
+            try {
+                for( Subnet subnet : vlanSupport.listSubnets(vlanId) ) {
+                    try {
+                        vlanSupport.removeSubnet(subnet.getProviderSubnetId());
+                    } catch( Throwable t ) {
+                        logger.warn("Failed to de-provision subnet " + subnet.getProviderSubnetId() + " for test VLAN " + vlanId + " post-test: " + t.getMessage());
+                    }
+                }
+            } catch( Throwable t ) {
+                logger.warn("Failed to de-provision subnets for test VLAN " + vlanId + " post-test: " + t.getMessage());
+            }
+            try {
+                for( RoutingTable routeTable : vlanSupport.listRoutingTablesForVlan(vlanId) ) {
+                    try {
+                        vlanSupport.removeRoutingTable(routeTable.getProviderRoutingTableId());
+                    } catch( Throwable t ) {
+                        logger.warn("Failed to de-provision route table " + routeTable.getProviderRoutingTableId() + " for test VLAN " + vlanId + " post-test: " + t.getMessage());
+                    }
+                }
+            } catch( Throwable t ) {
+                logger.warn("Failed to de-provision route tables for test VLAN " + vlanId + " post-test: " + t.getMessage());
+            }
+            StateWaiter.retry(StateWaiter.NETWORK, CalendarWrapper.MINUTE * 3L, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    vlanSupport.removeVlan(vlanId);
+                    return null;
+                }
+            });
+            ResourceLedger.deprovisioned(VLAN_TEARDOWN, vlanId);
+            return 1;
+        } catch( Throwable t ) {
+            logger.warn("Failed to de-provision test VLAN " + vlanId + " post-test: " + t.getMessage());
+            return 0;
         }
-        return count;
     }
 
     private @Nullable String findStatelessDNSZone() {
@@ -1010,7 +1062,7 @@ public class NetworkResources {
     }
 
     public @Nullable String getTestFirewallId(@Nonnull String label, boolean provisionIfNull, @Nullable String vlanId) {
-        HashMap<String, String> map = ( vlanId == null ? testGeneralFirewalls : testVLANFirewalls );
+        Map<String, String> map = ( vlanId == null ? testGeneralFirewalls : testVLANFirewalls );
         if( label.equalsIgnoreCase(DaseinTestManager.STATELESS) ) {
             for( Map.Entry<String, String> entry : map.entrySet() ) {
                 if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
@@ -1422,9 +1474,22 @@ public class NetworkResources {
                     try {
                         if( vlanId == null ) {
                             String vId = getTestVLANId(label, true, preferredDataCenterId);
-                            try {
-                                Thread.sleep(15000L);
-                            } catch( InterruptedException ignore ) {
+                            // give a new VLAN up to the old fixed 15 seconds to become available
+                            StateWaiter waiter = new StateWaiter(StateWaiter.NETWORK, 15000L);
+
+                            while( vId != null && waiter.isWaiting() ) {
+                                try {
+                                    VLAN v = support.getVlan(vId);
+
+                                    if( v == null || VLANState.AVAILABLE.equals(v.getCurrentState()) ) {
+                                        waiter.done();
+                                        break;
+                                    }
+                                }
+                                catch( Throwable ignore ) {
+                                    // ignore
+                                }
+                                waiter.pause();
                             }
                             if( vId != null ) {
                                 return provisionRoutingTable(support, vId, label, "dsnrtb");
@@ -1478,6 +1543,16 @@ public class NetworkResources {
     }
 
     public @Nonnull String provisionAddress(@Nonnull IpAddressSupport support, @Nonnull String label, @Nullable IPVersion version, @Nullable String vlanId) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(IP_TEARDOWN);
+        try {
+            return doProvisionAddress(support, label, version, vlanId);
+        }
+        finally {
+            ProvisioningScheduler.release(IP_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionAddress(@Nonnull IpAddressSupport support, @Nonnull String label, @Nullable IPVersion version, @Nullable String vlanId) throws CloudException, InternalException {
         if( version == null ) {
             for( IPVersion v : support.getCapabilities().listSupportedIPVersions() ) {
                 if( support.getCapabilities().isRequestable(v) ) {
@@ -1510,10 +1585,9 @@ public class NetworkResources {
         }
         //noinspection SynchronizationOnLocalVariableOrMethodParameter
         synchronized ( map ) {
-            while( map.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(map, label, random);
             map.put(label, id);
+            ResourceLedger.provisioned(version.equals(IPVersion.IPV4) ? IPV4_RESOURCE : IPV6_RESOURCE, id, label, vlanId);
         }
         return id;
     }
@@ -1550,6 +1624,16 @@ public class NetworkResources {
     }
 
     public @Nonnull String provisionFirewall(@Nonnull String label, @Nullable String vlanId, @Nullable FirewallRuleCreateOptions firstRule) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(FIREWALL_TEARDOWN);
+        try {
+            return doProvisionFirewall(label, vlanId, firstRule);
+        }
+        finally {
+            ProvisioningScheduler.release(FIREWALL_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionFirewall(@Nonnull String label, @Nullable String vlanId, @Nullable FirewallRuleCreateOptions firstRule) throws CloudException, InternalException {
         String tmp = String.valueOf(random.nextInt(10000));
         String name = "dsnfw" + tmp;
         String description = "Dasein Cloud Integration Test Firewall";
@@ -1572,17 +1656,15 @@ public class NetworkResources {
 
         if( vlanId == null ) {
             synchronized ( testGeneralFirewalls ) {
-                while( testGeneralFirewalls.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
+                label = Bookkeeping.getUniqueLabel(testGeneralFirewalls, label, random);
                 testGeneralFirewalls.put(label, id);
+                ResourceLedger.provisioned(FIREWALL_TEARDOWN, id, label, null);
             }
         } else {
             synchronized ( testVLANFirewalls ) {
-                while( testVLANFirewalls.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
+                label = Bookkeeping.getUniqueLabel(testVLANFirewalls, label, random);
                 testVLANFirewalls.put(label, id);
+                ResourceLedger.provisioned(FIREWALL_TEARDOWN, id, label, vlanId);
             }
         }
         return id;
@@ -1594,6 +1676,17 @@ public class NetworkResources {
 
     public @Nonnull String provisionLoadBalancer(@Nonnull String label, @Nullable String namePrefix,
                                  boolean internal, boolean withHttps, boolean withHealthCheck) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(LB_TEARDOWN);
+        try {
+            return doProvisionLoadBalancer(label, namePrefix, internal, withHttps, withHealthCheck);
+        }
+        finally {
+            ProvisioningScheduler.release(LB_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionLoadBalancer(@Nonnull String label, @Nullable String namePrefix,
+                                 boolean internal, boolean withHttps, boolean withHealthCheck) throws CloudException, InternalException {
     	NetworkServices services = provider.getNetworkServices();
 
         if( services == null ) {
@@ -1727,7 +1820,7 @@ public class NetworkResources {
                     }
                     String server2 = null;
                     if( !internal ) {
-                        @SuppressWarnings("ConstantConditions") Iterator<DataCenter> it = provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()).iterator();
+                        @SuppressWarnings("ConstantConditions") Iterator<DataCenter> it = DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()).iterator();
                         String targetDC = dcIds[0];
 
                         if( it.hasNext() ) {
@@ -1759,7 +1852,7 @@ public class NetworkResources {
             } else if( dcIds[1] != null ) {
                 options.limitedTo(dcIds[1]);
             } else {
-                @SuppressWarnings("ConstantConditions") Iterator<DataCenter> it = provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()).iterator();
+                @SuppressWarnings("ConstantConditions") Iterator<DataCenter> it = DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()).iterator();
 
                 if( it.hasNext() ) {
                     options.limitedTo(it.next().getProviderDataCenterId());
@@ -1783,15 +1876,24 @@ public class NetworkResources {
         String id = options.build(provider);
 
         synchronized ( testLBs ) {
-            while( testLBs.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testLBs, label, random);
             testLBs.put(label, id);
+            ResourceLedger.provisioned(LB_TEARDOWN, id, label, null);
         }
         return id;
     }
 
     public @Nonnull String provisionSSLCertificate(@Nonnull String label, @Nullable String namePrefix) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(CERTIFICATE_TEARDOWN);
+        try {
+            return doProvisionSSLCertificate(label, namePrefix);
+        }
+        finally {
+            ProvisioningScheduler.release(CERTIFICATE_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionSSLCertificate(@Nonnull String label, @Nullable String namePrefix) throws CloudException, InternalException {
         NetworkServices services = provider.getNetworkServices();
 
         if( services == null ) {
@@ -1861,15 +1963,24 @@ public class NetworkResources {
         final String certificateName = sslCertificate.getCertificateName();
 
         synchronized ( testSSLCertificates ) {
-            while( testSSLCertificates.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testSSLCertificates, label, random);
             testSSLCertificates.put(label, certificateName);
+            ResourceLedger.provisioned(CERTIFICATE_TEARDOWN, certificateName, label, null);
         }
         return certificateName;
     }
 
     public @Nonnull String provisionNetworkFirewall(@Nonnull String label, @Nullable String vlanId) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(NETWORK_FIREWALL_TEARDOWN);
+        try {
+            return doProvisionNetworkFirewall(label, vlanId);
+        }
+        finally {
+            ProvisioningScheduler.release(NETWORK_FIREWALL_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionNetworkFirewall(@Nonnull String label, @Nullable String vlanId) throws CloudException, InternalException {
         NetworkServices services = provider.getNetworkServices();
 
         if( services == null ) {
@@ -1897,15 +2008,24 @@ public class NetworkResources {
         String id = support.createFirewall(options);
 
         synchronized ( testNetworkFirewalls ) {
-            while( testNetworkFirewalls.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testNetworkFirewalls, label, random);
             testNetworkFirewalls.put(label, id);
+            ResourceLedger.provisioned(NETWORK_FIREWALL_TEARDOWN, id, label, vlanId);
         }
         return id;
     }
 
     public @Nonnull String provisionSubnet(@Nonnull VLANSupport support, @Nonnull String label, @Nonnull String vlanId, @Nonnull String namePrefix, @Nullable String preferredDataCenterId) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(SUBNET_TEARDOWN);
+        try {
+            return doProvisionSubnet(support, label, vlanId, namePrefix, preferredDataCenterId);
+        }
+        finally {
+            ProvisioningScheduler.release(SUBNET_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionSubnet(@Nonnull VLANSupport support, @Nonnull String label, @Nonnull String vlanId, @Nonnull String namePrefix, @Nullable String preferredDataCenterId) throws CloudException, InternalException {
         if( preferredDataCenterId == null && support.getCapabilities().isSubnetDataCenterConstrained() ) {
             VLAN vlan = support.getVlan(vlanId);
 
@@ -1917,7 +2037,7 @@ public class NetworkResources {
                 preferredDataCenterId = DaseinTestManager.getDefaultDataCenterId(true);
                 if( preferredDataCenterId == null ) {
                     //noinspection ConstantConditions
-                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                    for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(provider, provider.getContext().getRegionId()) ) {
                         if( dc.isActive() && dc.isAvailable() ) {
                             preferredDataCenterId = dc.getProviderDataCenterId(); // don't break here, long story; just don't
                         }
@@ -1949,15 +2069,24 @@ public class NetworkResources {
             throw e;
         }
         synchronized ( testSubnets ) {
-            while( testSubnets.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testSubnets, label, random);
             testSubnets.put(label, id);
+            ResourceLedger.provisioned(SUBNET_TEARDOWN, id, label, vlanId);
         }
         return id;
     }
 
     public @Nullable String provisionInternetGateway(@Nonnull VLANSupport support, @Nonnull String label, @Nonnull String vlanId) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(GATEWAY_TEARDOWN);
+        try {
+            return doProvisionInternetGateway(support, label, vlanId);
+        }
+        finally {
+            ProvisioningScheduler.release(GATEWAY_TEARDOWN);
+        }
+    }
+
+    private @Nullable String doProvisionInternetGateway(@Nonnull VLANSupport support, @Nonnull String label, @Nonnull String vlanId) throws CloudException, InternalException {
         if( support.getCapabilities().isSubnetDataCenterConstrained() ) {
             VLAN vlan = support.getVlan(vlanId);
             if( vlan == null ) {
@@ -1966,15 +2095,24 @@ public class NetworkResources {
         }
         String id = support.createInternetGateway(vlanId);
         synchronized ( testInternetGateways ) {
-            while( testInternetGateways.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testInternetGateways, label, random);
             testInternetGateways.put(label, id);
+            ResourceLedger.provisioned(GATEWAY_TEARDOWN, id, label, vlanId);
         }
         return id;
     }
 
     public @Nonnull String provisionVLAN(@Nonnull VLANSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String preferredDataCenterId) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(VLAN_TEARDOWN);
+        try {
+            return doProvisionVLAN(support, label, namePrefix, preferredDataCenterId);
+        }
+        finally {
+            ProvisioningScheduler.release(VLAN_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionVLAN(@Nonnull VLANSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String preferredDataCenterId) throws CloudException, InternalException {
         String id;
 
         //if( support.isVlanDataCenterConstrained() && preferredDataCenterId == null ) {
@@ -1985,37 +2123,54 @@ public class NetworkResources {
             throw new CloudException("No VLAN was created");
         }
         synchronized ( testVLANs ) {
-            while( testVLANs.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testVLANs, label, random);
             testVLANs.put(label, id);
+            ResourceLedger.provisioned(VLAN_TEARDOWN, id, label, null);
         }
         return id;
     }
 
     public @Nonnull String provisionRoutingTable(@Nonnull VLANSupport support, @Nonnull String vlanId, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(ROUTE_TABLE_TEARDOWN);
+        try {
+            return doProvisionRoutingTable(support, vlanId, label, namePrefix);
+        }
+        finally {
+            ProvisioningScheduler.release(ROUTE_TABLE_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionRoutingTable(@Nonnull VLANSupport support, @Nonnull String vlanId, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
         String id = support.createRoutingTable(vlanId, namePrefix + ( System.currentTimeMillis() % 10000 ), "Test Routing Table for the Dasein Cloud Integration tests");
         if( id == null ) {
             throw new CloudException("No Routing Table was created");
         }
         synchronized ( testRouteTables ) {
-            while( testRouteTables.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testRouteTables, label, random);
             testRouteTables.put(label, id);
+            ResourceLedger.provisioned(ROUTE_TABLE_TEARDOWN, id, label, vlanId);
         }
         return id;
     }
 
     public @Nonnull String provisionDNSZone(@Nonnull DNSSupport support, @Nonnull String label, @Nonnull String domainPrefix, @Nonnull String tld) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(DNS_TEARDOWN);
+        try {
+            return doProvisionDNSZone(support, label, domainPrefix, tld);
+        }
+        finally {
+            ProvisioningScheduler.release(DNS_TEARDOWN);
+        }
+    }
+
+    private @Nonnull String doProvisionDNSZone(@Nonnull DNSSupport support, @Nonnull String label, @Nonnull String domainPrefix, @Nonnull String tld) throws CloudException, InternalException {
         String name = domainPrefix + ( System.currentTimeMillis() % 10000 ) + "." + tld;
         String id = support.createDnsZone(name, name, "Dasein Cloud Test Zone");
 
         synchronized ( testZones ) {
-            while( testZones.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testZones, label, random);
             testZones.put(label, id);
+            ResourceLedger.provisioned(DNS_TEARDOWN, id, label, null);
         }
         return id;
     }
@@ -52,7 +52,7 @@ import org.junit.runners.Suite;
 public class NetworkTestSuite {
     @BeforeClass
     static public void setup() {
-        DaseinTestManager.init();
+        DaseinTestManager.init(NetworkTestSuite.class);
     }
 
     @AfterClass
@@ -878,7 +878,7 @@ public class StatefulFirewallTests {
                     String dataCenterId = subnet.getProviderDataCenterId();
 
                     if( dataCenterId == null ) {
-                        for( DataCenter dc : tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()) ) {
+                        for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()) ) {
                             dataCenterId = dc.getProviderDataCenterId();
                         }
                     }
@@ -893,7 +893,7 @@ public class StatefulFirewallTests {
                     String dataCenterId = vlan.getProviderDataCenterId();
 
                     if( dataCenterId == null ) {
-                        for( DataCenter dc : tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()) ) {
+                        for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()) ) {
                             dataCenterId = dc.getProviderDataCenterId();
                         }
                     }
@@ -101,7 +101,7 @@ public class StatefulLoadBalancerTests {
         }
         try {
             if( testDataCenterId == null )
-                testDataCenterId = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+                testDataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
         }
         catch( Throwable ignore ) {
             // ignore
@@ -179,7 +179,7 @@ public class StatefulLoadBalancerTests {
                                     ArrayList<DataCenter> regionDataCenters = new ArrayList<DataCenter>();
                                     String[] dcs = lb.getProviderDataCenterIds();
 
-                                    regionDataCenters.addAll(tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()));
+                                    regionDataCenters.addAll(DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()));
 
                                     if( dcs.length >= regionDataCenters.size() ) {
                                         support.removeDataCenters(testLoadBalancerId, dcs[0]);
@@ -211,7 +211,7 @@ public class StatefulLoadBalancerTests {
                                 }
                                 try {
                                     if (testDataCenterId == null)
-                                        testDataCenterId = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+                                        testDataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
                                 } catch (Throwable ignore) {
                                     // ignore
                                 }
@@ -239,7 +239,7 @@ public class StatefulLoadBalancerTests {
                                 LoadBalancer lb = support.getLoadBalancer(testLoadBalancerId);
 
                                 if( lb != null ) {
-                                    Iterator<DataCenter> it = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator();
+                                    Iterator<DataCenter> it = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator();
                                     String[] dcs = lb.getProviderDataCenterIds();
 
                                     if( dcs.length >= 2 ) {
@@ -257,7 +257,7 @@ public class StatefulLoadBalancerTests {
                                 }
                             }
                             else {
-                                testDataCenterId = tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
+                                testDataCenterId = DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()).iterator().next().getProviderDataCenterId();
                             }
                         }
                         catch( Throwable ignore ) {
@@ -238,7 +238,7 @@ public class StatefulStaticIPTests {
                     }
                     if( dataCenterId == null ) {
                         try {
-                            for( DataCenter dc : tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()) ) {
+                            for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()) ) {
                                 if( dc.isActive() && dc.isAvailable() ) {
                                     dataCenterId = dc.getProviderDataCenterId();
                                     break;
@@ -28,6 +28,7 @@ import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.dc.DataCenterServices;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.StateWaiter;
 import org.dasein.cloud.test.compute.ComputeResources;
 import org.dasein.util.CalendarWrapper;
 import org.junit.*;
@@ -637,7 +638,7 @@ public class StatefulVLANTests {
                 dataCenterId = testDataCenterId;
             else
             if( dataCenterId == null ) {
-                for( DataCenter dc : tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()) ) {
+                for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()) ) {
                     dataCenterId = dc.getProviderDataCenterId();
                 }
             }
@@ -654,7 +655,7 @@ public class StatefulVLANTests {
                 dataCenterId = testDataCenterId;
             else
             if( dataCenterId == null ) {
-                for( DataCenter dc : tm.getProvider().getDataCenterServices().listDataCenters(tm.getContext().getRegionId()) ) {
+                for( DataCenter dc : DaseinTestManager.getDataCenterCache().listDataCenters(tm.getProvider(), tm.getContext().getRegionId()) ) {
                     dataCenterId = dc.getProviderDataCenterId();
                 }
             }
@@ -681,19 +682,18 @@ public class StatefulVLANTests {
 
         VirtualMachine vm = vmSupport.getVirtualMachine(vmId);
 
-        long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
+        StateWaiter waiter = new StateWaiter(StateWaiter.VM, CalendarWrapper.MINUTE * 5L);
 
-        while( timeout > System.currentTimeMillis() ) {
+        while( waiter.isWaiting() ) {
             if( vm == null ) {
+                waiter.abandon();
                 break;
             }
             if( vm.getProviderVlanId() != null ) {
+                waiter.done();
                 break;
             }
-            try {
-                Thread.sleep(15000L);
-            } catch( InterruptedException ignore ) {
-            }
+            waiter.pause();
             try {
                 vm = vmSupport.getVirtualMachine(vmId);
             } catch( Throwable ignore ) {
@@ -31,6 +31,7 @@ import org.dasein.cloud.network.FirewallSupport;
 import org.dasein.cloud.network.NetworkServices;
 import org.dasein.cloud.network.Permission;
 import org.dasein.cloud.network.RuleTargetType;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -41,9 +42,10 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -562,36 +564,22 @@ public class StatelessFirewallTests {
             FirewallSupport support = services.getFirewallSupport();
 
             if( support != null ) {
-                HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+                List<String> statusIds = new ArrayList<String>();
+                List<String> ids = new ArrayList<String>();
                 Iterable<Firewall> firewalls = support.list();
                 Iterable<ResourceStatus> status = support.listFirewallStatus();
 
                 assertNotNull("listFirewalls() must return at least an empty collections and may not be null", firewalls);
                 assertNotNull("listFirewallStatus() must return at least an empty collection and may not be null", status);
                 for( ResourceStatus s : status ) {
-                    Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(s.getProviderResourceId(), current);
-                    }
-                    current.put("status", true);
+                    statusIds.add(s.getProviderResourceId());
                 }
                 for( Firewall fw : firewalls ) {
-                    Map<String,Boolean> current = map.get(fw.getProviderFirewallId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(fw.getProviderFirewallId(), current);
-                    }
-                    current.put("firewall", true);
+                    ids.add(fw.getProviderFirewallId());
                 }
-                for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-                    Boolean s = entry.getValue().get("status");
-                    Boolean f = entry.getValue().get("firewall");
+                List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-                    assertTrue("Status and firewall lists do not match for " + entry.getKey(), s != null && f != null && s && f);
-                }
+                assertTrue("Status and firewall lists do not match for " + mismatches, mismatches.isEmpty());
                 tm.out("Matches");
             }
             else {
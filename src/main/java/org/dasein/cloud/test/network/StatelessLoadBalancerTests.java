@@ -24,6 +24,7 @@ import org.dasein.cloud.InternalException;
 import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.network.*;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -35,11 +36,11 @@ import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.UUID;
 
 import static org.dasein.cloud.test.network.StatefulLoadBalancerTests.assertHealthCheck;
@@ -470,36 +471,22 @@ public class StatelessLoadBalancerTests {
             tm.ok("Load balancers are not supported in " + tm.getContext().getRegionId() + " of " + tm.getProvider().getCloudName());
             return;
         }
-        HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+        List<String> statusIds = new ArrayList<String>();
+        List<String> ids = new ArrayList<String>();
         Iterable<LoadBalancer> loadBalancers = support.listLoadBalancers();
         Iterable<ResourceStatus> status = support.listLoadBalancerStatus();
 
         assertNotNull("listLoadBalancers() must return at least an empty collections and may not be null", loadBalancers);
         assertNotNull("listLoadBalancerStatus() must return at least an empty collection and may not be null", status);
         for( ResourceStatus s : status ) {
-            Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(s.getProviderResourceId(), current);
-            }
-            current.put("status", true);
+            statusIds.add(s.getProviderResourceId());
         }
         for( LoadBalancer lb : loadBalancers ) {
-            Map<String,Boolean> current = map.get(lb.getProviderLoadBalancerId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(lb.getProviderLoadBalancerId(), current);
-            }
-            current.put("lb", true);
+            ids.add(lb.getProviderLoadBalancerId());
         }
-        for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-            Boolean s = entry.getValue().get("status");
-            Boolean l = entry.getValue().get("lb");
+        List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-            assertTrue("Status and load balancer lists do not match for " + entry.getKey(), s != null && l != null && s && l);
-        }
+        assertTrue("Status and load balancer lists do not match for " + mismatches, mismatches.isEmpty());
         tm.out("Matches");
     }
 
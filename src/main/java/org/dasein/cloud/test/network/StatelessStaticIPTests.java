@@ -27,6 +27,7 @@ import org.dasein.cloud.network.IpAddress;
 import org.dasein.cloud.network.IpAddressSupport;
 import org.dasein.cloud.network.IpForwardingRule;
 import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -38,9 +39,9 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.*;
@@ -228,36 +229,22 @@ public class StatelessStaticIPTests {
             IpAddressSupport support = services.getIpAddressSupport();
 
             if( support != null ) {
-                HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+                List<String> statusIds = new ArrayList<String>();
+                List<String> ids = new ArrayList<String>();
                 Iterable<IpAddress> addresses = support.listIpPool(version, false);
                 Iterable<ResourceStatus> status = support.listIpPoolStatus(version);
 
                 assertNotNull("listipPool() must return at least an empty collections and may not be null", addresses);
                 assertNotNull("listIpPoolStatus() must return at least an empty collection and may not be null", status);
                 for( ResourceStatus s : status ) {
-                    Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(s.getProviderResourceId(), current);
-                    }
-                    current.put("status", true);
+                    statusIds.add(s.getProviderResourceId());
                 }
                 for( IpAddress address : addresses ) {
-                    Map<String,Boolean> current = map.get(address.getProviderIpAddressId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(address.getProviderIpAddressId(), current);
-                    }
-                    current.put("address", true);
+                    ids.add(address.getProviderIpAddressId());
                 }
-                for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-                    Boolean s = entry.getValue().get("status");
-                    Boolean a = entry.getValue().get("address");
+                List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-                    assertTrue("Status and IP address lists do not match for " + entry.getKey(), s != null && a != null && s && a);
-                }
+                assertTrue("Status and IP address lists do not match for " + mismatches, mismatches.isEmpty());
                 tm.out("Matches");
             }
             else {
@@ -24,6 +24,7 @@ import org.dasein.cloud.InternalException;
 import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.network.*;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.*;
 import org.junit.rules.TestName;
@@ -514,36 +515,22 @@ public class StatelessVLANTests {
             VLANSupport support = services.getVlanSupport();
 
             if( support != null ) {
-                HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+                List<String> statusIds = new ArrayList<String>();
+                List<String> ids = new ArrayList<String>();
                 Iterable<VLAN> vlans = support.listVlans();
                 Iterable<ResourceStatus> status = support.listVlanStatus();
 
                 assertNotNull("listVLANs() must return at least an empty collections and may not be null", vlans);
                 assertNotNull("listVLANStatus() must return at least an empty collection and may not be null", status);
                 for( ResourceStatus s : status ) {
-                    Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(s.getProviderResourceId(), current);
-                    }
-                    current.put("status", true);
+                    statusIds.add(s.getProviderResourceId());
                 }
                 for( VLAN vlan : vlans ) {
-                    Map<String,Boolean> current = map.get(vlan.getProviderVlanId());
-
-                    if( current == null ) {
-                        current = new HashMap<String, Boolean>();
-                        map.put(vlan.getProviderVlanId(), current);
-                    }
-                    current.put("vlan", true);
+                    ids.add(vlan.getProviderVlanId());
                 }
-                for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-                    Boolean s = entry.getValue().get("status");
-                    Boolean v = entry.getValue().get("vlan");
+                List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-                    assertTrue("Status and VLAN lists do not match for " + entry.getKey(), s != null && v != null && s && v);
-                }
+                assertTrue("Status and VLAN lists do not match for " + mismatches, mismatches.isEmpty());
                 tm.out("Matches");
             }
             else {
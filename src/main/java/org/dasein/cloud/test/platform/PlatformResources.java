@@ -37,18 +37,21 @@ import org.dasein.cloud.platform.PushNotificationSupport;
 import org.dasein.cloud.platform.RelationalDatabaseSupport;
 import org.dasein.cloud.platform.Topic;
 import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.ProvisioningScheduler;
+import org.dasein.cloud.test.ResourceLedger;
+import org.dasein.cloud.test.StateWaiter;
 import org.dasein.cloud.test.storage.StorageResources;
-import org.dasein.util.CalendarWrapper;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -64,12 +67,19 @@ import java.util.concurrent.Future;
 public class PlatformResources {
     static private final Logger logger = Logger.getLogger(PlatformResources.class);
 
+    static public final String TEARDOWN = "platform";
+
+    static public final String CDN_RESOURCE   = "platform.cdn";
+    static public final String MQ_RESOURCE    = "platform.mq";
+    static public final String RDBMS_RESOURCE = "platform.rdbms";
+    static public final String TOPIC_RESOURCE = "platform.topic";
+
     static private final Random random = new Random();
 
-    private final HashMap<String,String> testCDNs   = new HashMap<String, String>();
-    private final HashMap<String,String> testQueues = new HashMap<String, String>();
-    private final HashMap<String,String> testRDBMS  = new HashMap<String, String>();
-    private final HashMap<String,String> testTopics = new HashMap<String, String>();
+    private final Map<String,String> testCDNs   = new ConcurrentHashMap<String, String>();
+    private final Map<String,String> testQueues = new ConcurrentHashMap<String, String>();
+    private final Map<String,String> testRDBMS  = new ConcurrentHashMap<String, String>();
+    private final Map<String,String> testTopics = new ConcurrentHashMap<String, String>();
 
     private CloudProvider   provider;
 
@@ -77,6 +87,42 @@ public class PlatformResources {
         this.provider = provider;
     }
 
+    /**
+     * Takes over a resource left behind by an earlier test run.
+     * @param resource the resource from the resource ledger
+     * @param label the label under which to track the resource
+     * @return true if the resource is a platform resource and was adopted
+     */
+    public boolean adopt(@Nonnull ResourceLedger.Entry resource, @Nonnull String label) {
+        String type = resource.getType();
+        Map<String, String> map;
+
+        if( type.equals(CDN_RESOURCE) ) {
+            map = testCDNs;
+        }
+        else if( type.equals(MQ_RESOURCE) ) {
+            map = testQueues;
+        }
+        else if( type.equals(RDBMS_RESOURCE) ) {
+            map = testRDBMS;
+        }
+        else if( type.equals(TOPIC_RESOURCE) ) {
+            map = testTopics;
+        }
+        else {
+            return false;
+        }
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized ( map ) {
+            if( map.containsValue(resource.getId()) ) {
+                return true;
+            }
+            label = Bookkeeping.getUniqueLabel(map, label, random);
+            map.put(label, resource.getId());
+        }
+        return true;
+    }
+
     private boolean canRemove(@Nullable Database db) {
         if( db == null ) {
             return true;
@@ -110,6 +156,7 @@ public class PlatformResources {
                                     count++;
                                 }
                                 else {
+                                    ResourceLedger.deprovisioned(CDN_RESOURCE, entry.getValue());
                                     count++;
                                 }
                             }
@@ -135,6 +182,7 @@ public class PlatformResources {
                                 else {
                                     count++;
                                 }
+                                ResourceLedger.deprovisioned(MQ_RESOURCE, entry.getValue());
                             }
                             catch( Throwable t ) {
                                 logger.warn("Failed to de-provision test message queue " + entry.getValue() + ": " + t.getMessage());
@@ -158,6 +206,7 @@ public class PlatformResources {
                                 else {
                                     count++;
                                 }
+                                ResourceLedger.deprovisioned(TOPIC_RESOURCE, entry.getValue());
                             }
                             catch( Throwable t ) {
                                 logger.warn("Failed to de-provision test notification topic " + entry.getValue() + ": " + t.getMessage());
@@ -172,15 +221,15 @@ public class PlatformResources {
                     for( Map.Entry<String,String> entry : testRDBMS.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
                             try {
-                                long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
+                                StateWaiter waiter = new StateWaiter(StateWaiter.RDBMS);
                                 Database db = rdbmsSupport.getDatabase(entry.getValue());
 
-                                while( timeout > System.currentTimeMillis() ) {
+                                while( waiter.isWaiting() ) {
                                     if( canRemove(db) ) {
+                                        waiter.done();
                                         break;
                                     }
-                                    try { Thread.sleep(15000L); }
-                                    catch( InterruptedException ignore ) { }
+                                    waiter.pause();
                                     try { db = rdbmsSupport.getDatabase(db.getProviderDatabaseId()); }
                                     catch( Throwable ignore ) { }
                                 }
@@ -191,6 +240,7 @@ public class PlatformResources {
                                 else {
                                     count++;
                                 }
+                                ResourceLedger.deprovisioned(RDBMS_RESOURCE, entry.getValue());
                             }
                             catch( Throwable t ) {
                                 logger.warn("Failed to de-provision test relational database " + entry.getValue() + ": " + t.getMessage());
@@ -199,20 +249,11 @@ public class PlatformResources {
                     }
                 }
 
-                // no wait for CDN stuff
-                boolean done;
-
-                do {
-                    done = true;
-                    try { Thread.sleep(15000L); }
-                    catch( InterruptedException ignore ) { }
-                    for( Future<Boolean> result : results ) {
-                        if( !result.isDone() ) {
-                            done = false;
-                            break;
-                        }
-                    }
-                } while( !done );
+                // no wait for CDN stuff, just block on the removals started above
+                for( Future<Boolean> result : results ) {
+                    try { result.get(); }
+                    catch( Throwable ignore ) { }
+                }
             }
         }
         catch( Throwable ignore ) {
@@ -228,6 +269,7 @@ public class PlatformResources {
             @Override
             public Boolean call() throws Exception {
                 support.delete(distributionId);
+                ResourceLedger.deprovisioned(CDN_RESOURCE, distributionId);
                 return true;
             }
         });
@@ -523,6 +565,16 @@ public class PlatformResources {
     }
 
     public @Nonnull String provisionDistribution(@Nonnull CDNSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String origin) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(CDN_RESOURCE);
+        try {
+            return doProvisionDistribution(support, label, namePrefix, origin);
+        }
+        finally {
+            ProvisioningScheduler.release(CDN_RESOURCE);
+        }
+    }
+
+    private @Nonnull String doProvisionDistribution(@Nonnull CDNSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String origin) throws CloudException, InternalException {
         if( origin == null ) {
             StorageResources r = DaseinTestManager.getStorageResources();
 
@@ -540,30 +592,48 @@ public class PlatformResources {
         String id = support.create(origin, namePrefix + random.nextInt(10000),  true, "dsncdn" + random.nextInt(10000) + ".dasein.org");
 
         synchronized( testCDNs ) {
-            while( testCDNs.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testCDNs, label, random);
             testCDNs.put(label, id);
+            ResourceLedger.provisioned(CDN_RESOURCE, id, label, null);
         }
         return id;
     }
 
     public @Nonnull String provisionMQ(@Nonnull MQSupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(MQ_RESOURCE);
+        try {
+            return doProvisionMQ(support, label, namePrefix);
+        }
+        finally {
+            ProvisioningScheduler.release(MQ_RESOURCE);
+        }
+    }
+
+    private @Nonnull String doProvisionMQ(@Nonnull MQSupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
         MQCreateOptions options = MQCreateOptions.getInstance(namePrefix + (System.currentTimeMillis()%10000), "Test MQ auto-provisioned by Dasein Cloud integration tests");
         String id;
 
 
         id = support.createMessageQueue(options);
         synchronized( testQueues ) {
-            while( testQueues.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testQueues, label, random);
             testQueues.put(label, id);
+            ResourceLedger.provisioned(MQ_RESOURCE, id, label, null);
         }
         return id;
     }
 
     public @Nonnull String provisionRDBMS(@Nonnull RelationalDatabaseSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable DatabaseEngine engine) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(RDBMS_RESOURCE);
+        try {
+            return doProvisionRDBMS(support, label, namePrefix, engine);
+        }
+        finally {
+            ProvisioningScheduler.release(RDBMS_RESOURCE);
+        }
+    }
+
+    private @Nonnull String doProvisionRDBMS(@Nonnull RelationalDatabaseSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable DatabaseEngine engine) throws CloudException, InternalException {
         String password = "a" + random.nextInt(100000000);
         String id;
 
@@ -598,22 +668,30 @@ public class PlatformResources {
             throw new CloudException("No database was generated");
         }
         synchronized( testRDBMS ) {
-            while( testRDBMS.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testRDBMS, label, random);
             testRDBMS.put(label, id);
+            ResourceLedger.provisioned(RDBMS_RESOURCE, id, label, null);
         }
         return id;
     }
 
     public @Nonnull String provisionTopic(@Nonnull PushNotificationSupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
+        ProvisioningScheduler.acquire(TOPIC_RESOURCE);
+        try {
+            return doProvisionTopic(support, label, namePrefix);
+        }
+        finally {
+            ProvisioningScheduler.release(TOPIC_RESOURCE);
+        }
+    }
+
+    private @Nonnull String doProvisionTopic(@Nonnull PushNotificationSupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
         String id = support.createTopic(namePrefix + random.nextInt(10000)).getProviderTopicId();
 
         synchronized( testTopics ) {
-            while( testTopics.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testTopics, label, random);
             testTopics.put(label, id);
+            ResourceLedger.provisioned(TOPIC_RESOURCE, id, label, null);
         }
         return id;
     }
@@ -46,7 +46,7 @@ import org.junit.runners.Suite;
 public class PlatformTestSuite {
   @BeforeClass
   static public void setup() {
-    DaseinTestManager.init();
+    DaseinTestManager.init(PlatformTestSuite.class);
   }
 
   @AfterClass
@@ -26,6 +26,7 @@ import org.dasein.cloud.platform.Distribution;
 import org.dasein.cloud.platform.PlatformServices;
 import org.dasein.cloud.storage.Blob;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -278,21 +279,21 @@ public class StatefulCDNTests {
             //noinspection ConstantConditions
             support.update(testDistributionId, d.getName(), false, d.getAliases());
 
-            long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 5L);
+            StateWaiter waiter = new StateWaiter(StateWaiter.CDN, CalendarWrapper.MINUTE * 5L);
             Distribution updated = null;
 
-            while( System.currentTimeMillis() < timeout ) {
+            while( waiter.isWaiting() ) {
                 try {
                     updated = support.getDistribution(testDistributionId);
                     if( updated == null || !updated.isActive() ) {
+                        waiter.done();
                         break;
                     }
                 }
                 catch( Throwable ignore ) {
                     // ignore
                 }
-                try { Thread.sleep(15000L); }
-                catch( InterruptedException ignore ) { }
+                waiter.pause();
             }
             assertNotNull("The distribution disappeared after update", updated);
             tm.out("After", updated.isActive());
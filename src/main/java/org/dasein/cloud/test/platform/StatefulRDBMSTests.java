@@ -27,7 +27,7 @@ import org.dasein.cloud.platform.DatabaseState;
 import org.dasein.cloud.platform.PlatformServices;
 import org.dasein.cloud.platform.RelationalDatabaseSupport;
 import org.dasein.cloud.test.DaseinTestManager;
-import org.dasein.util.CalendarWrapper;
+import org.dasein.cloud.test.StateWaiter;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -154,15 +154,15 @@ public class StatefulRDBMSTests {
             return;
         }
         if( testDatabaseId != null ) {
-            long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
+            StateWaiter waiter = new StateWaiter(StateWaiter.RDBMS);
             Database db = support.getDatabase(testDatabaseId);
 
-            while( timeout > System.currentTimeMillis() ) {
+            while( waiter.isWaiting() ) {
                 if( canRemove(db) ) {
+                    waiter.done();
                     break;
                 }
-                try { Thread.sleep(15000L); }
-                catch( InterruptedException ignore ) { }
+                waiter.pause();
                 try { db = support.getDatabase(db.getProviderDatabaseId()); }
                 catch( Throwable ignore ) { }
             }
@@ -25,6 +25,7 @@ import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.platform.CDNSupport;
 import org.dasein.cloud.platform.Distribution;
 import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -35,10 +36,10 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.*;
@@ -290,36 +291,22 @@ public class StatelessCDNTests {
             tm.ok("CDN is not supported in " + tm.getContext().getRegionId() + " of " + tm.getProvider().getCloudName());
             return;
         }
-        HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+        List<String> statusIds = new ArrayList<String>();
+        List<String> ids = new ArrayList<String>();
         Iterable<Distribution> distributions = support.list();
         Iterable<ResourceStatus> status = support.listDistributionStatus();
 
         assertNotNull("list() must return at least an empty collections and may not be null", distributions);
         assertNotNull("listDistributionStatus() must return at least an empty collection and may not be null", status);
         for( ResourceStatus s : status ) {
-            Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(s.getProviderResourceId(), current);
-            }
-            current.put("status", true);
+            statusIds.add(s.getProviderResourceId());
         }
         for( Distribution d : distributions ) {
-            Map<String,Boolean> current = map.get(d.getProviderDistributionId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(d.getProviderDistributionId(), current);
-            }
-            current.put("distribution", true);
+            ids.add(d.getProviderDistributionId());
         }
-        for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-            Boolean s = entry.getValue().get("status");
-            Boolean d = entry.getValue().get("distribution");
+        List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-            assertTrue("Status and distribution lists do not match for " + entry.getKey(), s != null && d != null && s && d);
-        }
+        assertTrue("Status and distribution lists do not match for " + mismatches, mismatches.isEmpty());
         tm.out("Matches");
     }
 }
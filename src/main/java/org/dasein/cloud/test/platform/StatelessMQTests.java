@@ -25,6 +25,7 @@ import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.platform.MQSupport;
 import org.dasein.cloud.platform.MessageQueue;
 import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -34,7 +35,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -42,7 +44,6 @@ import java.util.UUID;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 
@@ -304,36 +305,22 @@ public class StatelessMQTests {
             tm.ok("Message queues are not supported in " + tm.getContext().getRegionId() + " of " + tm.getProvider().getCloudName());
             return;
         }
-        HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+        List<String> statusIds = new ArrayList<String>();
+        List<String> ids = new ArrayList<String>();
         Iterable<MessageQueue> queues = support.listMessageQueues();
         Iterable<ResourceStatus> status = support.listMessageQueueStatus();
 
         assertNotNull("listMessageQueues() must return at least an empty collections and may not be null", queues);
         assertNotNull("listMessageQueueStatus() must return at least an empty collection and may not be null", status);
         for( ResourceStatus s : status ) {
-            Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(s.getProviderResourceId(), current);
-            }
-            current.put("status", true);
+            statusIds.add(s.getProviderResourceId());
         }
         for( MessageQueue q : queues ) {
-            Map<String,Boolean> current = map.get(q.getProviderMessageQueueId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(q.getProviderMessageQueueId(), current);
-            }
-            current.put("queue", true);
+            ids.add(q.getProviderMessageQueueId());
         }
-        for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-            Boolean s = entry.getValue().get("status");
-            Boolean q = entry.getValue().get("queue");
+        List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-            assertTrue("Status and message queue lists do not match for " + entry.getKey(), s != null && q != null && s && q);
-        }
+        assertTrue("Status and message queue lists do not match for " + mismatches, mismatches.isEmpty());
         tm.out("Matches");
     }
 }
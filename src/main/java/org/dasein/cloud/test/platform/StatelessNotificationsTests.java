@@ -26,6 +26,7 @@ import org.dasein.cloud.platform.PlatformServices;
 import org.dasein.cloud.platform.PushNotificationSupport;
 import org.dasein.cloud.platform.Subscription;
 import org.dasein.cloud.platform.Topic;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -37,9 +38,9 @@ import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.*;
@@ -305,36 +306,22 @@ public class StatelessNotificationsTests {
             tm.ok("Push notifications are not supported in " + tm.getContext().getRegionId() + " of " + tm.getProvider().getCloudName());
             return;
         }
-        HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+        List<String> statusIds = new ArrayList<String>();
+        List<String> ids = new ArrayList<String>();
         Iterable<Topic> topics = support.listTopics();
         Iterable<ResourceStatus> status = support.listTopicStatus();
 
         assertNotNull("listTopics() must return at least an empty collections and may not be null", topics);
         assertNotNull("listTopicStatus() must return at least an empty collection and may not be null", status);
         for( ResourceStatus s : status ) {
-            Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(s.getProviderResourceId(), current);
-            }
-            current.put("status", true);
+            statusIds.add(s.getProviderResourceId());
         }
         for( Topic t : topics ) {
-            Map<String,Boolean> current = map.get(t.getProviderTopicId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(t.getProviderTopicId(), current);
-            }
-            current.put("topic", true);
+            ids.add(t.getProviderTopicId());
         }
-        for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-            Boolean s = entry.getValue().get("status");
-            Boolean t = entry.getValue().get("topic");
+        List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-            assertTrue("Status and topic lists do not match for " + entry.getKey(), s != null && t != null && s && t);
-        }
+        assertTrue("Status and topic lists do not match for " + mismatches, mismatches.isEmpty());
         tm.out("Matches");
     }
 
@@ -27,6 +27,7 @@ import org.dasein.cloud.platform.DatabaseEngine;
 import org.dasein.cloud.platform.DatabaseProduct;
 import org.dasein.cloud.platform.PlatformServices;
 import org.dasein.cloud.platform.RelationalDatabaseSupport;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
 import org.dasein.util.uom.time.Day;
 import org.dasein.util.uom.time.TimePeriod;
@@ -39,10 +40,10 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.*;
@@ -408,36 +409,22 @@ public class StatelessRDBMSTests {
             tm.ok("Relational database support is not implemented for " + tm.getContext().getRegionId() + " in " + tm.getProvider().getCloudName());
             return;
         }
-        HashMap<String,Map<String,Boolean>> map = new HashMap<String, Map<String, Boolean>>();
+        List<String> statusIds = new ArrayList<String>();
+        List<String> ids = new ArrayList<String>();
         Iterable<Database> databases = support.listDatabases();
         Iterable<ResourceStatus> status = support.listDatabaseStatus();
 
         assertNotNull("listDatabases() must return at least an empty collections and may not be null", databases);
         assertNotNull("listDatabaseStatus() must return at least an empty collection and may not be null", status);
         for( ResourceStatus s : status ) {
-            Map<String,Boolean> current = map.get(s.getProviderResourceId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(s.getProviderResourceId(), current);
-            }
-            current.put("status", true);
+            statusIds.add(s.getProviderResourceId());
         }
         for( Database db : databases ) {
-            Map<String,Boolean> current = map.get(db.getProviderDatabaseId());
-
-            if( current == null ) {
-                current = new HashMap<String, Boolean>();
-                map.put(db.getProviderDatabaseId(), current);
-            }
-            current.put("database", true);
+            ids.add(db.getProviderDatabaseId());
         }
-        for( Map.Entry<String,Map<String,Boolean>> entry : map.entrySet() ) {
-            Boolean s = entry.getValue().get("status");
-            Boolean d = entry.getValue().get("database");
+        List<String> mismatches = Bookkeeping.findMismatches(statusIds, ids);
 
-            assertTrue("Status and database lists do not match for " + entry.getKey(), s != null && d != null && s && d);
-        }
+        assertTrue("Status and database lists do not match for " + mismatches, mismatches.isEmpty());
         tm.out("Matches");
     }
 }
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import org.dasein.cloud.AbstractCloud;
+import org.dasein.cloud.ContextRequirements;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.ImageCapabilities;
+import org.dasein.cloud.compute.MachineImageSupport;
+import org.dasein.cloud.compute.VirtualMachineCapabilities;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.VolumeCapabilities;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.identity.IdentityServices;
+import org.dasein.cloud.identity.ShellKeyCapabilities;
+import org.dasein.cloud.identity.ShellKeySupport;
+import org.dasein.cloud.network.FirewallCapabilities;
+import org.dasein.cloud.network.FirewallSupport;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.network.VLANCapabilities;
+import org.dasein.cloud.network.VLANSupport;
+import org.dasein.cloud.platform.CDNSupport;
+import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.platform.RelationalDatabaseSupport;
+import org.dasein.cloud.storage.BlobStoreSupport;
+import org.dasein.cloud.storage.StorageServices;
+import org.dasein.cloud.test.DaseinTestManager;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-process stand-in for a real cloud that keeps everything in memory, so that the harness itself can be run,
+ * measured and tuned without a cloud account. Select it like any other provider:
+ * <pre>
+ *     -DproviderClass=org.dasein.cloud.test.standin.StandInCloud -DregionId=standin-1 -DaccountNumber=0000
+ * </pre>
+ * The stand-in offers data centers, VMs, images, products and volumes, VLANs and firewalls, SSH keypairs, an object
+ * store, CDN distributions and relational databases. Every other service is absent, so the tests for it skip just as
+ * they would against a cloud that lacks it. Services are dynamic proxies for their Dasein interfaces: a call is
+ * answered by the method of the same name and parameters on one of the StandIn* service classes in this package,
+ * anything they do not implement returns an empty value and any support the stand-in does not offer is null.
+ * Three properties make it behave more like a remote cloud:
+ * <ul>
+ *     <li>dasein.standin.latency - milliseconds every call takes (0 by default)</li>
+ *     <li>dasein.standin.consistency - milliseconds before a new resource shows up in gets and lists (0 by default)</li>
+ *     <li>dasein.standin.transition - milliseconds a state change such as booting or stopping takes (1000 by default)</li>
+ * </ul>
+ * All stand-in providers in a JVM share one in-memory cloud, so resources outlive a provider that is closed.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StandInCloud extends AbstractCloud {
+    static private final Map<String,StandInResource> resources = new ConcurrentHashMap<String, StandInResource>();
+
+    static public @Nonnegative long getLatency() {
+        return DaseinTestManager.getLongProperty("dasein.standin.latency", 0L);
+    }
+
+    static public @Nonnegative long getConsistencyDelay() {
+        return DaseinTestManager.getLongProperty("dasein.standin.consistency", 0L);
+    }
+
+    static public @Nonnegative long getTransitionTime() {
+        return DaseinTestManager.getLongProperty("dasein.standin.transition", 1000L);
+    }
+
+    /**
+     * @return every resource in the in-memory cloud, keyed by ID
+     */
+    static @Nonnull Map<String,StandInResource> getResources() {
+        return resources;
+    }
+
+    /**
+     * Removes every resource from the in-memory cloud.
+     */
+    static public void reset() {
+        resources.clear();
+    }
+
+    static private @Nonnull Object proxy(@Nonnull Class<?> type, @Nonnull Object behavior, @Nonnull Set<Class<?>> supported) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new StandInHandler(type.getSimpleName(), behavior, supported));
+    }
+
+    static private class StandInHandler implements InvocationHandler {
+        private Object        behavior;
+        private String        service;
+        private Set<Class<?>> supported;
+
+        public StandInHandler(@Nonnull String service, @Nonnull Object behavior, @Nonnull Set<Class<?>> supported) {
+            this.service = service;
+            this.behavior = behavior;
+            this.supported = supported;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if( method.getDeclaringClass().equals(Object.class) ) {
+                if( method.getName().equals("equals") ) {
+                    return (args[0] == proxy);
+                }
+                else if( method.getName().equals("hashCode") ) {
+                    return System.identityHashCode(proxy);
+                }
+                return "StandIn" + service;
+            }
+            Class<?> type = method.getReturnType();
+
+            if( supported.contains(type) ) {
+                // every support and capabilities object of a service is answered by the same behavior
+                return proxy(type, behavior, supported);
+            }
+            long latency = getLatency();
+
+            if( latency > 0L ) {
+                Thread.sleep(latency);
+            }
+            Method impl;
+
+            try {
+                impl = behavior.getClass().getMethod(method.getName(), method.getParameterTypes());
+            }
+            catch( NoSuchMethodException e ) {
+                return getDefault(method);
+            }
+            try {
+                return impl.invoke(behavior, args);
+            }
+            catch( InvocationTargetException e ) {
+                throw e.getCause();
+            }
+        }
+
+        private @Nullable Object getDefault(@Nonnull Method method) {
+            Class<?> type = method.getReturnType();
+            String name = method.getName();
+
+            if( type.equals(Boolean.TYPE) || type.equals(Boolean.class) ) {
+                if( name.startsWith("has") && name.endsWith("Support") ) {
+                    try {
+                        return supported.contains(method.getDeclaringClass().getMethod("get" + name.substring(3)).getReturnType());
+                    }
+                    catch( NoSuchMethodException e ) {
+                        return false;
+                    }
+                }
+                return name.equals("isSubscribed");
+            }
+            else if( type.equals(Integer.TYPE) ) {
+                return 0;
+            }
+            else if( type.equals(Long.TYPE) ) {
+                return 0L;
+            }
+            else if( type.equals(Float.TYPE) ) {
+                return 0f;
+            }
+            else if( type.equals(Double.TYPE) ) {
+                return 0.0;
+            }
+            else if( type.equals(Requirement.class) ) {
+                return Requirement.NONE;
+            }
+            else if( type.equals(String.class) && name.startsWith("getProviderTerm") ) {
+                return "resource";
+            }
+            else if( type.equals(Iterable.class) || type.equals(Collection.class) ) {
+                return new ArrayList<Object>();
+            }
+            else if( type.isArray() ) {
+                return java.lang.reflect.Array.newInstance(type.getComponentType(), 0);
+            }
+            else if( type.equals(Map.class) ) {
+                return Collections.emptyMap();
+            }
+            else if( method.isAnnotationPresent(Nonnull.class) ) {
+                // a null here would fail a test with a NullPointerException instead of an assertion
+                return getNonnullDefault(type);
+            }
+            return null;
+        }
+
+        private @Nullable Object getNonnullDefault(@Nonnull Class<?> type) {
+            if( type.equals(String.class) ) {
+                return "";
+            }
+            else if( type.isEnum() ) {
+                Object[] values = type.getEnumConstants();
+
+                return (values.length > 0 ? values[0] : null);
+            }
+            else if( type.isInterface() ) {
+                return proxy(type, new Object(), Collections.<Class<?>>emptySet());
+            }
+            try {
+                return type.newInstance();
+            }
+            catch( Throwable ignore ) {
+                return null;
+            }
+        }
+    }
+
+    static private @Nonnull Set<Class<?>> supports(@Nonnull Class<?> ... types) {
+        return new HashSet<Class<?>>(Arrays.asList(types));
+    }
+
+    static private final Set<Class<?>> COMPUTE = supports(ComputeServices.class, MachineImageSupport.class, ImageCapabilities.class, VirtualMachineSupport.class, VirtualMachineCapabilities.class, VolumeSupport.class, VolumeCapabilities.class);
+    static private final Set<Class<?>> DC = supports(DataCenterServices.class);
+    static private final Set<Class<?>> IDENTITY = supports(IdentityServices.class, ShellKeySupport.class, ShellKeyCapabilities.class);
+    static private final Set<Class<?>> NETWORK = supports(NetworkServices.class, FirewallSupport.class, FirewallCapabilities.class, VLANSupport.class, VLANCapabilities.class);
+    static private final Set<Class<?>> PLATFORM = supports(PlatformServices.class, CDNSupport.class, RelationalDatabaseSupport.class);
+    static private final Set<Class<?>> STORAGE = supports(StorageServices.class, BlobStoreSupport.class);
+
+    private final StandInCompute     compute;
+    private final StandInDataCenters dataCenters;
+    private final StandInIdentity    identity;
+    private final StandInNetwork     network;
+    private final StandInPlatform    platform;
+    private final StandInStorage     storage;
+
+    public StandInCloud() {
+        compute = new StandInCompute(this);
+        dataCenters = new StandInDataCenters(this);
+        identity = new StandInIdentity(this);
+        network = new StandInNetwork(this);
+        platform = new StandInPlatform(this);
+        storage = new StandInStorage(this);
+    }
+
+    @Override
+    public @Nonnull String getCloudName() {
+        return "Stand-In";
+    }
+
+    @Override
+    public @Nonnull String getProviderName() {
+        return "Dasein";
+    }
+
+    @Override
+    public @Nonnull ContextRequirements getContextRequirements() {
+        return new ContextRequirements();
+    }
+
+    @Override
+    public @Nullable ComputeServices getComputeServices() {
+        return (ComputeServices)proxy(ComputeServices.class, compute, COMPUTE);
+    }
+
+    @Override
+    public @Nonnull DataCenterServices getDataCenterServices() {
+        return (DataCenterServices)proxy(DataCenterServices.class, dataCenters, DC);
+    }
+
+    @Override
+    public @Nullable IdentityServices getIdentityServices() {
+        return (IdentityServices)proxy(IdentityServices.class, identity, IDENTITY);
+    }
+
+    @Override
+    public @Nullable NetworkServices getNetworkServices() {
+        return (NetworkServices)proxy(NetworkServices.class, network, NETWORK);
+    }
+
+    @Override
+    public @Nullable PlatformServices getPlatformServices() {
+        return (PlatformServices)proxy(PlatformServices.class, platform, PLATFORM);
+    }
+
+    @Override
+    public @Nullable StorageServices getStorageServices() {
+        return (StorageServices)proxy(StorageServices.class, storage, STORAGE);
+    }
+
+    /**
+     * @return the account the provider is connected to, the stand-in accepts any
+     */
+    @Override
+    public @Nullable String testContext() {
+        ProviderContext ctx = getContext();
+
+        return (ctx == null ? null : ctx.getAccountNumber());
+    }
+
+    @Nonnull String getAccountNumber() {
+        ProviderContext ctx = getContext();
+        String account = (ctx == null ? null : ctx.getAccountNumber());
+
+        return (account == null ? "0000" : account);
+    }
+
+    @Nonnull String getRegionId() {
+        ProviderContext ctx = getContext();
+        String regionId = (ctx == null ? null : ctx.getRegionId());
+
+        return (regionId == null || regionId.equals("") ? StandInDataCenters.REGION : regionId);
+    }
+}
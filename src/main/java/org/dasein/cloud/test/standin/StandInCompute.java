@@ -0,0 +1,409 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.ImageClass;
+import org.dasein.cloud.compute.ImageFilterOptions;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageState;
+import org.dasein.cloud.compute.MachineImageType;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.VMLaunchOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineProduct;
+import org.dasein.cloud.compute.VirtualMachineProductFilterOptions;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeCreateOptions;
+import org.dasein.cloud.compute.VolumeFormat;
+import org.dasein.cloud.compute.VolumeProduct;
+import org.dasein.cloud.compute.VolumeState;
+import org.dasein.cloud.compute.VolumeType;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Megabyte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compute services of {@link StandInCloud}: two VM products, one public Ubuntu image, VMs and block volumes. VMs
+ * boot, stop and terminate and volumes become available over the configured transition time.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StandInCompute {
+    static public final String IMAGE  = "img-ubuntu";
+    static public final String VM     = "vm";
+    static public final String VOLUME = "vol";
+
+    static private final String[][] PRODUCTS = {
+            { "small", "1", "1024", "10" },
+            { "medium", "2", "2048", "20" }
+    };
+
+    private StandInCloud provider;
+
+    StandInCompute(@Nonnull StandInCloud provider) {
+        this.provider = provider;
+    }
+
+    /* ---------------------------------------- images ---------------------------------------- */
+
+    public @Nullable MachineImage getImage(@Nonnull String providerImageId) throws CloudException, InternalException {
+        if( !IMAGE.equals(providerImageId) ) {
+            return null;
+        }
+        MachineImage image = MachineImage.getImageInstance("standin", provider.getRegionId(), IMAGE, ImageClass.MACHINE, MachineImageState.ACTIVE, "Ubuntu", "Stand-in Ubuntu image", Architecture.I64, Platform.UBUNTU);
+
+        image.setSoftware("");
+        return image;
+    }
+
+    public @Nonnull Iterable<MachineImage> listImages(@Nullable ImageFilterOptions options) throws CloudException, InternalException {
+        return searchPublicImages(options);
+    }
+
+    public @Nonnull Iterable<MachineImageType> listSupportedImageTypes() {
+        return Collections.singletonList(MachineImageType.STORAGE);
+    }
+
+    public @Nonnull Iterable<MachineImage> searchPublicImages(@Nullable ImageFilterOptions options) throws CloudException, InternalException {
+        MachineImage image = getImage(IMAGE);
+
+        if( image == null || (options != null && !options.matches(image)) ) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(image);
+    }
+
+    /* ---------------------------------------- VMs ---------------------------------------- */
+
+    public @Nonnull Iterable<Architecture> listSupportedArchitectures() {
+        return Collections.singletonList(Architecture.I64);
+    }
+
+    public @Nullable VirtualMachineProduct getProduct(@Nonnull String productId) throws CloudException, InternalException {
+        for( VirtualMachineProduct product : listProducts(VirtualMachineProductFilterOptions.getInstance(), Architecture.I64) ) {
+            if( product.getProviderProductId().equals(productId) ) {
+                return product;
+            }
+        }
+        return null;
+    }
+
+    public @Nonnull Iterable<VirtualMachineProduct> listProducts(@Nullable VirtualMachineProductFilterOptions options, @Nullable Architecture architecture) throws CloudException, InternalException {
+        ArrayList<VirtualMachineProduct> products = new ArrayList<VirtualMachineProduct>();
+
+        if( architecture != null && !architecture.equals(Architecture.I64) ) {
+            return products;
+        }
+        for( String[] p : PRODUCTS ) {
+            VirtualMachineProduct product = new VirtualMachineProduct();
+
+            product.setProviderProductId(p[0]);
+            product.setName(p[0]);
+            product.setDescription("Stand-in " + p[0]);
+            product.setCpuCount(Integer.parseInt(p[1]));
+            product.setRamSize(new Storage<Megabyte>(Integer.parseInt(p[2]), Storage.MEGABYTE));
+            product.setRootVolumeSize(new Storage<Gigabyte>(Integer.parseInt(p[3]), Storage.GIGABYTE));
+            products.add(product);
+        }
+        return products;
+    }
+
+    public @Nonnull Iterable<VirtualMachineProduct> listProducts(@Nonnull Architecture architecture) throws CloudException, InternalException {
+        return listProducts(null, architecture);
+    }
+
+    public @Nullable VirtualMachine getVirtualMachine(@Nonnull String vmId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(VM, provider.getAccountNumber(), provider.getRegionId(), vmId);
+
+        return (r == null ? null : toVirtualMachine(r));
+    }
+
+    public @Nonnull VirtualMachine launch(@Nonnull VMLaunchOptions options) throws CloudException, InternalException {
+        if( getProduct(options.getStandardProductId()) == null ) {
+            throw new CloudException("No such product: " + options.getStandardProductId());
+        }
+        if( getImage(options.getMachineImageId()) == null ) {
+            throw new CloudException("No such image: " + options.getMachineImageId());
+        }
+        StandInResource r = StandInResource.create(VM, provider.getAccountNumber(), provider.getRegionId(), options.getFriendlyName(), VmState.PENDING, VmState.RUNNING);
+        String dataCenterId = options.getDataCenterId();
+
+        r.setAttribute("dataCenterId", dataCenterId == null ? provider.getRegionId() + "a" : dataCenterId);
+        r.setAttribute("description", options.getDescription());
+        r.setAttribute("imageId", options.getMachineImageId());
+        r.setAttribute("productId", options.getStandardProductId());
+        r.setAttribute("vlanId", options.getVlanId());
+        r.setAttribute("subnetId", options.getSubnetId());
+        r.setAttribute("keypairId", options.getBootstrapKey());
+        return toVirtualMachine(r);
+    }
+
+    public @Nonnull Iterable<String> launchMany(@Nonnull VMLaunchOptions options, int count) throws CloudException, InternalException {
+        ArrayList<String> ids = new ArrayList<String>();
+
+        for( int i=0; i<count; i++ ) {
+            ids.add(launch(options).getProviderVirtualMachineId());
+        }
+        return ids;
+    }
+
+    public @Nonnull Iterable<VirtualMachine> listVirtualMachines() throws CloudException, InternalException {
+        ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+
+        for( StandInResource r : list(VM) ) {
+            VirtualMachine vm = toVirtualMachine(r);
+
+            if( !VmState.TERMINATED.equals(vm.getCurrentState()) ) {
+                vms.add(vm);
+            }
+        }
+        return vms;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listVirtualMachineStatus() throws CloudException, InternalException {
+        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( VirtualMachine vm : listVirtualMachines() ) {
+            status.add(new ResourceStatus(vm.getProviderVirtualMachineId(), vm.getCurrentState()));
+        }
+        return status;
+    }
+
+    public void start(@Nonnull String vmId) throws CloudException, InternalException {
+        change(vmId, VmState.STOPPED, VmState.PENDING, VmState.RUNNING);
+    }
+
+    public void stop(@Nonnull String vmId) throws CloudException, InternalException {
+        change(vmId, VmState.RUNNING, VmState.STOPPING, VmState.STOPPED);
+    }
+
+    public void stop(@Nonnull String vmId, boolean force) throws CloudException, InternalException {
+        stop(vmId);
+    }
+
+    public void terminate(@Nonnull String vmId) throws CloudException, InternalException {
+        terminate(vmId, null);
+    }
+
+    public void terminate(@Nonnull String vmId, @Nullable String explanation) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(VM, provider.getAccountNumber(), provider.getRegionId(), vmId);
+
+        if( r == null ) {
+            throw new CloudException("No such virtual machine: " + vmId);
+        }
+        for( StandInResource volume : list(VOLUME) ) {
+            if( vmId.equals(volume.getAttribute("vmId")) ) {
+                volume.setAttribute("vmId", null);
+                volume.setAttribute("deviceId", null);
+            }
+        }
+        r.transition(VmState.STOPPING, VmState.TERMINATED);
+    }
+
+    private void change(@Nonnull String vmId, @Nonnull VmState from, @Nonnull VmState during, @Nonnull VmState to) throws CloudException {
+        StandInResource r = StandInResource.get(VM, provider.getAccountNumber(), provider.getRegionId(), vmId);
+
+        if( r == null ) {
+            throw new CloudException("No such virtual machine: " + vmId);
+        }
+        Enum<?> state = r.getState();
+
+        if( state.equals(to) ) {
+            return;
+        }
+        if( !state.equals(from) ) {
+            throw new CloudException("Virtual machine " + vmId + " is " + state + ", expected " + from);
+        }
+        r.transition(during, to);
+    }
+
+    private @Nonnull VirtualMachine toVirtualMachine(@Nonnull StandInResource r) {
+        VirtualMachine vm = new VirtualMachine();
+        String vlanId = r.getAttribute("vlanId");
+
+        vm.setProviderVirtualMachineId(r.getId());
+        vm.setName(r.getName());
+        vm.setDescription(r.getAttribute("description"));
+        vm.setProviderOwnerId(r.getOwnerId());
+        vm.setProviderRegionId(r.getRegionId());
+        vm.setProviderDataCenterId(r.getAttribute("dataCenterId"));
+        vm.setProviderMachineImageId(r.getAttribute("imageId"));
+        vm.setProductId(r.getAttribute("productId"));
+        vm.setProviderVlanId(vlanId);
+        vm.setProviderSubnetId(r.getAttribute("subnetId"));
+        vm.setProviderKeypairId(r.getAttribute("keypairId"));
+        vm.setArchitecture(Architecture.I64);
+        vm.setPlatform(Platform.UBUNTU);
+        vm.setCurrentState((VmState)r.getState());
+        vm.setCreationTimestamp(r.getCreated());
+        vm.setPersistent(true);
+        vm.setRebootable(true);
+        vm.setClonable(false);
+        vm.setImagable(false);
+        vm.setPausable(false);
+        return vm;
+    }
+
+    /* ---------------------------------------- volumes ---------------------------------------- */
+
+    public @Nonnull Storage<Gigabyte> getMaximumVolumeSize() {
+        return new Storage<Gigabyte>(1024, Storage.GIGABYTE);
+    }
+
+    public @Nonnull Storage<Gigabyte> getMinimumVolumeSize() {
+        return new Storage<Gigabyte>(1, Storage.GIGABYTE);
+    }
+
+    public @Nonnull String getProviderTermForVolume(@Nonnull Locale locale) {
+        return "volume";
+    }
+
+    public @Nonnull Iterable<VolumeFormat> listSupportedFormats() {
+        return Collections.singletonList(VolumeFormat.BLOCK);
+    }
+
+    public @Nonnull Iterable<String> listPossibleDeviceIds(@Nonnull Platform platform) {
+        ArrayList<String> ids = new ArrayList<String>();
+
+        for( char c = 'f'; c <= 'p'; c++ ) {
+            ids.add("/dev/sd" + c);
+        }
+        return ids;
+    }
+
+    public @Nonnull Iterable<VolumeProduct> listVolumeProducts() throws CloudException, InternalException {
+        return Collections.singletonList(VolumeProduct.getInstance("standard", "Standard", "Stand-in block storage", VolumeType.HDD, getMinimumVolumeSize()));
+    }
+
+    public void attach(@Nonnull String volumeId, @Nonnull String toServer, @Nonnull String deviceId) throws CloudException, InternalException {
+        StandInResource volume = StandInResource.get(VOLUME, provider.getAccountNumber(), provider.getRegionId(), volumeId);
+
+        if( volume == null ) {
+            throw new CloudException("No such volume: " + volumeId);
+        }
+        if( getVirtualMachine(toServer) == null ) {
+            throw new CloudException("No such virtual machine: " + toServer);
+        }
+        if( volume.getAttribute("vmId") != null ) {
+            throw new CloudException("Volume " + volumeId + " is already attached to " + volume.getAttribute("vmId"));
+        }
+        volume.setAttribute("vmId", toServer);
+        volume.setAttribute("deviceId", deviceId);
+    }
+
+    public @Nonnull String createVolume(@Nonnull VolumeCreateOptions options) throws CloudException, InternalException {
+        StandInResource r = StandInResource.create(VOLUME, provider.getAccountNumber(), provider.getRegionId(), options.getName(), VolumeState.PENDING, VolumeState.AVAILABLE);
+        String dataCenterId = options.getDataCenterId();
+        Storage<Gigabyte> size = options.getVolumeSize();
+
+        r.setAttribute("dataCenterId", dataCenterId == null ? provider.getRegionId() + "a" : dataCenterId);
+        r.setAttribute("description", options.getDescription());
+        r.setAttribute("size", String.valueOf(size == null ? 1 : size.intValue()));
+        r.setAttribute("productId", options.getVolumeProductId());
+        r.setAttribute("vlanId", options.getVlanId());
+        return r.getId();
+    }
+
+    public void detach(@Nonnull String volumeId, boolean force) throws CloudException, InternalException {
+        StandInResource volume = StandInResource.get(VOLUME, provider.getAccountNumber(), provider.getRegionId(), volumeId);
+
+        if( volume == null ) {
+            throw new CloudException("No such volume: " + volumeId);
+        }
+        if( volume.getAttribute("vmId") == null ) {
+            throw new CloudException("Volume " + volumeId + " is not attached");
+        }
+        volume.setAttribute("vmId", null);
+        volume.setAttribute("deviceId", null);
+    }
+
+    public @Nullable Volume getVolume(@Nonnull String volumeId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(VOLUME, provider.getAccountNumber(), provider.getRegionId(), volumeId);
+
+        return (r == null ? null : toVolume(r));
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listVolumeStatus() throws CloudException, InternalException {
+        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( StandInResource r : list(VOLUME) ) {
+            status.add(new ResourceStatus(r.getId(), r.getState()));
+        }
+        return status;
+    }
+
+    public @Nonnull Iterable<Volume> listVolumes() throws CloudException, InternalException {
+        ArrayList<Volume> volumes = new ArrayList<Volume>();
+
+        for( StandInResource r : list(VOLUME) ) {
+            volumes.add(toVolume(r));
+        }
+        return volumes;
+    }
+
+    public void remove(@Nonnull String volumeId) throws CloudException, InternalException {
+        StandInResource volume = StandInResource.get(VOLUME, provider.getAccountNumber(), provider.getRegionId(), volumeId);
+
+        if( volume == null ) {
+            throw new CloudException("No such volume: " + volumeId);
+        }
+        if( volume.getAttribute("vmId") != null ) {
+            throw new CloudException("Volume " + volumeId + " is attached to " + volume.getAttribute("vmId"));
+        }
+        volume.remove();
+    }
+
+    private @Nonnull Volume toVolume(@Nonnull StandInResource r) {
+        Volume volume = new Volume();
+
+        volume.setProviderVolumeId(r.getId());
+        volume.setName(r.getName());
+        volume.setDescription(r.getAttribute("description"));
+        volume.setProviderRegionId(r.getRegionId());
+        volume.setProviderDataCenterId(r.getAttribute("dataCenterId"));
+        volume.setProviderProductId(r.getAttribute("productId"));
+        volume.setProviderVlanId(r.getAttribute("vlanId"));
+        volume.setProviderVirtualMachineId(r.getAttribute("vmId"));
+        volume.setDeviceId(r.getAttribute("deviceId"));
+        volume.setSize(new Storage<Gigabyte>(Integer.parseInt(r.getAttribute("size")), Storage.GIGABYTE));
+        volume.setFormat(VolumeFormat.BLOCK);
+        volume.setType(VolumeType.HDD);
+        volume.setCurrentState((VolumeState)r.getState());
+        volume.setCreationTimestamp(r.getCreated());
+        return volume;
+    }
+
+    private @Nonnull List<StandInResource> list(@Nonnull String type) {
+        return StandInResource.list(type, provider.getAccountNumber(), provider.getRegionId());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.dc.DataCenter;
+import org.dasein.cloud.dc.Region;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Data center services of {@link StandInCloud}: a single region with two data centers. Any other region ID in the
+ * context is answered as if it existed, so the harness can be pointed at several stand-in regions.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StandInDataCenters {
+    static public final String REGION = "standin-1";
+
+    private StandInCloud provider;
+
+    StandInDataCenters(@Nonnull StandInCloud provider) {
+        this.provider = provider;
+    }
+
+    public @Nullable DataCenter getDataCenter(@Nonnull String dataCenterId) throws InternalException, CloudException {
+        for( DataCenter dc : listDataCenters(provider.getRegionId()) ) {
+            if( dc.getProviderDataCenterId().equals(dataCenterId) ) {
+                return dc;
+            }
+        }
+        return null;
+    }
+
+    public @Nonnull String getProviderTermForDataCenter(@Nonnull Locale locale) {
+        return "zone";
+    }
+
+    public @Nonnull String getProviderTermForRegion(@Nonnull Locale locale) {
+        return "region";
+    }
+
+    public @Nullable Region getRegion(@Nonnull String providerRegionId) throws InternalException, CloudException {
+        for( Region r : listRegions() ) {
+            if( r.getProviderRegionId().equals(providerRegionId) ) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    public @Nonnull Collection<DataCenter> listDataCenters(@Nonnull String providerRegionId) throws InternalException, CloudException {
+        ArrayList<DataCenter> dataCenters = new ArrayList<DataCenter>();
+
+        for( String suffix : new String[] { "a", "b" } ) {
+            DataCenter dc = new DataCenter();
+
+            dc.setActive(true);
+            dc.setAvailable(true);
+            dc.setName(providerRegionId + suffix);
+            dc.setProviderDataCenterId(providerRegionId + suffix);
+            dc.setRegionId(providerRegionId);
+            dataCenters.add(dc);
+        }
+        return dataCenters;
+    }
+
+    public @Nonnull Collection<Region> listRegions() throws InternalException, CloudException {
+        ArrayList<Region> regions = new ArrayList<Region>();
+        String current = provider.getRegionId();
+
+        regions.add(toRegion(REGION));
+        if( !current.equals(REGION) ) {
+            regions.add(toRegion(current));
+        }
+        return regions;
+    }
+
+    private @Nonnull Region toRegion(@Nonnull String regionId) {
+        Region region = new Region();
+
+        region.setActive(true);
+        region.setAvailable(true);
+        region.setJurisdiction("US");
+        region.setName(regionId);
+        region.setProviderRegionId(regionId);
+        return region;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.identity.SSHKeypair;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Identity services of {@link StandInCloud}: SSH keypairs. Keypairs carry a made-up fingerprint and no key material.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StandInIdentity {
+    static public final String KEYPAIR = "key";
+
+    private StandInCloud provider;
+
+    StandInIdentity(@Nonnull StandInCloud provider) {
+        this.provider = provider;
+    }
+
+    public @Nonnull SSHKeypair createKeypair(@Nonnull String name) throws InternalException, CloudException {
+        for( StandInResource r : StandInResource.list(KEYPAIR, provider.getAccountNumber(), provider.getRegionId()) ) {
+            if( r.getName().equals(name) ) {
+                throw new CloudException("A keypair named " + name + " already exists");
+            }
+        }
+        return toKeypair(StandInResource.create(KEYPAIR, provider.getAccountNumber(), provider.getRegionId(), name, StandInResource.Presence.PRESENT, StandInResource.Presence.PRESENT));
+    }
+
+    public void deleteKeypair(@Nonnull String providerId) throws InternalException, CloudException {
+        StandInResource r = StandInResource.get(KEYPAIR, provider.getAccountNumber(), provider.getRegionId(), providerId);
+
+        if( r == null ) {
+            throw new CloudException("No such keypair: " + providerId);
+        }
+        r.remove();
+    }
+
+    public @Nullable String getFingerprint(@Nonnull String providerId) throws InternalException, CloudException {
+        SSHKeypair keypair = getKeypair(providerId);
+
+        return (keypair == null ? null : keypair.getFingerprint());
+    }
+
+    public @Nullable SSHKeypair getKeypair(@Nonnull String providerId) throws InternalException, CloudException {
+        StandInResource r = StandInResource.get(KEYPAIR, provider.getAccountNumber(), provider.getRegionId(), providerId);
+
+        return (r == null ? null : toKeypair(r));
+    }
+
+    public @Nonnull String getProviderTermForKeypair(@Nonnull Locale locale) {
+        return "keypair";
+    }
+
+    public @Nonnull Requirement identifyKeyImportRequirement() {
+        return Requirement.NONE;
+    }
+
+    public @Nonnull Iterable<SSHKeypair> list() throws InternalException, CloudException {
+        ArrayList<SSHKeypair> keypairs = new ArrayList<SSHKeypair>();
+
+        for( StandInResource r : StandInResource.list(KEYPAIR, provider.getAccountNumber(), provider.getRegionId()) ) {
+            keypairs.add(toKeypair(r));
+        }
+        return keypairs;
+    }
+
+    private @Nonnull SSHKeypair toKeypair(@Nonnull StandInResource r) {
+        SSHKeypair keypair = new SSHKeypair();
+        String hex = String.format("%032x", r.getId().hashCode() & 0xffffffffL);
+        StringBuilder fingerprint = new StringBuilder();
+
+        for( int i=0; i<hex.length(); i += 2 ) {
+            if( i > 0 ) {
+                fingerprint.append(":");
+            }
+            fingerprint.append(hex.substring(i, i + 2));
+        }
+        keypair.setProviderKeypairId(r.getId());
+        keypair.setName(r.getName());
+        keypair.setProviderOwnerId(r.getOwnerId());
+        keypair.setProviderRegionId(r.getRegionId());
+        keypair.setFingerprint(fingerprint.toString());
+        return keypair;
+    }
+}
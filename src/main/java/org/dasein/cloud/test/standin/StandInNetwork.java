@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallCreateOptions;
+import org.dasein.cloud.network.IPVersion;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANState;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+
+/**
+ * Network services of {@link StandInCloud}: VLANs and firewalls without rules. A VLAN cannot be removed while a VM
+ * or firewall still uses it, which is the ordering mistake teardown code most often makes.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StandInNetwork {
+    static public final String FIREWALL = "fw";
+    static public final String VLAN     = "vlan";
+
+    private StandInCloud provider;
+
+    StandInNetwork(@Nonnull StandInCloud provider) {
+        this.provider = provider;
+    }
+
+    /* ---------------------------------------- firewalls ---------------------------------------- */
+
+    public @Nonnull String create(@Nonnull FirewallCreateOptions options) throws CloudException, InternalException {
+        String vlanId = options.getProviderVlanId();
+
+        if( vlanId != null && getVlan(vlanId) == null ) {
+            throw new CloudException("No such VLAN: " + vlanId);
+        }
+        StandInResource r = StandInResource.create(FIREWALL, provider.getAccountNumber(), provider.getRegionId(), options.getName(), StandInResource.Presence.PRESENT, StandInResource.Presence.PRESENT);
+
+        r.setAttribute("description", options.getDescription());
+        r.setAttribute("vlanId", vlanId);
+        return r.getId();
+    }
+
+    public void delete(@Nonnull String firewallId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(FIREWALL, provider.getAccountNumber(), provider.getRegionId(), firewallId);
+
+        if( r == null ) {
+            throw new CloudException("No such firewall: " + firewallId);
+        }
+        r.remove();
+    }
+
+    public @Nullable Firewall getFirewall(@Nonnull String firewallId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(FIREWALL, provider.getAccountNumber(), provider.getRegionId(), firewallId);
+
+        return (r == null ? null : toFirewall(r));
+    }
+
+    public @Nonnull String getProviderTermForFirewall(@Nonnull Locale locale) {
+        return "firewall";
+    }
+
+    public @Nonnull Requirement requiresVLAN() {
+        return Requirement.OPTIONAL;
+    }
+
+    public @Nonnull Collection<Firewall> list() throws CloudException, InternalException {
+        ArrayList<Firewall> firewalls = new ArrayList<Firewall>();
+
+        for( StandInResource r : StandInResource.list(FIREWALL, provider.getAccountNumber(), provider.getRegionId()) ) {
+            firewalls.add(toFirewall(r));
+        }
+        return firewalls;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listFirewallStatus() throws CloudException, InternalException {
+        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( StandInResource r : StandInResource.list(FIREWALL, provider.getAccountNumber(), provider.getRegionId()) ) {
+            status.add(new ResourceStatus(r.getId(), true));
+        }
+        return status;
+    }
+
+    private @Nonnull Firewall toFirewall(@Nonnull StandInResource r) {
+        Firewall firewall = new Firewall();
+
+        firewall.setProviderFirewallId(r.getId());
+        firewall.setName(r.getName());
+        firewall.setDescription(r.getAttribute("description"));
+        firewall.setRegionId(r.getRegionId());
+        firewall.setProviderVlanId(r.getAttribute("vlanId"));
+        firewall.setActive(true);
+        firewall.setAvailable(true);
+        return firewall;
+    }
+
+    /* ---------------------------------------- VLANs ---------------------------------------- */
+
+    public boolean allowsNewVlanCreation() {
+        return true;
+    }
+
+    public int getMaxVlanCount() {
+        return -2;
+    }
+
+    public @Nonnull String getProviderTermForVlan(@Nonnull Locale locale) {
+        return "VLAN";
+    }
+
+    public @Nonnull Iterable<IPVersion> listSupportedIPVersions() {
+        return Collections.singletonList(IPVersion.IPV4);
+    }
+
+    public @Nonnull VLAN createVlan(@Nonnull String cidr, @Nonnull String name, @Nonnull String description, @Nonnull String domainName, @Nonnull String[] dnsServers, @Nonnull String[] ntpServers) throws CloudException, InternalException {
+        StandInResource r = StandInResource.create(VLAN, provider.getAccountNumber(), provider.getRegionId(), name, VLANState.PENDING, VLANState.AVAILABLE);
+
+        r.setAttribute("cidr", cidr);
+        r.setAttribute("description", description);
+        r.setAttribute("domainName", domainName);
+        return toVlan(r);
+    }
+
+    public @Nullable VLAN getVlan(@Nonnull String vlanId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(VLAN, provider.getAccountNumber(), provider.getRegionId(), vlanId);
+
+        return (r == null ? null : toVlan(r));
+    }
+
+    public @Nonnull Iterable<VLAN> listVlans() throws CloudException, InternalException {
+        ArrayList<VLAN> vlans = new ArrayList<VLAN>();
+
+        for( StandInResource r : StandInResource.list(VLAN, provider.getAccountNumber(), provider.getRegionId()) ) {
+            vlans.add(toVlan(r));
+        }
+        return vlans;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listVlanStatus() throws CloudException, InternalException {
+        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( StandInResource r : StandInResource.list(VLAN, provider.getAccountNumber(), provider.getRegionId()) ) {
+            status.add(new ResourceStatus(r.getId(), r.getState()));
+        }
+        return status;
+    }
+
+    public void removeVlan(@Nonnull String vlanId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(VLAN, provider.getAccountNumber(), provider.getRegionId(), vlanId);
+
+        if( r == null ) {
+            throw new CloudException("No such VLAN: " + vlanId);
+        }
+        for( StandInResource other : StandInCloud.getResources().values() ) {
+            if( vlanId.equals(other.getAttribute("vlanId")) && !isGone(other) ) {
+                throw new CloudException("VLAN " + vlanId + " is still in use by " + other.getId());
+            }
+        }
+        r.remove();
+    }
+
+    private boolean isGone(@Nonnull StandInResource r) {
+        return r.getState().name().equals("TERMINATED");
+    }
+
+    private @Nonnull VLAN toVlan(@Nonnull StandInResource r) {
+        VLAN vlan = new VLAN();
+
+        vlan.setProviderVlanId(r.getId());
+        vlan.setName(r.getName());
+        vlan.setDescription(r.getAttribute("description"));
+        vlan.setCidr(r.getAttribute("cidr"));
+        vlan.setDomainName(r.getAttribute("domainName"));
+        vlan.setProviderOwnerId(r.getOwnerId());
+        vlan.setProviderRegionId(r.getRegionId());
+        vlan.setCurrentState((VLANState)r.getState());
+        vlan.setSupportedTraffic(IPVersion.IPV4);
+        return vlan;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.platform.Database;
+import org.dasein.cloud.platform.DatabaseEngine;
+import org.dasein.cloud.platform.DatabaseProduct;
+import org.dasein.cloud.platform.DatabaseState;
+import org.dasein.cloud.platform.Distribution;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Platform services of {@link StandInCloud}: CDN distributions and relational databases. Databases come in two sizes
+ * of MySQL and PostgreSQL and nothing is actually listening on their ports.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StandInPlatform {
+    static public final String DATABASE     = "db";
+    static public final String DISTRIBUTION = "cdn";
+
+    static private final DatabaseEngine[] ENGINES = { DatabaseEngine.MYSQL, DatabaseEngine.POSTGRES };
+
+    // size, storage in GB, hourly rate
+    static private final String[][] SIZES = {
+            { "standin.db.small", "5", "0.02" },
+            { "standin.db.large", "50", "0.20" }
+    };
+
+    private StandInCloud provider;
+
+    StandInPlatform(@Nonnull StandInCloud provider) {
+        this.provider = provider;
+    }
+
+    /* ---------------------------------------- CDN ---------------------------------------- */
+
+    public @Nonnull String create(@Nonnull String origin, @Nonnull String name, boolean active, @Nullable String ... aliases) throws CloudException, InternalException {
+        StandInResource r = StandInResource.create(DISTRIBUTION, provider.getAccountNumber(), provider.getRegionId(), name, StandInResource.Presence.PRESENT, StandInResource.Presence.PRESENT);
+
+        r.setAttribute("origin", origin);
+        update(r, name, active, aliases);
+        return r.getId();
+    }
+
+    public void delete(@Nonnull String distributionId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(DISTRIBUTION, provider.getAccountNumber(), provider.getRegionId(), distributionId);
+
+        if( r == null ) {
+            throw new CloudException("No such distribution: " + distributionId);
+        }
+        r.remove();
+    }
+
+    public @Nullable Distribution getDistribution(@Nonnull String distributionId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(DISTRIBUTION, provider.getAccountNumber(), provider.getRegionId(), distributionId);
+
+        return (r == null ? null : toDistribution(r));
+    }
+
+    public @Nonnull String getProviderTermForDistribution(@Nonnull Locale locale) {
+        return "distribution";
+    }
+
+    public @Nonnull Collection<Distribution> list() throws CloudException, InternalException {
+        ArrayList<Distribution> distributions = new ArrayList<Distribution>();
+
+        for( StandInResource r : listResources(DISTRIBUTION) ) {
+            distributions.add(toDistribution(r));
+        }
+        return distributions;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listDistributionStatus() throws CloudException, InternalException {
+        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( StandInResource r : listResources(DISTRIBUTION) ) {
+            status.add(new ResourceStatus(r.getId(), Boolean.valueOf(r.getAttribute("active"))));
+        }
+        return status;
+    }
+
+    public void update(@Nonnull String distributionId, @Nonnull String name, boolean active, @Nullable String ... aliases) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(DISTRIBUTION, provider.getAccountNumber(), provider.getRegionId(), distributionId);
+
+        if( r == null ) {
+            throw new CloudException("No such distribution: " + distributionId);
+        }
+        update(r, name, active, aliases);
+    }
+
+    private void update(@Nonnull StandInResource r, @Nonnull String name, boolean active, @Nullable String[] aliases) {
+        StringBuilder list = new StringBuilder();
+
+        if( aliases != null ) {
+            for( String alias : aliases ) {
+                if( alias != null ) {
+                    if( list.length() > 0 ) {
+                        list.append(",");
+                    }
+                    list.append(alias);
+                }
+            }
+        }
+        // a distribution can be renamed, so its name lives with the other attributes
+        r.setAttribute("name", name);
+        r.setAttribute("active", String.valueOf(active));
+        r.setAttribute("aliases", list.toString());
+    }
+
+    private @Nonnull Distribution toDistribution(@Nonnull StandInResource r) {
+        Distribution distribution = new Distribution();
+        String aliases = r.getAttribute("aliases");
+
+        distribution.setProviderDistributionId(r.getId());
+        distribution.setProviderOwnerId(r.getOwnerId());
+        distribution.setName(r.getAttribute("name"));
+        distribution.setActive(Boolean.valueOf(r.getAttribute("active")));
+        distribution.setAliases(aliases == null || aliases.equals("") ? new String[0] : aliases.split(","));
+        distribution.setDeployed(true);
+        distribution.setDnsName(r.getId() + ".cdn.standin");
+        distribution.setLocation(r.getAttribute("origin"));
+        return distribution;
+    }
+
+    /* ---------------------------------------- databases ---------------------------------------- */
+
+    public @Nonnull String createFromScratch(@Nonnull String dataSourceName, @Nonnull DatabaseProduct product, @Nullable String databaseVersion, @Nonnull String withAdminUser, @Nonnull String withAdminPassword, int hostPort) throws CloudException, InternalException {
+        DatabaseEngine engine = product.getEngine();
+
+        if( engine == null || !Arrays.asList(ENGINES).contains(engine) ) {
+            throw new CloudException("Unsupported database engine: " + engine);
+        }
+        StandInResource r = StandInResource.create(DATABASE, provider.getAccountNumber(), provider.getRegionId(), dataSourceName, DatabaseState.PENDING, DatabaseState.AVAILABLE);
+
+        r.setAttribute("engine", engine.name());
+        r.setAttribute("version", databaseVersion == null ? getDefaultVersion(engine) : databaseVersion);
+        r.setAttribute("productSize", product.getProductSize());
+        r.setAttribute("adminUser", withAdminUser);
+        r.setAttribute("port", String.valueOf(hostPort));
+        return r.getId();
+    }
+
+    public @Nullable Database getDatabase(@Nonnull String providerDatabaseId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(DATABASE, provider.getAccountNumber(), provider.getRegionId(), providerDatabaseId);
+
+        return (r == null ? null : toDatabase(r));
+    }
+
+    public @Nonnull Iterable<DatabaseEngine> getDatabaseEngines() throws CloudException, InternalException {
+        return Arrays.asList(ENGINES);
+    }
+
+    public @Nonnull Iterable<DatabaseProduct> getDatabaseProducts(@Nonnull DatabaseEngine forEngine) throws CloudException, InternalException {
+        ArrayList<DatabaseProduct> products = new ArrayList<DatabaseProduct>();
+
+        if( Arrays.asList(ENGINES).contains(forEngine) ) {
+            for( String[] size : SIZES ) {
+                DatabaseProduct product = new DatabaseProduct(size[0], size[0] + " (" + forEngine.name() + ")");
+
+                product.setEngine(forEngine);
+                product.setStorageInGigabytes(Integer.parseInt(size[1]));
+                product.setStandardHourlyRate(Float.parseFloat(size[2]));
+                product.setCurrency("USD");
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    public @Nullable String getDefaultVersion(@Nonnull DatabaseEngine forEngine) throws CloudException, InternalException {
+        Iterator<String> versions = getSupportedVersions(forEngine).iterator();
+
+        return (versions.hasNext() ? versions.next() : null);
+    }
+
+    public @Nonnull String getProviderTermForDatabase(@Nonnull Locale locale) {
+        return "database";
+    }
+
+    public @Nonnull String getProviderTermForSnapshot(@Nonnull Locale locale) {
+        return "snapshot";
+    }
+
+    public @Nonnull Iterable<String> getSupportedVersions(@Nonnull DatabaseEngine forEngine) throws CloudException, InternalException {
+        if( forEngine.equals(DatabaseEngine.MYSQL) ) {
+            return Arrays.asList("5.6", "5.5");
+        }
+        else if( forEngine.equals(DatabaseEngine.POSTGRES) ) {
+            return Collections.singletonList("9.3");
+        }
+        return Collections.emptyList();
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listDatabaseStatus() throws CloudException, InternalException {
+        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( StandInResource r : listResources(DATABASE) ) {
+            status.add(new ResourceStatus(r.getId(), r.getState()));
+        }
+        return status;
+    }
+
+    public @Nonnull Iterable<Database> listDatabases() throws CloudException, InternalException {
+        ArrayList<Database> databases = new ArrayList<Database>();
+
+        for( StandInResource r : listResources(DATABASE) ) {
+            databases.add(toDatabase(r));
+        }
+        return databases;
+    }
+
+    public void removeDatabase(@Nonnull String providerDatabaseId) throws CloudException, InternalException {
+        StandInResource r = StandInResource.get(DATABASE, provider.getAccountNumber(), provider.getRegionId(), providerDatabaseId);
+
+        if( r == null ) {
+            throw new CloudException("No such database: " + providerDatabaseId);
+        }
+        r.remove();
+    }
+
+    private @Nonnull List<StandInResource> listResources(@Nonnull String type) {
+        return StandInResource.list(type, provider.getAccountNumber(), provider.getRegionId());
+    }
+
+    private @Nonnull Database toDatabase(@Nonnull StandInResource r) {
+        Database database = new Database();
+
+        database.setProviderDatabaseId(r.getId());
+        database.setName(r.getName());
+        database.setProviderOwnerId(r.getOwnerId());
+        database.setProviderRegionId(r.getRegionId());
+        database.setCurrentState((DatabaseState)r.getState());
+        database.setEngine(DatabaseEngine.valueOf(r.getAttribute("engine")));
+        database.setEngineVersion(r.getAttribute("version"));
+        database.setProductSize(r.getAttribute("productSize"));
+        database.setAdminUser(r.getAttribute("adminUser"));
+        database.setHostName(r.getId() + ".db.standin");
+        database.setHostPort(Integer.parseInt(r.getAttribute("port")));
+        database.setCreationTimestamp(r.getCreated());
+        return database;
+    }
+}
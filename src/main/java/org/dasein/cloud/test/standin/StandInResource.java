@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A resource in the in-memory cloud of {@link StandInCloud}. States are computed lazily: a state change records the
+ * state the resource is in while it changes, the state it settles into and when, so nothing needs a background
+ * thread to move resources along.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+class StandInResource {
+    /**
+     * The state of resources that have no life cycle of their own in Dasein Cloud, such as keypairs.
+     */
+    static enum Presence { PRESENT }
+
+    static private final AtomicLong ids = new AtomicLong(0L);
+
+    /**
+     * Creates a resource and adds it to the in-memory cloud.
+     * @param type the kind of resource, which also prefixes its ID
+     * @param ownerId the account that owns the resource
+     * @param regionId the region of the resource
+     * @param name the name of the resource
+     * @param initial the state the resource is in while it is created
+     * @param settled the state the resource settles into once created
+     * @return the new resource
+     */
+    static @Nonnull StandInResource create(@Nonnull String type, @Nonnull String ownerId, @Nonnull String regionId, @Nonnull String name, @Nonnull Enum<?> initial, @Nonnull Enum<?> settled) {
+        StandInResource r = new StandInResource(type, type + "-" + ids.incrementAndGet(), ownerId, regionId, name);
+
+        r.transition(initial, settled);
+        StandInCloud.getResources().put(r.getId(), r);
+        return r;
+    }
+
+    /**
+     * Provides a resource of the specified type that is visible to the specified account and region.
+     * @param type the kind of resource
+     * @param ownerId the account looking for the resource
+     * @param regionId the region being searched
+     * @param id the ID of the resource
+     * @return the matching resource or null if it does not exist or is not yet visible
+     */
+    static @Nullable StandInResource get(@Nonnull String type, @Nonnull String ownerId, @Nonnull String regionId, @Nullable String id) {
+        if( id == null ) {
+            return null;
+        }
+        StandInResource r = StandInCloud.getResources().get(id);
+
+        if( r == null || !r.type.equals(type) || !r.ownerId.equals(ownerId) || !r.regionId.equals(regionId) || !r.isVisible() ) {
+            return null;
+        }
+        return r;
+    }
+
+    /**
+     * Lists the visible resources of the specified type in the specified account and region.
+     * @param type the kind of resource
+     * @param ownerId the account of interest
+     * @param regionId the region of interest
+     * @return the matching resources
+     */
+    static @Nonnull List<StandInResource> list(@Nonnull String type, @Nonnull String ownerId, @Nonnull String regionId) {
+        ArrayList<StandInResource> matches = new ArrayList<StandInResource>();
+
+        for( StandInResource r : StandInCloud.getResources().values() ) {
+            if( r.type.equals(type) && r.ownerId.equals(ownerId) && r.regionId.equals(regionId) && r.isVisible() ) {
+                matches.add(r);
+            }
+        }
+        return matches;
+    }
+
+    private final Map<String,String> attributes = new ConcurrentHashMap<String, String>();
+    private final long               created;
+    private final String             id;
+    private final String             name;
+    private final String             ownerId;
+    private final String             regionId;
+    private final String             type;
+
+    private Enum<?> settled;
+    private long    settleAt;
+    private Enum<?> state;
+
+    private StandInResource(@Nonnull String type, @Nonnull String id, @Nonnull String ownerId, @Nonnull String regionId, @Nonnull String name) {
+        this.type = type;
+        this.id = id;
+        this.ownerId = ownerId;
+        this.regionId = regionId;
+        this.name = name;
+        this.created = System.currentTimeMillis();
+    }
+
+    @Nullable String getAttribute(@Nonnull String key) {
+        return attributes.get(key);
+    }
+
+    @Nonnull Map<String,String> getAttributes() {
+        return attributes;
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    @Nonnull String getId() {
+        return id;
+    }
+
+    @Nonnull String getName() {
+        return name;
+    }
+
+    @Nonnull String getOwnerId() {
+        return ownerId;
+    }
+
+    @Nonnull String getRegionId() {
+        return regionId;
+    }
+
+    synchronized @Nonnull Enum<?> getState() {
+        if( settled != null && System.currentTimeMillis() >= settleAt ) {
+            state = settled;
+            settled = null;
+        }
+        return state;
+    }
+
+    @Nonnull String getType() {
+        return type;
+    }
+
+    /**
+     * @return true once the eventual consistency delay since creation has passed
+     */
+    boolean isVisible() {
+        return (System.currentTimeMillis() >= created + StandInCloud.getConsistencyDelay());
+    }
+
+    void setAttribute(@Nonnull String key, @Nullable String value) {
+        if( value == null ) {
+            attributes.remove(key);
+        }
+        else {
+            attributes.put(key, value);
+        }
+    }
+
+    /**
+     * Starts a state change that settles after the configured transition time.
+     * @param during the state while the change is in progress
+     * @param after the state the resource settles into
+     */
+    synchronized void transition(@Nonnull Enum<?> during, @Nonnull Enum<?> after) {
+        long t = StandInCloud.getTransitionTime();
+
+        if( t < 1L ) {
+            state = after;
+            settled = null;
+        }
+        else {
+            state = during;
+            settled = after;
+            settleAt = System.currentTimeMillis() + t;
+        }
+    }
+
+    /**
+     * Removes this resource from the in-memory cloud.
+     */
+    void remove() {
+        StandInCloud.getResources().remove(id);
+    }
+}
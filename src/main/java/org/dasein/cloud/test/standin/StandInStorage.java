@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.standin;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.NameRules;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.storage.FileTransfer;
+import org.dasein.util.uom.storage.Byte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Storage services of {@link StandInCloud}: an object store with nested buckets. Object content is kept in memory, so
+ * only upload small files. A bucket cannot be removed while it still holds objects or other buckets.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class StandInStorage {
+    static public final String BUCKET = "bucket";
+    static public final String OBJECT = "object";
+
+    // content is held as a string in which every character is one byte
+    static private final String CHARSET = "ISO-8859-1";
+
+    private StandInCloud provider;
+
+    StandInStorage(@Nonnull StandInCloud provider) {
+        this.provider = provider;
+    }
+
+    public boolean allowsNestedBuckets() {
+        return true;
+    }
+
+    public boolean allowsRootObjects() {
+        return true;
+    }
+
+    public boolean allowsPublicSharing() {
+        return false;
+    }
+
+    public int getMaxBuckets() {
+        return 100;
+    }
+
+    public @Nonnull Storage<Byte> getMaxObjectSize() {
+        return new Storage<Byte>(10485760, Storage.BYTE);
+    }
+
+    public int getMaxObjectsPerBucket() {
+        return -2;
+    }
+
+    public @Nonnull NameRules getBucketNameRules() {
+        return NameRules.getInstance(1, 255, false, true, true, '-', '.', '/');
+    }
+
+    public @Nonnull NameRules getObjectNameRules() {
+        return NameRules.getInstance(1, 255, true, true, true, '-', '.', '_');
+    }
+
+    public @Nonnull String getProviderTermForBucket(@Nonnull Locale locale) {
+        return "bucket";
+    }
+
+    public @Nonnull String getProviderTermForObject(@Nonnull Locale locale) {
+        return "object";
+    }
+
+    /* ---------------------------------------- buckets ---------------------------------------- */
+
+    public @Nonnull Blob createBucket(@Nonnull String bucket, boolean findFreeName) throws CloudException, InternalException {
+        String name = bucket;
+        int i = 1;
+
+        while( findBucket(name) != null ) {
+            if( !findFreeName ) {
+                throw new CloudException("A bucket named " + bucket + " already exists");
+            }
+            name = bucket + "-" + (i++);
+        }
+        int idx = name.lastIndexOf('/');
+
+        if( idx > -1 && findBucket(name.substring(0, idx)) == null ) {
+            throw new CloudException("No such bucket: " + name.substring(0, idx));
+        }
+        return toBlob(StandInResource.create(BUCKET, provider.getAccountNumber(), provider.getRegionId(), name, StandInResource.Presence.PRESENT, StandInResource.Presence.PRESENT));
+    }
+
+    public void clearBucket(@Nonnull String bucket) throws CloudException, InternalException {
+        if( findBucket(bucket) == null ) {
+            throw new CloudException("No such bucket: " + bucket);
+        }
+        for( StandInResource r : listResources(OBJECT) ) {
+            String owner = r.getAttribute("bucket");
+
+            if( owner != null && (owner.equals(bucket) || owner.startsWith(bucket + "/")) ) {
+                r.remove();
+            }
+        }
+        for( StandInResource r : listResources(BUCKET) ) {
+            if( r.getName().startsWith(bucket + "/") ) {
+                r.remove();
+            }
+        }
+    }
+
+    public boolean exists(@Nonnull String bucket) throws CloudException, InternalException {
+        return (findBucket(bucket) != null);
+    }
+
+    public @Nullable Blob getBucket(@Nonnull String bucket) throws CloudException, InternalException {
+        StandInResource r = findBucket(bucket);
+
+        return (r == null ? null : toBlob(r));
+    }
+
+    public @Nonnull Iterable<Blob> list(@Nullable String bucket) throws CloudException, InternalException {
+        ArrayList<Blob> blobs = new ArrayList<Blob>();
+
+        if( bucket != null && findBucket(bucket) == null ) {
+            throw new CloudException("No such bucket: " + bucket);
+        }
+        for( StandInResource r : listResources(BUCKET) ) {
+            String name = r.getName();
+            int idx = name.lastIndexOf('/');
+            String parent = (idx < 0 ? null : name.substring(0, idx));
+
+            if( bucket == null ? parent == null : bucket.equals(parent) ) {
+                blobs.add(toBlob(r));
+            }
+        }
+        for( StandInResource r : listResources(OBJECT) ) {
+            String owner = r.getAttribute("bucket");
+
+            if( bucket == null ? owner == null : bucket.equals(owner) ) {
+                blobs.add(toBlob(r));
+            }
+        }
+        return blobs;
+    }
+
+    public void removeBucket(@Nonnull String bucket) throws CloudException, InternalException {
+        StandInResource r = findBucket(bucket);
+
+        if( r == null ) {
+            throw new CloudException("No such bucket: " + bucket);
+        }
+        if( list(bucket).iterator().hasNext() ) {
+            throw new CloudException("Bucket " + bucket + " is not empty");
+        }
+        r.remove();
+    }
+
+    /* ---------------------------------------- objects ---------------------------------------- */
+
+    public @Nonnull FileTransfer download(@Nullable String bucket, @Nonnull String objectName, @Nonnull File toFile) throws CloudException, InternalException {
+        StandInResource r = findObject(bucket, objectName);
+
+        if( r == null ) {
+            throw new CloudException("No such object: " + objectName);
+        }
+        FileTransfer transfer = new FileTransfer();
+        Throwable error = null;
+
+        try {
+            OutputStream out = new FileOutputStream(toFile);
+
+            try {
+                out.write(r.getAttribute("content").getBytes(CHARSET));
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch( IOException e ) {
+            error = e;
+        }
+        transfer.complete(error);
+        return transfer;
+    }
+
+    public @Nullable Blob getObject(@Nullable String bucket, @Nonnull String objectName) throws CloudException, InternalException {
+        StandInResource r = findObject(bucket, objectName);
+
+        return (r == null ? null : toBlob(r));
+    }
+
+    public @Nullable Storage<Byte> getObjectSize(@Nullable String bucket, @Nullable String objectName) throws CloudException, InternalException {
+        StandInResource r = (objectName == null ? null : findObject(bucket, objectName));
+
+        return (r == null ? null : new Storage<Byte>(Long.parseLong(r.getAttribute("size")), Storage.BYTE));
+    }
+
+    public void removeObject(@Nullable String bucket, @Nonnull String objectName) throws CloudException, InternalException {
+        StandInResource r = findObject(bucket, objectName);
+
+        if( r == null ) {
+            throw new CloudException("No such object: " + objectName);
+        }
+        r.remove();
+    }
+
+    public @Nonnull Blob upload(@Nonnull File sourceFile, @Nullable String bucket, @Nonnull String objectName) throws CloudException, InternalException {
+        if( bucket != null && findBucket(bucket) == null ) {
+            throw new CloudException("No such bucket: " + bucket);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        try {
+            InputStream in = new FileInputStream(sourceFile);
+
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+
+                while( (count = in.read(buffer)) > -1 ) {
+                    content.write(buffer, 0, count);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        StandInResource existing = findObject(bucket, objectName);
+
+        if( existing != null ) {
+            existing.remove();
+        }
+        StandInResource r = StandInResource.create(OBJECT, provider.getAccountNumber(), provider.getRegionId(), objectName, StandInResource.Presence.PRESENT, StandInResource.Presence.PRESENT);
+
+        r.setAttribute("bucket", bucket);
+        r.setAttribute("size", String.valueOf(content.size()));
+        try {
+            r.setAttribute("content", content.toString(CHARSET));
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        return toBlob(r);
+    }
+
+    private @Nullable StandInResource findBucket(@Nonnull String bucket) {
+        for( StandInResource r : listResources(BUCKET) ) {
+            if( r.getName().equals(bucket) ) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private @Nullable StandInResource findObject(@Nullable String bucket, @Nonnull String objectName) {
+        for( StandInResource r : listResources(OBJECT) ) {
+            String owner = r.getAttribute("bucket");
+
+            if( r.getName().equals(objectName) && (bucket == null ? owner == null : bucket.equals(owner)) ) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private @Nonnull List<StandInResource> listResources(@Nonnull String type) {
+        return StandInResource.list(type, provider.getAccountNumber(), provider.getRegionId());
+    }
+
+    private @Nonnull Blob toBlob(@Nonnull StandInResource r) {
+        if( r.getType().equals(BUCKET) ) {
+            return Blob.getInstance(r.getRegionId(), "standin://" + r.getName(), r.getName(), r.getCreated());
+        }
+        String bucket = r.getAttribute("bucket");
+        String location = "standin://" + (bucket == null ? "" : bucket + "/") + r.getName();
+
+        return Blob.getInstance(r.getRegionId(), location, bucket, r.getName(), r.getCreated(), new Storage<Byte>(Long.parseLong(r.getAttribute("size")), Storage.BYTE));
+    }
+}
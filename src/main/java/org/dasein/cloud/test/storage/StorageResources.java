@@ -26,7 +26,10 @@ import org.dasein.cloud.InternalException;
 import org.dasein.cloud.storage.Blob;
 import org.dasein.cloud.storage.BlobStoreSupport;
 import org.dasein.cloud.storage.StorageServices;
+import org.dasein.cloud.test.Bookkeeping;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.ResourceLedger;
+import org.dasein.util.uom.storage.Storage;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -35,9 +38,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * [Class Documentation]
@@ -48,12 +52,17 @@ import java.util.Random;
 public class StorageResources {
     static private final Logger logger = Logger.getLogger(StorageResources.class);
 
+    static public final String TEARDOWN = "storage";
+
+    static public final String BUCKET_RESOURCE = "storage.bucket";
+    static public final String OBJECT_RESOURCE = "storage.object";
+
     static private final Random random = new Random();
 
-    private final HashMap<String,Blob> testChildBuckets = new HashMap<String, Blob>();
-    private final HashMap<String,Blob> testChildObjects = new HashMap<String, Blob>();
-    private final HashMap<String,Blob> testRootBuckets = new HashMap<String, Blob>();
-    private final HashMap<String,Blob> testRootObjects = new HashMap<String, Blob>();
+    private final Map<String,Blob> testChildBuckets = new ConcurrentHashMap<String, Blob>();
+    private final Map<String,Blob> testChildObjects = new ConcurrentHashMap<String, Blob>();
+    private final Map<String,Blob> testRootBuckets = new ConcurrentHashMap<String, Blob>();
+    private final Map<String,Blob> testRootObjects = new ConcurrentHashMap<String, Blob>();
 
     private CloudProvider provider;
 
@@ -62,6 +71,18 @@ public class StorageResources {
     }
 
     public int close() {
+        int count = removeAll();
+
+        provider.close();
+        return count;
+    }
+
+    /**
+     * Removes the stateful buckets and objects like {@link #close()} does, but leaves the provider open for the
+     * tests still to run, as when cleaning up after an earlier test run.
+     * @return the number of buckets and objects removed
+     */
+    public int removeAll() {
         int count = 0;
 
         try {
@@ -89,6 +110,7 @@ public class StorageResources {
                                 else {
                                     count++;
                                 }
+                                ResourceLedger.deprovisioned(OBJECT_RESOURCE, object);
                             }
                             catch( Throwable t ) {
                                 logger.warn("Failed to remove test root object " + entry.getValue() + ": " + t.getMessage());
@@ -114,6 +136,7 @@ public class StorageResources {
                                 else {
                                     count++;
                                 }
+                                ResourceLedger.deprovisioned(OBJECT_RESOURCE, object);
                             }
                             catch( Throwable t ) {
                                 logger.warn("Failed to remove test child object " + entry.getValue() + ": " + t.getMessage());
@@ -123,16 +146,10 @@ public class StorageResources {
                     for( Map.Entry<String,Blob> entry : testChildBuckets.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
                             try {
-                                String bucket = entry.getValue().getBucketName();
+                                String bucket = getBucketPath(entry.getValue());
 
                                 if( bucket == null ) {
-                                    bucket = entry.getValue().getObjectName();
-                                    if( bucket == null ) {
-                                        continue; // not possible
-                                    }
-                                }
-                                else {
-                                    bucket = bucket + "/" + entry.getValue().getObjectName();
+                                    continue; // not possible
                                 }
                                 Blob blob = support.getBucket(bucket);
 
@@ -143,6 +160,7 @@ public class StorageResources {
                                 else {
                                     count++;
                                 }
+                                ResourceLedger.deprovisioned(BUCKET_RESOURCE, bucket);
                             }
                             catch( Throwable t ) {
                                 logger.warn("Failed to remove test child bucket " + entry.getValue() + ": " + t.getMessage());
@@ -161,6 +179,7 @@ public class StorageResources {
                                 else {
                                     count++;
                                 }
+                                ResourceLedger.deprovisioned(BUCKET_RESOURCE, entry.getValue().getBucketName());
                             }
                             catch( Throwable t ) {
                                 logger.warn("Failed to remove test root bucket " + entry.getValue() + ": " + t.getMessage());
@@ -173,10 +192,74 @@ public class StorageResources {
         catch( Throwable ignore ) {
             // ignore
         }
-        provider.close();
         return count;
     }
 
+    /**
+     * Forgets the stateful buckets and objects that {@link #close()} removes, so that tests running afterwards
+     * provision fresh ones.
+     */
+    public void forget() {
+        testChildBuckets.keySet().retainAll(Collections.singleton(DaseinTestManager.STATELESS));
+        testChildObjects.keySet().retainAll(Collections.singleton(DaseinTestManager.STATELESS));
+        testRootBuckets.keySet().retainAll(Collections.singleton(DaseinTestManager.STATELESS));
+        testRootObjects.keySet().retainAll(Collections.singleton(DaseinTestManager.STATELESS));
+    }
+
+    /**
+     * Takes over a resource left behind by an earlier test run. Buckets are journaled under their full path and
+     * objects under their name, each depending on the bucket they were created in, if any.
+     * @param resource the resource from the resource ledger
+     * @param label the label under which to track the resource
+     * @return true if the resource is a storage resource and was adopted
+     */
+    public boolean adopt(@Nonnull ResourceLedger.Entry resource, @Nonnull String label) {
+        String type = resource.getType();
+        String parent = resource.getDependsOn();
+        String regionId = provider.getContext().getRegionId();
+        Map<String, Blob> map;
+        Blob blob;
+
+        if( type.equals(BUCKET_RESOURCE) ) {
+            map = ( parent == null ? testRootBuckets : testChildBuckets );
+            blob = Blob.getInstance(regionId, resource.getId(), resource.getId(), resource.getTimestamp());
+        }
+        else if( type.equals(OBJECT_RESOURCE) ) {
+            map = ( parent == null ? testRootObjects : testChildObjects );
+            blob = Blob.getInstance(regionId, resource.getId(), parent, resource.getId(), resource.getTimestamp(), new Storage<Byte>(0, Storage.BYTE));
+        }
+        else {
+            return false;
+        }
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized ( map ) {
+            for( Blob b : map.values() ) {
+                if( resource.getId().equals(b.isContainer() ? getBucketPath(b) : b.getObjectName()) ) {
+                    return true;
+                }
+            }
+            label = Bookkeeping.getUniqueLabel(map, label, random);
+            map.put(label, blob);
+        }
+        return true;
+    }
+
+    /**
+     * @param bucket a bucket as returned by the cloud or rebuilt by {@link #adopt(ResourceLedger.Entry, String)}
+     * @return the path under which the bucket is removed
+     */
+    static private @Nullable String getBucketPath(@Nonnull Blob bucket) {
+        String name = bucket.getBucketName();
+
+        if( name == null ) {
+            return bucket.getObjectName();
+        }
+        if( bucket.getObjectName() == null ) {
+            return name;
+        }
+        return name + "/" + bucket.getObjectName();
+    }
+
     public int report() {
         boolean header = false;
         int count = 0;
@@ -516,10 +599,9 @@ public class StorageResources {
         Blob blob = support.createBucket(name, findFreeName);
 
         synchronized( testRootBuckets ) {
-            while( testRootBuckets.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testRootBuckets, label, random);
             testRootBuckets.put(label, blob);
+            ResourceLedger.provisioned(BUCKET_RESOURCE, blob.getBucketName(), label, null);
         }
         return blob;
     }
@@ -530,10 +612,13 @@ public class StorageResources {
         Blob blob = support.createBucket(parentBucket + "/" + name, findFreeName);
 
         synchronized( testChildBuckets ) {
-            while( testChildBuckets.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
+            label = Bookkeeping.getUniqueLabel(testChildBuckets, label, random);
             testChildBuckets.put(label, blob);
+            String path = getBucketPath(blob);
+
+            if( path != null ) {
+                ResourceLedger.provisioned(BUCKET_RESOURCE, path, label, parentBucket);
+            }
         }
         return blob;
     }
@@ -560,10 +645,9 @@ public class StorageResources {
             Blob blob = support.upload(file, null, namePrefix + random.nextInt(10000) + ".txt");
 
             synchronized( testChildObjects ) {
-                while( testChildObjects.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
+                label = Bookkeeping.getUniqueLabel(testChildObjects, label, random);
                 testChildObjects.put(label, blob);
+                ResourceLedger.provisioned(OBJECT_RESOURCE, blob.getObjectName(), label, blob.getBucketName());
             }
             return blob;
         }
@@ -594,10 +678,9 @@ public class StorageResources {
             Blob blob = support.upload(file, parentBucket, namePrefix + random.nextInt(10000) + ".txt");
 
             synchronized( testChildObjects ) {
-                while( testChildObjects.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
+                label = Bookkeeping.getUniqueLabel(testChildObjects, label, random);
                 testChildObjects.put(label, blob);
+                ResourceLedger.provisioned(OBJECT_RESOURCE, blob.getObjectName(), label, blob.getBucketName());
             }
             return blob;
         }
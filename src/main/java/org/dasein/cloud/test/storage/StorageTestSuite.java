@@ -44,7 +44,7 @@ import org.junit.runners.Suite;
 public class StorageTestSuite {
   @BeforeClass
   static public void setup() {
-    DaseinTestManager.init();
+    DaseinTestManager.init(StorageTestSuite.class);
   }
 
   @AfterClass
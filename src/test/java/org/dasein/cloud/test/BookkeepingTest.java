@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the reconciliation of a resource list with its status list.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class BookkeepingTest {
+    @Test
+    public void matchingListsInAnyOrderMatch() {
+        List<String> mismatches = Bookkeeping.findMismatches(Arrays.asList("a", "b", "c"), Arrays.asList("c", "a", "b"));
+
+        assertTrue(mismatches.isEmpty());
+    }
+
+    @Test
+    public void idsInOnlyOneListAreReported() {
+        List<String> mismatches = Bookkeeping.findMismatches(Arrays.asList("a", "b"), Arrays.asList("b", "c"));
+
+        assertEquals(Arrays.asList("c", "a"), mismatches);
+    }
+
+    @Test
+    public void nullIdInOnlyOneListIsReported() {
+        List<String> mismatches = Bookkeeping.findMismatches(Arrays.asList("a", null), Arrays.asList("a"));
+
+        assertEquals(Collections.<String>singletonList(null), mismatches);
+        mismatches = Bookkeeping.findMismatches(Arrays.asList("a"), Arrays.asList(null, "a"));
+        assertEquals(Collections.<String>singletonList(null), mismatches);
+    }
+}
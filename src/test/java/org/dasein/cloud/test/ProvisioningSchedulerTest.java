@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how the provisioning limit of a resource type recovers after the quota for the type was exceeded.
+ * @version 2014.08 initial version
+ * @since 2014.08
+ */
+public class ProvisioningSchedulerTest {
+    static private void releaseAll(ProvisioningScheduler.Slots s, int releases) {
+        for( int i=0; i<releases; i++ ) {
+            s.inFlight++;
+            s.release();
+        }
+    }
+
+    @Test
+    public void limitedTypeRecoversToItsLimit() {
+        ProvisioningScheduler.Slots s = new ProvisioningScheduler.Slots(4);
+
+        s.inFlight = 4;
+        s.lower();
+        assertEquals(3, s.limit);
+        releaseAll(s, 100);
+        assertEquals(4, s.limit);
+    }
+
+    @Test
+    public void unlimitedTypeBecomesUnlimitedAgain() {
+        ProvisioningScheduler.Slots s = new ProvisioningScheduler.Slots(0);
+
+        s.inFlight = 6;
+        s.lower();
+        assertEquals(5, s.limit);
+        s.inFlight = 0;
+        releaseAll(s, 100);
+        assertEquals(0, s.limit);
+    }
+}